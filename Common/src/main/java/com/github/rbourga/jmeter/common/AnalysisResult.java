@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jmeter.gui.util.PowerTableModel;
+
+/**
+ * Immutable results table of an analysis: the rows of its labels, the number of
+ * labels that failed, and the error bound of the values to print in the
+ * reports. The analyses build a new result at each computation instead of
+ * filling a shared table model, so that several of them can run at the same
+ * time; the table models of the GUI and of the reports are filled from it.
+ */
+public final class AnalysisResult {
+
+	private final String[] aColumnNames;
+	private final Class<?>[] aColumnClasses;
+	private final List<Object[]> listRows;
+	private final int iFailedLblCnt;
+	private final String sErrorNote; // null if exact
+
+	public AnalysisResult(String[] aColumnNames, Class<?>[] aColumnClasses, List<Object[]> listRows,
+			int iFailedLblCnt, String sErrorNote) {
+		this.aColumnNames = aColumnNames.clone();
+		this.aColumnClasses = aColumnClasses.clone();
+		ArrayList<Object[]> alRows = new ArrayList<>(listRows.size());
+		for (Object[] aRow : listRows) {
+			alRows.add(aRow.clone());
+		}
+		this.listRows = alRows;
+		this.iFailedLblCnt = iFailedLblCnt;
+		this.sErrorNote = sErrorNote;
+	}
+
+	public static AnalysisResult crteAborted(String[] aColumnNames, Class<?>[] aColumnClasses, int iCode) {
+		// No rows, e.g. nothing loaded, with the negative code of the reason
+		return new AnalysisResult(aColumnNames, aColumnClasses, new ArrayList<>(), iCode, null);
+	}
+
+	public AnalysisResult withErrorNote(String sNote) {
+		return new AnalysisResult(aColumnNames, aColumnClasses, listRows, iFailedLblCnt, sNote);
+	}
+
+	public int getFailedLblCnt() {
+		// Number of failed labels, negative if the analysis was aborted
+		return iFailedLblCnt;
+	}
+
+	public String getErrorNote() {
+		return sErrorNote;
+	}
+
+	public String[] getColumnNames() {
+		return aColumnNames.clone();
+	}
+
+	public int getRowCount() {
+		return listRows.size();
+	}
+
+	public Object getValueAt(int iRow, int iCol) {
+		return listRows.get(iRow)[iCol];
+	}
+
+	Object[] getRowValues(int iRow) {
+		// Not copied: only read by the report writers of this package
+		return listRows.get(iRow);
+	}
+
+	public PowerTableModel crteTableModel() {
+		PowerTableModel pwrTblMdl = new PowerTableModel(aColumnNames.clone(), aColumnClasses.clone());
+		fillTable(pwrTblMdl);
+		return pwrTblMdl;
+	}
+
+	public void fillTable(PowerTableModel pwrTblMdl) {
+		// Replaces the rows of the table model, e.g. of a GUI, by those of the result
+		pwrTblMdl.clearData();
+		for (Object[] aRow : listRows) {
+			pwrTblMdl.addRow(aRow.clone());
+		}
+		pwrTblMdl.fireTableDataChanged();
+	}
+
+}
@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+/**
+ * Counting histogram of integer response times in ms. Percentiles are exact and
+ * read from the cumulative counts in O(n + range), instead of copying and
+ * sorting the values. The counts are held in a single dense array when the
+ * range is small, and otherwise in fixed-size pages allocated only where there
+ * are values. Counting only pays off when the range is not much larger than
+ * the number of values (see isCountable()): otherwise the histogram is built
+ * from the values sorted once, and holds their distinct values with their
+ * counts.
+ */
+public final class ElapsedHistogram {
+
+	private static final int DENSE_MAX_RANGE = 1 << 20; // 4 MB of counts
+	private static final int PAGE_SIZE = 1 << 12;
+	// Values counted at most per value to count, above which sorting is cheaper
+	private static final int MAX_RANGE_PER_VALUE = 4;
+
+	/*
+	 * Called for each value counted, in ascending order.
+	 */
+	public interface ValueCountHandler {
+		void onValue(int iValue, int iCount);
+	}
+
+	private final int iLowBound; // smallest value that can be counted
+	private final int iPageSize;
+	private final int[][] aPages; // a single page when dense
+	private final int[] aPageTotals;
+	// Distinct values in ascending order and their counts, instead of the pages
+	// when built from sorted values
+	private final int[] aValues;
+	private final int[] aValueCnts;
+	private int iValueCnt;
+	private long lCount = 0;
+
+	public ElapsedHistogram(int iMin, int iMax) {
+		// Values between iMin and iMax inclusive can be counted
+		long lRange = (long) iMax - iMin + 1;
+		if (lRange <= 0) {
+			throw new IllegalArgumentException("Invalid histogram range: " + iMin + " to " + iMax + ".");
+		}
+		iLowBound = iMin;
+		iPageSize = (lRange <= DENSE_MAX_RANGE) ? (int) lRange : PAGE_SIZE;
+		int iPageCnt = (int) ((lRange + iPageSize - 1) / iPageSize);
+		aPages = new int[iPageCnt][];
+		aPageTotals = new int[iPageCnt];
+		aValues = null;
+		aValueCnts = null;
+	}
+
+	private ElapsedHistogram(int[] aValues, int[] aValueCnts, int iValueCnt, long lCount) {
+		iLowBound = 0;
+		iPageSize = 0;
+		aPages = null;
+		aPageTotals = null;
+		this.aValues = aValues;
+		this.aValueCnts = aValueCnts;
+		this.iValueCnt = iValueCnt;
+		this.lCount = lCount;
+	}
+
+	public static boolean isCountable(int iMin, int iMax, long lCount) {
+		// True if counting lCount values between iMin and iMax is cheaper than sorting them
+		return (long) iMax - iMin + 1 <= MAX_RANGE_PER_VALUE * lCount;
+	}
+
+	public static ElapsedHistogram crteFromSorted(int[] aSorted) {
+		// Distinct values and counts of values already sorted, the range being too large to count them
+		int[] aDistinct = new int[aSorted.length];
+		int[] aDistinctCnts = new int[aSorted.length];
+		int iDistinctCnt = 0;
+		for (int i = 0; i < aSorted.length; i++) {
+			if (iDistinctCnt == 0 || aDistinct[iDistinctCnt - 1] != aSorted[i]) {
+				aDistinct[iDistinctCnt++] = aSorted[i];
+			}
+			aDistinctCnts[iDistinctCnt - 1]++;
+		}
+		return new ElapsedHistogram(aDistinct, aDistinctCnts, iDistinctCnt, aSorted.length);
+	}
+
+	public static ElapsedHistogram crteFromValues(double[] aValues) {
+		/*
+		 * Returns null if the values are not all integers that fit in an int, or if
+		 * their range is too large to count them: they are then to be sorted.
+		 */
+		if (aValues.length == 0) {
+			return null;
+		}
+		int iMin = Integer.MAX_VALUE, iMax = Integer.MIN_VALUE;
+		for (double dValue : aValues) {
+			if (dValue != Math.rint(dValue) || dValue < Integer.MIN_VALUE || dValue > Integer.MAX_VALUE) {
+				return null;
+			}
+			iMin = Math.min(iMin, (int) dValue);
+			iMax = Math.max(iMax, (int) dValue);
+		}
+		if (!isCountable(iMin, iMax, aValues.length)) {
+			return null;
+		}
+		ElapsedHistogram elapsedHistogram = new ElapsedHistogram(iMin, iMax);
+		for (double dValue : aValues) {
+			elapsedHistogram.add((int) dValue);
+		}
+		return elapsedHistogram;
+	}
+
+	public static ElapsedHistogram crteFromSketch(QuantileSketch quantileSketch) {
+		/*
+		 * Counts the values of the buckets of the sketch, rounded to the ms, so that
+		 * histogram-based analyses run on sketches too. The buckets being read in
+		 * ascending order, they are kept as distinct values if their range is too
+		 * large to count them.
+		 */
+		int iMin = (int) Math.floor(quantileSketch.getMin());
+		int iMax = (int) Math.ceil(quantileSketch.getMax());
+		int[] aBucketCnt = { 0 };
+		quantileSketch.forEachBucket((dValue, lCount) -> aBucketCnt[0]++);
+		if (isCountable(iMin, iMax, aBucketCnt[0])) {
+			ElapsedHistogram elapsedHistogram = new ElapsedHistogram(iMin, iMax);
+			quantileSketch.forEachBucket((dValue, lCount) -> {
+				int iValue = (int) Math.max(iMin, Math.min(iMax, Math.round(dValue)));
+				elapsedHistogram.add(iValue, Math.toIntExact(lCount));
+			});
+			return elapsedHistogram;
+		}
+		int[] aDistinct = new int[aBucketCnt[0]];
+		int[] aDistinctCnts = new int[aBucketCnt[0]];
+		int[] aDistinctCnt = { 0 };
+		quantileSketch.forEachBucket((dValue, lCount) -> {
+			int iValue = (int) Math.max(iMin, Math.min(iMax, Math.round(dValue)));
+			if (aDistinctCnt[0] == 0 || aDistinct[aDistinctCnt[0] - 1] != iValue) {
+				aDistinct[aDistinctCnt[0]++] = iValue;
+			}
+			aDistinctCnts[aDistinctCnt[0] - 1] += Math.toIntExact(lCount);
+		});
+		return new ElapsedHistogram(aDistinct, aDistinctCnts, aDistinctCnt[0], quantileSketch.getCount());
+	}
+
+	public void add(int iValue) {
+		add(iValue, 1);
+	}
+
+	public void add(int iValue, int iValueCnt) {
+		// Only for a histogram created with a range: the values of the others are set at once
+		if (aPages == null) {
+			throw new IllegalStateException("Values cannot be added to a histogram of sorted values.");
+		}
+		long lPos = (long) iValue - iLowBound;
+		int iPage = (int) (lPos / iPageSize);
+		if (aPages[iPage] == null) {
+			aPages[iPage] = new int[iPageSize];
+		}
+		aPages[iPage][(int) (lPos % iPageSize)] += iValueCnt;
+		aPageTotals[iPage] += iValueCnt;
+		lCount += iValueCnt;
+	}
+
+	public long getCount() {
+		return lCount;
+	}
+
+	public int getMin() {
+		return getValueAtRank(1);
+	}
+
+	public int getMax() {
+		return getValueAtRank(lCount);
+	}
+
+	public int getValueAtRank(long lRank) {
+		// Value of the given order statistic, from 1 (min) to getCount() (max)
+		if (lRank < 1 || lRank > lCount) {
+			throw new IllegalArgumentException("Rank out of range: " + lRank + ".");
+		}
+		long lCumul = 0;
+		if (aPages == null) {
+			for (int i = 0; i < iValueCnt; i++) {
+				lCumul += aValueCnts[i];
+				if (lCumul >= lRank) {
+					return aValues[i];
+				}
+			}
+			throw new IllegalStateException("Histogram counts inconsistent.");
+		}
+		for (int iPage = 0; iPage < aPages.length; iPage++) {
+			if (lCumul + aPageTotals[iPage] < lRank) {
+				lCumul += aPageTotals[iPage]; // whole page below the rank
+				continue;
+			}
+			int[] aPage = aPages[iPage];
+			for (int i = 0; i < iPageSize; i++) {
+				lCumul += aPage[i];
+				if (lCumul >= lRank) {
+					return (int) valueAt(iPage, i);
+				}
+			}
+		}
+		throw new IllegalStateException("Histogram counts inconsistent.");
+	}
+
+	public double getPercentile(double dP) {
+		/*
+		 * Same estimation as StatUtils.percentile(): interpolation between the order
+		 * statistics around position p / 100 * (n + 1), computed in the same order.
+		 */
+		if (lCount == 0) {
+			return Double.NaN;
+		}
+		double dPos = dP / 100 * (lCount + 1);
+		if (dPos < 1) {
+			return getMin();
+		}
+		if (dPos >= lCount) {
+			return getMax();
+		}
+		long lLowRank = (long) Math.floor(dPos);
+		double dLower = getValueAtRank(lLowRank);
+		double dUpper = getValueAtRank(lLowRank + 1);
+		return dLower + (dPos - lLowRank) * (dUpper - dLower);
+	}
+
+	public long removeAbove(double dLimit) {
+		// Removes the values greater than dLimit, returns their count
+		long lRemoved = 0;
+		if (aPages == null) {
+			while (iValueCnt > 0 && aValues[iValueCnt - 1] > dLimit) {
+				lRemoved += aValueCnts[--iValueCnt];
+			}
+			lCount -= lRemoved;
+			return lRemoved;
+		}
+		for (int iPage = aPages.length - 1; iPage >= 0; iPage--) {
+			int[] aPage = aPages[iPage];
+			if (aPage == null) {
+				continue;
+			}
+			if (valueAt(iPage, iPageSize - 1) <= dLimit) {
+				break; // this page and the ones below are kept
+			}
+			for (int i = iPageSize - 1; i >= 0 && valueAt(iPage, i) > dLimit; i--) {
+				lRemoved += aPage[i];
+				aPageTotals[iPage] -= aPage[i];
+				aPage[i] = 0;
+			}
+		}
+		lCount -= lRemoved;
+		return lRemoved;
+	}
+
+	public void forEachValue(ValueCountHandler valueCountHandler) {
+		if (aPages == null) {
+			for (int i = 0; i < iValueCnt; i++) {
+				valueCountHandler.onValue(aValues[i], aValueCnts[i]);
+			}
+			return;
+		}
+		for (int iPage = 0; iPage < aPages.length; iPage++) {
+			if (aPageTotals[iPage] == 0) {
+				continue;
+			}
+			int[] aPage = aPages[iPage];
+			for (int i = 0; i < iPageSize; i++) {
+				if (aPage[i] != 0) {
+					valueCountHandler.onValue((int) valueAt(iPage, i), aPage[i]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private long valueAt(int iPage, int iOffset) {
+		// As a long: the end of the last page may be beyond the int range
+		return (long) iLowBound + (long) iPage * iPageSize + iOffset;
+	}
+
+}
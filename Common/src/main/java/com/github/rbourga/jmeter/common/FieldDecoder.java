@@ -0,0 +1,89 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the numeric and boolean fields of the results files (elapsed,
+ * timeStamp, success) straight into primitives, without creating Strings or
+ * boxed values. The same rules apply whether the field is read from the bytes
+ * of a mapped file or from characters already decoded by another reader.
+ */
+public final class FieldDecoder {
+
+	// Returned by the parse methods when the field is not an integer
+	public static final long INVALID_NUMBER = Long.MIN_VALUE;
+
+	private static final int MAX_DIGITS = 18; // no overflow of a long
+
+	/*
+	 * Byte methods
+	 */
+	public static long parseLong(ByteBuffer buf, int iStart, int iEnd) {
+		// Parses the digits of [iStart, iEnd), returns INVALID_NUMBER if not a number
+		boolean bNeg = false;
+		if (iStart < iEnd && buf.get(iStart) == '-') {
+			bNeg = true;
+			iStart++;
+		}
+		if (iStart == iEnd || iEnd - iStart > MAX_DIGITS) {
+			return INVALID_NUMBER;
+		}
+		long lValue = 0;
+		for (int i = iStart; i < iEnd; i++) {
+			int iDigit = buf.get(i) - '0';
+			if (iDigit < 0 || iDigit > 9) {
+				return INVALID_NUMBER;
+			}
+			lValue = lValue * 10 + iDigit;
+		}
+		return bNeg ? -lValue : lValue;
+	}
+
+	public static boolean isTrue(ByteBuffer buf, int iStart, int iEnd) {
+		// Same as "true".equalsIgnoreCase(), as "true" can be in capital letters if
+		// the results have been exported from Excel
+		if (iEnd - iStart != 4) {
+			return false;
+		}
+		return (buf.get(iStart) | 0x20) == 't' && (buf.get(iStart + 1) | 0x20) == 'r'
+				&& (buf.get(iStart + 2) | 0x20) == 'u' && (buf.get(iStart + 3) | 0x20) == 'e';
+	}
+
+	/*
+	 * Character methods
+	 */
+	public static long parseLong(CharSequence csField) {
+		// Same as parseLong(ByteBuffer, int, int) on a decoded field
+		int iStart = 0;
+		int iEnd = csField.length();
+		boolean bNeg = false;
+		if (iStart < iEnd && csField.charAt(iStart) == '-') {
+			bNeg = true;
+			iStart++;
+		}
+		if (iStart == iEnd || iEnd - iStart > MAX_DIGITS) {
+			return INVALID_NUMBER;
+		}
+		long lValue = 0;
+		for (int i = iStart; i < iEnd; i++) {
+			int iDigit = csField.charAt(i) - '0';
+			if (iDigit < 0 || iDigit > 9) {
+				return INVALID_NUMBER;
+			}
+			lValue = lValue * 10 + iDigit;
+		}
+		return bNeg ? -lValue : lValue;
+	}
+
+	public static boolean isTrue(CharSequence csField) {
+		if (csField.length() != 4) {
+			return false;
+		}
+		return (csField.charAt(0) | 0x20) == 't' && (csField.charAt(1) | 0x20) == 'r'
+				&& (csField.charAt(2) | 0x20) == 'u' && (csField.charAt(3) | 0x20) == 'e';
+	}
+
+}
@@ -3,32 +3,59 @@
  */
 package com.github.rbourga.jmeter.common;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.table.DefaultTableModel;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.save.CSVSaveService;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.apache.jmeter.util.JMeterUtils;
 
 /**
  * Various methods for handling files
  */
 public final class FileServices {
 
+	private static final long PARALLEL_LOAD_MIN_SIZE = 64L << 20; // 64 MB
+	// JMeter property to disable the binary cache of the results files
+	private static final String STORE_CACHE_PROPERTY = "rbourga.store.cache";
+	// Compressed results files
+	public static final String GZIP_EXTENSION = ".gz";
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+	// Bytes read at once when only the start of a results file is checked
+	private static final int PEEK_BUFFER_SIZE = 1 << 12;
+	// Start of the comment lines of the CSV tables, as read by CSVFormat.withCommentMarker('#')
+	private static final String CSV_COMMENT_PREFIX = "# ";
+
 	/*
 	 * Validation methods
 	 */
@@ -41,7 +68,7 @@ public final class FileServices {
 	}
 
 	public static boolean isFileValid(String sFilePath) {
-		try (BufferedReader brRdr = new BufferedReader(new FileReader(sFilePath))) {
+		try (BufferedReader brRdr = new BufferedReader(new InputStreamReader(openPeekInputStream(sFilePath)))) {
 			String sLine = brRdr.readLine();
 			brRdr.close();
 			return sLine != null && !sLine.isEmpty(); // Check if the first line is not empty
@@ -51,71 +78,379 @@ public final class FileServices {
 		}
 	}
 
+	public static boolean isGzipFile(String sFilePath) {
+		// Checks the gzip magic number rather than the file extension
+		try (InputStream inStream = new FileInputStream(sFilePath)) {
+			return inStream.read() == 0x1F && inStream.read() == 0x8B;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public static boolean isXmlFile(String sFilePath) {
+		// XML results start with '<' after an optional byte order mark and blanks,
+		// whereas CSV results start with the header line
+		try (InputStream inStream = openPeekInputStream(sFilePath)) {
+			int iByte = inStream.read();
+			if (iByte == 0xEF) {
+				inStream.skip(2);
+				iByte = inStream.read();
+			}
+			while (iByte == ' ' || iByte == '\t' || iByte == '\r' || iByte == '\n') {
+				iByte = inStream.read();
+			}
+			return iByte == '<';
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static boolean isParallelLoad(String sFilePath) {
+		// Large files are loaded in parallel when several cores are available
+		// (compressed files can only be read sequentially)
+		return (Runtime.getRuntime().availableProcessors() > 1)
+				&& (new File(sFilePath).length() >= PARALLEL_LOAD_MIN_SIZE) && !isGzipFile(sFilePath);
+	}
+
 	/*
-	 * Consolidation methods
+	 * Multi-file input methods
 	 */
-	public static Map<String, List<CSVRecord>> loadSamplesIntoHashMap(String sFilePath, char cDelim) {
-		// Stores the samples and group them by their labels in separate lists
-
-		CSVFormat csvFmt;
-		if (cDelim == ',') {
-			// Comma separated format
-			csvFmt = CSVFormat.RFC4180.builder().setHeader().setSkipHeaderRecord(true).build();
-		} else {
-			// Tab-delimited format
-			csvFmt = CSVFormat.TDF.builder().setHeader().setSkipHeaderRecord(true).build();
-		}
-
-		HashMap<String, List<CSVRecord>> rcdHashMap = new HashMap<>();
-		try (FileReader fileRdr = new FileReader(sFilePath); CSVParser csvParser = new CSVParser(fileRdr, csvFmt)) {
-			for (CSVRecord rcd : csvParser) {
-				String sLabel = rcd.get("label");
-				if (!rcdHashMap.containsKey(sLabel)) {
-					// New label
-					rcdHashMap.put(sLabel, new ArrayList<>());
+	public static List<String> resolveInputFiles(String sInput) {
+		/*
+		 * The input can be a file, or a comma-separated list of files and glob patterns
+		 * on file names such as "results/node*.jtl", e.g. one results file per load
+		 * generator. Patterns are expanded in name order.
+		 */
+		if (isFileExist(sInput)) {
+			return Collections.singletonList(sInput);
+		}
+		List<String> listFiles = new ArrayList<>();
+		for (String sPart : sInput.split(",")) {
+			sPart = sPart.trim();
+			if (sPart.isEmpty()) {
+				continue;
+			}
+			if (sPart.indexOf('*') == -1 && sPart.indexOf('?') == -1 && sPart.indexOf('[') == -1
+					&& sPart.indexOf('{') == -1) {
+				listFiles.add(sPart);
+				continue;
+			}
+			// Split the directory from the pattern without making a Path of the pattern
+			int iSep = Math.max(sPart.lastIndexOf('/'), sPart.lastIndexOf('\\'));
+			String sDir = (iSep == -1) ? "." : sPart.substring(0, iSep + 1);
+			List<String> listMatches = new ArrayList<>();
+			try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(Paths.get(sDir),
+					sPart.substring(iSep + 1))) {
+				for (Path path : dirStream) {
+					String sMatch = path.toString();
+					if (Files.isRegularFile(path) && !sMatch.endsWith(SampleStoreCache.CACHE_SUFFIX)
+							&& !sMatch.endsWith(SampleStoreCache.CACHE_TMP_SUFFIX)) {
+						listMatches.add((iSep == -1) ? path.getFileName().toString() : sMatch);
+					}
 				}
-				rcdHashMap.get(sLabel).add(rcd);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			csvParser.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+			Collections.sort(listMatches);
+			listFiles.addAll(listMatches);
+		}
+		return listFiles;
+	}
+
+	public static String getOutputBasePath(String sInput) {
+		// Path after which the reports are named: the file itself, or for several files
+		// the first one suffixed with "_merged"
+		List<String> listFiles = resolveInputFiles(sInput);
+		if (listFiles.isEmpty()) {
+			return sInput;
+		}
+		String sFirstFile = listFiles.get(0);
+		if (listFiles.size() == 1) {
+			return sFirstFile;
+		}
+		String sUncompressedPath = stripGzipExtension(sFirstFile);
+		return FilenameUtils.getFullPath(sUncompressedPath) + FilenameUtils.getBaseName(sUncompressedPath) + "_merged."
+				+ FilenameUtils.getExtension(sUncompressedPath);
+	}
+
+	public static SampleStore loadMergedSamplesIntoStore(List<String> listFiles, char cDelim,
+			LabelMapper labelMapper, String... aColumns) {
+		/*
+		 * Loads the files concurrently, each one as by loadSamplesIntoStore() and so
+		 * with its own cache, then merges them on timeStamp into one dataset, the
+		 * columns of the stores of the files being released as they are merged. No
+		 * merged copy of the files is written. The labels of all the files go through
+		 * the same mapper, if any.
+		 */
+		String[] aMergeColumns = aColumns;
+		if (aColumns.length > 0 && !Arrays.asList(aColumns).contains(JtlScanner.COL_TIMESTAMP)) {
+			aMergeColumns = Arrays.copyOf(aColumns, aColumns.length + 1);
+			aMergeColumns[aColumns.length] = JtlScanner.COL_TIMESTAMP;
+		}
+		final String[] aLoadColumns = aMergeColumns;
+		List<ForkJoinTask<SampleStore>> listTasks = new ArrayList<>();
+		for (String sFile : listFiles) {
+			listTasks.add(ForkJoinPool.commonPool()
+					.submit(() -> loadSamplesIntoStore(sFile, cDelim, isParallelLoad(sFile), labelMapper, aLoadColumns)));
 		}
-		return rcdHashMap;
+		SampleStore[] aStores = new SampleStore[listTasks.size()];
+		for (int i = 0; i < aStores.length; i++) {
+			aStores[i] = listTasks.get(i).join();
+		}
+		SampleStore mergedStore = SampleStore.mergeByTimeStamp(aStores);
+		mergedStore.trimToSize();
+		return mergedStore;
+	}
+
+	/*
+	 * Stream methods
+	 */
+	public static InputStream openResultsInputStream(String sFilePath) throws IOException {
+		// Gzip files are decompressed on a separate thread while the caller parses
+		InputStream inStream = new FileInputStream(sFilePath);
+		if (isGzipFile(sFilePath)) {
+			return new ReadAheadInputStream(new GZIPInputStream(inStream, GZIP_BUFFER_SIZE));
+		}
+		return new BufferedInputStream(inStream, GZIP_BUFFER_SIZE);
+	}
+
+	public static Writer openResultsWriter(String sFilePath) throws IOException {
+		// Output files named with the gzip extension are compressed
+		if (sFilePath.endsWith(GZIP_EXTENSION)) {
+			return new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(sFilePath), GZIP_BUFFER_SIZE));
+		}
+		return new FileWriter(sFilePath);
 	}
 
-	public static void saveCSVRecsToFile(String sFilePath, List<CSVRecord> listCSVRecs, char cDelim) {
+	public static WritableByteChannel openResultsChannel(String sFilePath) throws IOException {
+		// Same as openResultsWriter() for bytes copied as they are
+		if (sFilePath.endsWith(GZIP_EXTENSION)) {
+			return Channels.newChannel(new GZIPOutputStream(new FileOutputStream(sFilePath), GZIP_BUFFER_SIZE));
+		}
+		return FileChannel.open(Paths.get(sFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
 
-		CSVFormat csvFmt;
-		if (cDelim == ',') {
-			// Comma separated format
-			csvFmt = CSVFormat.RFC4180;
-		} else {
-			// Tab-delimited format
-			csvFmt = CSVFormat.TDF;
+	public static String stripGzipExtension(String sFilePath) {
+		// "results.jtl.gz" -> "results.jtl", so that outputs keep the original extension
+		if (sFilePath.endsWith(GZIP_EXTENSION)) {
+			return sFilePath.substring(0, sFilePath.length() - GZIP_EXTENSION.length());
 		}
+		return sFilePath;
+	}
 
-		try (FileWriter fileWriter = new FileWriter(sFilePath);
-				CSVPrinter csvPrinter = new CSVPrinter(fileWriter, csvFmt)) {
+	/*
+	 * Consolidation methods
+	 */
+	public static SampleStore loadSamplesIntoStore(String sFilePath, char cDelim, String... aColumns) {
+		// Several files given as a list or a glob pattern are merged
+		List<String> listFiles = isFileExist(sFilePath) ? Collections.singletonList(sFilePath)
+				: resolveInputFiles(sFilePath);
+		// Labels normalised or reduced to the top ones if set in the JMeter properties
+		LabelMapper labelMapper = LabelMapper.crteForFiles(listFiles, cDelim);
+		if (!isFileExist(sFilePath) && !listFiles.isEmpty()) {
+			return loadMergedSamplesIntoStore(listFiles, cDelim, labelMapper, aColumns);
+		}
+		return loadSamplesIntoStore(sFilePath, cDelim, isParallelLoad(sFilePath), labelMapper, aColumns);
+	}
+
+	public static SampleStore loadSamplesIntoStore(String sFilePath, char cDelim, boolean bParallel,
+			LabelMapper labelMapper, String... aColumns) {
+		// Stores only the label, timeStamp, elapsed and success columns of the samples
+		// in a columnar store, the labels being indexed. CSV, TSV and XML results
+		// files are accepted, gzip-compressed or not.
+		// The file is scanned at byte level without building Strings for the columns.
+		// If columns are given, only those are located in the rows (the label always
+		// is) and the others are stored as 0 or false.
+		// The store is cached next to the file for the next analyses of the same file,
+		// unless its labels are mapped.
+		boolean bUseCache = JMeterUtils.getPropDefault(STORE_CACHE_PROPERTY, true) && (labelMapper == null);
+		int iColMask = SampleStoreCache.getColumnMask(aColumns);
+		if (bUseCache) {
+			try {
+				SampleStore cachedStore = SampleStoreCache.load(sFilePath, cDelim, iColMask);
+				if (cachedStore != null) {
+					return cachedStore;
+				}
+			} catch (IOException e) {
+				e.printStackTrace(); // parse the file instead
+			}
+		}
+
+		SampleStore sampleStore = new SampleStore();
+		boolean bLoaded = false;
+		try {
+			if (isXmlFile(sFilePath)) {
+				// XML results are streamed, the columns being the lb, t, s and ts attributes
+				SampleStore xmlStore = sampleStore;
+				JtlScanner.LabelDictionary xmlDictionary = LabelMapper.crteDictionary(labelMapper, xmlStore);
+				XmlJtlReader.scanFile(sFilePath, (sLabel, lTimeStamp, lElapsed, bSuccess) -> xmlStore
+						.addSample(xmlDictionary.putLabel(sLabel), lTimeStamp, (int) lElapsed, bSuccess));
+			} else if (bParallel && !isGzipFile(sFilePath)) {
+				// Same grouping and ordering as the sequential load
+				sampleStore = ParallelJtlLoader.load(sFilePath, cDelim, labelMapper, aColumns);
+			} else {
+				SampleStore seqStore = sampleStore;
+				JtlScanner.LabelDictionary seqDictionary = LabelMapper.crteDictionary(labelMapper, seqStore);
+				JtlScanner jtlScanner = new JtlScanner(cDelim);
+				if (aColumns.length > 0) {
+					jtlScanner.setProjection(aColumns);
+				}
+				jtlScanner.scanFile(sFilePath, scanner -> seqStore.addSample(scanner.getLabelId(seqDictionary),
+						scanner.getTimeStamp(), (int) scanner.getElapsed(), scanner.isSuccess()));
+			}
+			bLoaded = true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		sampleStore.trimToSize();
+
+		if (bUseCache && bLoaded && !sampleStore.isEmpty()) {
+			try {
+				SampleStoreCache.save(sFilePath, cDelim, iColMask, sampleStore);
+			} catch (IOException e) {
+				e.printStackTrace(); // e.g. read-only directory: the next load parses again
+			}
+		}
+		return sampleStore;
+	}
 
-			// Write the header to the file
-			csvPrinter.printRecord(listCSVRecs.get(0).getParser().getHeaderNames());
+	public static SampleSketches loadSamplesIntoSketches(String sFilePath, char cDelim, double dRelAcc) {
+		// Sketch mode: the elapsed times of each label are summarized in memory that
+		// does not grow with the number of samples, within the relative accuracy.
+		// Several files given as a list or a glob pattern are merged.
+		List<String> listFiles = isFileExist(sFilePath) ? Collections.singletonList(sFilePath)
+				: resolveInputFiles(sFilePath);
+		SampleSketches sampleSketches = new SampleSketches(dRelAcc);
+		LabelMapper labelMapper = LabelMapper.crteForFiles(listFiles, cDelim);
+		for (String sFile : listFiles) {
+			try {
+				JtlScanner.LabelDictionary labelDictionary = LabelMapper.crteDictionary(labelMapper, sampleSketches);
+				if (isXmlFile(sFile)) {
+					XmlJtlReader.scanFile(sFile, (sLabel, lTimeStamp, lElapsed, bSuccess) -> sampleSketches
+							.addSample(labelDictionary.putLabel(sLabel), lElapsed, bSuccess));
+				} else if (isParallelLoad(sFile)) {
+					// Each range of the file is summarized on its own, then merged
+					sampleSketches.merge(ParallelJtlLoader.loadSketches(sFile, cDelim, dRelAcc, labelMapper));
+				} else {
+					JtlScanner jtlScanner = new JtlScanner(cDelim);
+					jtlScanner.setProjection(SampleSketches.USED_COLUMNS);
+					jtlScanner.scanFile(sFile, scanner -> sampleSketches.addSample(
+							scanner.getLabelId(labelDictionary), scanner.getElapsed(), scanner.isSuccess()));
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return sampleSketches;
+	}
 
-			// Write the records to the file
-			for (CSVRecord rcd : listCSVRecs) {
-				csvPrinter.printRecord(rcd);
+	public static SampleReservoirs loadSamplesIntoReservoirs(String sFilePath, char cDelim, double dConfidence,
+			double dMargin) {
+		// Sampling mode: a stratified random sample of each label, sized by the target
+		// confidence and margin. Several files given as a list or a glob pattern are
+		// merged.
+		List<String> listFiles = isFileExist(sFilePath) ? Collections.singletonList(sFilePath)
+				: resolveInputFiles(sFilePath);
+		SampleReservoirs sampleReservoirs = new SampleReservoirs(dConfidence, dMargin);
+		LabelMapper labelMapper = LabelMapper.crteForFiles(listFiles, cDelim);
+		for (String sFile : listFiles) {
+			try {
+				JtlScanner.LabelDictionary labelDictionary = LabelMapper.crteDictionary(labelMapper, sampleReservoirs);
+				if (isXmlFile(sFile)) {
+					XmlJtlReader.scanFile(sFile, (sLabel, lTimeStamp, lElapsed, bSuccess) -> sampleReservoirs
+							.addSample(labelDictionary.putLabel(sLabel), lTimeStamp, lElapsed, bSuccess));
+				} else {
+					JtlScanner jtlScanner = new JtlScanner(cDelim);
+					jtlScanner.setProjection(SampleReservoirs.USED_COLUMNS);
+					jtlScanner.scanFile(sFile,
+							scanner -> sampleReservoirs.addSample(scanner.getLabelId(labelDictionary),
+									scanner.getTimeStamp(), scanner.getElapsed(), scanner.isSuccess()));
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
+		}
+		return sampleReservoirs;
+	}
 
-			csvPrinter.flush();
-			csvPrinter.close();
+	public static void saveSelectedRowsToFile(String sInFilePath, String sOutFilePath, BitSet bsRows, char cDelim,
+			String... aColumns) {
+		/*
+		 * Copies the header and the rows of the input file whose row numbers are set in
+		 * bsRows. The rows are numbered by a JtlScanner with the columns used to load
+		 * the samples, so that the same blank and truncated rows are skipped as in the
+		 * SampleStore, and their bytes are copied as they are while the file is
+		 * streamed. Both files can be gzip-compressed.
+		 */
+		if (isXmlFile(sInFilePath)) {
+			// Copy the selected samples as XML elements
+			try (Writer fileWriter = openResultsWriter(sOutFilePath)) {
+				XmlJtlReader.copySelectedSamples(sInFilePath, fileWriter, bsRows);
+			} catch (IOException ioE) {
+				ioE.printStackTrace();
+			}
+			return;
+		}
+		JtlScanner jtlScanner = new JtlScanner(cDelim);
+		if (aColumns.length > 0) {
+			jtlScanner.setProjection(aColumns);
+		}
+		try (WritableByteChannel outChnl = openResultsChannel(sOutFilePath)) {
+			int[] aRow = { 0 };
+			boolean[] aHeaderCopied = { false };
+			try {
+				jtlScanner.scanFile(sInFilePath, scanner -> {
+					try {
+						if (!aHeaderCopied[0]) {
+							writeFully(outChnl, ByteBuffer.wrap(scanner.getHeaderBytes()));
+							aHeaderCopied[0] = true;
+						}
+						if (bsRows.get(aRow[0]++)) {
+							ByteBuffer rowBuf = scanner.getRowBytes();
+							boolean bTerminated = rowBuf.get(rowBuf.limit() - 1) == '\n';
+							writeFully(outChnl, rowBuf);
+							if (!bTerminated) {
+								// Last row of the file without end of line: same as the header
+								writeFully(outChnl, ByteBuffer.wrap(getLineEnd(scanner.getHeaderBytes())));
+							}
+						}
+					} catch (IOException ioE) {
+						throw new RowCopyException(ioE);
+					}
+				});
+			} catch (RowCopyException e) {
+				throw e.ioE;
+			}
+			if (!aHeaderCopied[0]) {
+				// No data rows
+				writeFully(outChnl, ByteBuffer.wrap(jtlScanner.getHeaderBytes()));
+			}
+		} catch (IOException ioE) {
+			ioE.printStackTrace();
+		}
+	}
 
+	public static void saveSelectedRowsToFile(JtlRowIndex rowIndex, String sOutFilePath, BitSet bsRows) {
+		/*
+		 * Same as above with the rows located by the index of the input file: their
+		 * bytes are copied as they are, without being parsed.
+		 */
+		try (WritableByteChannel outChnl = openResultsChannel(sOutFilePath)) {
+			rowIndex.copySelectedRows(outChnl, bsRows);
 		} catch (IOException ioE) {
-			// TODO Auto-generated catch block
 			ioE.printStackTrace();
 		}
 	}
 
 	public static void saveTableAsCsv(String sFilePath, DefaultTableModel tblMdl) {
+		saveTableAsCsv(sFilePath, tblMdl, null);
+	}
+
+	public static void saveTableAsCsv(String sFilePath, DefaultTableModel tblMdl, String sFootnote) {
 		// By default, data saved with comma separated values
+		// The footnote, if any, e.g. the error bound of the values, is written as a last
+		// comment line so that the rows above keep the columns of the header
 		FileWriter fileWrtr = null;
 		try {
 			fileWrtr = new FileWriter(sFilePath);
@@ -124,6 +459,9 @@ public final class FileServices {
 		}
 		try {
 			CSVSaveService.saveCSVStats(tblMdl, fileWrtr);
+			if (sFootnote != null) {
+				fileWrtr.write(CSV_COMMENT_PREFIX + sFootnote.replaceAll("\\R", " ") + System.lineSeparator());
+			}
 			fileWrtr.close();
 		} catch (IOException ioE) {
 			ioE.printStackTrace();
@@ -140,70 +478,99 @@ public final class FileServices {
 		 *  true: red 
 		 *  false: green
 		 *  na: orange
+		 * The rows are streamed to the file by an HtmlTableWriter, or to the chunks of
+		 * a paged report if there are too many rows for a single page.
 		 */
-		DecimalFormat df4digits = new DecimalFormat("#.####");
-
-		// Create empty HTML shell
-		Document docHtml = Document.createShell("");
-		Element eBdy = docHtml.body();
-		// Add table with border & caption
-		Element eTbl = eBdy.appendElement("table border");
-		eTbl.append("<caption>" + sTblCaption + "</caption>");
-		// Write the table headers
-		Element eTrHdr = docHtml.createElement("tr");
 		int colCnt = tblMdl.getColumnCount();
+		String[] aColumnNames = new String[colCnt];
 		for (int i = 0; i < colCnt; i++) {
-			Element eTh = docHtml.createElement("th");
-			eTh.text(tblMdl.getColumnName(i));
-			eTrHdr.appendChild(eTh);
+			aColumnNames[i] = tblMdl.getColumnName(i);
 		}
-		eTbl.appendChild(eTrHdr);
-		// Write the data rows
-		Element eTrData = null;
 		int rowCnt = tblMdl.getRowCount();
-		for (int i = 0; i < rowCnt; i++) {
-			if (iBoolColNbr == -1) {
-				// Default row color
-				eTrData = docHtml.createElement("tr");
-			} else if (tblMdl.getValueAt(i, iBoolColNbr).toString().equalsIgnoreCase("true")) {
-				// Highlight the row in orange if failed
-				eTrData = docHtml.createElement("tr style=\"background-color: tomato\"");
-			} else if (tblMdl.getValueAt(i, iBoolColNbr).toString().equalsIgnoreCase("na")) {
-				// Highlight the row in yellow if not applicable
-				eTrData = docHtml.createElement("tr style=\"background-color: orange\"");
-			} else {
-				// Highlight the row in lawngreen if passed
-				eTrData = docHtml.createElement("tr style=\"background-color: mediumseagreen\"");
-			}
-			for (int j = 0; j < colCnt; j++) {
-				Element eTd = docHtml.createElement("td");
-				String sHtmlOut = tblMdl.getValueAt(i, j).toString();
-				// Convert to percentage if needed
-				String sColName = tblMdl.getColumnName(j);
-				if (sColName.contains("%")) {
-					double dPctValue = ((double) tblMdl.getValueAt(i, j)) * 100;
-					// Only keep 4 digits
-					String sRoundedPct = df4digits.format(dPctValue);
-					sHtmlOut = sRoundedPct + "%";
+		try (TableReportWriter htmlWrtr = crteHtmlWriter(sFilePath, sTblCaption, aColumnNames, iBoolColNbr,
+				rowCnt)) {
+			Object[] aValues = new Object[colCnt];
+			for (int i = 0; i < rowCnt; i++) {
+				for (int j = 0; j < colCnt; j++) {
+					aValues[j] = tblMdl.getValueAt(i, j);
 				}
-				eTd.text(sHtmlOut);
-				eTrData.appendChild(eTd);
+				htmlWrtr.writeRow(aValues);
 			}
-			eTbl.appendChild(eTrData);
+		} catch (IOException ioE) {
+			ioE.printStackTrace();
 		}
+	}
 
-		// Save the HTML to the file
-		FileWriter fileWrtr = null;
-		try {
-			fileWrtr = new FileWriter(sFilePath);
-		} catch (IOException e1) {
-			e1.printStackTrace();
+	public static void saveTableAsHTML(String sFilePath, String sTblCaption, AnalysisResult analysisResult,
+			int iBoolColNbr) {
+		saveTableAsHTML(sFilePath, sTblCaption, analysisResult, iBoolColNbr, null);
+	}
+
+	public static void saveTableAsHTML(String sFilePath, String sTblCaption, AnalysisResult analysisResult,
+			int iBoolColNbr, Map<String, String> mapLinks) {
+		/*
+		 * Same as above from the rows of the result, with its error note as footnote.
+		 * The first cell of a row links to the file mapped to its value, if any, e.g.
+		 * the chart of the label.
+		 */
+		int rowCnt = analysisResult.getRowCount();
+		try (TableReportWriter htmlWrtr = crteHtmlWriter(sFilePath, sTblCaption, analysisResult.getColumnNames(),
+				iBoolColNbr, rowCnt)) {
+			for (int i = 0; i < rowCnt; i++) {
+				Object[] aValues = analysisResult.getRowValues(i);
+				htmlWrtr.writeRow(aValues, (mapLinks == null) ? null : mapLinks.get(String.valueOf(aValues[0])));
+			}
+			if (analysisResult.getErrorNote() != null) {
+				htmlWrtr.writeFootnote(analysisResult.getErrorNote());
+			}
+		} catch (IOException ioE) {
+			ioE.printStackTrace();
 		}
-		try {
-			fileWrtr.write(docHtml.toString());
-			fileWrtr.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static InputStream openPeekInputStream(String sFilePath) throws IOException {
+		// Start of a results file, without decompressing ahead the chunks of a gzip
+		// file that a load would read
+		InputStream inStream = new BufferedInputStream(new FileInputStream(sFilePath), PEEK_BUFFER_SIZE);
+		if (isGzipFile(sFilePath)) {
+			return new GZIPInputStream(inStream, PEEK_BUFFER_SIZE);
+		}
+		return inStream;
+	}
+
+	private static TableReportWriter crteHtmlWriter(String sFilePath, String sTblCaption, String[] aColumnNames,
+			int iBoolColNbr, int iRowCnt) throws IOException {
+		if (PagedHtmlTableWriter.isPaged(iRowCnt)) {
+			return new PagedHtmlTableWriter(sFilePath, sTblCaption, aColumnNames, iBoolColNbr);
+		}
+		return new HtmlTableWriter(sFilePath, sTblCaption, aColumnNames, iBoolColNbr);
+	}
+
+	private static byte[] getLineEnd(byte[] aHeaderBytes) {
+		int iLen = aHeaderBytes.length;
+		boolean bCrLf = iLen >= 2 && aHeaderBytes[iLen - 2] == '\r' && aHeaderBytes[iLen - 1] == '\n';
+		return bCrLf ? new byte[] { '\r', '\n' } : new byte[] { '\n' };
+	}
+
+	private static void writeFully(WritableByteChannel outChnl, ByteBuffer byteBuf) throws IOException {
+		while (byteBuf.hasRemaining()) {
+			outChnl.write(byteBuf);
+		}
+	}
+
+	/*
+	 * Carries an IOException of an output file out of a row handler.
+	 */
+	private static final class RowCopyException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final IOException ioE;
+
+		private RowCopyException(IOException ioE) {
+			super(ioE);
+			this.ioE = ioE;
 		}
 	}
 
@@ -0,0 +1,172 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Writes a results table as an HTML page, one row at a time, straight to a
+ * buffered file: no document is built in memory, so the size of the report
+ * does not change the heap used. The text of the cells is escaped as it is
+ * written. The background color of a row is given by the value of its boolean
+ * column, if any: "true" (failed) in red, "na" in orange, otherwise (passed)
+ * in green. The values of the columns whose name contains "%" are ratios
+ * printed as percentages.
+ */
+public final class HtmlTableWriter implements TableReportWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String ROW_FAILED = "<tr style=\"background-color: tomato\">";
+	private static final String ROW_NA = "<tr style=\"background-color: orange\">";
+	private static final String ROW_PASSED = "<tr style=\"background-color: mediumseagreen\">";
+	private static final String ROW_DEFAULT = "<tr>";
+
+	private final Writer fileWrtr;
+	private final int iBoolColNbr; // -1: default color
+	private final boolean[] aPctColumns;
+	private final StringBuilder sbCell = new StringBuilder(32);
+	private boolean bTableClosed = false;
+
+	public HtmlTableWriter(String sFilePath, String sTblCaption, String[] aColumnNames, int iBoolColNbr)
+			throws IOException {
+		this.fileWrtr = new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(Paths.get(sFilePath)), StandardCharsets.UTF_8),
+				BUFFER_SIZE);
+		this.iBoolColNbr = iBoolColNbr;
+		this.aPctColumns = new boolean[aColumnNames.length];
+		try {
+			fileWrtr.write("<html>\n <head>\n  <meta charset=\"UTF-8\">\n </head>\n <body>\n  <table border=\"1\">\n");
+			fileWrtr.write("   <caption>");
+			writeEscaped(sTblCaption);
+			fileWrtr.write("</caption>\n   <tr>");
+			for (int i = 0; i < aColumnNames.length; i++) {
+				aPctColumns[i] = isPctColumn(aColumnNames[i]);
+				fileWrtr.write("<th>");
+				writeEscaped(aColumnNames[i]);
+				fileWrtr.write("</th>");
+			}
+			fileWrtr.write("</tr>\n");
+		} catch (IOException ioE) {
+			fileWrtr.close();
+			throw ioE;
+		}
+	}
+
+	@Override
+	public void writeRow(Object[] aValues, String sLink) throws IOException {
+		// The values are in the order of the column names, the link, if any, on the first one
+		fileWrtr.write("   ");
+		fileWrtr.write(getRowStartTag(aValues));
+		for (int i = 0; i < aValues.length; i++) {
+			fileWrtr.write("<td>");
+			boolean bLink = (i == 0 && sLink != null);
+			if (bLink) {
+				fileWrtr.write("<a href=\"");
+				writeEscaped(sLink);
+				fileWrtr.write("\">");
+			}
+			sbCell.setLength(0);
+			writeEscaped(appendCell(sbCell, aValues[i], aPctColumns[i]));
+			if (bLink) {
+				fileWrtr.write("</a>");
+			}
+			fileWrtr.write("</td>");
+		}
+		fileWrtr.write("</tr>\n");
+	}
+
+	@Override
+	public void writeFootnote(String sFootnote) throws IOException {
+		// Paragraph below the table, e.g. the error bound of the values
+		closeTable();
+		fileWrtr.write("  <p>");
+		writeEscaped(sFootnote);
+		fileWrtr.write("</p>\n");
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			closeTable();
+			fileWrtr.write(" </body>\n</html>\n");
+		} finally {
+			fileWrtr.close();
+		}
+	}
+
+	static boolean isPctColumn(String sColumnName) {
+		return sColumnName.contains("%");
+	}
+
+	static StringBuilder appendCell(StringBuilder sb, Object oValue, boolean bPct) {
+		// Text of a cell, the ratios of the percentage columns keeping 4 digits
+		if (bPct && oValue instanceof Number) {
+			return NumberServices.appendTrimmed(sb, ((Number) oValue).doubleValue() * 100, 4).append('%');
+		}
+		return sb.append(oValue);
+	}
+
+	static String escapeText(String sText) {
+		return sText.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/*
+	 * Private methods
+	 */
+	private String getRowStartTag(Object[] aValues) {
+		if (iBoolColNbr == -1) {
+			return ROW_DEFAULT;
+		}
+		String sBool = String.valueOf(aValues[iBoolColNbr]);
+		if (sBool.equalsIgnoreCase("true")) {
+			return ROW_FAILED;
+		} else if (sBool.equalsIgnoreCase("na")) {
+			return ROW_NA;
+		}
+		return ROW_PASSED;
+	}
+
+	private void closeTable() throws IOException {
+		if (!bTableClosed) {
+			fileWrtr.write("  </table>\n");
+			bTableClosed = true;
+		}
+	}
+
+	private void writeEscaped(CharSequence csText) throws IOException {
+		// Escapes the characters that would be read as markup in a text node
+		int iFrom = 0;
+		int iLen = csText.length();
+		for (int i = 0; i < iLen; i++) {
+			String sEntity;
+			switch (csText.charAt(i)) {
+			case '&':
+				sEntity = "&amp;";
+				break;
+			case '<':
+				sEntity = "&lt;";
+				break;
+			case '>':
+				sEntity = "&gt;";
+				break;
+			case '"':
+				sEntity = "&quot;";
+				break;
+			default:
+				continue;
+			}
+			fileWrtr.append(csText, iFrom, i);
+			fileWrtr.write(sEntity);
+			iFrom = i + 1;
+		}
+		fileWrtr.append(csText, iFrom, iLen);
+	}
+
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Follows a CSV/TSV results file still being written, e.g. during a soak test.
+ * The follower remembers the byte offset of the first row not read yet and the
+ * samples already loaded with their per-label index, so that each refresh only
+ * reads the complete rows appended since the previous one. A row still being
+ * written is left for the next refresh, until the end of the test where the
+ * last row may have no line terminator.
+ */
+public final class JtlFollower {
+
+	private static final int MAP_WINDOW_SIZE = 1 << 28; // 256 MB mapped at a time
+	// JMeter property giving the refresh period of the GUIs following a file
+	private static final String GUI_PERIOD_PROPERTY = "rbourga.follow.period.secs";
+	private static final int GUI_PERIOD_DEFAULT_SECS = 10;
+	/*
+	 * Refresh periods without the file growing before the test is taken as over.
+	 * JMeter buffers its CSV writes and pacing or think times may leave the file
+	 * unchanged for longer than a period.
+	 */
+	public static final int IDLE_PERIODS_DEFAULT = 6;
+
+	/*
+	 * Called after each refresh that found new rows.
+	 */
+	public interface RefreshHandler {
+		void onRefresh(SampleStore sampleStore, int iNewRowCnt) throws IOException;
+	}
+
+	private final String sFilePath;
+	private final char cDelim;
+	private final String[] aColumns;
+	// Labels normalised if set in the JMeter properties; the top labels of a file
+	// still being written are not known
+	private final LabelMapper labelMapper = LabelMapper.crteFromRules();
+	private JtlScanner jtlScanner;
+	private SampleStore sampleStore;
+	private JtlScanner.LabelDictionary labelDictionary;
+	private boolean bHeaderRead;
+	private long lOffset; // start of the first row not read yet
+	private long lFileSize; // size of the file at the last refresh
+
+	public JtlFollower(String sFilePath, char cDelim, String... aColumns) {
+		// Columns as in FileServices.loadSamplesIntoStore()
+		this.sFilePath = sFilePath;
+		this.cDelim = cDelim;
+		this.aColumns = aColumns;
+		reset();
+	}
+
+	public static int getGuiPeriodMs() {
+		return 1000 * Math.max(1, JMeterUtils.getPropDefault(GUI_PERIOD_PROPERTY, GUI_PERIOD_DEFAULT_SECS));
+	}
+
+	public static boolean isFollowable(String sFilePath) {
+		// Only a single uncompressed CSV/TSV file can be read by offset
+		return FileServices.isFileExist(sFilePath) && !FileServices.isGzipFile(sFilePath)
+				&& !FileServices.isXmlFile(sFilePath);
+	}
+
+	public SampleStore getSampleStore() {
+		return sampleStore;
+	}
+
+	public int refresh() throws IOException {
+		// Reads the complete rows appended since the last refresh, returns their count
+		return readNewRows(false);
+	}
+
+	public int refreshToEnd() throws IOException {
+		// Same once the file is complete: an unterminated last row is read as well
+		return readNewRows(true);
+	}
+
+	public void follow(long lPeriodMs, long lIdleMs, RefreshHandler refreshHandler)
+			throws IOException, InterruptedException {
+		/*
+		 * Refreshes every lPeriodMs until the file has not grown for lIdleMs once
+		 * samples have been read, i.e. the test is over; 0 for IDLE_PERIODS_DEFAULT
+		 * periods. The handler is called after each refresh that found new rows.
+		 */
+		long lIdleLimitMs = (lIdleMs > 0) ? lIdleMs : IDLE_PERIODS_DEFAULT * lPeriodMs;
+		long lGrowthTime = System.currentTimeMillis();
+		long lGrownSize = -1;
+		while (true) {
+			int iNewRowCnt = refresh();
+			if (iNewRowCnt > 0) {
+				refreshHandler.onRefresh(sampleStore, iNewRowCnt);
+			}
+			long lNow = System.currentTimeMillis();
+			if (iNewRowCnt > 0 || lFileSize != lGrownSize) {
+				lGrownSize = lFileSize;
+				lGrowthTime = lNow;
+			} else if (!sampleStore.isEmpty() && lNow - lGrowthTime >= lIdleLimitMs) {
+				// Test over: read the last row in case it has no line terminator
+				iNewRowCnt = refreshToEnd();
+				if (iNewRowCnt > 0) {
+					refreshHandler.onRefresh(sampleStore, iNewRowCnt);
+				}
+				return;
+			}
+			Thread.sleep(lPeriodMs);
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private int readNewRows(boolean bComplete) throws IOException {
+		if (!bHeaderRead && !isFollowable(sFilePath)) {
+			throw new IOException("Only uncompressed CSV/TSV results files can be followed.");
+		}
+		try (FileChannel fileChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			long lSize = fileChnl.size();
+			lFileSize = lSize;
+			if (lSize < lOffset) {
+				reset(); // file truncated or replaced: start again
+			}
+			int iRowCntBefore = sampleStore.getRowCount();
+			SampleStore followStore = sampleStore;
+			JtlScanner.LabelDictionary followDictionary = labelDictionary;
+			int iWindowSize = MAP_WINDOW_SIZE;
+			while (lOffset < lSize) {
+				int iLen = (int) Math.min(iWindowSize, lSize - lOffset);
+				boolean bToEnd = (lOffset + iLen == lSize);
+				MappedByteBuffer mapBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lOffset, iLen);
+				// Unless the file is complete, its end is never the end of the last row: it may
+				// be incomplete
+				boolean bLast = bToEnd && bComplete;
+				int iFrom = 0;
+				if (!bHeaderRead) {
+					iFrom = jtlScanner.parseHeader(mapBuf, iLen, bLast);
+					if (iFrom == -1) {
+						if (bToEnd) {
+							break; // header still being written
+						}
+						iWindowSize = growWindow(iWindowSize);
+						continue;
+					}
+					bHeaderRead = true;
+				}
+				int iConsumed = jtlScanner.scanRows(mapBuf, iFrom, iLen, bLast,
+						scanner -> followStore.addSample(scanner.getLabelId(followDictionary), scanner.getTimeStamp(),
+								(int) scanner.getElapsed(), scanner.isSuccess()));
+				lOffset += iConsumed;
+				if (bToEnd) {
+					break;
+				}
+				if (iConsumed == 0) {
+					// A single row does not fit in the window
+					iWindowSize = growWindow(iWindowSize);
+				}
+			}
+			return sampleStore.getRowCount() - iRowCntBefore;
+		}
+	}
+
+	private void reset() {
+		jtlScanner = new JtlScanner(cDelim);
+		if (aColumns.length > 0) {
+			jtlScanner.setProjection(aColumns);
+		}
+		sampleStore = new SampleStore();
+		labelDictionary = LabelMapper.crteDictionary(labelMapper, sampleStore);
+		bHeaderRead = false;
+		lOffset = 0;
+	}
+
+	private static int growWindow(int iWindowSize) throws IOException {
+		if (iWindowSize == Integer.MAX_VALUE) {
+			throw new IOException("Row too large to be mapped.");
+		}
+		return (int) Math.min(2L * iWindowSize, Integer.MAX_VALUE);
+	}
+
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Index of the data rows of a CSV/TSV results file: the position and length
+ * of each row in the file, numbered as in the SampleStore loaded from the file
+ * with the same columns. Subsets of the rows can then be written by copying
+ * their original bytes with FileChannel transfers, without parsing and
+ * printing them again: consecutive selected rows are copied in a single
+ * transfer. Gzip and XML files cannot be indexed.
+ */
+public final class JtlRowIndex {
+
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private final String sFilePath;
+	private final long lHeaderLength;
+	private final long[] aRowOffsets;
+	private final int[] aRowLengths;
+	private final int iRowCnt;
+	// End of line to add after the last row of the file if it has none
+	private final byte[] aLastRowEnd;
+
+	private JtlRowIndex(String sFilePath, long lHeaderLength, long[] aRowOffsets, int[] aRowLengths, int iRowCnt,
+			byte[] aLastRowEnd) {
+		this.sFilePath = sFilePath;
+		this.lHeaderLength = lHeaderLength;
+		this.aRowOffsets = aRowOffsets;
+		this.aRowLengths = aRowLengths;
+		this.iRowCnt = iRowCnt;
+		this.aLastRowEnd = aLastRowEnd;
+	}
+
+	public static boolean isIndexable(String sFilePath) {
+		return FileServices.isFileExist(sFilePath) && !FileServices.isGzipFile(sFilePath)
+				&& !FileServices.isXmlFile(sFilePath);
+	}
+
+	public static JtlRowIndex crteForFile(String sFilePath, char cDelim, String... aColumns) throws IOException {
+		/*
+		 * Scans the file with the projection used to load its samples, so that the
+		 * same blank and truncated rows are skipped and the row numbers match.
+		 */
+		if (!isIndexable(sFilePath)) {
+			throw new IOException("Results file cannot be indexed: " + sFilePath + ".");
+		}
+		long[][] aOffsets = { new long[INITIAL_CAPACITY] };
+		int[][] aLengths = { new int[INITIAL_CAPACITY] };
+		int[] aRowCnt = { 0 };
+		JtlScanner jtlScanner = new JtlScanner(cDelim);
+		jtlScanner.setProjection(aColumns);
+		jtlScanner.scanFile(sFilePath, scanner -> {
+			int iRow = aRowCnt[0]++;
+			if (iRow == aOffsets[0].length) {
+				aOffsets[0] = Arrays.copyOf(aOffsets[0], iRow * 2);
+				aLengths[0] = Arrays.copyOf(aLengths[0], iRow * 2);
+			}
+			aOffsets[0][iRow] = scanner.getRowOffset();
+			aLengths[0][iRow] = scanner.getRowLength();
+		});
+		int iRowCnt = aRowCnt[0];
+		byte[] aLastRowEnd = new byte[0];
+		try (FileChannel inChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			if (iRowCnt > 0 && readByte(inChnl, aOffsets[0][iRowCnt - 1] + aLengths[0][iRowCnt - 1] - 1) != '\n') {
+				// Same end of line as the header
+				long lHeaderLength = jtlScanner.getHeaderLength();
+				boolean bCrLf = lHeaderLength >= 2 && readByte(inChnl, lHeaderLength - 2) == '\r';
+				aLastRowEnd = bCrLf ? new byte[] { '\r', '\n' } : new byte[] { '\n' };
+			}
+		}
+		return new JtlRowIndex(sFilePath, jtlScanner.getHeaderLength(), aOffsets[0], aLengths[0], iRowCnt,
+				aLastRowEnd);
+	}
+
+	public int getRowCount() {
+		return iRowCnt;
+	}
+
+	public long getRowOffset(int iRow) {
+		return aRowOffsets[iRow];
+	}
+
+	public int getRowLength(int iRow) {
+		return aRowLengths[iRow];
+	}
+
+	public void copySelectedRows(WritableByteChannel outChnl, BitSet bsRows) throws IOException {
+		// Copies the header and the rows whose numbers are set in bsRows, in file order
+		try (FileChannel inChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			transferFully(inChnl, 0, lHeaderLength, outChnl);
+			int iRow = bsRows.nextSetBit(0);
+			while (iRow != -1 && iRow < iRowCnt) {
+				// Extend the range while the next selected row follows in the file
+				long lStart = aRowOffsets[iRow];
+				long lEnd = lStart + aRowLengths[iRow];
+				int iLastRow = iRow;
+				int iNext = iRow + 1;
+				while (iNext < iRowCnt && bsRows.get(iNext) && aRowOffsets[iNext] == lEnd) {
+					lEnd += aRowLengths[iNext];
+					iLastRow = iNext++;
+				}
+				transferFully(inChnl, lStart, lEnd - lStart, outChnl);
+				if (iLastRow == iRowCnt - 1 && aLastRowEnd.length > 0) {
+					writeFully(outChnl, ByteBuffer.wrap(aLastRowEnd));
+				}
+				iRow = bsRows.nextSetBit(iNext);
+			}
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static int readByte(FileChannel inChnl, long lPos) throws IOException {
+		ByteBuffer byteBuf = ByteBuffer.allocate(1);
+		return (inChnl.read(byteBuf, lPos) == 1) ? byteBuf.get(0) : -1;
+	}
+
+	private void transferFully(FileChannel inChnl, long lPos, long lLen, WritableByteChannel outChnl)
+			throws IOException {
+		// transferTo() may copy fewer bytes than requested
+		while (lLen > 0) {
+			long lCnt = inChnl.transferTo(lPos, lLen, outChnl);
+			if (lCnt <= 0) {
+				throw new IOException("Results file truncated while copying its rows: " + sFilePath + ".");
+			}
+			lPos += lCnt;
+			lLen -= lCnt;
+		}
+	}
+
+	private static void writeFully(WritableByteChannel outChnl, ByteBuffer byteBuf) throws IOException {
+		while (byteBuf.hasRemaining()) {
+			outChnl.write(byteBuf);
+		}
+	}
+
+}
@@ -0,0 +1,582 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Byte-level scanner of CSV/TSV results files. The file is memory-mapped by
+ * windows and the delimiters and quoted fields are found directly in the
+ * bytes: only the offsets of the fields are recorded, and the values are
+ * decoded from the bytes on request without going through String.
+ * A projection can restrict the columns located in each row: the bytes of the
+ * other columns are only walked over to find the end of the row.
+ */
+public final class JtlScanner {
+
+	// Columns of the results file used by the analyses
+	public static final String COL_ELAPSED = "elapsed";
+	public static final String COL_LABEL = "label";
+	public static final String COL_SUCCESS = "success";
+	public static final String COL_TIMESTAMP = "timeStamp";
+
+	private static final byte QUOTE = '"';
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+	private static final int MAP_WINDOW_SIZE = 1 << 28; // 256 MB mapped at a time
+	private static final int STREAM_BUFFER_SIZE = 1 << 22; // 4 MB read at a time from streams
+	private static final long INVALID_NUMBER = FieldDecoder.INVALID_NUMBER;
+
+	/**
+	 * Called for each data row of the file. The row is only valid during the
+	 * call.
+	 */
+	public interface RowHandler {
+		void onRow(JtlScanner jtlScanner);
+	}
+
+	/**
+	 * Gives the ids of the labels, e.g. a SampleStore.
+	 */
+	public interface LabelDictionary {
+		int putLabel(String sLabel);
+	}
+
+	private final byte bDelim;
+	private final Charset charset = Charset.defaultCharset(); // same as FileReader
+
+	// Header of the file and columns to locate in the rows (null: all columns)
+	private HashSet<String> hsProjection = null;
+	private boolean[] aColProjected = null;
+	private String[] aColNames = new String[0];
+	private HashMap<String, Integer> hmColIdx = new HashMap<>();
+	private int iColElapsed = -1, iColLabel = -1, iColSuccess = -1, iColTimeStamp = -1;
+	private int iMinFieldCnt; // rows with fewer fields than this are skipped
+
+	// Current row: fields are located by offsets in the current buffer
+	private ByteBuffer buf;
+	private int[] aFieldStart = new int[0];
+	private int[] aFieldEnd = new int[0];
+	private boolean[] aFieldQuoted = new boolean[0];
+	private int iFieldCnt;
+	private byte[] aScratch = new byte[256];
+	// Bytes of the current row in the buffer, end of line included, and position
+	// of the buffer in the file when scanned by scanFile() or scanStream()
+	private int iRowStart, iRowEnd;
+	private long lBufOffset = 0;
+	private long lHeaderLength = 0;
+	private byte[] aHeaderBytes = new byte[0];
+
+	// Cache of the label ids by label bytes, so that a String is only built for new
+	// labels
+	private LabelDictionary cachedDictionary;
+	private byte[][] aCacheKeys = new byte[64][];
+	private int[] aCacheHashes = new int[64];
+	private int[] aCacheIds = new int[64];
+	private int iCacheCnt = 0;
+
+	// Decoder of the timestamps saved with a date format, created on first use
+	private TimeStampDecoder timeStampDecoder;
+
+	public JtlScanner(char cDelim) {
+		this.bDelim = (byte) cDelim;
+	}
+
+	public JtlScanner(JtlScanner headerScanner) {
+		// New scanner sharing the header already parsed by another one, e.g. to scan
+		// a part of the file on another thread
+		this.bDelim = headerScanner.bDelim;
+		this.hsProjection = headerScanner.hsProjection;
+		this.aColProjected = headerScanner.aColProjected;
+		this.aColNames = headerScanner.aColNames;
+		this.hmColIdx = new HashMap<>(headerScanner.hmColIdx);
+		this.iColElapsed = headerScanner.iColElapsed;
+		this.iColLabel = headerScanner.iColLabel;
+		this.iColSuccess = headerScanner.iColSuccess;
+		this.iColTimeStamp = headerScanner.iColTimeStamp;
+		this.iMinFieldCnt = headerScanner.iMinFieldCnt;
+	}
+
+	public void setProjection(String... aProjectedCols) {
+		/*
+		 * Restricts the columns located in the rows to the given ones, to be called
+		 * before the header is parsed. The label is always located. Columns of interest
+		 * that are not projected read as 0 or false.
+		 */
+		hsProjection = new HashSet<>(Arrays.asList(aProjectedCols));
+		hsProjection.add(COL_LABEL);
+	}
+
+	/*
+	 * Scanning methods
+	 */
+	public void scanFile(String sFilePath, RowHandler rowHandler) throws IOException {
+		if (FileServices.isGzipFile(sFilePath)) {
+			// Compressed file: scan the bytes as they are decompressed
+			try (InputStream inStream = FileServices.openResultsInputStream(sFilePath)) {
+				scanStream(inStream, rowHandler);
+			}
+			return;
+		}
+		try (FileChannel fileChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			long lSize = fileChnl.size();
+			if (lSize == 0) {
+				return;
+			}
+			long lPos = 0;
+			int iWindowSize = MAP_WINDOW_SIZE;
+			boolean bHeaderRead = false;
+			while (lPos < lSize) {
+				int iLen = (int) Math.min(iWindowSize, lSize - lPos);
+				boolean bLast = (lPos + iLen == lSize);
+				MappedByteBuffer mapBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, iLen);
+				lBufOffset = lPos;
+				int iFrom = 0;
+				if (!bHeaderRead) {
+					iFrom = parseHeader(mapBuf, iLen, bLast);
+					if (iFrom == -1) {
+						// Header larger than the window
+						iWindowSize = growWindow(iWindowSize);
+						continue;
+					}
+					lHeaderLength = iFrom;
+					bHeaderRead = true;
+				}
+				int iConsumed = scanRows(mapBuf, iFrom, iLen, bLast, rowHandler);
+				if (iConsumed == 0 && !bLast) {
+					// A single row does not fit in the window
+					iWindowSize = growWindow(iWindowSize);
+					continue;
+				}
+				lPos += iConsumed;
+			}
+		}
+	}
+
+	public void scanStream(InputStream inStream, RowHandler rowHandler) throws IOException {
+		/*
+		 * Same as scanFile() on a stream: the bytes are read into a heap buffer and the
+		 * incomplete row at its end is moved to its start before reading more bytes.
+		 */
+		byte[] aBuf = new byte[STREAM_BUFFER_SIZE];
+		int iLen = 0;
+		boolean bEof = false;
+		boolean bHeaderRead = false;
+		lBufOffset = 0;
+		while (true) {
+			while (!bEof && iLen < aBuf.length) {
+				int iRead = inStream.read(aBuf, iLen, aBuf.length - iLen);
+				if (iRead == -1) {
+					bEof = true;
+				} else {
+					iLen += iRead;
+				}
+			}
+			if (iLen == 0) {
+				return;
+			}
+			ByteBuffer heapBuf = ByteBuffer.wrap(aBuf, 0, iLen);
+			int iFrom = 0;
+			if (!bHeaderRead) {
+				iFrom = parseHeader(heapBuf, iLen, bEof);
+				if (iFrom == -1) {
+					// Header larger than the buffer
+					aBuf = Arrays.copyOf(aBuf, growWindow(aBuf.length));
+					continue;
+				}
+				lHeaderLength = iFrom;
+				bHeaderRead = true;
+			}
+			int iConsumed = scanRows(heapBuf, iFrom, iLen, bEof, rowHandler);
+			if (bEof) {
+				return;
+			}
+			if (iConsumed == 0) {
+				// A single row does not fit in the buffer
+				aBuf = Arrays.copyOf(aBuf, growWindow(aBuf.length));
+				continue;
+			}
+			System.arraycopy(aBuf, iConsumed, aBuf, 0, iLen - iConsumed);
+			iLen -= iConsumed;
+			lBufOffset += iConsumed;
+		}
+	}
+
+	public int parseHeader(ByteBuffer byteBuf, int iLimit, boolean bLast) throws IOException {
+		/*
+		 * Reads the header line at the start of the buffer and resolves the columns of
+		 * interest. Returns the position of the first data row or -1 if the header is
+		 * incomplete.
+		 */
+		buf = byteBuf;
+		int iPos = 0;
+		// Skip the UTF-8 byte order mark if any
+		if (iLimit >= 3 && (buf.get(0) & 0xFF) == 0xEF && (buf.get(1) & 0xFF) == 0xBB
+				&& (buf.get(2) & 0xFF) == 0xBF) {
+			iPos = 3;
+		}
+		// Allow as many fields as the line may contain
+		int iMaxFields = 1;
+		for (int i = iPos; i < iLimit && buf.get(i) != LF; i++) {
+			if (buf.get(i) == bDelim) {
+				iMaxFields++;
+			}
+		}
+		ensureFieldCapacity(iMaxFields);
+		aColProjected = null; // all the header fields are needed
+		int iNext = scanRow(iPos, iLimit, bLast);
+		if (iNext == -1) {
+			return -1;
+		}
+
+		aHeaderBytes = new byte[iNext];
+		for (int i = 0; i < iNext; i++) {
+			aHeaderBytes[i] = buf.get(i);
+		}
+		aColNames = new String[iFieldCnt];
+		hmColIdx.clear();
+		for (int i = 0; i < iFieldCnt; i++) {
+			aColNames[i] = getString(i);
+			hmColIdx.put(aColNames[i], i);
+		}
+		if (hsProjection != null) {
+			aColProjected = new boolean[aColNames.length];
+			for (int i = 0; i < aColNames.length; i++) {
+				aColProjected[i] = hsProjection.contains(aColNames[i]);
+			}
+		}
+		iColElapsed = resolveColumn(COL_ELAPSED);
+		iColLabel = resolveColumn(COL_LABEL);
+		iColSuccess = resolveColumn(COL_SUCCESS);
+		iColTimeStamp = resolveColumn(COL_TIMESTAMP);
+		iMinFieldCnt = Math.max(Math.max(iColElapsed, iColLabel), Math.max(iColSuccess, iColTimeStamp)) + 1;
+		return iNext;
+	}
+
+	public int scanRows(ByteBuffer byteBuf, int iFrom, int iLimit, boolean bLast, RowHandler rowHandler) {
+		/*
+		 * Calls the handler for each complete data row in [iFrom, iLimit). Returns the
+		 * position of the first incomplete row, i.e. the number of bytes consumed when
+		 * iFrom is 0.
+		 */
+		buf = byteBuf;
+		ensureFieldCapacity(aColNames.length);
+		int iPos = iFrom;
+		while (iPos < iLimit) {
+			int iNext = scanRow(iPos, iLimit, bLast);
+			if (iNext == -1) {
+				break; // Incomplete row: to be read with the next window
+			}
+			// Skip blank and truncated rows
+			if (iFieldCnt >= iMinFieldCnt) {
+				iRowStart = iPos;
+				iRowEnd = iNext;
+				rowHandler.onRow(this);
+			}
+			iPos = iNext;
+		}
+		return iPos;
+	}
+
+	/*
+	 * Header access methods
+	 */
+	public String[] getColumnNames() {
+		return aColNames;
+	}
+
+	public int getColumnIndex(String sColName) {
+		// Returns -1 if the column is not in the header
+		Integer iIdx = hmColIdx.get(sColName);
+		return (iIdx == null) ? -1 : iIdx;
+	}
+
+	public long getHeaderLength() {
+		// Bytes of the header line in the file, byte order mark and end of line included
+		return lHeaderLength;
+	}
+
+	public byte[] getHeaderBytes() {
+		// Header line as in the file, byte order mark and end of line included
+		return aHeaderBytes.clone();
+	}
+
+	/*
+	 * Row access methods
+	 */
+	public long getRowOffset() {
+		// Position of the row in the file, when scanned by scanFile() or scanStream()
+		return lBufOffset + iRowStart;
+	}
+
+	public int getRowLength() {
+		// Bytes of the row, end of line included if any
+		return iRowEnd - iRowStart;
+	}
+
+	public ByteBuffer getRowBytes() {
+		// Bytes of the row as in the file, end of line included if any
+		ByteBuffer rowBuf = buf.asReadOnlyBuffer();
+		rowBuf.limit(iRowEnd);
+		rowBuf.position(iRowStart);
+		return rowBuf;
+	}
+
+	public long getElapsed() {
+		if (iColElapsed == -1) {
+			return 0; // not projected
+		}
+		long lElapsed = parseLong(iColElapsed);
+		if (lElapsed == INVALID_NUMBER) {
+			throw new NumberFormatException("Invalid elapsed value: " + getString(iColElapsed));
+		}
+		return lElapsed;
+	}
+
+	public long getTimeStamp() {
+		// Epoch millis, whether saved as such or with the date format of the JMeter
+		// save service. Invalid timestamps are kept as 0.
+		if (iColTimeStamp == -1) {
+			return 0; // not projected
+		}
+		long lTimeStamp = parseLong(iColTimeStamp);
+		if (lTimeStamp == INVALID_NUMBER) {
+			if (timeStampDecoder == null) {
+				timeStampDecoder = TimeStampDecoder.crteFromSaveService();
+			}
+			lTimeStamp = timeStampDecoder.decode(buf, aFieldStart[iColTimeStamp], aFieldEnd[iColTimeStamp]);
+		}
+		return (lTimeStamp == INVALID_NUMBER) ? 0 : lTimeStamp;
+	}
+
+	public boolean isSuccess() {
+		if (iColSuccess == -1) {
+			return false; // not projected
+		}
+		return FieldDecoder.isTrue(buf, aFieldStart[iColSuccess], aFieldEnd[iColSuccess]);
+	}
+
+	public int getLabelId(LabelDictionary labelDictionary) {
+		/*
+		 * Returns the id of the label of the row in the dictionary. The label bytes are
+		 * looked up in a cache, so that the label is only decoded the first time it is
+		 * seen.
+		 */
+		if (labelDictionary != cachedDictionary) {
+			clearLabelCache();
+			cachedDictionary = labelDictionary;
+		}
+		int iStart = aFieldStart[iColLabel];
+		int iEnd = aFieldEnd[iColLabel];
+		int iHash = hashBytes(iStart, iEnd);
+		int iMask = aCacheKeys.length - 1;
+		int iSlot = iHash & iMask;
+		while (aCacheKeys[iSlot] != null) {
+			if (aCacheHashes[iSlot] == iHash && equalsBytes(aCacheKeys[iSlot], iStart, iEnd)) {
+				return aCacheIds[iSlot];
+			}
+			iSlot = (iSlot + 1) & iMask;
+		}
+
+		// New label bytes
+		int iLblId = labelDictionary.putLabel(getString(iColLabel));
+		byte[] aKey = new byte[iEnd - iStart];
+		for (int i = 0; i < aKey.length; i++) {
+			aKey[i] = buf.get(iStart + i);
+		}
+		aCacheKeys[iSlot] = aKey;
+		aCacheHashes[iSlot] = iHash;
+		aCacheIds[iSlot] = iLblId;
+		iCacheCnt++;
+		if (iCacheCnt * 2 > aCacheKeys.length) {
+			growLabelCache();
+		}
+		return iLblId;
+	}
+
+	public String getString(int iCol) {
+		// Decodes the field, unescaping the doubled quotes of quoted fields.
+		// Only valid for projected columns.
+		int iStart = aFieldStart[iCol];
+		int iEnd = aFieldEnd[iCol];
+		int iLen = iEnd - iStart;
+		if (iLen > aScratch.length) {
+			aScratch = new byte[Math.max(iLen, aScratch.length * 2)];
+		}
+		int iCnt = 0;
+		boolean bQuoted = aFieldQuoted[iCol];
+		for (int i = iStart; i < iEnd; i++) {
+			byte b = buf.get(i);
+			aScratch[iCnt++] = b;
+			if (bQuoted && b == QUOTE && i + 1 < iEnd && buf.get(i + 1) == QUOTE) {
+				i++; // skip the escaping quote
+			}
+		}
+		return new String(aScratch, 0, iCnt, charset);
+	}
+
+	/*
+	 * Private methods
+	 */
+	private int scanRow(int iPos, int iLimit, boolean bLast) {
+		/*
+		 * Locates the fields of the row starting at iPos. Returns the position after
+		 * the end of line, or -1 if the row is not complete in the buffer.
+		 */
+		int iCol = 0;
+		while (true) {
+			int iStart, iEnd;
+			boolean bQuoted = false;
+			if (iPos < iLimit && buf.get(iPos) == QUOTE) {
+				// Quoted field: may contain delimiters, line breaks and doubled quotes
+				bQuoted = true;
+				iStart = ++iPos;
+				while (true) {
+					if (iPos >= iLimit) {
+						if (!bLast) {
+							return -1;
+						}
+						break; // unterminated quote at the end of the file
+					}
+					if (buf.get(iPos) == QUOTE) {
+						if (iPos + 1 >= iLimit && !bLast) {
+							return -1; // cannot tell yet if the quote is doubled
+						}
+						if (iPos + 1 < iLimit && buf.get(iPos + 1) == QUOTE) {
+							iPos += 2;
+							continue;
+						}
+						break;
+					}
+					iPos++;
+				}
+				iEnd = iPos;
+				// Skip the closing quote and anything up to the next delimiter
+				while (iPos < iLimit && buf.get(iPos) != bDelim && buf.get(iPos) != LF) {
+					iPos++;
+				}
+			} else {
+				iStart = iPos;
+				while (iPos < iLimit && buf.get(iPos) != bDelim && buf.get(iPos) != LF) {
+					iPos++;
+				}
+				iEnd = iPos;
+			}
+
+			if (iPos >= iLimit && !bLast) {
+				return -1;
+			}
+			boolean bEndOfRow = (iPos >= iLimit) || (buf.get(iPos) == LF);
+			if (bEndOfRow && !bQuoted && iEnd > iStart && buf.get(iEnd - 1) == CR) {
+				iEnd--; // Windows line ending
+			}
+			if (iCol < aFieldStart.length && (aColProjected == null || aColProjected[iCol])) {
+				aFieldStart[iCol] = iStart;
+				aFieldEnd[iCol] = iEnd;
+				aFieldQuoted[iCol] = bQuoted;
+			}
+			iCol++;
+			if (bEndOfRow) {
+				iFieldCnt = Math.min(iCol, aFieldStart.length);
+				// A single empty field is a blank line
+				if (iCol == 1 && iStart == iEnd) {
+					iFieldCnt = 0;
+				}
+				return Math.min(iPos + 1, iLimit);
+			}
+			iPos++; // skip the delimiter
+		}
+	}
+
+	private int resolveColumn(String sColName) throws IOException {
+		// Index of a column of interest, -1 if not projected
+		if (hsProjection != null && !hsProjection.contains(sColName)) {
+			return -1;
+		}
+		int iIdx = getColumnIndex(sColName);
+		if (iIdx == -1) {
+			throw new IOException("Results file header must contain the column " + sColName + ".");
+		}
+		return iIdx;
+	}
+
+	private long parseLong(int iCol) {
+		// Parses the digits of the field, returns INVALID_NUMBER if not a number
+		return FieldDecoder.parseLong(buf, aFieldStart[iCol], aFieldEnd[iCol]);
+	}
+
+	private int hashBytes(int iStart, int iEnd) {
+		// FNV-1a hash
+		int iHash = 0x811C9DC5;
+		for (int i = iStart; i < iEnd; i++) {
+			iHash ^= buf.get(i);
+			iHash *= 0x01000193;
+		}
+		return iHash;
+	}
+
+	private boolean equalsBytes(byte[] aKey, int iStart, int iEnd) {
+		if (aKey.length != iEnd - iStart) {
+			return false;
+		}
+		for (int i = 0; i < aKey.length; i++) {
+			if (aKey[i] != buf.get(iStart + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void clearLabelCache() {
+		Arrays.fill(aCacheKeys, null);
+		iCacheCnt = 0;
+	}
+
+	private void growLabelCache() {
+		byte[][] aOldKeys = aCacheKeys;
+		int[] aOldHashes = aCacheHashes;
+		int[] aOldIds = aCacheIds;
+		int iCapacity = aOldKeys.length * 2;
+		aCacheKeys = new byte[iCapacity][];
+		aCacheHashes = new int[iCapacity];
+		aCacheIds = new int[iCapacity];
+		for (int i = 0; i < aOldKeys.length; i++) {
+			if (aOldKeys[i] != null) {
+				int iSlot = aOldHashes[i] & (iCapacity - 1);
+				while (aCacheKeys[iSlot] != null) {
+					iSlot = (iSlot + 1) & (iCapacity - 1);
+				}
+				aCacheKeys[iSlot] = aOldKeys[i];
+				aCacheHashes[iSlot] = aOldHashes[i];
+				aCacheIds[iSlot] = aOldIds[i];
+			}
+		}
+	}
+
+	private void ensureFieldCapacity(int iCnt) {
+		if (aFieldStart.length < iCnt) {
+			aFieldStart = new int[iCnt];
+			aFieldEnd = new int[iCnt];
+			aFieldQuoted = new boolean[iCnt];
+		}
+	}
+
+	private static int growWindow(int iWindowSize) throws IOException {
+		if (iWindowSize == Integer.MAX_VALUE) {
+			throw new IOException("Row too large to be mapped.");
+		}
+		return (int) Math.min(2L * iWindowSize, Integer.MAX_VALUE);
+	}
+
+}
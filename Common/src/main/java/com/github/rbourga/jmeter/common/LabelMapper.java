@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Maps the labels of the samples as they are loaded, for tests that put
+ * dynamic ids in their sampler labels. Normalisation rules, read from a CSV
+ * file of regular expressions and the label group of the labels they match,
+ * merge the labels of a same transaction. In top labels mode, only the labels
+ * with the most samples keep their own statistics, the samples of the others
+ * being grouped under OTHER_LABEL. The top labels are found by a Space-Saving
+ * counter on a first pass over the labels of the files. Both are set in the
+ * JMeter properties, by the GUIs and the command line tools or in
+ * user.properties.
+ */
+public final class LabelMapper {
+
+	// JMeter property giving the CSV file of the normalisation rules
+	private static final String RULES_PROPERTY = "rbourga.label.rules";
+	// JMeter property giving the number of labels to keep, 0 to keep all of them
+	private static final String TOP_LABELS_PROPERTY = "rbourga.label.top";
+	// Space-Saving counters per label kept: labels with more than 1/10 of the
+	// samples of the K-th label are monitored
+	private static final int COUNTERS_PER_LABEL = 10;
+	public static final String OTHER_LABEL = "OTHER LABELS";
+	// Columns of the rules file
+	private static final String COL_PATTERN = "sample_name_or_regex";
+	private static final String COL_GROUP = "label_group";
+
+	private final ArrayList<Pattern> alPatterns = new ArrayList<>();
+	private final ArrayList<String> alGroups = new ArrayList<>();
+	private HashSet<String> hsTopLabels = null; // null: all labels kept
+
+	private LabelMapper() {
+	}
+
+	/*
+	 * Options of the loads
+	 */
+	public static String getRulesFile() {
+		return JMeterUtils.getPropDefault(RULES_PROPERTY, "");
+	}
+
+	public static void setRulesFile(String sRulesFilePath) {
+		// Empty for no normalisation
+		JMeterUtils.setProperty(RULES_PROPERTY, sRulesFilePath);
+	}
+
+	public static int getTopLabelCnt() {
+		return JMeterUtils.getPropDefault(TOP_LABELS_PROPERTY, 0);
+	}
+
+	public static void setTopLabelCnt(int iTopCnt) {
+		// 0 to keep all the labels
+		JMeterUtils.setProperty(TOP_LABELS_PROPERTY, Integer.toString(iTopCnt));
+	}
+
+	/*
+	 * Validation methods
+	 */
+	public static boolean isRulesFileValid(String sRulesFilePath) {
+		// Header with both columns and valid regular expressions
+		try {
+			new LabelMapper().loadRules(sRulesFilePath);
+			return true;
+		} catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public static boolean isTopLabelCntOutOfRange(int iTopCnt) {
+		return iTopCnt < 0;
+	}
+
+	public static LabelMapper crteFromRules() {
+		// Normalisation only, e.g. for a results file still being written. Returns
+		// null if there are no rules.
+		String sRulesFilePath = getRulesFile();
+		if (FileServices.isFilenameEmpty(sRulesFilePath)) {
+			return null;
+		}
+		LabelMapper labelMapper = new LabelMapper();
+		try {
+			labelMapper.loadRules(sRulesFilePath);
+		} catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+			e.printStackTrace(); // labels loaded as they are
+			return null;
+		}
+		return labelMapper;
+	}
+
+	public static LabelMapper crteForFiles(List<String> listFiles, char cDelim) {
+		// Normalisation and top labels of the files. Returns null if neither is set.
+		int iTopCnt = getTopLabelCnt();
+		LabelMapper labelMapper = crteFromRules();
+		if (iTopCnt <= 0) {
+			return labelMapper;
+		}
+		if (labelMapper == null) {
+			labelMapper = new LabelMapper();
+		}
+		try {
+			labelMapper.findTopLabels(listFiles, cDelim, iTopCnt);
+		} catch (IOException e) {
+			e.printStackTrace(); // all labels kept
+		}
+		return labelMapper;
+	}
+
+	public static JtlScanner.LabelDictionary crteDictionary(LabelMapper labelMapper,
+			JtlScanner.LabelDictionary labelDictionary) {
+		// Dictionary adding the mapped labels to the given one, which is returned
+		// unchanged if there is no mapper. Not to be shared between threads.
+		return (labelMapper == null) ? labelDictionary : labelMapper.new MappedDictionary(labelDictionary);
+	}
+
+	/*
+	 * Private methods
+	 */
+	private void loadRules(String sFilePath) throws IOException {
+		// Header: sample_name_or_regex,label_group. The group may refer to the
+		// capturing groups of the regex, e.g. $1. First match in CSV wins. A regex
+		// containing commas must be quoted.
+		CSVFormat csvFormat = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true)
+				.setIgnoreHeaderCase(true).setIgnoreSurroundingSpaces(true).setIgnoreEmptyLines(true).build();
+		try (CSVParser csvParser = CSVParser.parse(new File(sFilePath), StandardCharsets.UTF_8, csvFormat)) {
+			for (String sCol : new String[] { COL_PATTERN, COL_GROUP }) {
+				if (!csvParser.getHeaderMap().containsKey(sCol)) {
+					throw new IOException("Column " + sCol + " missing in the label rules file " + sFilePath);
+				}
+			}
+			for (CSVRecord csvRecord : csvParser) {
+				alPatterns.add(Pattern.compile(csvRecord.get(COL_PATTERN)));
+				alGroups.add(csvRecord.get(COL_GROUP));
+			}
+		}
+	}
+
+	private void findTopLabels(List<String> listFiles, char cDelim, int iTopCnt) throws IOException {
+		// First pass on the normalised labels only, in bounded memory
+		SpaceSavingCounter spaceSavingCounter = new SpaceSavingCounter(iTopCnt * COUNTERS_PER_LABEL);
+		LabelList labelList = new LabelList();
+		MappedDictionary mappedDictionary = new MappedDictionary(labelList);
+		for (String sFile : listFiles) {
+			if (FileServices.isXmlFile(sFile)) {
+				XmlJtlReader.scanFile(sFile, (sLabel, lTimeStamp, lElapsed, bSuccess) -> spaceSavingCounter
+						.add(mappedDictionary.putLabel(sLabel)));
+			} else {
+				JtlScanner jtlScanner = new JtlScanner(cDelim);
+				jtlScanner.setProjection(new String[0]);
+				jtlScanner.scanFile(sFile, scanner -> spaceSavingCounter.add(scanner.getLabelId(mappedDictionary)));
+			}
+		}
+		hsTopLabels = new HashSet<>();
+		for (int iLblId : spaceSavingCounter.getTopKeys(iTopCnt)) {
+			hsTopLabels.add(labelList.alLabels.get(iLblId));
+		}
+	}
+
+	/*
+	 * Dictionary mapping the labels before adding them to another one. The
+	 * matchers of the rules are reused and the ids of the labels already seen
+	 * are cached, so that a label is mapped only once.
+	 */
+	private final class MappedDictionary implements JtlScanner.LabelDictionary {
+		private final JtlScanner.LabelDictionary labelDictionary;
+		private final Matcher[] aMatchers = new Matcher[alPatterns.size()];
+		private final HashMap<String, Integer> hmLabelIds = new HashMap<>();
+
+		private MappedDictionary(JtlScanner.LabelDictionary labelDictionary) {
+			this.labelDictionary = labelDictionary;
+			for (int i = 0; i < aMatchers.length; i++) {
+				aMatchers[i] = alPatterns.get(i).matcher("");
+			}
+		}
+
+		@Override
+		public int putLabel(String sLabel) {
+			Integer iLblId = hmLabelIds.get(sLabel);
+			if (iLblId == null) {
+				String sMappedLabel = normalize(sLabel);
+				if (hsTopLabels != null && !hsTopLabels.contains(sMappedLabel)) {
+					sMappedLabel = OTHER_LABEL;
+				}
+				iLblId = labelDictionary.putLabel(sMappedLabel);
+				hmLabelIds.put(sLabel, iLblId);
+			}
+			return iLblId;
+		}
+
+		private String normalize(String sLabel) {
+			for (int i = 0; i < aMatchers.length; i++) {
+				Matcher matcher = aMatchers[i].reset(sLabel);
+				if (matcher.matches()) {
+					StringBuffer sbGroup = new StringBuffer();
+					matcher.appendReplacement(sbGroup, alGroups.get(i));
+					return sbGroup.toString();
+				}
+			}
+			return sLabel;
+		}
+	}
+
+	/*
+	 * Dictionary of the labels only.
+	 */
+	private static final class LabelList implements JtlScanner.LabelDictionary {
+		private final HashMap<String, Integer> hmLabelIds = new HashMap<>();
+		private final ArrayList<String> alLabels = new ArrayList<>();
+
+		@Override
+		public int putLabel(String sLabel) {
+			Integer iLblId = hmLabelIds.get(sLabel);
+			if (iLblId == null) {
+				iLblId = alLabels.size();
+				hmLabelIds.put(sLabel, iLblId);
+				alLabels.add(sLabel);
+			}
+			return iLblId;
+		}
+	}
+
+}
@@ -1,10 +1,6 @@
 package com.github.rbourga.jmeter.common;
 
 import java.util.ArrayList;
-import java.util.List;
-
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.math4.legacy.stat.*;
 
 public class MathMoments {
 
@@ -60,41 +56,6 @@ public class MathMoments {
 		return dVariance;
 	}
 
-	public static MathMoments crteMomentsFromRecordsList(List<CSVRecord> listRcd) {
-		/*
-		 * Previously, we were using streams for few statistics. Now we use Apache
-		 * Commons Maths that provides more statistics methods.
-		 */
-		/*
-		 * Old code:
-		 * int iRcdNbr = listRcd.size();
-		 * // Filter the failed samples and count them
-		 * Stream<CSVRecord> oFailedSamples = listRcd.stream().filter(rcd -> rcd.get("success").equals("false"));
-		 * double dErrPct = (double) oFailedSamples.count() / (double) iRcdNbr;
-		 * // Perform calculations after casting the lists into streams to take advantage of streams
-		 * double dVariance = 0;
-		 * double dMean = listRcd.stream().mapToLong(rcd -> Long.parseLong(rcd.get("elapsed"))).average().orElse(0);
-		 * double dMin = listRcd.stream().mapToLong(rcd -> Long.parseLong(rcd.get("elapsed"))).min().orElse(0); 
-		 * double dMax = listRcd.stream().mapToLong(rcd -> Long.parseLong(rcd.get("elapsed"))).max().orElse(0);
-		 * if (iRcdNbr > 1) {
-		 *  // variance = sum((x_i - mean)^2) / (n - 1)
-		 *  dVariance = listRcd.stream().mapToDouble(rcd -> Long.parseLong(rcd.get("elapsed"))).map(t -> Math.pow(t - dMean, 2)).sum() / (iRcdNbr - 1);
-		 *  }
-		 */
-
-		// Extract the elapsed values into a list and then convert this list to a double
-		// array for StatsUtils
-		List<Double> listElapsed = new ArrayList<>();
-		for (CSVRecord rcd : listRcd) {
-			double dElapsed = Double.parseDouble(rcd.get("elapsed"));
-			listElapsed.add(dElapsed);
-		}
-		double[] aElapsed = listElapsed.stream().mapToDouble(Double::doubleValue).toArray();
-
-		// Get our statistics
-		return calculateStats(aElapsed);
-	}
-
 	public static MathMoments crteMomentsFromMeansList(ArrayList<Double> alMeans) {
 		/*
 		 * Switch to StatsUtils class to get the Moments
@@ -116,16 +77,173 @@ public class MathMoments {
 		return calculateStats(aElapsed);
 	}
 
+	public static MathMoments crteMomentsFromHistogram(ElapsedHistogram elapsedHistogram) {
+		// One pass over the distinct values, then exact quartiles from the cumulative counts
+		Accumulator accumulator = new Accumulator();
+		elapsedHistogram.forEachValue(accumulator::add);
+		double dQ1 = elapsedHistogram.getPercentile(25);
+		double dQ3 = elapsedHistogram.getPercentile(75);
+
+		return new MathMoments(accumulator.getMax(), accumulator.getMean(), accumulator.getMin(), dQ1, dQ3,
+				accumulator.getVariance());
+	}
+
+	public static MathMoments crteMomentsFromSketch(QuantileSketch quantileSketch) {
+		// Exact moments, quartiles within the relative accuracy of the sketch
+		return new MathMoments(quantileSketch.getMax(), quantileSketch.getMean(), quantileSketch.getMin(),
+				quantileSketch.getPercentile(25), quantileSketch.getPercentile(75), quantileSketch.getVariance());
+	}
+
 	private static MathMoments calculateStats(double[] dValues) {
-		// We use StatUtils to get the different stats of interest.
-		double dMax = StatUtils.max(dValues);
-		double dMean = StatUtils.mean(dValues);
-		double dMin = StatUtils.min(dValues);
-		double dQ1 = StatUtils.percentile(dValues, 25);
-		double dQ3 = StatUtils.percentile(dValues, 75);
-		double dVariance = StatUtils.variance(dValues);
-
-		return new MathMoments(dMax, dMean, dMin, dQ1, dQ3, dVariance);
+		// Integer values such as elapsed times in a small enough range are counted instead of being sorted
+		ElapsedHistogram elapsedHistogram = ElapsedHistogram.crteFromValues(dValues);
+		if (elapsedHistogram != null) {
+			return crteMomentsFromHistogram(elapsedHistogram);
+		}
+
+		// Max, mean, min and variance in a single pass, then the quartiles sorting once
+		Accumulator accumulator = new Accumulator();
+		for (double dValue : dValues) {
+			accumulator.add(dValue);
+		}
+		SortedSamples sortedSamples = SortedSamples.crteFromValues(dValues);
+		double dQ1 = sortedSamples.getPercentile(25);
+		double dQ3 = sortedSamples.getPercentile(75);
+
+		return new MathMoments(accumulator.getMax(), accumulator.getMean(), accumulator.getMin(), dQ1, dQ3,
+				accumulator.getVariance());
+	}
+
+	/**
+	 * Streaming accumulator of count, mean, sum of squared deviations (M2), min and
+	 * max, updated in one pass with Welford's method. Two accumulators, e.g. the
+	 * partial results of two threads or two nodes, merge exactly with Chan's
+	 * formula without going back to the samples. The results are the same as
+	 * StatUtils: NaN when empty, and a bias-corrected variance. Integer values such
+	 * as elapsed times are also summed exactly, their mean being the sum divided by
+	 * the count: the running mean may land just below an integer mean, which would
+	 * then be truncated to the integer below when printed.
+	 */
+	public static final class Accumulator {
+		private long lCount = 0;
+		private double dMean = 0;
+		private double dM2 = 0;
+		private double dMin = Double.NaN;
+		private double dMax = Double.NaN;
+		private long lSum = 0;
+		private boolean bExactSum = true; // False once a value is not an integer or the sum overflows
+
+		public void add(double dValue) {
+			addToSum(dValue, 1);
+			lCount++;
+			double dDelta = dValue - dMean;
+			dMean += dDelta / lCount;
+			dM2 += dDelta * (dValue - dMean);
+			if (lCount == 1) {
+				dMin = dValue;
+				dMax = dValue;
+			} else {
+				dMin = Math.min(dMin, dValue);
+				dMax = Math.max(dMax, dValue);
+			}
+		}
+
+		public void add(double dValue, long lValueCnt) {
+			// Same as lValueCnt calls to add(dValue), merged as a group of M2 = 0
+			if (lValueCnt == 0) {
+				return;
+			}
+			addToSum(dValue, lValueCnt);
+			if (lCount == 0) {
+				lCount = lValueCnt;
+				dMean = dValue;
+				dMin = dValue;
+				dMax = dValue;
+				return;
+			}
+			long lTotal = lCount + lValueCnt;
+			double dDelta = dValue - dMean;
+			dMean += dDelta * lValueCnt / lTotal;
+			dM2 += dDelta * dDelta * ((double) lCount * lValueCnt / lTotal);
+			dMin = Math.min(dMin, dValue);
+			dMax = Math.max(dMax, dValue);
+			lCount = lTotal;
+		}
+
+		public void merge(Accumulator other) {
+			if (other.lCount == 0) {
+				return;
+			}
+			// The exact sums just add
+			if (bExactSum && other.bExactSum) {
+				try {
+					lSum = Math.addExact(lSum, other.lSum);
+				} catch (ArithmeticException e) {
+					bExactSum = false;
+				}
+			} else {
+				bExactSum = false;
+			}
+			if (lCount == 0) {
+				lCount = other.lCount;
+				dMean = other.dMean;
+				dM2 = other.dM2;
+				dMin = other.dMin;
+				dMax = other.dMax;
+				return;
+			}
+			long lTotal = lCount + other.lCount;
+			double dDelta = other.dMean - dMean;
+			dMean += dDelta * other.lCount / lTotal;
+			dM2 += other.dM2 + dDelta * dDelta * ((double) lCount * other.lCount / lTotal);
+			dMin = Math.min(dMin, other.dMin);
+			dMax = Math.max(dMax, other.dMax);
+			lCount = lTotal;
+		}
+
+		public long getCount() {
+			return lCount;
+		}
+
+		public double getMax() {
+			return dMax;
+		}
+
+		public double getMean() {
+			if (lCount == 0) {
+				return Double.NaN;
+			}
+			return bExactSum ? (double) lSum / lCount : dMean;
+		}
+
+		public double getMin() {
+			return dMin;
+		}
+
+		public double getVariance() {
+			if (lCount == 0) {
+				return Double.NaN;
+			}
+			return (lCount == 1) ? 0 : dM2 / (lCount - 1);
+		}
+
+		/*
+		 * Private methods
+		 */
+		private void addToSum(double dValue, long lValueCnt) {
+			if (!bExactSum) {
+				return;
+			}
+			if (dValue != Math.rint(dValue) || Math.abs(dValue) > Integer.MAX_VALUE) {
+				bExactSum = false;
+				return;
+			}
+			try {
+				lSum = Math.addExact(lSum, Math.multiplyExact((long) dValue, lValueCnt));
+			} catch (ArithmeticException e) {
+				bExactSum = false;
+			}
+		}
 	}
 
 }
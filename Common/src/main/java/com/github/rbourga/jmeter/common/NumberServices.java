@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounding, comparison and formatting of the decimal values of the results
+ * tables, on primitives and without shared state, so that the labels can be
+ * processed by several threads. The results are the same as with BigDecimal
+ * and DecimalFormat: the value rounded is the exact value of the double, not
+ * its shortest representation. The exact product of the value by the power of
+ * ten of the scale is kept as the sum of two doubles (Dekker's product), whose
+ * low part decides the ties and the comparisons.
+ */
+public final class NumberServices {
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15 };
+	public static final int MAX_SCALE = POWERS_OF_TEN.length - 1;
+	// 2^27 + 1: splits a double in two halves of 26 bits for the exact product
+	private static final double SPLIT = 134217729.0;
+	// Above 2^52 units of the scale, the rounding is left to BigDecimal
+	private static final double MAX_UNITS = 4503599627370496.0;
+
+	private NumberServices() {
+	}
+
+	public static double roundHalfUp(double dValue, int iScale) {
+		// Same as new BigDecimal(dValue).setScale(iScale, RoundingMode.HALF_UP).doubleValue()
+		return round(dValue, iScale, RoundingMode.HALF_UP);
+	}
+
+	public static double roundHalfEven(double dValue, int iScale) {
+		// Same as parsing the value formatted by a DecimalFormat with iScale decimals
+		return round(dValue, iScale, RoundingMode.HALF_EVEN);
+	}
+
+	public static int compareDecimal(double dRounded, int iScale, double dThreshold) {
+		/*
+		 * Compares a value rounded to iScale decimals with the exact value of the
+		 * threshold: same as new BigDecimal(dRounded).setScale(iScale,
+		 * ...).compareTo(new BigDecimal(dThreshold)), i.e. -1, 0 or 1.
+		 */
+		double dPower = getPowerOfTen(iScale);
+		double dUnits = Math.rint(dRounded * dPower); // the rounded value is k / 10^iScale
+		double dThrHi = dThreshold * dPower;
+		if (!isExact(dUnits, dThrHi)) {
+			return BigDecimal.valueOf((long) dUnits, iScale).compareTo(new BigDecimal(dThreshold));
+		}
+		double dThrLo = productError(dThreshold, dPower, dThrHi);
+		// The difference of the high parts is exact when they are close, otherwise
+		// its sign does not depend on the low part
+		double dDiff = (dUnits - dThrHi) - dThrLo;
+		return (dDiff < 0) ? -1 : ((dDiff > 0) ? 1 : 0);
+	}
+
+	public static String formatHalfUp(double dValue, int iScale) {
+		return appendHalfUp(new StringBuilder(24), dValue, iScale).toString();
+	}
+
+	public static StringBuilder appendHalfUp(StringBuilder sb, double dValue, int iScale) {
+		// Exactly iScale decimals, as new BigDecimal(dValue).setScale(iScale, RoundingMode.HALF_UP).toString()
+		return appendDecimal(sb, dValue, iScale, RoundingMode.HALF_UP, false);
+	}
+
+	public static String formatTrimmed(double dValue, int iMaxScale) {
+		return appendTrimmed(new StringBuilder(24), dValue, iMaxScale).toString();
+	}
+
+	public static StringBuilder appendTrimmed(StringBuilder sb, double dValue, int iMaxScale) {
+		/*
+		 * Up to iMaxScale decimals without the trailing zeros, as a DecimalFormat with
+		 * the pattern "#.##" for 2 decimals, i.e. rounded half even.
+		 */
+		return appendDecimal(sb, dValue, iMaxScale, RoundingMode.HALF_EVEN, true);
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static double getPowerOfTen(int iScale) {
+		if (iScale < 0 || iScale > MAX_SCALE) {
+			throw new IllegalArgumentException("Invalid scale: " + iScale + ".");
+		}
+		return POWERS_OF_TEN[iScale];
+	}
+
+	private static boolean isExact(double dUnits, double dHi) {
+		// The product and the units are within the range of the exact arithmetic
+		return Math.abs(dHi) < MAX_UNITS && Math.abs(dUnits) < MAX_UNITS;
+	}
+
+	private static double productError(double dA, double dB, double dProduct) {
+		// Exact dA * dB - dProduct, with dProduct = dA * dB rounded
+		double dT = SPLIT * dA;
+		double dAHi = dT - (dT - dA);
+		double dALo = dA - dAHi;
+		dT = SPLIT * dB;
+		double dBHi = dT - (dT - dB);
+		double dBLo = dB - dBHi;
+		return ((dAHi * dBHi - dProduct) + dAHi * dBLo + dALo * dBHi) + dALo * dBLo;
+	}
+
+	private static double roundUnits(double dAbs, double dPower, RoundingMode roundingMode) {
+		// Units of the scale of a positive value rounded, NaN if outside of the exact range
+		double dHi = dAbs * dPower;
+		if (!(dHi < MAX_UNITS)) {
+			return Double.NaN;
+		}
+		double dLo = productError(dAbs, dPower, dHi);
+		double dUnits = Math.floor(dHi);
+		// Sign of the exact fraction minus one half: exact subtraction near one half,
+		// and the low part too small to change the sign elsewhere
+		double dHalfDiff = ((dHi - dUnits) - 0.5) + dLo;
+		if (dHalfDiff > 0) {
+			dUnits++;
+		} else if (dHalfDiff == 0) {
+			if (roundingMode == RoundingMode.HALF_UP || dUnits % 2 != 0) {
+				dUnits++;
+			}
+		}
+		return dUnits;
+	}
+
+	private static double round(double dValue, int iScale, RoundingMode roundingMode) {
+		double dPower = getPowerOfTen(iScale);
+		if (dValue == 0 || Double.isNaN(dValue) || Double.isInfinite(dValue)) {
+			return dValue;
+		}
+		double dUnits = roundUnits(Math.abs(dValue), dPower, roundingMode);
+		if (Double.isNaN(dUnits)) {
+			return new BigDecimal(dValue).setScale(iScale, roundingMode).doubleValue();
+		}
+		// Both exact, so that the quotient is the double nearest to the decimal
+		return Math.copySign(dUnits / dPower, dValue);
+	}
+
+	private static StringBuilder appendDecimal(StringBuilder sb, double dValue, int iScale,
+			RoundingMode roundingMode, boolean bTrimZeros) {
+		double dPower = getPowerOfTen(iScale);
+		if (Double.isNaN(dValue) || Double.isInfinite(dValue)) {
+			return sb.append(dValue);
+		}
+		double dUnits = roundUnits(Math.abs(dValue), dPower, roundingMode);
+		if (Double.isNaN(dUnits)) {
+			BigDecimal bdValue = new BigDecimal(dValue).setScale(iScale, roundingMode);
+			return sb.append((bTrimZeros ? bdValue.stripTrailingZeros() : bdValue).toPlainString());
+		}
+		long lUnits = (long) dUnits;
+		if (lUnits != 0 && dValue < 0) {
+			sb.append('-');
+		}
+		long lPower = (long) dPower;
+		long lInteger = lUnits / lPower;
+		long lFraction = lUnits % lPower;
+		int iDigits = iScale;
+		if (bTrimZeros) {
+			while (iDigits > 0 && lFraction % 10 == 0) {
+				lFraction /= 10;
+				iDigits--;
+			}
+		}
+		sb.append(lInteger);
+		if (iDigits > 0) {
+			sb.append('.');
+			// Leading zeros of the fraction
+			for (long lLimit = (long) POWERS_OF_TEN[iDigits - 1]; lLimit > 1 && lFraction < lLimit; lLimit /= 10) {
+				sb.append('0');
+			}
+			sb.append(lFraction);
+		}
+		return sb;
+	}
+
+}
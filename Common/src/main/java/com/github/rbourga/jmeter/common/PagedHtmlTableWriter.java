@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Writes a results table as a paged HTML report for tables with many rows: a
+ * small HTML page, and the rows in chunks of CHUNK_ROWS rows saved as scripts
+ * in a directory next to it. Each chunk is a gzip-compressed JSON array of the
+ * texts of its rows, in base64, so that the page can load it from the file
+ * system. The page only loads the chunks of the rows in view while scrolling;
+ * sorting and filtering are done in the page over all the chunks. Only one
+ * chunk is kept in memory while writing.
+ */
+public final class PagedHtmlTableWriter implements TableReportWriter {
+
+	// JMeter property giving the number of rows above which the HTML reports are
+	// paged, 0 to never page
+	private static final String PAGED_ROWS_PROPERTY = "rbourga.report.paged.rows";
+	private static final int PAGED_ROWS_DEFAULT = 10000;
+	private static final int CHUNK_ROWS = 1000;
+	private static final String TEMPLATE = "paged-report.html";
+	private static final String CHUNKS_DIR_SUFFIX = "_chunks";
+
+	private final Path htmlPath;
+	private final Path chunksPath;
+	private final String sTblCaption;
+	private final String[] aColumnNames;
+	private final int iBoolColNbr;
+	private final boolean[] aPctColumns;
+	private String sFootnote = "";
+
+	// Rows of the current chunk as JSON
+	private final StringBuilder sbChunk = new StringBuilder(1 << 16);
+	private final StringBuilder sbCell = new StringBuilder(32);
+	private int iChunkRowCnt = 0;
+	private int iChunkCnt = 0;
+	private int iRowCnt = 0;
+
+	public PagedHtmlTableWriter(String sFilePath, String sTblCaption, String[] aColumnNames, int iBoolColNbr)
+			throws IOException {
+		this.htmlPath = Paths.get(sFilePath);
+		this.chunksPath = Paths.get(FilenameUtils.removeExtension(sFilePath) + CHUNKS_DIR_SUFFIX);
+		this.sTblCaption = sTblCaption;
+		this.aColumnNames = aColumnNames.clone();
+		this.iBoolColNbr = iBoolColNbr;
+		this.aPctColumns = new boolean[aColumnNames.length];
+		for (int i = 0; i < aColumnNames.length; i++) {
+			aPctColumns[i] = HtmlTableWriter.isPctColumn(aColumnNames[i]);
+		}
+		Files.createDirectories(chunksPath);
+	}
+
+	public static boolean isPaged(int iRowCnt) {
+		int iPagedRows = JMeterUtils.getPropDefault(PAGED_ROWS_PROPERTY, PAGED_ROWS_DEFAULT);
+		return iPagedRows > 0 && iRowCnt > iPagedRows;
+	}
+
+	@Override
+	public void writeRow(Object[] aValues, String sLink) throws IOException {
+		// Texts of the cells as printed in a single page report, then the link if any
+		sbChunk.append((iChunkRowCnt == 0) ? '[' : ',').append('[');
+		for (int i = 0; i < aValues.length; i++) {
+			if (i > 0) {
+				sbChunk.append(',');
+			}
+			sbCell.setLength(0);
+			appendJsonString(sbChunk, HtmlTableWriter.appendCell(sbCell, aValues[i], aPctColumns[i]));
+		}
+		if (sLink != null) {
+			sbChunk.append(',');
+			appendJsonString(sbChunk, sLink);
+		}
+		sbChunk.append(']');
+		iRowCnt++;
+		if (++iChunkRowCnt == CHUNK_ROWS) {
+			writeChunk();
+		}
+	}
+
+	@Override
+	public void writeFootnote(String sFootnote) throws IOException {
+		this.sFootnote = sFootnote;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// The page is written last, with the number of rows and chunks
+		if (iChunkRowCnt > 0) {
+			writeChunk();
+		}
+		StringBuilder sbReport = new StringBuilder(256);
+		sbReport.append("{\"dir\":");
+		appendJsonString(sbReport, chunksPath.getFileName().toString());
+		sbReport.append(",\"rowCnt\":").append(iRowCnt);
+		sbReport.append(",\"chunkRows\":").append(CHUNK_ROWS);
+		sbReport.append(",\"chunkCnt\":").append(iChunkCnt);
+		sbReport.append(",\"boolCol\":").append(iBoolColNbr);
+		sbReport.append(",\"columns\":[");
+		for (int i = 0; i < aColumnNames.length; i++) {
+			if (i > 0) {
+				sbReport.append(',');
+			}
+			appendJsonString(sbReport, aColumnNames[i]);
+		}
+		sbReport.append("]}");
+
+		String sTemplate;
+		try (InputStream inStream = PagedHtmlTableWriter.class.getResourceAsStream(TEMPLATE)) {
+			if (inStream == null) {
+				throw new IOException("Paged report template not found: " + TEMPLATE + ".");
+			}
+			sTemplate = IOUtils.toString(inStream, StandardCharsets.UTF_8);
+		}
+		String[] aMarkers = { "@CAPTION@", "@FOOTNOTE@", "@REPORT@" };
+		String[] aValues = { HtmlTableWriter.escapeText(sTblCaption), HtmlTableWriter.escapeText(sFootnote),
+				sbReport.toString() };
+		try (Writer fileWrtr = Files.newBufferedWriter(htmlPath, StandardCharsets.UTF_8)) {
+			// Markers replaced in their order in the template
+			int iFrom = 0;
+			for (int i = 0; i < aMarkers.length; i++) {
+				int iMarker = sTemplate.indexOf(aMarkers[i], iFrom);
+				fileWrtr.write(sTemplate, iFrom, iMarker - iFrom);
+				fileWrtr.write(aValues[i]);
+				iFrom = iMarker + aMarkers[i].length();
+			}
+			fileWrtr.write(sTemplate, iFrom, sTemplate.length() - iFrom);
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private void writeChunk() throws IOException {
+		sbChunk.append(']');
+		ByteArrayOutputStream byteStream = new ByteArrayOutputStream(sbChunk.length() / 4);
+		try (OutputStream gzipStream = new GZIPOutputStream(byteStream)) {
+			gzipStream.write(sbChunk.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		String sScript = "rbourgaReportChunk(" + iChunkCnt + ",\""
+				+ Base64.getEncoder().encodeToString(byteStream.toByteArray()) + "\");\n";
+		Files.write(chunksPath.resolve(iChunkCnt + ".js"), sScript.getBytes(StandardCharsets.US_ASCII));
+		sbChunk.setLength(0);
+		iChunkRowCnt = 0;
+		iChunkCnt++;
+	}
+
+	private static void appendJsonString(StringBuilder sb, CharSequence csText) {
+		// Quoted and escaped; "</" is also escaped as the report is in a script element
+		sb.append('"');
+		for (int i = 0; i < csText.length(); i++) {
+			char c = csText.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '/':
+				sb.append((i > 0 && csText.charAt(i - 1) == '<') ? "\\/" : "/");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+
+}
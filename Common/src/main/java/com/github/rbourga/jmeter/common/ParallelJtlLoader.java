@@ -0,0 +1,190 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Loads a CSV/TSV results file on all cores. The file is split into byte
+ * ranges starting at row starts, each range is scanned on a fork/join worker
+ * into its own SampleStore, and the partial stores are appended in file order
+ * so that the result is the same as the sequential load. In sketch mode, the
+ * partial results are sketches that are merged instead.
+ */
+public final class ParallelJtlLoader {
+
+	private static final long MIN_CHUNK_SIZE = 1L << 24; // 16 MB
+	private static final long MAX_CHUNK_SIZE = 1L << 28; // 256 MB
+	private static final int CHUNKS_PER_CORE = 4; // to balance the load between workers
+	private static final byte QUOTE = '"';
+	private static final byte LF = '\n';
+
+	/*
+	 * Scans a range of complete rows of the file into a partial result.
+	 */
+	private interface RangeScanner<T> {
+		T scan(JtlScanner jtlScanner, MappedByteBuffer mapBuf, int iLen);
+	}
+
+	public static SampleStore load(String sFilePath, char cDelim, LabelMapper labelMapper, String... aColumns)
+			throws IOException {
+		// Columns as in FileServices.loadSamplesIntoStore(): none means all of them
+		SampleStore sampleStore = new SampleStore();
+		loadRanges(sFilePath, cDelim, aColumns, (jtlScanner, mapBuf, iLen) -> {
+			SampleStore partialStore = new SampleStore();
+			JtlScanner.LabelDictionary labelDictionary = LabelMapper.crteDictionary(labelMapper, partialStore);
+			jtlScanner.scanRows(mapBuf, 0, iLen, true, scanner -> partialStore.addSample(
+					scanner.getLabelId(labelDictionary), scanner.getTimeStamp(), (int) scanner.getElapsed(),
+					scanner.isSuccess()));
+			return partialStore;
+		}, sampleStore::append);
+		return sampleStore;
+	}
+
+	public static SampleSketches loadSketches(String sFilePath, char cDelim, double dRelAcc, LabelMapper labelMapper)
+			throws IOException {
+		// Same split, each range being summarized into its own sketches that are then merged
+		SampleSketches sampleSketches = new SampleSketches(dRelAcc);
+		loadRanges(sFilePath, cDelim, SampleSketches.USED_COLUMNS, (jtlScanner, mapBuf, iLen) -> {
+			SampleSketches partialSketches = new SampleSketches(dRelAcc);
+			JtlScanner.LabelDictionary labelDictionary = LabelMapper.crteDictionary(labelMapper, partialSketches);
+			jtlScanner.scanRows(mapBuf, 0, iLen, true, scanner -> partialSketches
+					.addSample(scanner.getLabelId(labelDictionary), scanner.getElapsed(), scanner.isSuccess()));
+			return partialSketches;
+		}, sampleSketches::merge);
+		return sampleSketches;
+	}
+
+	public static long[] findRowStarts(FileChannel fileChnl, long lFrom, long lTo) throws IOException {
+		/*
+		 * Splits [lFrom, lTo) into ranges that start at the beginning of a row. A line
+		 * break inside a quoted field (e.g. a multi-line responseMessage) is not a row
+		 * start, so the raw chunks are first scanned in parallel for their quotes: for
+		 * each chunk we keep the parity of its quotes and its first line break for both
+		 * parities of the quotes at its start. Going through the chunks in order then
+		 * gives the actual parity at the start of each chunk, hence its first row start.
+		 * Returns the row starts followed by lTo.
+		 */
+		int iCores = Runtime.getRuntime().availableProcessors();
+		long lChunkSize = Math.max(MIN_CHUNK_SIZE, (lTo - lFrom) / (iCores * CHUNKS_PER_CORE));
+		lChunkSize = Math.min(lChunkSize, MAX_CHUNK_SIZE);
+		int iChunkCnt = (int) ((lTo - lFrom + lChunkSize - 1) / lChunkSize);
+
+		ForkJoinPool fjPool = ForkJoinPool.commonPool();
+		List<ForkJoinTask<long[]>> listTasks = new ArrayList<>();
+		for (int i = 0; i < iChunkCnt; i++) {
+			long lChunkFrom = lFrom + i * lChunkSize;
+			long lChunkTo = Math.min(lChunkFrom + lChunkSize, lTo);
+			listTasks.add(fjPool.submit(() -> scanQuotes(fileChnl, lChunkFrom, lChunkTo)));
+		}
+
+		List<Long> listStarts = new ArrayList<>();
+		listStarts.add(lFrom);
+		boolean bInQuotes = false; // the first chunk starts at a row start
+		for (int i = 0; i < iChunkCnt; i++) {
+			long[] aQuoteStats = listTasks.get(i).join();
+			if (i > 0) {
+				long lFirstLf = bInQuotes ? aQuoteStats[2] : aQuoteStats[1];
+				if (lFirstLf != -1 && lFirstLf + 1 < lTo) {
+					listStarts.add(lFirstLf + 1);
+				}
+			}
+			if (aQuoteStats[0] == 1) {
+				bInQuotes = !bInQuotes;
+			}
+		}
+		listStarts.add(lTo);
+		return listStarts.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static long[] scanQuotes(FileChannel fileChnl, long lFrom, long lTo) throws IOException {
+		/*
+		 * Returns {parity of the number of quotes, position of the first line break
+		 * outside quotes if the chunk starts outside quotes, same if the chunk starts
+		 * inside quotes}, -1 if no such line break.
+		 */
+		MappedByteBuffer mapBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lFrom, lTo - lFrom);
+		int iLen = (int) (lTo - lFrom);
+		long lFirstLfEven = -1, lFirstLfOdd = -1;
+		int iQuoteParity = 0;
+		for (int i = 0; i < iLen; i++) {
+			byte b = mapBuf.get(i);
+			if (b == QUOTE) {
+				iQuoteParity ^= 1;
+			} else if (b == LF) {
+				if (iQuoteParity == 0 && lFirstLfEven == -1) {
+					lFirstLfEven = lFrom + i;
+				} else if (iQuoteParity == 1 && lFirstLfOdd == -1) {
+					lFirstLfOdd = lFrom + i;
+				}
+			}
+		}
+		return new long[] { iQuoteParity, lFirstLfEven, lFirstLfOdd };
+	}
+
+	private static <T> void loadRanges(String sFilePath, char cDelim, String[] aColumns,
+			RangeScanner<T> rangeScanner, Consumer<T> partialConsumer) throws IOException {
+		// The partial results are given to partialConsumer in file order
+		try (FileChannel fileChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			long lSize = fileChnl.size();
+			if (lSize == 0) {
+				return;
+			}
+
+			// Read the header once: it is shared by the scanners of the workers
+			JtlScanner hdrScanner = new JtlScanner(cDelim);
+			if (aColumns.length > 0) {
+				hdrScanner.setProjection(aColumns);
+			}
+			int iHdrLen = (int) Math.min(MAX_CHUNK_SIZE, lSize);
+			MappedByteBuffer hdrBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, 0, iHdrLen);
+			long lDataStart = hdrScanner.parseHeader(hdrBuf, iHdrLen, iHdrLen == lSize);
+			if (lDataStart == -1) {
+				throw new IOException("Results file header too large.");
+			}
+
+			// Split the data rows into ranges and scan them in parallel
+			long[] aRowStarts = findRowStarts(fileChnl, lDataStart, lSize);
+			ForkJoinPool fjPool = ForkJoinPool.commonPool();
+			List<ForkJoinTask<T>> listTasks = new ArrayList<>();
+			for (int i = 0; i < aRowStarts.length - 1; i++) {
+				long lFrom = aRowStarts[i];
+				long lTo = aRowStarts[i + 1];
+				listTasks.add(fjPool.submit(() -> scanRange(fileChnl, hdrScanner, lFrom, lTo, rangeScanner)));
+			}
+
+			// Merge the partial results in file order while the next ranges are scanned
+			for (ForkJoinTask<T> task : listTasks) {
+				partialConsumer.accept(task.join());
+			}
+		} catch (RuntimeException rE) {
+			// Errors of the workers are rethrown by join()
+			throw new IOException(rE.getMessage(), rE);
+		}
+	}
+
+	private static <T> T scanRange(FileChannel fileChnl, JtlScanner hdrScanner, long lFrom, long lTo,
+			RangeScanner<T> rangeScanner) throws IOException {
+		// Scans complete rows of [lFrom, lTo) into a partial result
+		if (lTo - lFrom > Integer.MAX_VALUE) {
+			throw new IOException("Row too large to be mapped.");
+		}
+		int iLen = (int) (lTo - lFrom);
+		MappedByteBuffer mapBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lFrom, iLen);
+		return rangeScanner.scan(new JtlScanner(hdrScanner), mapBuf, iLen);
+	}
+
+}
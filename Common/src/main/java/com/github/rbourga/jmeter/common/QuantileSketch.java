@@ -0,0 +1,229 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.Arrays;
+
+/**
+ * Bounded-memory summary of response times for labels with too many samples to
+ * be held in memory. The values are counted in logarithmic buckets, so that
+ * any quantile is returned within a guaranteed relative error alpha of a
+ * sample of that rank: bucket i holds the values in (gamma^(i-1), gamma^i] with
+ * gamma = (1 + alpha) / (1 - alpha). With alpha = 1%, the response times from
+ * 1 ms to 24 days fit in about 1,100 buckets whatever the number of samples.
+ * Values of 0 or less, e.g. 0 ms, are counted exactly apart. Count, mean,
+ * variance, min and max are exact. Two sketches of the same accuracy merge
+ * exactly, e.g. the sketches of several threads or files.
+ */
+public final class QuantileSketch {
+
+	private static final int INITIAL_BUCKET_CAPACITY = 64;
+
+	/*
+	 * Called for each non-empty bucket, in ascending order, with the value that
+	 * represents the bucket.
+	 */
+	public interface BucketHandler {
+		void onBucket(double dValue, long lCount);
+	}
+
+	private final double dRelAcc;
+	private final double dGamma;
+	private final double dLogGamma;
+	private long[] aBucketCnts = new long[0];
+	private int iFirstIndex = 0; // bucket index of aBucketCnts[0]
+	private long lZeroCnt = 0; // values of 0 or less
+	private long lCount = 0; // values in the buckets, after removeAbove()
+	private final MathMoments.Accumulator accumulator = new MathMoments.Accumulator();
+
+	public QuantileSketch(double dRelAcc) {
+		if (SampleSketches.isRelAccOutOfRange(dRelAcc)) {
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1 excluded.");
+		}
+		this.dRelAcc = dRelAcc;
+		this.dGamma = (1 + dRelAcc) / (1 - dRelAcc);
+		this.dLogGamma = Math.log(dGamma);
+	}
+
+	public void add(double dValue) {
+		add(dValue, 1);
+	}
+
+	public void add(double dValue, long lValueCnt) {
+		if (lValueCnt == 0) {
+			return;
+		}
+		if (dValue <= 0) {
+			lZeroCnt += lValueCnt;
+		} else {
+			int iIndex = (int) Math.ceil(Math.log(dValue) / dLogGamma);
+			ensureBucket(iIndex);
+			aBucketCnts[iIndex - iFirstIndex] += lValueCnt;
+		}
+		lCount += lValueCnt;
+		accumulator.add(dValue, lValueCnt);
+	}
+
+	public void merge(QuantileSketch other) {
+		if (other.dRelAcc != dRelAcc) {
+			throw new IllegalArgumentException("Sketches of different accuracies cannot be merged.");
+		}
+		for (int i = 0; i < other.aBucketCnts.length; i++) {
+			if (other.aBucketCnts[i] != 0) {
+				int iIndex = other.iFirstIndex + i;
+				ensureBucket(iIndex);
+				aBucketCnts[iIndex - iFirstIndex] += other.aBucketCnts[i];
+			}
+		}
+		lZeroCnt += other.lZeroCnt;
+		lCount += other.lCount;
+		accumulator.merge(other.accumulator);
+	}
+
+	public double getRelativeAccuracy() {
+		return dRelAcc;
+	}
+
+	public long getCount() {
+		return lCount;
+	}
+
+	public double getMean() {
+		return accumulator.getMean();
+	}
+
+	public double getVariance() {
+		return accumulator.getVariance();
+	}
+
+	public double getMin() {
+		return accumulator.getMin();
+	}
+
+	public double getMax() {
+		return accumulator.getMax();
+	}
+
+	public double getValueAtRank(long lRank) {
+		// Value of the given order statistic, from 1 to getCount(), within the relative accuracy
+		if (lRank < 1 || lRank > lCount) {
+			throw new IllegalArgumentException("Rank out of range: " + lRank + ".");
+		}
+		if (lRank <= lZeroCnt) {
+			return Math.min(0, accumulator.getMin());
+		}
+		long lCumul = lZeroCnt;
+		for (int i = 0; i < aBucketCnts.length; i++) {
+			lCumul += aBucketCnts[i];
+			if (lCumul >= lRank) {
+				// The exact min and max are better estimates at the ends
+				double dValue = getBucketValue(iFirstIndex + i);
+				return Math.max(accumulator.getMin(), Math.min(accumulator.getMax(), dValue));
+			}
+		}
+		throw new IllegalStateException("Sketch counts inconsistent.");
+	}
+
+	public double getPercentile(double dP) {
+		// Same estimation as StatUtils.percentile(), on the approximate order statistics
+		if (lCount == 0) {
+			return Double.NaN;
+		}
+		double dPos = dP / 100 * (lCount + 1);
+		if (dPos < 1) {
+			return getValueAtRank(1);
+		}
+		if (dPos >= lCount) {
+			return getValueAtRank(lCount);
+		}
+		long lLowRank = (long) Math.floor(dPos);
+		double dLower = getValueAtRank(lLowRank);
+		double dUpper = getValueAtRank(lLowRank + 1);
+		return dLower + (dPos - lLowRank) * (dUpper - dLower);
+	}
+
+	public long getCountAtOrBelow(double dLimit) {
+		/*
+		 * Number of values not greater than dLimit, each value being taken as the
+		 * value of its bucket, i.e. within the relative accuracy.
+		 */
+		long lCnt = (dLimit >= 0) ? lZeroCnt : 0;
+		for (int i = 0; i < aBucketCnts.length && getBucketValue(iFirstIndex + i) <= dLimit; i++) {
+			lCnt += aBucketCnts[i];
+		}
+		return lCnt;
+	}
+
+	public long getCountBelow(double dLimit) {
+		// Same for the values strictly lower than dLimit
+		long lCnt = (dLimit > 0) ? lZeroCnt : 0;
+		for (int i = 0; i < aBucketCnts.length && getBucketValue(iFirstIndex + i) < dLimit; i++) {
+			lCnt += aBucketCnts[i];
+		}
+		return lCnt;
+	}
+
+	public long removeAbove(double dLimit) {
+		/*
+		 * Removes the buckets whose value is greater than dLimit, returns their count.
+		 * Count and quantiles take the removal into account; the moments remain those
+		 * of all the values added.
+		 */
+		long lRemoved = 0;
+		for (int i = aBucketCnts.length - 1; i >= 0 && getBucketValue(iFirstIndex + i) > dLimit; i--) {
+			lRemoved += aBucketCnts[i];
+			aBucketCnts[i] = 0;
+		}
+		if (dLimit < 0) {
+			lRemoved += lZeroCnt;
+			lZeroCnt = 0;
+		}
+		lCount -= lRemoved;
+		return lRemoved;
+	}
+
+	public void forEachBucket(BucketHandler bucketHandler) {
+		if (lZeroCnt != 0) {
+			bucketHandler.onBucket(Math.min(0, accumulator.getMin()), lZeroCnt);
+		}
+		for (int i = 0; i < aBucketCnts.length; i++) {
+			if (aBucketCnts[i] != 0) {
+				bucketHandler.onBucket(getBucketValue(iFirstIndex + i), aBucketCnts[i]);
+			}
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private double getBucketValue(int iIndex) {
+		// Value within the relative accuracy of all the values of (gamma^(i-1), gamma^i]
+		return 2 * Math.pow(dGamma, iIndex) / (dGamma + 1);
+	}
+
+	private void ensureBucket(int iIndex) {
+		// Grows the bucket array so that it covers iIndex
+		if (aBucketCnts.length == 0) {
+			aBucketCnts = new long[INITIAL_BUCKET_CAPACITY];
+			iFirstIndex = iIndex - INITIAL_BUCKET_CAPACITY / 2;
+			return;
+		}
+		int iPos = iIndex - iFirstIndex;
+		if (iPos >= 0 && iPos < aBucketCnts.length) {
+			return;
+		}
+		int iNewFirst = Math.min(iFirstIndex, iIndex);
+		int iNewLast = Math.max(iFirstIndex + aBucketCnts.length - 1, iIndex);
+		int iNewCapacity = Math.max(aBucketCnts.length * 2, iNewLast - iNewFirst + 1);
+		// Keep some room on the side that grew
+		if (iIndex < iFirstIndex) {
+			iNewFirst = iNewLast + 1 - iNewCapacity;
+		}
+		long[] aNewCnts = new long[iNewCapacity];
+		System.arraycopy(aBucketCnts, 0, aNewCnts, iFirstIndex - iNewFirst, aBucketCnts.length);
+		aBucketCnts = aNewCnts;
+		iFirstIndex = iNewFirst;
+	}
+
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a stream ahead on a separate thread, e.g. to decompress a gzip results
+ * file while the previous chunks are being parsed. The source stream is read
+ * in chunks that are handed over through a bounded queue and it is closed by
+ * the reading thread.
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+	private static final int CHUNK_SIZE = 1 << 20; // 1 MB
+	private static final int QUEUE_DEPTH = 4; // chunks read ahead
+	private static final byte[] END_OF_STREAM = new byte[0];
+
+	private final BlockingQueue<byte[]> bqChunks = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+	private final Thread readerThread;
+	private volatile IOException readException = null;
+
+	// Chunk being consumed
+	private byte[] aChunk = new byte[0];
+	private int iChunkPos = 0;
+	private boolean bEnded = false;
+
+	public ReadAheadInputStream(InputStream srcStream) {
+		readerThread = new Thread(() -> readChunks(srcStream), "ReadAhead");
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunkIfNeeded()) {
+			return -1;
+		}
+		return aChunk[iChunkPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] aBytes, int iOff, int iLen) throws IOException {
+		if (iLen == 0) {
+			return 0;
+		}
+		if (!nextChunkIfNeeded()) {
+			return -1;
+		}
+		int iCnt = Math.min(iLen, aChunk.length - iChunkPos);
+		System.arraycopy(aChunk, iChunkPos, aBytes, iOff, iCnt);
+		iChunkPos += iCnt;
+		return iCnt;
+	}
+
+	@Override
+	public void close() {
+		// Stop the reading thread, which then closes the source
+		bEnded = true;
+		readerThread.interrupt();
+		bqChunks.clear();
+	}
+
+	/*
+	 * Private methods
+	 */
+	private boolean nextChunkIfNeeded() throws IOException {
+		// Returns false at the end of the stream
+		while (!bEnded && iChunkPos == aChunk.length) {
+			try {
+				aChunk = bqChunks.take();
+			} catch (InterruptedException iE) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading ahead.", iE);
+			}
+			iChunkPos = 0;
+			if (aChunk == END_OF_STREAM) {
+				bEnded = true;
+				if (readException != null) {
+					throw readException;
+				}
+			}
+		}
+		return !bEnded;
+	}
+
+	private void readChunks(InputStream srcStream) {
+		try (InputStream inStream = srcStream) {
+			boolean bEof = false;
+			while (!bEof) {
+				byte[] aBytes = new byte[CHUNK_SIZE];
+				int iLen = 0;
+				while (iLen < CHUNK_SIZE) {
+					int iRead = inStream.read(aBytes, iLen, CHUNK_SIZE - iLen);
+					if (iRead == -1) {
+						bEof = true;
+						break;
+					}
+					iLen += iRead;
+				}
+				if (iLen > 0) {
+					bqChunks.put(iLen == CHUNK_SIZE ? aBytes : Arrays.copyOf(aBytes, iLen));
+				}
+			}
+		} catch (IOException ioE) {
+			readException = ioE;
+		} catch (InterruptedException iE) {
+			return; // closed by the consumer
+		}
+		try {
+			bqChunks.put(END_OF_STREAM);
+		} catch (InterruptedException iE) {
+			// closed by the consumer
+		}
+	}
+
+}
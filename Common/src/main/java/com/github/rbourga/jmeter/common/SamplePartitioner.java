@@ -0,0 +1,369 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * External partitioning of results files whose samples do not fit in the heap.
+ * A first pass counts the samples of each label; the labels, in their natural
+ * order, are then split in ranges whose samples fit in the memory budget. A
+ * second pass writes the columns of each row to the temporary file of the
+ * partition of its label. The partitions are then loaded one at a time into a
+ * SampleStore, so that the per-label loops of the analyses see the labels in
+ * the same order as with the whole file in memory. A label is never split: a
+ * single label larger than the budget gets a partition of its own.
+ *
+ * With more partitions than temporary files that can be open at once, the rows
+ * are first written to files each holding a range of consecutive partitions,
+ * which are then split in turn, so that every partition still fits in the
+ * budget.
+ */
+public final class SamplePartitioner {
+
+	// JMeter property giving the heap budget of a partition in MB, 0 to load the whole file
+	private static final String BUDGET_PROPERTY = "rbourga.partition.budget.mb";
+	// Heap per sample in a SampleStore and in the arrays the analyses derive from it
+	private static final int BYTES_PER_ROW = 64;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Temporary files open at once when writing the rows
+	private static final int MAX_OPEN_FILES = 64;
+	// Row: label rank, timeStamp, elapsed, success, row number in the file
+	private static final int RECORD_SIZE = 4 + 8 + 4 + 1 + 4;
+	// Compressed bytes decompressed to estimate the size of a gzip file
+	private static final int GZIP_SAMPLE_SIZE = 1 << 20;
+
+	/*
+	 * Called for each partition with its samples and the row numbers in the
+	 * results file of the rows of the store.
+	 */
+	public interface PartitionHandler {
+		void onPartition(SampleStore sampleStore, int[] aFileRows) throws IOException;
+	}
+
+	private SamplePartitioner() {
+	}
+
+	public static long getBudgetBytes() {
+		return (long) JMeterUtils.getPropDefault(BUDGET_PROPERTY, 0) << 20;
+	}
+
+	public static boolean isPartitioned(String sFilePath) {
+		/*
+		 * True if a budget is set and the results may not fit in it. A file smaller
+		 * than the budget always fits: a sample takes less heap than its row in the
+		 * file. Gzip files are compared by their estimated decompressed size.
+		 */
+		long lBudget = getBudgetBytes();
+		if (lBudget <= 0) {
+			return false;
+		}
+		List<String> listFiles = FileServices.isFileExist(sFilePath) ? Collections.singletonList(sFilePath)
+				: FileServices.resolveInputFiles(sFilePath);
+		long lTotalSize = 0;
+		for (String sFile : listFiles) {
+			lTotalSize += FileServices.isGzipFile(sFile) ? estimateGzipContentSize(sFile) : new File(sFile).length();
+		}
+		return lTotalSize > lBudget;
+	}
+
+	public static int forEachPartition(String sFilePath, char cDelim, String[] aColumns,
+			PartitionHandler partitionHandler) throws IOException {
+		/*
+		 * Calls the handler for each partition of the labels, in their natural order,
+		 * and returns the number of partitions. Several files given as a list or a glob
+		 * pattern are read one after the other.
+		 */
+		List<String> listFiles = FileServices.isFileExist(sFilePath) ? Collections.singletonList(sFilePath)
+				: FileServices.resolveInputFiles(sFilePath);
+
+		// 1. Count the samples of each label, mapped if set in the JMeter properties,
+		// with the columns of the second pass so as to count the rows it loads only
+		LabelCounter labelCounter = new LabelCounter();
+		JtlScanner.LabelDictionary labelDictionary = LabelMapper.crteDictionary(
+				LabelMapper.crteForFiles(listFiles, cDelim), labelCounter);
+		for (String sFile : listFiles) {
+			scanFile(sFile, cDelim, aColumns, (iLblId, lTimeStamp, iElapsed, bSuccess) -> labelCounter
+					.countRow(iLblId), labelDictionary);
+		}
+		int iLblCnt = labelCounter.alLabels.size();
+		if (iLblCnt == 0) {
+			return 0;
+		}
+
+		// 2. Split the sorted labels in ranges that fit in the budget
+		long lBudgetRows = Math.max(1, getBudgetBytes() / BYTES_PER_ROW);
+		TreeMap<String, Integer> tmSortedLbl = new TreeMap<>(labelCounter.hmLabelIds);
+		Partitions partitions = new Partitions(iLblCnt);
+		int[] aLblRank = new int[iLblCnt];
+		ArrayList<Integer> alPartitionStarts = new ArrayList<>();
+		long lPartitionRows = 0;
+		int iRank = 0;
+		for (String sLbl : tmSortedLbl.keySet()) {
+			int iLblId = tmSortedLbl.get(sLbl);
+			long lLblRows = labelCounter.aCounts[iLblId];
+			if (alPartitionStarts.isEmpty() || (lPartitionRows > 0 && lPartitionRows + lLblRows > lBudgetRows)) {
+				alPartitionStarts.add(iRank);
+				lPartitionRows = 0;
+			}
+			aLblRank[iLblId] = iRank;
+			partitions.aSortedLbls[iRank] = sLbl;
+			partitions.aRankPartition[iRank] = alPartitionStarts.size() - 1;
+			lPartitionRows += lLblRows;
+			iRank++;
+		}
+		int iPartitionCnt = alPartitionStarts.size();
+		partitions.aPartitionStarts = new int[iPartitionCnt + 1];
+		for (int i = 0; i < iPartitionCnt; i++) {
+			partitions.aPartitionStarts[i] = alPartitionStarts.get(i);
+		}
+		partitions.aPartitionStarts[iPartitionCnt] = iLblCnt;
+
+		// 3. Write the rows of each partition to its temporary file and analyse one
+		// partition at a time, with the same label ids as in the first pass
+		splitRows(rowHandler -> {
+			int[] aFileRow = { 0 };
+			for (String sFile : listFiles) {
+				scanFile(sFile, cDelim, aColumns, (iLblId, lTimeStamp, iElapsed, bSuccess) -> rowHandler
+						.onRow(aLblRank[iLblId], lTimeStamp, iElapsed, bSuccess, aFileRow[0]++), labelDictionary);
+			}
+		}, 0, iPartitionCnt, partitions, partitionHandler);
+		return iPartitionCnt;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private interface SampleHandler {
+		void onSample(int iLblId, long lTimeStamp, int iElapsed, boolean bSuccess) throws IOException;
+	}
+
+	private interface RowHandler {
+		void onRow(int iRank, long lTimeStamp, int iElapsed, boolean bSuccess, int iFileRow) throws IOException;
+	}
+
+	private interface RowSource {
+		void forEachRow(RowHandler rowHandler) throws IOException;
+	}
+
+	private static long estimateGzipContentSize(String sFilePath) {
+		// File size times the compression ratio of its first bytes, or the exact
+		// size if the whole file is in the sample
+		long lFileSize = new File(sFilePath).length();
+		byte[] aSample = new byte[(int) Math.min(lFileSize, GZIP_SAMPLE_SIZE)];
+		long lContentSize = 0;
+		try (DataInputStream fileIn = new DataInputStream(Files.newInputStream(Paths.get(sFilePath)))) {
+			fileIn.readFully(aSample);
+			try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(aSample), BUFFER_SIZE)) {
+				byte[] aBuf = new byte[BUFFER_SIZE];
+				int iRead;
+				while ((iRead = gzipIn.read(aBuf)) > 0) {
+					lContentSize += iRead;
+				}
+			} catch (EOFException e) {
+				// end of the sample
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return lFileSize;
+		}
+		return (aSample.length == lFileSize) ? lContentSize
+				: (long) ((double) lContentSize / aSample.length * lFileSize);
+	}
+
+	private static void splitRows(RowSource rowSource, int iFirstPartition, int iEndPartition, Partitions partitions,
+			PartitionHandler partitionHandler) throws IOException {
+		/*
+		 * Writes the rows of the partitions in [iFirstPartition, iEndPartition) to at
+		 * most MAX_OPEN_FILES temporary files of consecutive partitions. A file of a
+		 * single partition is analysed, a file of several partitions is split again.
+		 */
+		int iPartitionsPerFile = (iEndPartition - iFirstPartition + MAX_OPEN_FILES - 1) / MAX_OPEN_FILES;
+		int iFileCnt = (iEndPartition - iFirstPartition + iPartitionsPerFile - 1) / iPartitionsPerFile;
+		Path[] aPaths = new Path[iFileCnt];
+		DataOutputStream[] aOuts = new DataOutputStream[iFileCnt];
+		try {
+			for (int i = 0; i < iFileCnt; i++) {
+				aPaths[i] = Files.createTempFile("jtl-partition-", ".bin");
+				aOuts[i] = new DataOutputStream(
+						new BufferedOutputStream(Files.newOutputStream(aPaths[i]), BUFFER_SIZE));
+			}
+			rowSource.forEachRow((iRank, lTimeStamp, iElapsed, bSuccess, iFileRow) -> {
+				int iPartition = partitions.aRankPartition[iRank];
+				DataOutputStream out = aOuts[(iPartition - iFirstPartition) / iPartitionsPerFile];
+				out.writeInt(iRank);
+				out.writeLong(lTimeStamp);
+				out.writeInt(iElapsed);
+				out.writeBoolean(bSuccess);
+				out.writeInt(iFileRow);
+			});
+			for (DataOutputStream out : aOuts) {
+				out.close();
+			}
+
+			for (int i = 0; i < iFileCnt; i++) {
+				int iFileFirst = iFirstPartition + i * iPartitionsPerFile;
+				int iFileEnd = Math.min(iEndPartition, iFileFirst + iPartitionsPerFile);
+				Path path = aPaths[i];
+				if (iFileEnd - iFileFirst == 1) {
+					int[][] aFileRows = new int[1][];
+					SampleStore sampleStore = readPartition(path, partitions, iFileFirst, aFileRows);
+					Files.delete(path);
+					partitionHandler.onPartition(sampleStore, aFileRows[0]);
+				} else {
+					splitRows(rowHandler -> {
+						readRows(path, rowHandler);
+						Files.delete(path);
+					}, iFileFirst, iFileEnd, partitions, partitionHandler);
+				}
+			}
+		} finally {
+			for (int i = 0; i < iFileCnt; i++) {
+				if (aOuts[i] != null) {
+					aOuts[i].close();
+				}
+				if (aPaths[i] != null) {
+					Files.deleteIfExists(aPaths[i]);
+				}
+			}
+		}
+	}
+
+	private static void scanFile(String sFilePath, char cDelim, String[] aColumns, SampleHandler sampleHandler,
+			JtlScanner.LabelDictionary labelDictionary) throws IOException {
+		// Same parsing as FileServices.loadSamplesIntoStore(), the rows in file order
+		try {
+			if (FileServices.isXmlFile(sFilePath)) {
+				XmlJtlReader.scanFile(sFilePath, (sLabel, lTimeStamp, lElapsed, bSuccess) -> onSample(sampleHandler,
+						labelDictionary.putLabel(sLabel), lTimeStamp, (int) lElapsed, bSuccess));
+			} else {
+				JtlScanner jtlScanner = new JtlScanner(cDelim);
+				jtlScanner.setProjection(aColumns);
+				jtlScanner.scanFile(sFilePath, scanner -> onSample(sampleHandler, scanner.getLabelId(labelDictionary),
+						scanner.getTimeStamp(), (int) scanner.getElapsed(), scanner.isSuccess()));
+			}
+		} catch (PartitionWriteException e) {
+			throw e.ioE;
+		}
+	}
+
+	private static void onSample(SampleHandler sampleHandler, int iLblId, long lTimeStamp, int iElapsed,
+			boolean bSuccess) {
+		// The row handlers of the scanners cannot throw checked exceptions
+		try {
+			sampleHandler.onSample(iLblId, lTimeStamp, iElapsed, bSuccess);
+		} catch (IOException e) {
+			throw new PartitionWriteException(e);
+		}
+	}
+
+	private static void readRows(Path path, RowHandler rowHandler) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+			while (true) {
+				int iRank;
+				try {
+					iRank = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				rowHandler.onRow(iRank, in.readLong(), in.readInt(), in.readBoolean(), in.readInt());
+			}
+		}
+	}
+
+	private static SampleStore readPartition(Path partitionPath, Partitions partitions, int iPartition,
+			int[][] aFileRows) throws IOException {
+		// Labels added in their natural order, then the rows in file order
+		SampleStore sampleStore = new SampleStore();
+		int iFirstRank = partitions.aPartitionStarts[iPartition];
+		for (int iRank = iFirstRank; iRank < partitions.aPartitionStarts[iPartition + 1]; iRank++) {
+			sampleStore.putLabel(partitions.aSortedLbls[iRank]);
+		}
+		int[] aRows = new int[(int) Math.min(Integer.MAX_VALUE - 8, Files.size(partitionPath) / RECORD_SIZE)];
+		int[] aRowCnt = { 0 };
+		readRows(partitionPath, (iRank, lTimeStamp, iElapsed, bSuccess, iFileRow) -> {
+			sampleStore.addSample(iRank - iFirstRank, lTimeStamp, iElapsed, bSuccess);
+			aRows[aRowCnt[0]++] = iFileRow;
+		});
+		sampleStore.trimToSize();
+		aFileRows[0] = aRows;
+		return sampleStore;
+	}
+
+	/*
+	 * Labels in their natural order, by rank, and the partition of each rank.
+	 */
+	private static final class Partitions {
+		private final String[] aSortedLbls;
+		private final int[] aRankPartition;
+		// First rank of each partition, then the label count
+		private int[] aPartitionStarts;
+
+		private Partitions(int iLblCnt) {
+			aSortedLbls = new String[iLblCnt];
+			aRankPartition = new int[iLblCnt];
+		}
+	}
+
+	/*
+	 * Label dictionary counting the rows of each label.
+	 */
+	private static final class LabelCounter implements JtlScanner.LabelDictionary {
+		private final HashMap<String, Integer> hmLabelIds = new HashMap<>();
+		private final ArrayList<String> alLabels = new ArrayList<>();
+		private long[] aCounts = new long[16];
+
+		@Override
+		public int putLabel(String sLabel) {
+			Integer iLblId = hmLabelIds.get(sLabel);
+			if (iLblId == null) {
+				iLblId = alLabels.size();
+				hmLabelIds.put(sLabel, iLblId);
+				alLabels.add(sLabel);
+				if (iLblId == aCounts.length) {
+					aCounts = Arrays.copyOf(aCounts, 2 * aCounts.length);
+				}
+			}
+			return iLblId;
+		}
+
+		private void countRow(int iLblId) {
+			aCounts[iLblId]++;
+		}
+	}
+
+	/*
+	 * Carries an IOException of a partition file out of a row handler.
+	 */
+	private static final class PartitionWriteException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final IOException ioE;
+
+		private PartitionWriteException(IOException ioE) {
+			super(ioE);
+			this.ioE = ioE;
+		}
+	}
+
+}
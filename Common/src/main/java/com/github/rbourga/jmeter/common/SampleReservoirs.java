@@ -0,0 +1,307 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+/**
+ * Sampling mode counterpart of the SampleStore, for a quick triage of results
+ * files too large for an exact analysis. Each label keeps a random sample whose
+ * size is set by the target confidence and margin of error, e.g. 9,604 samples
+ * for proportions within 1% at 95% confidence, whatever its number of samples.
+ * The sample is stratified in time: the samples of a label are split in
+ * strata of consecutive samples, each with its own reservoir. When there are
+ * too many strata, adjacent strata are merged two by two, so that the strata
+ * always cover the whole test. Each stratum then gives a share of the sample
+ * in proportion to its number of samples. Labels small enough are kept whole,
+ * i.e. analysed exactly.
+ */
+public final class SampleReservoirs implements JtlScanner.LabelDictionary {
+
+	// Columns of the results file sampled, the label being always loaded
+	public static final String[] USED_COLUMNS = { JtlScanner.COL_TIMESTAMP, JtlScanner.COL_ELAPSED,
+			JtlScanner.COL_SUCCESS };
+	private static final int STRATA_CNT = 16; // even, for the merges two by two
+	private static final int INITIAL_STRATUM_CAPACITY = 16; // grown up to iStratumCapacity
+	private static final long RANDOM_SEED = 0x5EED; // same sample for the same file
+
+	private final double dConfidence;
+	private final double dMargin;
+	private final double dZScore;
+	private final int iSampleSize; // per label
+	private final int iStratumCapacity;
+	private final SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+	private final HashMap<String, Integer> hmLabelIds = new HashMap<>();
+	private final ArrayList<String> alLabels = new ArrayList<>();
+	private final ArrayList<LabelReservoir> alReservoirs = new ArrayList<>();
+
+	public SampleReservoirs(double dConfidence, double dMargin) {
+		if (isConfidenceOutOfRange(dConfidence) || isMarginOutOfRange(dMargin)) {
+			throw new IllegalArgumentException("Confidence and margin must be between 0 and 1 excluded.");
+		}
+		this.dConfidence = dConfidence;
+		this.dMargin = dMargin;
+		this.dZScore = calcZScore(dConfidence);
+		this.iSampleSize = getSampleSize(dConfidence, dMargin);
+		// At least half of the strata are complete: twice their share fits the sample size
+		this.iStratumCapacity = (int) ((2L * iSampleSize + STRATA_CNT - 1) / STRATA_CNT);
+	}
+
+	public static boolean isConfidenceOutOfRange(double dConfidence) {
+		return !(dConfidence > 0 && dConfidence < 1);
+	}
+
+	public static boolean isMarginOutOfRange(double dMargin) {
+		return !(dMargin > 0 && dMargin < 1);
+	}
+
+	public static int getSampleSize(double dConfidence, double dMargin) {
+		// Samples needed to estimate any proportion within the margin: z^2 * 0.25 / e^2
+		double dZ = calcZScore(dConfidence);
+		return (int) Math.min(Integer.MAX_VALUE, Math.ceil(dZ * dZ / (4 * dMargin * dMargin)));
+	}
+
+	/*
+	 * Loading methods
+	 */
+	@Override
+	public int putLabel(String sLabel) {
+		// Returns the id of the label, adding it with an empty reservoir if new
+		Integer iLblId = hmLabelIds.get(sLabel);
+		if (iLblId == null) {
+			iLblId = alLabels.size();
+			hmLabelIds.put(sLabel, iLblId);
+			alLabels.add(sLabel);
+			alReservoirs.add(new LabelReservoir());
+		}
+		return iLblId;
+	}
+
+	public void addSample(int iLblId, long lTimeStamp, long lElapsed, boolean bSuccess) {
+		alReservoirs.get(iLblId).add(lTimeStamp, (int) lElapsed, bSuccess);
+	}
+
+	/*
+	 * Query methods
+	 */
+	public boolean isEmpty() {
+		return alLabels.isEmpty();
+	}
+
+	public double getZScore() {
+		return dZScore;
+	}
+
+	public long getSeenCount(String sLabel) {
+		// Number of samples of the label in the results file
+		Integer iLblId = hmLabelIds.get(sLabel);
+		return (iLblId == null) ? 0 : alReservoirs.get(iLblId).lSeenCnt;
+	}
+
+	public SampleStore getSampleStore() {
+		/*
+		 * The samples kept, to be analysed as the whole results: each stratum gives a
+		 * share of the sample size of the label in proportion to its number of samples,
+		 * so that each sample has the same weight.
+		 */
+		SampleStore sampleStore = new SampleStore();
+		for (int iLblId = 0; iLblId < alLabels.size(); iLblId++) {
+			int iStoreLblId = sampleStore.putLabel(alLabels.get(iLblId));
+			alReservoirs.get(iLblId).addSamplesTo(sampleStore, iStoreLblId);
+		}
+		sampleStore.trimToSize();
+		return sampleStore;
+	}
+
+	public boolean isSampled(SampleStore sampleStore, String sLabel) {
+		// False if all the samples of the label have been kept in the store
+		return sampleStore.getLabelRowCount(sampleStore.getLabelId(sLabel)) < getSeenCount(sLabel);
+	}
+
+	public double getHalfWidth(SampleStore sampleStore, String sLabel, double dStdDev) {
+		/*
+		 * Half-width of the confidence interval of a mean estimated on the samples of
+		 * the label kept in the store, given the standard deviation of the estimated
+		 * value per sample, with the finite population correction.
+		 */
+		int iSampleCnt = sampleStore.getLabelRowCount(sampleStore.getLabelId(sLabel));
+		long lSeenCnt = getSeenCount(sLabel);
+		if (iSampleCnt == 0 || !isSampled(sampleStore, sLabel)) {
+			return 0; // exact
+		}
+		double dFpc = Math.sqrt((double) (lSeenCnt - iSampleCnt) / (lSeenCnt - 1));
+		return dZScore * dStdDev / Math.sqrt(iSampleCnt) * dFpc;
+	}
+
+	public String getErrorNote(String sIntervals) {
+		// To print in the reports computed from the samples, with the widest intervals found
+		String sConfidencePct = NumberServices.formatTrimmed(dConfidence * 100, 4);
+		return "Sampling mode: about " + iSampleSize + " samples per label (" + sConfidencePct + "% confidence, "
+				+ NumberServices.formatTrimmed(dMargin * 100, 4) + "% margin). " + sConfidencePct
+				+ "% confidence intervals at worst: " + sIntervals + ".";
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static double calcZScore(double dConfidence) {
+		/*
+		 * Two-sided critical value of the standard normal distribution, from Acklam's
+		 * rational approximation of its inverse (relative error below 1.2e-9).
+		 */
+		double dP = 1 - (1 - dConfidence) / 2;
+		double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+				1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+		double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+				6.680131188771972e+01, -1.328068155288572e+01 };
+		double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+				-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+		double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+				3.754408661907416e+00 };
+		if (dP > 1 - 0.02425) {
+			// Upper tail
+			double dQ = Math.sqrt(-2 * Math.log(1 - dP));
+			return -(((((c[0] * dQ + c[1]) * dQ + c[2]) * dQ + c[3]) * dQ + c[4]) * dQ + c[5])
+					/ ((((d[0] * dQ + d[1]) * dQ + d[2]) * dQ + d[3]) * dQ + 1);
+		}
+		// Central region, dP being at least 0.5
+		double dQ = dP - 0.5;
+		double dR = dQ * dQ;
+		return (((((a[0] * dR + a[1]) * dR + a[2]) * dR + a[3]) * dR + a[4]) * dR + a[5]) * dQ
+				/ (((((b[0] * dR + b[1]) * dR + b[2]) * dR + b[3]) * dR + b[4]) * dR + 1);
+	}
+
+	/*
+	 * Stratified reservoir of the samples of a label.
+	 */
+	private final class LabelReservoir {
+		private final ArrayList<Stratum> alStrata = new ArrayList<>();
+		private long lStratumLen = iStratumCapacity; // samples per stratum
+		private long lSeenCnt = 0;
+
+		private void add(long lTimeStamp, int iElapsed, boolean bSuccess) {
+			lSeenCnt++;
+			Stratum stratum = alStrata.isEmpty() ? null : alStrata.get(alStrata.size() - 1);
+			if (stratum == null || stratum.lSeenCnt == lStratumLen) {
+				if (alStrata.size() == STRATA_CNT) {
+					// All strata complete: halve their number by doubling their length
+					ArrayList<Stratum> alMerged = new ArrayList<>();
+					for (int i = 0; i < STRATA_CNT; i += 2) {
+						alMerged.add(alStrata.get(i).merge(alStrata.get(i + 1)));
+					}
+					alStrata.clear();
+					alStrata.addAll(alMerged);
+					lStratumLen *= 2;
+				}
+				stratum = new Stratum();
+				alStrata.add(stratum);
+			}
+			stratum.add(lTimeStamp, iElapsed, bSuccess);
+		}
+
+		private void addSamplesTo(SampleStore sampleStore, int iLblId) {
+			long lTargetCnt = Math.min(iSampleSize, lSeenCnt);
+			for (Stratum stratum : alStrata) {
+				int iKeptCnt = (int) Math.min(stratum.iSize,
+						Math.round((double) lTargetCnt * stratum.lSeenCnt / lSeenCnt));
+				if (iKeptCnt < stratum.iSize) {
+					stratum.shuffle(iKeptCnt); // random samples first, not the oldest ones
+				}
+				for (int i = 0; i < iKeptCnt; i++) {
+					sampleStore.addSample(iLblId, stratum.aTimeStamps[i], stratum.aElapsed[i], stratum.aSuccess[i]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Uniform random sample of a stratum, kept by reservoir sampling. Its arrays
+	 * grow with the samples kept, so that the many labels with few samples do not
+	 * each hold the capacity of a full stratum.
+	 */
+	private final class Stratum {
+		private long[] aTimeStamps = new long[Math.min(INITIAL_STRATUM_CAPACITY, iStratumCapacity)];
+		private int[] aElapsed = new int[aTimeStamps.length];
+		private boolean[] aSuccess = new boolean[aTimeStamps.length];
+		private int iSize = 0;
+		private long lSeenCnt = 0;
+
+		private void add(long lTimeStamp, int iElapsed, boolean bSuccess) {
+			lSeenCnt++;
+			int iPos = iSize;
+			if (iSize == iStratumCapacity) {
+				// Replaces a sample kept with probability capacity / seen
+				long lDraw = random.nextLong(lSeenCnt);
+				if (lDraw >= iStratumCapacity) {
+					return;
+				}
+				iPos = (int) lDraw;
+			} else {
+				ensureCapacity(++iSize);
+			}
+			set(iPos, lTimeStamp, iElapsed, bSuccess);
+		}
+
+		private void shuffle(int iCnt) {
+			// Moves iCnt random samples at the start, by a partial Fisher-Yates shuffle
+			for (int i = 0; i < iCnt; i++) {
+				int j = i + random.nextInt(iSize - i);
+				long lTimeStamp = aTimeStamps[j];
+				int iElapsed = aElapsed[j];
+				boolean bSuccess = aSuccess[j];
+				set(j, aTimeStamps[i], aElapsed[i], aSuccess[i]);
+				set(i, lTimeStamp, iElapsed, bSuccess);
+			}
+		}
+
+		private Stratum merge(Stratum other) {
+			/*
+			 * Both strata have the same number of samples: a random subset of the samples
+			 * kept by both is a random sample of the merged stratum.
+			 */
+			Stratum merged = new Stratum();
+			merged.lSeenCnt = lSeenCnt + other.lSeenCnt;
+			int iTotal = iSize + other.iSize;
+			int[] aOrder = new int[iTotal];
+			for (int i = 0; i < iTotal; i++) {
+				aOrder[i] = i;
+			}
+			int iKeptCnt = Math.min(iTotal, iStratumCapacity);
+			merged.ensureCapacity(iKeptCnt);
+			for (int i = 0; i < iKeptCnt; i++) {
+				// Partial Fisher-Yates shuffle
+				int j = i + random.nextInt(iTotal - i);
+				int iSwap = aOrder[i];
+				aOrder[i] = aOrder[j];
+				aOrder[j] = iSwap;
+				Stratum source = (aOrder[i] < iSize) ? this : other;
+				int iSrc = (aOrder[i] < iSize) ? aOrder[i] : aOrder[i] - iSize;
+				merged.set(i, source.aTimeStamps[iSrc], source.aElapsed[iSrc], source.aSuccess[iSrc]);
+			}
+			merged.iSize = iKeptCnt;
+			return merged;
+		}
+
+		private void ensureCapacity(int iCapacity) {
+			// Doubles the arrays until they hold iCapacity samples, up to iStratumCapacity
+			if (iCapacity <= aElapsed.length) {
+				return;
+			}
+			int iNewCapacity = (int) Math.min(iStratumCapacity, Math.max(iCapacity, 2L * aElapsed.length));
+			aTimeStamps = Arrays.copyOf(aTimeStamps, iNewCapacity);
+			aElapsed = Arrays.copyOf(aElapsed, iNewCapacity);
+			aSuccess = Arrays.copyOf(aSuccess, iNewCapacity);
+		}
+
+		private void set(int iPos, long lTimeStamp, int iElapsed, boolean bSuccess) {
+			aTimeStamps[iPos] = lTimeStamp;
+			aElapsed[iPos] = iElapsed;
+			aSuccess[iPos] = bSuccess;
+		}
+	}
+
+}
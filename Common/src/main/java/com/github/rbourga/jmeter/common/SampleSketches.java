@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Sketch mode counterpart of the SampleStore: the elapsed times of each label
+ * are summarized in a QuantileSketch of all its samples and one of its
+ * successful samples, so that the memory does not grow with the number of
+ * samples. Sketches of several threads or files merge into one.
+ */
+public final class SampleSketches implements JtlScanner.LabelDictionary {
+
+	// Columns of the results file summarized, the label being always loaded
+	public static final String[] USED_COLUMNS = { JtlScanner.COL_ELAPSED, JtlScanner.COL_SUCCESS };
+
+	private final double dRelAcc;
+	private final HashMap<String, Integer> hmLabelIds = new HashMap<>();
+	private final ArrayList<String> alLabels = new ArrayList<>();
+	private int[] aSortedLblIds = null; // built on demand, reset when a label is added
+	private final ArrayList<QuantileSketch> alSketches = new ArrayList<>();
+	private final ArrayList<QuantileSketch> alSuccessSketches = new ArrayList<>();
+
+	public SampleSketches(double dRelAcc) {
+		this.dRelAcc = dRelAcc;
+	}
+
+	public static boolean isRelAccOutOfRange(double dRelAcc) {
+		return !(dRelAcc > 0 && dRelAcc < 1);
+	}
+
+	/*
+	 * Loading methods
+	 */
+	@Override
+	public int putLabel(String sLabel) {
+		// Returns the id of the label, adding it with empty sketches if new
+		Integer iLblId = hmLabelIds.get(sLabel);
+		if (iLblId == null) {
+			iLblId = alLabels.size();
+			hmLabelIds.put(sLabel, iLblId);
+			alLabels.add(sLabel);
+			aSortedLblIds = null;
+			alSketches.add(new QuantileSketch(dRelAcc));
+			alSuccessSketches.add(new QuantileSketch(dRelAcc));
+		}
+		return iLblId;
+	}
+
+	public void addSample(int iLblId, long lElapsed, boolean bSuccess) {
+		alSketches.get(iLblId).add(lElapsed);
+		if (bSuccess) {
+			alSuccessSketches.get(iLblId).add(lElapsed);
+		}
+	}
+
+	public void merge(SampleSketches otherSketches) {
+		// Adds the samples of the other sketches, label by label
+		for (int iOtherId = 0; iOtherId < otherSketches.getLabelCount(); iOtherId++) {
+			int iLblId = putLabel(otherSketches.getLabel(iOtherId));
+			alSketches.get(iLblId).merge(otherSketches.alSketches.get(iOtherId));
+			alSuccessSketches.get(iLblId).merge(otherSketches.alSuccessSketches.get(iOtherId));
+		}
+	}
+
+	/*
+	 * Query methods
+	 */
+	public double getRelativeAccuracy() {
+		return dRelAcc;
+	}
+
+	public String getErrorNote() {
+		// To print in the reports computed from the sketches
+		return "Sketch mode: response time quantiles, thresholds and bins within "
+				+ NumberServices.formatTrimmed(dRelAcc * 100, 4) + "% relative error.";
+	}
+
+	public boolean isEmpty() {
+		return alLabels.isEmpty();
+	}
+
+	public int getLabelCount() {
+		return alLabels.size();
+	}
+
+	public String getLabel(int iLblId) {
+		return alLabels.get(iLblId);
+	}
+
+	public int[] getSortedLabelIds() {
+		// Label ids sorted by the natural order of the labels, as in the SampleStore
+		if (aSortedLblIds == null) {
+			aSortedLblIds = SampleStore.sortLabelIds(alLabels);
+		}
+		return aSortedLblIds;
+	}
+
+	public QuantileSketch getSketch(int iLblId) {
+		return alSketches.get(iLblId);
+	}
+
+	public QuantileSketch getSuccessSketch(int iLblId) {
+		return alSuccessSketches.get(iLblId);
+	}
+
+}
@@ -0,0 +1,450 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Columnar store of the samples of a results file. Only the columns used by
+ * the analyses are kept, as primitives: labels are dictionary-encoded to int
+ * ids, timeStamp and elapsed are stored in long and int arrays, success in a
+ * bitset. Rows keep the order of the results file and each label has an index
+ * of its row numbers.
+ */
+public final class SampleStore implements JtlScanner.LabelDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INITIAL_LABEL_CAPACITY = 16;
+
+	// Label dictionary: ids are given in order of first appearance
+	private HashMap<String, Integer> hmLabelIds = new HashMap<>();
+	private ArrayList<String> alLabels = new ArrayList<>();
+	private int[] aSortedLblIds = null; // built on demand, reset when a label is added
+
+	// Columns, indexed by row number
+	private long[] aTimeStamps = new long[INITIAL_CAPACITY];
+	private int[] aElapsed = new int[INITIAL_CAPACITY];
+	private BitSet bsSuccess = new BitSet(INITIAL_CAPACITY);
+	private int iRowCnt = 0;
+
+	// Per-label index: row numbers of each label in file order
+	private int[][] aLblRows = new int[INITIAL_LABEL_CAPACITY][];
+	private int[] aLblRowCnt = new int[INITIAL_LABEL_CAPACITY];
+
+	public SampleStore() {
+	}
+
+	SampleStore(ArrayList<String> alLabels, long[] aTimeStamps, int[] aElapsed, BitSet bsSuccess, int[][] aLblRows) {
+		// Rebuilds a trimmed store from its columns, e.g. read back from a cache file
+		this.alLabels = alLabels;
+		this.aTimeStamps = aTimeStamps;
+		this.aElapsed = aElapsed;
+		this.bsSuccess = bsSuccess;
+		this.iRowCnt = aElapsed.length;
+		this.aLblRows = aLblRows;
+		this.aLblRowCnt = new int[aLblRows.length];
+		for (int i = 0; i < aLblRows.length; i++) {
+			hmLabelIds.put(alLabels.get(i), i);
+			aLblRowCnt[i] = aLblRows[i].length;
+		}
+	}
+
+	/*
+	 * Loading methods
+	 */
+	@Override
+	public int putLabel(String sLabel) {
+		// Returns the id of the label, adding it to the dictionary if new
+		Integer iLblId = hmLabelIds.get(sLabel);
+		if (iLblId == null) {
+			iLblId = alLabels.size();
+			hmLabelIds.put(sLabel, iLblId);
+			alLabels.add(sLabel);
+			aSortedLblIds = null;
+			if (iLblId == aLblRows.length) {
+				int iCapacity = Math.max(iLblId * 2, INITIAL_LABEL_CAPACITY);
+				aLblRows = Arrays.copyOf(aLblRows, iCapacity);
+				aLblRowCnt = Arrays.copyOf(aLblRowCnt, iCapacity);
+			}
+			aLblRows[iLblId] = new int[INITIAL_LABEL_CAPACITY];
+		}
+		return iLblId;
+	}
+
+	public int addSample(String sLabel, long lTimeStamp, int iElapsed, boolean bSuccess) {
+		return addSample(putLabel(sLabel), lTimeStamp, iElapsed, bSuccess);
+	}
+
+	public int addSample(int iLblId, long lTimeStamp, int iElapsed, boolean bSuccess) {
+		// Returns the row number of the new sample
+		int iRow = iRowCnt;
+		if (iRow == aElapsed.length) {
+			int iCapacity = Math.max(iRow * 2, INITIAL_CAPACITY);
+			aTimeStamps = Arrays.copyOf(aTimeStamps, iCapacity);
+			aElapsed = Arrays.copyOf(aElapsed, iCapacity);
+		}
+		aTimeStamps[iRow] = lTimeStamp;
+		aElapsed[iRow] = iElapsed;
+		if (bSuccess) {
+			bsSuccess.set(iRow);
+		}
+		iRowCnt++;
+
+		// Update the index of the label
+		int[] aRows = aLblRows[iLblId];
+		int iCnt = aLblRowCnt[iLblId];
+		if (iCnt == aRows.length) {
+			aRows = Arrays.copyOf(aRows, Math.max(iCnt * 2, INITIAL_LABEL_CAPACITY));
+			aLblRows[iLblId] = aRows;
+		}
+		aRows[iCnt] = iRow;
+		aLblRowCnt[iLblId] = iCnt + 1;
+		return iRow;
+	}
+
+	public void append(SampleStore otherStore) {
+		/*
+		 * Appends the rows of another store after the rows of this one. The labels of
+		 * the other store are added in their order of first appearance, so appending
+		 * the stores of consecutive parts of a file gives the same store as loading the
+		 * whole file at once.
+		 */
+		int iBaseRow = iRowCnt;
+		int iNewRowCnt = iRowCnt + otherStore.iRowCnt;
+		if (iNewRowCnt > aElapsed.length) {
+			int iCapacity = Math.max(iNewRowCnt, aElapsed.length * 2);
+			aTimeStamps = Arrays.copyOf(aTimeStamps, iCapacity);
+			aElapsed = Arrays.copyOf(aElapsed, iCapacity);
+		}
+		System.arraycopy(otherStore.aTimeStamps, 0, aTimeStamps, iBaseRow, otherStore.iRowCnt);
+		System.arraycopy(otherStore.aElapsed, 0, aElapsed, iBaseRow, otherStore.iRowCnt);
+		for (int iRow = otherStore.bsSuccess.nextSetBit(0); iRow >= 0; iRow = otherStore.bsSuccess.nextSetBit(iRow + 1)) {
+			bsSuccess.set(iBaseRow + iRow);
+		}
+		iRowCnt = iNewRowCnt;
+
+		// Append the index of each label, shifted by the rows already stored
+		for (int iOtherId = 0; iOtherId < otherStore.getLabelCount(); iOtherId++) {
+			int iLblId = putLabel(otherStore.getLabel(iOtherId));
+			int iOtherCnt = otherStore.aLblRowCnt[iOtherId];
+			int iCnt = aLblRowCnt[iLblId];
+			if (iCnt + iOtherCnt > aLblRows[iLblId].length) {
+				aLblRows[iLblId] = Arrays.copyOf(aLblRows[iLblId], Math.max(iCnt + iOtherCnt, iCnt * 2));
+			}
+			int[] aRows = aLblRows[iLblId];
+			int[] aOtherRows = otherStore.aLblRows[iOtherId];
+			for (int i = 0; i < iOtherCnt; i++) {
+				aRows[iCnt + i] = iBaseRow + aOtherRows[i];
+			}
+			aLblRowCnt[iLblId] = iCnt + iOtherCnt;
+		}
+	}
+
+	public static SampleStore mergeByTimeStamp(SampleStore... aStores) {
+		/*
+		 * k-way merge of the stores of several results files, e.g. one per load
+		 * generator: the rows of each store keep their order and the store whose next
+		 * row has the smallest timeStamp gives the next merged row (the first store on
+		 * ties). The store of each merged row is found first; the columns are then
+		 * merged one at a time, each column of the stores being released once merged,
+		 * so that the samples are not held twice. The stores are left empty.
+		 */
+		int iTotalRows = 0;
+		for (SampleStore store : aStores) {
+			iTotalRows = Math.addExact(iTotalRows, store.iRowCnt);
+		}
+
+		// 1. Store of each merged row, the rows of a store being taken in order
+		int[] aRowStores = new int[iTotalRows];
+		int[] aNextRows = new int[aStores.length];
+		PriorityQueue<Integer> pqStores = new PriorityQueue<>((iA, iB) -> {
+			int iCmp = Long.compare(aStores[iA].aTimeStamps[aNextRows[iA]], aStores[iB].aTimeStamps[aNextRows[iB]]);
+			return (iCmp != 0) ? iCmp : Integer.compare(iA, iB);
+		});
+		for (int i = 0; i < aStores.length; i++) {
+			if (!aStores[i].isEmpty()) {
+				pqStores.add(i);
+			}
+		}
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iStore = pqStores.poll();
+			aRowStores[iRow] = iStore;
+			if (++aNextRows[iStore] < aStores[iStore].iRowCnt) {
+				pqStores.add(iStore);
+			}
+		}
+
+		// 2. Columns
+		SampleStore mergedStore = new SampleStore();
+		mergedStore.iRowCnt = iTotalRows;
+		mergedStore.aTimeStamps = new long[iTotalRows];
+		Arrays.fill(aNextRows, 0);
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iStore = aRowStores[iRow];
+			mergedStore.aTimeStamps[iRow] = aStores[iStore].aTimeStamps[aNextRows[iStore]++];
+		}
+		for (SampleStore store : aStores) {
+			store.aTimeStamps = new long[0];
+		}
+		mergedStore.aElapsed = new int[iTotalRows];
+		Arrays.fill(aNextRows, 0);
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iStore = aRowStores[iRow];
+			mergedStore.aElapsed[iRow] = aStores[iStore].aElapsed[aNextRows[iStore]++];
+		}
+		for (SampleStore store : aStores) {
+			store.aElapsed = new int[0];
+		}
+		Arrays.fill(aNextRows, 0);
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iStore = aRowStores[iRow];
+			if (aStores[iStore].bsSuccess.get(aNextRows[iStore]++)) {
+				mergedStore.bsSuccess.set(iRow);
+			}
+		}
+		for (SampleStore store : aStores) {
+			store.bsSuccess = new BitSet();
+		}
+
+		// 3. Labels, added in merged order of first appearance, and their index
+		int[][] aRowLblIds = new int[aStores.length][];
+		for (int i = 0; i < aStores.length; i++) {
+			SampleStore store = aStores[i];
+			aRowLblIds[i] = new int[store.iRowCnt];
+			for (int iLblId = 0; iLblId < store.getLabelCount(); iLblId++) {
+				int[] aRows = store.aLblRows[iLblId];
+				for (int j = 0; j < store.aLblRowCnt[iLblId]; j++) {
+					aRowLblIds[i][aRows[j]] = iLblId;
+				}
+				store.aLblRows[iLblId] = null;
+			}
+		}
+		int[][] aLblIdMaps = new int[aStores.length][];
+		for (int i = 0; i < aStores.length; i++) {
+			aLblIdMaps[i] = new int[aStores[i].getLabelCount()];
+			Arrays.fill(aLblIdMaps[i], -1); // mapped on first appearance in the merge
+		}
+		int[] aMergedRowLblIds = new int[iTotalRows];
+		Arrays.fill(aNextRows, 0);
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iStore = aRowStores[iRow];
+			int iLblId = aRowLblIds[iStore][aNextRows[iStore]++];
+			int iMergedLblId = aLblIdMaps[iStore][iLblId];
+			if (iMergedLblId == -1) {
+				iMergedLblId = mergedStore.putLabel(aStores[iStore].getLabel(iLblId));
+				aLblIdMaps[iStore][iLblId] = iMergedLblId;
+			}
+			aMergedRowLblIds[iRow] = iMergedLblId;
+			mergedStore.aLblRowCnt[iMergedLblId]++;
+		}
+		aRowLblIds = null;
+		aRowStores = null;
+		for (int iLblId = 0; iLblId < mergedStore.getLabelCount(); iLblId++) {
+			mergedStore.aLblRows[iLblId] = new int[mergedStore.aLblRowCnt[iLblId]];
+			mergedStore.aLblRowCnt[iLblId] = 0;
+		}
+		for (int iRow = 0; iRow < iTotalRows; iRow++) {
+			int iLblId = aMergedRowLblIds[iRow];
+			mergedStore.aLblRows[iLblId][mergedStore.aLblRowCnt[iLblId]++] = iRow;
+		}
+		for (SampleStore store : aStores) {
+			store.clear();
+		}
+		return mergedStore;
+	}
+
+	public void trimToSize() {
+		// Releases the spare capacity once loading is over
+		if (aElapsed.length != iRowCnt) {
+			aTimeStamps = Arrays.copyOf(aTimeStamps, iRowCnt);
+			aElapsed = Arrays.copyOf(aElapsed, iRowCnt);
+		}
+		for (int i = 0; i < alLabels.size(); i++) {
+			if (aLblRows[i].length != aLblRowCnt[i]) {
+				aLblRows[i] = Arrays.copyOf(aLblRows[i], aLblRowCnt[i]);
+			}
+		}
+	}
+
+	/*
+	 * Access methods
+	 */
+	public boolean isEmpty() {
+		return iRowCnt == 0;
+	}
+
+	public int getRowCount() {
+		return iRowCnt;
+	}
+
+	public int getLabelCount() {
+		return alLabels.size();
+	}
+
+	public String getLabel(int iLblId) {
+		return alLabels.get(iLblId);
+	}
+
+	public int getLabelId(String sLabel) {
+		// Returns -1 if the label is unknown
+		Integer iLblId = hmLabelIds.get(sLabel);
+		return (iLblId == null) ? -1 : iLblId;
+	}
+
+	public int[] getSortedLabelIds() {
+		// Label ids sorted by the natural order of the labels, sorted once until a
+		// label is added. Not to be modified.
+		if (aSortedLblIds == null) {
+			aSortedLblIds = sortLabelIds(alLabels);
+		}
+		return aSortedLblIds;
+	}
+
+	public int getLabelRowCount(int iLblId) {
+		return aLblRowCnt[iLblId];
+	}
+
+	public int[] getLabelRows(int iLblId) {
+		// Row numbers of the label in file order
+		int[] aRows = aLblRows[iLblId];
+		return (aRows.length == aLblRowCnt[iLblId]) ? aRows : Arrays.copyOf(aRows, aLblRowCnt[iLblId]);
+	}
+
+	public int getLabelRow(int iLblId, int iIndex) {
+		// Row number of the iIndex-th sample of the label, without copying its rows
+		return aLblRows[iLblId][iIndex];
+	}
+
+	public long getTimeStamp(int iRow) {
+		return aTimeStamps[iRow];
+	}
+
+	public int getElapsed(int iRow) {
+		return aElapsed[iRow];
+	}
+
+	public boolean isSuccess(int iRow) {
+		return bsSuccess.get(iRow);
+	}
+
+	public double[] getElapsedValues(int[] aRows) {
+		// Elapsed times of the given rows, as expected by MathMoments
+		double[] aValues = new double[aRows.length];
+		for (int i = 0; i < aRows.length; i++) {
+			aValues[i] = aElapsed[aRows[i]];
+		}
+		return aValues;
+	}
+
+	public MathMoments.Accumulator accumulateElapsed(int[] aRows) {
+		// Mean and variance of the elapsed times of the given rows, without copying them
+		MathMoments.Accumulator accumulator = new MathMoments.Accumulator();
+		for (int iRow : aRows) {
+			accumulator.add(aElapsed[iRow]);
+		}
+		return accumulator;
+	}
+
+	public ElapsedHistogram crteElapsedHistogram(int[] aRows) {
+		/*
+		 * Counts of the elapsed times of the given rows, for exact percentiles without
+		 * sorting, unless their range is too large for the number of rows: they are
+		 * then sorted once.
+		 */
+		int iMin = 0, iMax = 0;
+		if (aRows.length > 0) {
+			iMin = Integer.MAX_VALUE;
+			iMax = Integer.MIN_VALUE;
+			for (int iRow : aRows) {
+				iMin = Math.min(iMin, aElapsed[iRow]);
+				iMax = Math.max(iMax, aElapsed[iRow]);
+			}
+		}
+		if (!ElapsedHistogram.isCountable(iMin, iMax, aRows.length)) {
+			int[] aSorted = new int[aRows.length];
+			for (int i = 0; i < aRows.length; i++) {
+				aSorted[i] = aElapsed[aRows[i]];
+			}
+			Arrays.sort(aSorted);
+			return ElapsedHistogram.crteFromSorted(aSorted);
+		}
+		ElapsedHistogram elapsedHistogram = new ElapsedHistogram(iMin, iMax);
+		for (int iRow : aRows) {
+			elapsedHistogram.add(aElapsed[iRow]);
+		}
+		return elapsedHistogram;
+	}
+
+	public SortedSamples crteSortedElapsed(int[] aRows) {
+		// Elapsed times of the given rows sorted once, by counting if their range is small enough
+		int iMin = Integer.MAX_VALUE, iMax = Integer.MIN_VALUE;
+		for (int iRow : aRows) {
+			iMin = Math.min(iMin, aElapsed[iRow]);
+			iMax = Math.max(iMax, aElapsed[iRow]);
+		}
+		if (aRows.length == 0 || !ElapsedHistogram.isCountable(iMin, iMax, aRows.length)) {
+			return SortedSamples.crteSortingValues(getElapsedValues(aRows));
+		}
+		ElapsedHistogram elapsedHistogram = new ElapsedHistogram(iMin, iMax);
+		for (int iRow : aRows) {
+			elapsedHistogram.add(aElapsed[iRow]);
+		}
+		return SortedSamples.crteFromHistogram(elapsedHistogram);
+	}
+
+	public int[] getSuccessRows(int[] aRows) {
+		// Keeps only the successful rows, in the same order
+		return Arrays.stream(aRows).filter(iRow -> bsSuccess.get(iRow)).toArray();
+	}
+
+	/*
+	 * Column methods, for writing the store to a cache file after trimToSize()
+	 */
+	long[] getTimeStampColumn() {
+		return aTimeStamps;
+	}
+
+	int[] getElapsedColumn() {
+		return aElapsed;
+	}
+
+	BitSet getSuccessColumn() {
+		return bsSuccess;
+	}
+
+	static int[] sortLabelIds(List<String> listLabels) {
+		// Ids of the labels of the list, in the natural order of the labels
+		Integer[] aIds = new Integer[listLabels.size()];
+		for (int i = 0; i < aIds.length; i++) {
+			aIds[i] = i;
+		}
+		Arrays.sort(aIds, (iId1, iId2) -> listLabels.get(iId1).compareTo(listLabels.get(iId2)));
+		int[] aSortedIds = new int[aIds.length];
+		for (int i = 0; i < aIds.length; i++) {
+			aSortedIds[i] = aIds[i];
+		}
+		return aSortedIds;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private void clear() {
+		hmLabelIds = new HashMap<>();
+		alLabels = new ArrayList<>();
+		aSortedLblIds = null;
+		aTimeStamps = new long[0];
+		aElapsed = new int[0];
+		bsSuccess = new BitSet();
+		iRowCnt = 0;
+		aLblRows = new int[INITIAL_LABEL_CAPACITY][];
+		aLblRowCnt = new int[INITIAL_LABEL_CAPACITY];
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Binary columnar copy of a SampleStore, saved next to the results file so that
+ * the next analyses of the same file map it instead of parsing the CSV again.
+ * The cache is only used if the size, last modification time and delimiter of
+ * the results file and the timestamp format of the JMeter save service are the
+ * ones it was built from, and if it was built with the columns requested by the
+ * analysis: the rows too short for the columns loaded being skipped, a cache of
+ * more columns may hold fewer rows.
+ *
+ * Layout: header, timestamp format (UTF-8 bytes), labels (length and UTF-8
+ * bytes), timeStamp column, elapsed column, success bitset words, row count of
+ * each label, rows of each label.
+ */
+public final class SampleStoreCache {
+
+	public static final String CACHE_SUFFIX = ".store";
+	// Cache being written, renamed once complete
+	public static final String CACHE_TMP_SUFFIX = CACHE_SUFFIX + ".tmp";
+
+	private static final long MAGIC = 0x4A544C53544F5245L; // "JTLSTORE"
+	private static final int VERSION = 3; // 2: formatted timestamps decoded, 3: timestamp format
+	// magic, version, file size, file time, delimiter, columns, rows, labels, labels bytes,
+	// timestamp format bytes
+	private static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	// Columns held by a cache, the label being always present
+	private static final int MASK_TIMESTAMP = 1;
+	private static final int MASK_ELAPSED = 2;
+	private static final int MASK_SUCCESS = 4;
+
+	public static String getCachePath(String sFilePath) {
+		return sFilePath + CACHE_SUFFIX;
+	}
+
+	public static int getColumnMask(String... aColumns) {
+		// Same convention as FileServices.loadSamplesIntoStore(): no columns means all
+		if (aColumns.length == 0) {
+			return MASK_TIMESTAMP | MASK_ELAPSED | MASK_SUCCESS;
+		}
+		int iMask = 0;
+		for (String sCol : aColumns) {
+			if (JtlScanner.COL_TIMESTAMP.equals(sCol)) {
+				iMask |= MASK_TIMESTAMP;
+			} else if (JtlScanner.COL_ELAPSED.equals(sCol)) {
+				iMask |= MASK_ELAPSED;
+			} else if (JtlScanner.COL_SUCCESS.equals(sCol)) {
+				iMask |= MASK_SUCCESS;
+			}
+		}
+		return iMask;
+	}
+
+	public static SampleStore load(String sFilePath, char cDelim, int iColMask) throws IOException {
+		// Returns null if there is no cache matching the results file
+		Path cachePath = Paths.get(getCachePath(sFilePath));
+		if (!Files.isRegularFile(cachePath)) {
+			return null;
+		}
+		BasicFileAttributes fileAttrs = Files.readAttributes(Paths.get(sFilePath), BasicFileAttributes.class);
+		try (FileChannel fileChnl = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+			long lCacheSize = fileChnl.size();
+			if (lCacheSize < HEADER_SIZE) {
+				return null;
+			}
+			MappedByteBuffer hdrBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (hdrBuf.getLong() != MAGIC || hdrBuf.getInt() != VERSION || hdrBuf.getLong() != fileAttrs.size()
+					|| hdrBuf.getLong() != fileAttrs.lastModifiedTime().toMillis() || hdrBuf.getInt() != cDelim) {
+				return null;
+			}
+			int iCachedMask = hdrBuf.getInt();
+			if (iCachedMask != iColMask) {
+				return null; // built for an analysis needing other columns
+			}
+			int iRowCnt = hdrBuf.getInt();
+			int iLblCnt = hdrBuf.getInt();
+			int iLblBytes = hdrBuf.getInt();
+			int iFmtBytes = hdrBuf.getInt();
+			int iWordCnt = (iRowCnt + 63) / 64;
+			long lExpectedSize = (long) HEADER_SIZE + iFmtBytes + iLblBytes + 8L * iRowCnt + 4L * iRowCnt
+					+ 8L * iWordCnt + 4L * iLblCnt + 4L * iRowCnt;
+			if (lCacheSize != lExpectedSize) {
+				return null; // truncated
+			}
+
+			// Timestamp format the formatted timestamps were decoded with
+			long lPos = HEADER_SIZE;
+			byte[] aFmtBytes = new byte[iFmtBytes];
+			fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, iFmtBytes).get(aFmtBytes);
+			if (!Arrays.equals(aFmtBytes, getTimeStampFormatBytes())) {
+				return null;
+			}
+			lPos += iFmtBytes;
+
+			// Labels
+			MappedByteBuffer lblBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, iLblBytes);
+			ArrayList<String> alLabels = new ArrayList<>(iLblCnt);
+			for (int i = 0; i < iLblCnt; i++) {
+				byte[] aLblBytes = new byte[lblBuf.getInt()];
+				lblBuf.get(aLblBytes);
+				alLabels.add(new String(aLblBytes, StandardCharsets.UTF_8));
+			}
+			lPos += iLblBytes;
+
+			// Columns
+			long[] aTimeStamps = new long[iRowCnt];
+			fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, 8L * iRowCnt).asLongBuffer().get(aTimeStamps);
+			lPos += 8L * iRowCnt;
+			int[] aElapsed = new int[iRowCnt];
+			fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, 4L * iRowCnt).asIntBuffer().get(aElapsed);
+			lPos += 4L * iRowCnt;
+			long[] aSuccessWords = new long[iWordCnt];
+			fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, 8L * iWordCnt).asLongBuffer().get(aSuccessWords);
+			lPos += 8L * iWordCnt;
+
+			// Index of the labels
+			int[] aLblRowCnt = new int[iLblCnt];
+			fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, 4L * iLblCnt).asIntBuffer().get(aLblRowCnt);
+			lPos += 4L * iLblCnt;
+			MappedByteBuffer rowsBuf = fileChnl.map(FileChannel.MapMode.READ_ONLY, lPos, 4L * iRowCnt);
+			int[][] aLblRows = new int[iLblCnt][];
+			for (int i = 0; i < iLblCnt; i++) {
+				aLblRows[i] = new int[aLblRowCnt[i]];
+				rowsBuf.asIntBuffer().get(aLblRows[i]);
+				rowsBuf.position(rowsBuf.position() + 4 * aLblRowCnt[i]);
+			}
+			return new SampleStore(alLabels, aTimeStamps, aElapsed, BitSet.valueOf(aSuccessWords), aLblRows);
+		}
+	}
+
+	public static void save(String sFilePath, char cDelim, int iColMask, SampleStore sampleStore) throws IOException {
+		/*
+		 * Writes the store, trimmed to its size, to a temporary file that then replaces
+		 * the cache so that a reader never sees a partial cache.
+		 */
+		BasicFileAttributes fileAttrs = Files.readAttributes(Paths.get(sFilePath), BasicFileAttributes.class);
+		Path cachePath = Paths.get(getCachePath(sFilePath));
+		Path tmpPath = Paths.get(sFilePath + CACHE_TMP_SUFFIX);
+
+		int iRowCnt = sampleStore.getRowCount();
+		int iLblCnt = sampleStore.getLabelCount();
+		ByteArrayOutputStream baosLabels = new ByteArrayOutputStream();
+		DataOutputStream dosLabels = new DataOutputStream(baosLabels);
+		for (int i = 0; i < iLblCnt; i++) {
+			byte[] aLblBytes = sampleStore.getLabel(i).getBytes(StandardCharsets.UTF_8);
+			dosLabels.writeInt(aLblBytes.length);
+			dosLabels.write(aLblBytes);
+		}
+		dosLabels.flush();
+		byte[] aFmtBytes = getTimeStampFormatBytes();
+
+		try (FileChannel fileChnl = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer writeBuf = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+			writeBuf.putLong(MAGIC).putInt(VERSION).putLong(fileAttrs.size())
+					.putLong(fileAttrs.lastModifiedTime().toMillis()).putInt(cDelim).putInt(iColMask).putInt(iRowCnt)
+					.putInt(iLblCnt).putInt(baosLabels.size()).putInt(aFmtBytes.length);
+			writeFully(fileChnl, writeBuf);
+			writeFully(fileChnl, ByteBuffer.wrap(aFmtBytes));
+			writeFully(fileChnl, ByteBuffer.wrap(baosLabels.toByteArray()));
+
+			writeLongs(fileChnl, writeBuf, sampleStore.getTimeStampColumn(), iRowCnt);
+			writeInts(fileChnl, writeBuf, sampleStore.getElapsedColumn(), iRowCnt);
+			long[] aSuccessWords = sampleStore.getSuccessColumn().toLongArray();
+			long[] aAllWords = new long[(iRowCnt + 63) / 64];
+			System.arraycopy(aSuccessWords, 0, aAllWords, 0, Math.min(aSuccessWords.length, aAllWords.length));
+			writeLongs(fileChnl, writeBuf, aAllWords, aAllWords.length);
+
+			int[] aLblRowCnt = new int[iLblCnt];
+			for (int i = 0; i < iLblCnt; i++) {
+				aLblRowCnt[i] = sampleStore.getLabelRowCount(i);
+			}
+			writeInts(fileChnl, writeBuf, aLblRowCnt, iLblCnt);
+			for (int i = 0; i < iLblCnt; i++) {
+				writeInts(fileChnl, writeBuf, sampleStore.getLabelRows(i), aLblRowCnt[i]);
+			}
+		}
+		Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static byte[] getTimeStampFormatBytes() {
+		// Empty if the timestamps are saved in ms
+		String sPattern = TimeStampDecoder.getSaveServicePattern();
+		return (sPattern == null) ? new byte[0] : sPattern.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void writeFully(FileChannel fileChnl, ByteBuffer byteBuf) throws IOException {
+		// Writes the buffer from 0 to its position, or whole if not written yet
+		if (byteBuf.position() > 0) {
+			byteBuf.flip();
+		}
+		while (byteBuf.hasRemaining()) {
+			fileChnl.write(byteBuf);
+		}
+		byteBuf.clear();
+	}
+
+	private static void writeLongs(FileChannel fileChnl, ByteBuffer writeBuf, long[] aValues, int iCnt)
+			throws IOException {
+		for (int i = 0; i < iCnt;) {
+			int iChunk = Math.min(iCnt - i, writeBuf.capacity() / 8);
+			writeBuf.asLongBuffer().put(aValues, i, iChunk);
+			writeBuf.position(iChunk * 8);
+			writeFully(fileChnl, writeBuf);
+			i += iChunk;
+		}
+	}
+
+	private static void writeInts(FileChannel fileChnl, ByteBuffer writeBuf, int[] aValues, int iCnt)
+			throws IOException {
+		for (int i = 0; i < iCnt;) {
+			int iChunk = Math.min(iCnt - i, writeBuf.capacity() / 4);
+			writeBuf.asIntBuffer().put(aValues, i, iChunk);
+			writeBuf.position(iChunk * 4);
+			writeFully(fileChnl, writeBuf);
+			i += iChunk;
+		}
+	}
+
+}
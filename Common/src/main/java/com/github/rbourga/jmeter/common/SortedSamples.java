@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.Arrays;
+
+/**
+ * Values of a series sorted once, e.g. the elapsed times of a label, shared by
+ * the analyses that need its order statistics. Min, max, any value by rank and
+ * any percentile are read in O(1); the rank of a value and the counts below a
+ * threshold in O(log n) by binary search. Removing the values above a limit,
+ * as the iterations of the outlier detection do, only shortens the view.
+ */
+public final class SortedSamples {
+
+	private final double[] aSorted;
+	private int iSize; // values kept, after removeAbove()
+
+	private SortedSamples(double[] aSorted) {
+		this.aSorted = aSorted;
+		this.iSize = aSorted.length;
+	}
+
+	public static SortedSamples crteFromValues(double[] aValues) {
+		// The values are copied, so the caller's array is left unchanged
+		double[] aSorted = Arrays.copyOf(aValues, aValues.length);
+		Arrays.sort(aSorted);
+		return new SortedSamples(aSorted);
+	}
+
+	static SortedSamples crteSortingValues(double[] aValues) {
+		// Same without copying, for a new array of values that the caller no longer uses
+		Arrays.sort(aValues);
+		return new SortedSamples(aValues);
+	}
+
+	public static SortedSamples crteFromHistogram(ElapsedHistogram elapsedHistogram) {
+		// Counting sort: the values are read in ascending order from the histogram
+		double[] aSorted = new double[Math.toIntExact(elapsedHistogram.getCount())];
+		int[] aPos = { 0 };
+		elapsedHistogram.forEachValue((iValue, iCount) -> {
+			Arrays.fill(aSorted, aPos[0], aPos[0] + iCount, iValue);
+			aPos[0] += iCount;
+		});
+		return new SortedSamples(aSorted);
+	}
+
+	public int getCount() {
+		return iSize;
+	}
+
+	public double getMin() {
+		return (iSize == 0) ? Double.NaN : aSorted[0];
+	}
+
+	public double getMax() {
+		return (iSize == 0) ? Double.NaN : aSorted[iSize - 1];
+	}
+
+	public double getValueAtRank(int iRank) {
+		// Value of the given order statistic, from 1 (min) to getCount() (max)
+		if (iRank < 1 || iRank > iSize) {
+			throw new IllegalArgumentException("Rank out of range: " + iRank + ".");
+		}
+		return aSorted[iRank - 1];
+	}
+
+	public double getPercentile(double dP) {
+		/*
+		 * Same estimation as StatUtils.percentile(): interpolation between the order
+		 * statistics around position p / 100 * (n + 1), computed in the same order.
+		 */
+		if (iSize == 0) {
+			return Double.NaN;
+		}
+		double dPos = dP / 100 * (iSize + 1);
+		if (dPos < 1) {
+			return aSorted[0];
+		}
+		if (dPos >= iSize) {
+			return aSorted[iSize - 1];
+		}
+		int iLowRank = (int) Math.floor(dPos);
+		double dLower = aSorted[iLowRank - 1];
+		double dUpper = aSorted[iLowRank];
+		return dLower + (dPos - iLowRank) * (dUpper - dLower);
+	}
+
+	public int getRankOfValue(double dValue) {
+		// Highest rank of the values not greater than dValue, 0 if there are none
+		return getCountAtOrBelow(dValue);
+	}
+
+	public int getCountAtOrBelow(double dLimit) {
+		return searchFirstAbove(dLimit, true);
+	}
+
+	public int getCountBelow(double dLimit) {
+		return searchFirstAbove(dLimit, false);
+	}
+
+	public int removeAbove(double dLimit) {
+		// Removes the values greater than dLimit, returns their count
+		int iKept = getCountAtOrBelow(dLimit);
+		int iRemoved = iSize - iKept;
+		iSize = iKept;
+		return iRemoved;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private int searchFirstAbove(double dLimit, boolean bInclusive) {
+		// Position of the first value greater than dLimit (or not lower if exclusive)
+		int iLow = 0, iHigh = iSize;
+		while (iLow < iHigh) {
+			int iMid = (iLow + iHigh) >>> 1;
+			if (bInclusive ? aSorted[iMid] <= dLimit : aSorted[iMid] < dLimit) {
+				iLow = iMid + 1;
+			} else {
+				iHigh = iMid;
+			}
+		}
+		return iLow;
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.util.Arrays;
+
+/**
+ * Space-Saving counter of the most frequent keys of a stream, in memory bounded
+ * by its capacity whatever the number of distinct keys. Each monitored key has
+ * a counter; a key not monitored takes the counter of the least counted key,
+ * whose count it inherits as its possible over-estimation. Any key seen more
+ * than n / capacity times is monitored. The keys are dense ids, e.g. the ids
+ * of a label dictionary.
+ */
+public final class SpaceSavingCounter {
+
+	private final int iCapacity;
+	private final int[] aSlotKeys;
+	private final long[] aSlotCounts;
+	private final long[] aSlotErrors;
+	// Min-heap of the slots on their count, and position of each slot in it
+	private final int[] aHeap;
+	private final int[] aHeapPos;
+	private int iSlotCnt = 0;
+	// Slot of each key, -1 if not monitored
+	private int[] aKeySlots = new int[0];
+
+	public SpaceSavingCounter(int iCapacity) {
+		if (iCapacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: " + iCapacity + ".");
+		}
+		this.iCapacity = iCapacity;
+		aSlotKeys = new int[iCapacity];
+		aSlotCounts = new long[iCapacity];
+		aSlotErrors = new long[iCapacity];
+		aHeap = new int[iCapacity];
+		aHeapPos = new int[iCapacity];
+	}
+
+	public void add(int iKey) {
+		if (iKey >= aKeySlots.length) {
+			int iOldLen = aKeySlots.length;
+			aKeySlots = Arrays.copyOf(aKeySlots, Math.max(iKey + 1, 2 * iOldLen));
+			Arrays.fill(aKeySlots, iOldLen, aKeySlots.length, -1);
+		}
+		int iSlot = aKeySlots[iKey];
+		if (iSlot == -1) {
+			if (iSlotCnt < iCapacity) {
+				// Free counter
+				iSlot = iSlotCnt++;
+				aHeap[iSlot] = iSlot;
+				aHeapPos[iSlot] = iSlot;
+				aSlotCounts[iSlot] = 0;
+				aSlotErrors[iSlot] = 0;
+				siftUp(iSlot);
+			} else {
+				// Take over the counter of the least counted key
+				iSlot = aHeap[0];
+				aKeySlots[aSlotKeys[iSlot]] = -1;
+				aSlotErrors[iSlot] = aSlotCounts[iSlot];
+			}
+			aSlotKeys[iSlot] = iKey;
+			aKeySlots[iKey] = iSlot;
+		}
+		aSlotCounts[iSlot]++;
+		siftDown(aHeapPos[iSlot]);
+	}
+
+	public int[] getTopKeys(int iTopCnt) {
+		// Monitored keys with the highest counts, by decreasing count
+		Integer[] aSlots = new Integer[iSlotCnt];
+		for (int i = 0; i < iSlotCnt; i++) {
+			aSlots[i] = i;
+		}
+		Arrays.sort(aSlots, (iA, iB) -> Long.compare(aSlotCounts[iB], aSlotCounts[iA]));
+		int[] aTopKeys = new int[Math.min(iTopCnt, iSlotCnt)];
+		for (int i = 0; i < aTopKeys.length; i++) {
+			aTopKeys[i] = aSlotKeys[aSlots[i]];
+		}
+		return aTopKeys;
+	}
+
+	public long getCount(int iKey) {
+		// Upper bound of the count of the key, 0 if not monitored
+		int iSlot = (iKey < aKeySlots.length) ? aKeySlots[iKey] : -1;
+		return (iSlot == -1) ? 0 : aSlotCounts[iSlot];
+	}
+
+	public long getError(int iKey) {
+		// Maximum over-estimation of the count of the key
+		int iSlot = (iKey < aKeySlots.length) ? aKeySlots[iKey] : -1;
+		return (iSlot == -1) ? 0 : aSlotErrors[iSlot];
+	}
+
+	/*
+	 * Private methods
+	 */
+	private void siftUp(int iPos) {
+		while (iPos > 0) {
+			int iParent = (iPos - 1) / 2;
+			if (aSlotCounts[aHeap[iParent]] <= aSlotCounts[aHeap[iPos]]) {
+				break;
+			}
+			swap(iPos, iParent);
+			iPos = iParent;
+		}
+	}
+
+	private void siftDown(int iPos) {
+		while (true) {
+			int iSmallest = iPos;
+			int iLeft = 2 * iPos + 1, iRight = iLeft + 1;
+			if (iLeft < iSlotCnt && aSlotCounts[aHeap[iLeft]] < aSlotCounts[aHeap[iSmallest]]) {
+				iSmallest = iLeft;
+			}
+			if (iRight < iSlotCnt && aSlotCounts[aHeap[iRight]] < aSlotCounts[aHeap[iSmallest]]) {
+				iSmallest = iRight;
+			}
+			if (iSmallest == iPos) {
+				return;
+			}
+			swap(iPos, iSmallest);
+			iPos = iSmallest;
+		}
+	}
+
+	private void swap(int iPosA, int iPosB) {
+		int iSlotA = aHeap[iPosA];
+		aHeap[iPosA] = aHeap[iPosB];
+		aHeap[iPosB] = iSlotA;
+		aHeapPos[aHeap[iPosA]] = iPosA;
+		aHeapPos[aHeap[iPosB]] = iPosB;
+	}
+
+}
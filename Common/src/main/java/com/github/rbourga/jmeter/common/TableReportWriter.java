@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Report of a results table written one row at a time, e.g. as a single HTML
+ * page or as a paged HTML report. The first cell of a row can link to another
+ * file, e.g. the chart of its label.
+ */
+public interface TableReportWriter extends Closeable {
+
+	default void writeRow(Object[] aValues) throws IOException {
+		writeRow(aValues, null);
+	}
+
+	void writeRow(Object[] aValues, String sLink) throws IOException;
+
+	void writeFootnote(String sFootnote) throws IOException;
+
+}
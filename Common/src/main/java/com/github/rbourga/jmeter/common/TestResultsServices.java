@@ -3,8 +3,12 @@
  */
 package com.github.rbourga.jmeter.common;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Random;
 
 import org.apache.jmeter.samplers.SampleEvent;
 import org.apache.jmeter.samplers.SampleResult;
@@ -44,6 +48,49 @@ public final class TestResultsServices {
 		return oPrintWriter;
 	}
 
+	public static void crteLabelsTestResultsFile(String sFilePath, int[] aLblRowCnts, long lSeed) {
+		/*
+		 * Results of labels "Label 000", "Label 001"... with the given numbers of rows,
+		 * the labels mixed in timeStamp order. Some samples fail, some are outliers,
+		 * and a few rows are truncated after the label.
+		 */
+		Random oRandom = new Random(lSeed);
+		int iRowCnt = 0;
+		for (int iLblRowCnt : aLblRowCnts) {
+			iRowCnt += iLblRowCnt;
+		}
+		// Label of each row, shuffled
+		int[] aRowLbls = new int[iRowCnt];
+		int iRow = 0;
+		for (int iLbl = 0; iLbl < aLblRowCnts.length; iLbl++) {
+			for (int i = 0; i < aLblRowCnts[iLbl]; i++) {
+				aRowLbls[iRow++] = iLbl;
+			}
+		}
+		for (int i = iRowCnt - 1; i > 0; i--) {
+			int j = oRandom.nextInt(i + 1);
+			int iLbl = aRowLbls[i];
+			aRowLbls[i] = aRowLbls[j];
+			aRowLbls[j] = iLbl;
+		}
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(sFilePath))) {
+			bw.write("timeStamp,elapsed,label,responseCode,success\n");
+			long lTimeStamp = 1700000000000L;
+			for (int iLbl : aRowLbls) {
+				lTimeStamp += oRandom.nextInt(10);
+				int iElapsed = (oRandom.nextInt(50) == 0) ? 2000 + oRandom.nextInt(5000) : 100 + oRandom.nextInt(200);
+				String sLbl = String.format("Label %03d", iLbl);
+				if (oRandom.nextInt(5000) == 0) {
+					bw.write(lTimeStamp + "," + iElapsed + "," + sLbl + "\n");
+				} else {
+					bw.write(lTimeStamp + "," + iElapsed + "," + sLbl + ",200," + (oRandom.nextInt(10) != 0) + "\n");
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	public static SampleEvent resultToEvent(SampleResult oSampleResult, boolean bSuccess) {
 		SampleSaveConfiguration oSampleSaveConfig = getSampleSaveConfig();
 		oSampleResult.setAllThreads(0);
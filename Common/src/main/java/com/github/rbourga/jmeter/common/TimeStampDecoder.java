@@ -0,0 +1,209 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.jmeter.samplers.SampleSaveConfiguration;
+
+/**
+ * Decodes the timeStamp fields saved with the date format of the JMeter save
+ * service (jmeter.save.saveservice.timestamp_format) into epoch millis. When
+ * the seconds and millis of the format are at fixed positions, e.g. in
+ * "yyyy/MM/dd HH:mm:ss.SSS", the rest of the field changes at most once a
+ * minute: the epoch of its minute is parsed once and cached, and the seconds
+ * and millis digits are added to it. Other formats are parsed field by field.
+ * Not to be shared between threads.
+ */
+public final class TimeStampDecoder {
+
+	private static final long INVALID_NUMBER = FieldDecoder.INVALID_NUMBER;
+
+	private final SimpleDateFormat dateFormat; // null: timestamps in epoch millis
+	private final Charset charset = Charset.defaultCharset(); // same as JtlScanner
+	// Positions of the seconds and millis digits, -1 if not fixed or not in the format
+	private final int iSecPos;
+	private final int iMilliPos;
+
+	// Last field parsed, and epoch of its minute
+	private byte[] aCachedField = new byte[0];
+	private long lCachedMinute = INVALID_NUMBER;
+
+	public TimeStampDecoder(String sDatePattern) {
+		// A null or empty pattern is for timestamps in epoch millis
+		if (sDatePattern == null || sDatePattern.isEmpty()) {
+			dateFormat = null;
+			iSecPos = iMilliPos = -1;
+			return;
+		}
+		dateFormat = new SimpleDateFormat(sDatePattern);
+		dateFormat.setLenient(false);
+		int[] aPositions = findFixedPositions(sDatePattern);
+		iSecPos = aPositions[0];
+		iMilliPos = aPositions[1];
+	}
+
+	public static TimeStampDecoder crteFromSaveService() {
+		return new TimeStampDecoder(getSaveServicePattern());
+	}
+
+	public static String getSaveServicePattern() {
+		// Date format of the current JMeter properties, null if the timestamps are saved in ms
+		SampleSaveConfiguration saveConfig = SampleSaveConfiguration.staticConfig();
+		return saveConfig.printMilliseconds() ? null : saveConfig.threadSafeLenientFormatter().getPattern();
+	}
+
+	public long decode(ByteBuffer buf, int iStart, int iEnd) {
+		// Returns INVALID_NUMBER if the field does not match the date format
+		if (dateFormat == null) {
+			return INVALID_NUMBER;
+		}
+		int iLen = iEnd - iStart;
+		if (iSecPos != -1 && isSameMinute(buf, iStart, iLen)) {
+			return lCachedMinute + 1000 * parseDigits(buf, iStart + iSecPos, 2)
+					+ parseMillis(buf, iStart);
+		}
+
+		// New minute, or format without fixed seconds: parse the whole field
+		byte[] aField = new byte[iLen];
+		for (int i = 0; i < iLen; i++) {
+			aField[i] = buf.get(iStart + i);
+		}
+		String sField = new String(aField, charset);
+		ParsePosition parsePos = new ParsePosition(0);
+		Date date = dateFormat.parse(sField, parsePos);
+		if (date == null || parsePos.getIndex() != sField.length()) {
+			return INVALID_NUMBER;
+		}
+		long lTimeStamp = date.getTime();
+		if (iSecPos != -1 && iLen >= iSecPos + 2 && (iMilliPos == -1 || iLen >= iMilliPos + 3)) {
+			// Cached only if the digits found are the seconds and millis of the date
+			ByteBuffer fieldBuf = ByteBuffer.wrap(aField);
+			long lSeconds = parseDigits(fieldBuf, iSecPos, 2);
+			long lMillis = parseMillis(fieldBuf, 0);
+			if (lSeconds == Math.floorMod(Math.floorDiv(lTimeStamp, 1000L), 60L)
+					&& (iMilliPos == -1 || lMillis == Math.floorMod(lTimeStamp, 1000L))) {
+				aCachedField = aField;
+				lCachedMinute = lTimeStamp - 1000 * lSeconds - lMillis;
+			}
+		}
+		return lTimeStamp;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static int[] findFixedPositions(String sDatePattern) {
+		/*
+		 * Returns the positions of the seconds (ss) and millis (SSS) in the fields. The
+		 * positions are fixed if only numeric fields of fixed width and literals come
+		 * before them.
+		 */
+		int iSecPos = -1, iMilliPos = -1;
+		int iPos = 0; // position in the field
+		int i = 0;
+		while (i < sDatePattern.length()) {
+			char c = sDatePattern.charAt(i);
+			if (c == '\'') {
+				// Quoted literal, '' being a quote inside or outside the literal
+				if (i + 1 < sDatePattern.length() && sDatePattern.charAt(i + 1) == '\'') {
+					iPos++;
+					i += 2;
+					continue;
+				}
+				i++;
+				while (i < sDatePattern.length()) {
+					if (sDatePattern.charAt(i) == '\'') {
+						if (i + 1 < sDatePattern.length() && sDatePattern.charAt(i + 1) == '\'') {
+							i++; // escaped quote
+						} else {
+							break;
+						}
+					}
+					iPos++;
+					i++;
+				}
+				i++; // closing quote
+				continue;
+			}
+			if (!Character.isLetter(c)) {
+				iPos++;
+				i++;
+				continue;
+			}
+			int iRunEnd = i;
+			while (iRunEnd < sDatePattern.length() && sDatePattern.charAt(iRunEnd) == c) {
+				iRunEnd++;
+			}
+			int iCount = iRunEnd - i;
+			if (c == 's' && iCount == 2) {
+				iSecPos = iPos;
+			} else if (c == 'S' && iCount == 3 && iSecPos != -1) {
+				iMilliPos = iPos;
+			}
+			if (!isFixedWidth(c, iCount)) {
+				break; // the positions of what follows vary
+			}
+			iPos += iCount;
+			i = iRunEnd;
+		}
+		return new int[] { iSecPos, iMilliPos };
+	}
+
+	private static boolean isFixedWidth(char c, int iCount) {
+		// Numeric fields printed with exactly iCount digits
+		switch (c) {
+		case 'y':
+			return iCount == 2 || iCount == 4;
+		case 'M':
+		case 'd':
+		case 'H':
+		case 'h':
+		case 'k':
+		case 'K':
+		case 'm':
+		case 's':
+			return iCount == 2;
+		case 'S':
+			return iCount == 3;
+		default:
+			return false;
+		}
+	}
+
+	private boolean isSameMinute(ByteBuffer buf, int iStart, int iLen) {
+		// Same field as the cached one but for the seconds and millis digits
+		if (iLen != aCachedField.length) {
+			return false;
+		}
+		for (int i = 0; i < iLen; i++) {
+			if (buf.get(iStart + i) != aCachedField[i] && !isSecOrMilliPos(i)) {
+				return false;
+			}
+		}
+		// Seconds and millis the date format would accept, non-lenient
+		long lSeconds = parseDigits(buf, iStart + iSecPos, 2);
+		long lMillis = parseMillis(buf, iStart);
+		return lSeconds >= 0 && lSeconds < 60 && lMillis >= 0;
+	}
+
+	private boolean isSecOrMilliPos(int iPos) {
+		return (iPos >= iSecPos && iPos < iSecPos + 2)
+				|| (iMilliPos != -1 && iPos >= iMilliPos && iPos < iMilliPos + 3);
+	}
+
+	private long parseMillis(ByteBuffer buf, int iStart) {
+		// 0 if the millis are not in the format
+		return (iMilliPos == -1) ? 0 : parseDigits(buf, iStart + iMilliPos, 3);
+	}
+
+	private static long parseDigits(ByteBuffer buf, int iFrom, int iCnt) {
+		return FieldDecoder.parseLong(buf, iFrom, iFrom + iCnt);
+	}
+
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.BitSet;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Streams the samples of an XML results file with StAX, without building a
+ * DOM. Only the top-level httpSample and sample elements are read, as in the
+ * CSV format where sub-results are not saved, and only their lb, t, s and ts
+ * attributes are decoded.
+ */
+public final class XmlJtlReader {
+
+	private static final String ATTR_ELAPSED = "t";
+	private static final String ATTR_LABEL = "lb";
+	private static final String ATTR_SUCCESS = "s";
+	private static final String ATTR_TIMESTAMP = "ts";
+
+	/*
+	 * Called for each top-level sample of the file.
+	 */
+	public interface SampleHandler {
+		void onSample(String sLabel, long lTimeStamp, long lElapsed, boolean bSuccess);
+	}
+
+	public static void scanFile(String sFilePath, SampleHandler sampleHandler) throws IOException {
+		XMLInputFactory xmlFactory = crteInputFactory();
+		try (InputStream inStream = FileServices.openResultsInputStream(sFilePath)) {
+			XMLStreamReader xmlRdr = xmlFactory.createXMLStreamReader(inStream);
+			try {
+				int iDepth = 0; // 1 for the testResults root element
+				while (xmlRdr.hasNext()) {
+					int iEvent = xmlRdr.next();
+					if (iEvent == XMLStreamConstants.START_ELEMENT) {
+						iDepth++;
+						if (iDepth == 2 && isSampleElement(xmlRdr.getLocalName())) {
+							readSample(xmlRdr, sampleHandler);
+						}
+					} else if (iEvent == XMLStreamConstants.END_ELEMENT) {
+						iDepth--;
+					}
+				}
+			} finally {
+				xmlRdr.close();
+			}
+		} catch (XMLStreamException xE) {
+			throw new IOException("Invalid XML results file: " + xE.getMessage(), xE);
+		}
+	}
+
+	public static void copySelectedSamples(String sInFilePath, Writer outWrtr, BitSet bsRows) throws IOException {
+		/*
+		 * Copies the file without the top-level samples whose numbers are not set in
+		 * bsRows, the numbers being the row numbers given by scanFile(). The samples
+		 * are copied with their sub-results and the events are streamed.
+		 */
+		XMLInputFactory xmlInFactory = crteInputFactory();
+		try (InputStream inStream = FileServices.openResultsInputStream(sInFilePath)) {
+			XMLEventReader evtRdr = xmlInFactory.createXMLEventReader(inStream);
+			XMLEventWriter evtWrtr = XMLOutputFactory.newInstance().createXMLEventWriter(outWrtr);
+			try {
+				int iDepth = 0;
+				int iRow = -1;
+				boolean bSkipping = false;
+				while (evtRdr.hasNext()) {
+					XMLEvent xmlEvt = evtRdr.nextEvent();
+					if (xmlEvt.isStartElement()) {
+						iDepth++;
+						if (iDepth == 2 && isSampleElement(xmlEvt.asStartElement().getName().getLocalPart())) {
+							iRow++;
+							bSkipping = !bsRows.get(iRow);
+						}
+					}
+					if (!bSkipping) {
+						evtWrtr.add(xmlEvt);
+					}
+					if (xmlEvt.isEndElement()) {
+						iDepth--;
+						if (iDepth == 1) {
+							bSkipping = false; // end of a top-level sample
+						}
+					}
+				}
+				evtWrtr.flush();
+			} finally {
+				evtRdr.close();
+				evtWrtr.close();
+			}
+		} catch (XMLStreamException xE) {
+			throw new IOException("Invalid XML results file: " + xE.getMessage(), xE);
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static XMLInputFactory crteInputFactory() {
+		XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+		// Results files have no DTD: do not resolve any external content
+		xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return xmlFactory;
+	}
+
+	private static boolean isSampleElement(String sName) {
+		return "httpSample".equals(sName) || "sample".equals(sName);
+	}
+
+	private static void readSample(XMLStreamReader xmlRdr, SampleHandler sampleHandler) {
+		String sLabel = "";
+		long lTimeStamp = 0, lElapsed = 0;
+		boolean bSuccess = false;
+		for (int i = 0; i < xmlRdr.getAttributeCount(); i++) {
+			String sName = xmlRdr.getAttributeLocalName(i);
+			if (ATTR_LABEL.equals(sName)) {
+				sLabel = xmlRdr.getAttributeValue(i);
+			} else if (ATTR_ELAPSED.equals(sName)) {
+				lElapsed = FieldDecoder.parseLong(xmlRdr.getAttributeValue(i));
+				if (lElapsed == FieldDecoder.INVALID_NUMBER) {
+					throw new NumberFormatException("Invalid elapsed value: " + xmlRdr.getAttributeValue(i));
+				}
+			} else if (ATTR_SUCCESS.equals(sName)) {
+				bSuccess = FieldDecoder.isTrue(xmlRdr.getAttributeValue(i));
+			} else if (ATTR_TIMESTAMP.equals(sName)) {
+				lTimeStamp = FieldDecoder.parseLong(xmlRdr.getAttributeValue(i));
+				if (lTimeStamp == FieldDecoder.INVALID_NUMBER) {
+					lTimeStamp = 0;
+				}
+			}
+		}
+		sampleHandler.onSample(sLabel, lTimeStamp, lElapsed, bSuccess);
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math4.legacy.stat.StatUtils;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.ElapsedHistogram;
+import com.github.rbourga.jmeter.common.SampleStore;
+
+public class ElapsedHistogramTest {
+
+	private static final double[] PERCENTILES = { 0.1, 1, 5, 25, 33.3, 50, 75, 90, 95, 99, 99.9, 100 };
+
+	public ElapsedHistogramTest() {
+	}
+
+	@Test
+	public void percentilesSameAsStatUtils() {
+		/*
+		 * Counted values, whose range is small for their number, and sorted ones, whose
+		 * range is too large to count them, must give the same percentiles as
+		 * StatUtils, to the last bit.
+		 */
+		Random oRandom = new Random(12);
+		for (int iTest = 0; iTest < 200; iTest++) {
+			int iCnt = 1 + oRandom.nextInt(2000);
+			int iSpread = (iTest % 2 == 0) ? 1 + oRandom.nextInt(2 * iCnt) : 1000000 + oRandom.nextInt(100000000);
+			double[] aValues = new double[iCnt];
+			SampleStore sampleStore = new SampleStore();
+			for (int i = 0; i < iCnt; i++) {
+				int iElapsed = oRandom.nextInt(iSpread);
+				aValues[i] = iElapsed;
+				sampleStore.addSample("Label", i, iElapsed, true);
+			}
+			ElapsedHistogram elapsedHistogram = sampleStore.crteElapsedHistogram(sampleStore.getLabelRows(0));
+			assertEquals(iCnt, elapsedHistogram.getCount());
+			for (double dP : PERCENTILES) {
+				assertEquals("p" + dP + " of " + iCnt + " values below " + iSpread,
+						StatUtils.percentile(aValues, dP), elapsedHistogram.getPercentile(dP), 0);
+			}
+
+			// Same after removing the upper values
+			double dLimit = iSpread / 2.0;
+			double[] aKept = Arrays.stream(aValues).filter(dValue -> dValue <= dLimit).toArray();
+			assertEquals(iCnt - aKept.length, elapsedHistogram.removeAbove(dLimit));
+			assertEquals(aKept.length, elapsedHistogram.getCount());
+			if (aKept.length > 0) {
+				for (double dP : PERCENTILES) {
+					assertEquals(StatUtils.percentile(aKept, dP), elapsedHistogram.getPercentile(dP), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void countedOnlyIfRangeSmall() {
+		// Counted up to 4 values of range per value, sorted beyond
+		assertTrue(ElapsedHistogram.isCountable(0, 399, 100));
+		assertFalse(ElapsedHistogram.isCountable(0, 400, 100));
+		assertFalse(ElapsedHistogram.isCountable(0, Integer.MAX_VALUE, Integer.MAX_VALUE / 8));
+		assertNotNull(ElapsedHistogram.crteFromValues(new double[] { 1, 8 }));
+		assertNull(ElapsedHistogram.crteFromValues(new double[] { 0, 1000000 }));
+		assertNull(ElapsedHistogram.crteFromValues(new double[] { 1.5, 2 }));
+	}
+
+}
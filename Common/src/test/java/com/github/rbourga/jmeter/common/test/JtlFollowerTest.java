@@ -0,0 +1,73 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.JtlScanner;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class JtlFollowerTest {
+
+	private static final long PERIOD_MS = 50;
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public JtlFollowerTest() {
+	}
+
+	@Test
+	public void followUntilIdle() throws Exception {
+		/*
+		 * Rows written in bursts separated by pauses of several refresh periods, as
+		 * with JMeter buffering its writes during think times, the last row without a
+		 * line terminator: all of them must be read before the follower stops.
+		 */
+		String sFilePath = sJMeterTempDir + "/FollowedResults.csv";
+		int[] aBursts = { 3, 5, 2 };
+		Thread writer;
+		try (FileWriter fw = new FileWriter(sFilePath)) {
+			fw.write("timeStamp,elapsed,label,success\n");
+			fw.flush();
+			writer = new Thread(() -> {
+				try {
+					int iRow = 0;
+					for (int iBurst = 0; iBurst < aBursts.length; iBurst++) {
+						for (int i = 0; i < aBursts[iBurst]; i++) {
+							boolean bLast = (iBurst == aBursts.length - 1) && (i == aBursts[iBurst] - 1);
+							fw.write((1700000000000L + iRow) + "," + (100 + iRow) + ",Label,true" + (bLast ? "" : "\n"));
+							iRow++;
+						}
+						fw.flush();
+						Thread.sleep(5 * PERIOD_MS);
+					}
+				} catch (IOException | InterruptedException e) {
+					e.printStackTrace();
+				}
+			});
+			writer.start();
+			JtlFollower jtlFollower = new JtlFollower(sFilePath, ',', JtlScanner.COL_ELAPSED);
+			int[] aReadCnt = { 0 };
+			jtlFollower.follow(PERIOD_MS, 20 * PERIOD_MS, (sampleStore, iNewRowCnt) -> aReadCnt[0] += iNewRowCnt);
+			writer.join();
+			assertEquals(10, aReadCnt[0]);
+			assertEquals(10, jtlFollower.getSampleStore().getRowCount());
+			assertEquals(109, jtlFollower.getSampleStore().getElapsed(9));
+		}
+		new File(sFilePath).delete();
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlRowIndex;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class JtlRowIndexTest {
+
+	private static final String[] COLUMNS = { JtlScanner.COL_ELAPSED, JtlScanner.COL_SUCCESS };
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public JtlRowIndexTest() {
+	}
+
+	@Test
+	public void copySameAsStreamed() throws IOException {
+		/*
+		 * Blank rows, a row truncated before the projected columns and a quoted
+		 * multi-line field, the last row having no end of line. The indexed rows must
+		 * be the rows of the store, and the rows copied by the index the same bytes as
+		 * the rows copied while streaming the file.
+		 */
+		for (String sEol : new String[] { "\n", "\r\n" }) {
+			String sInFilePath = sJMeterTempDir + "/IndexResults.csv";
+			String sResults = String.join(sEol, "timeStamp,elapsed,label,responseMessage,success",
+					"1700000000000,100,Home,OK,true", "", "1700000000100,200,Login,\"Multi" + sEol + "line\",false",
+					"1700000000200,300", "   ", "1700000000300,400,\"Home, again\",OK,true",
+					"1700000000400,500,Logout,OK,true");
+			Files.write(Paths.get(sInFilePath), sResults.getBytes(StandardCharsets.UTF_8));
+
+			SampleStore sampleStore = FileServices.loadSamplesIntoStore(sInFilePath, ',', false, null, COLUMNS);
+			JtlRowIndex rowIndex = JtlRowIndex.crteForFile(sInFilePath, ',', COLUMNS);
+			assertEquals(4, sampleStore.getRowCount());
+			assertEquals(sampleStore.getRowCount(), rowIndex.getRowCount());
+			for (int iRow = 0; iRow < rowIndex.getRowCount(); iRow++) {
+				String sRow = sResults.substring((int) rowIndex.getRowOffset(iRow),
+						(int) rowIndex.getRowOffset(iRow) + rowIndex.getRowLength(iRow));
+				assertEquals(sRow, sampleStore.getElapsed(iRow), Integer.parseInt(sRow.split(",")[1]));
+			}
+
+			// Every subset of the rows, the last one included or not
+			for (int iMask = 0; iMask < (1 << rowIndex.getRowCount()); iMask++) {
+				BitSet bsRows = BitSet.valueOf(new long[] { iMask });
+				String sStreamedPath = sJMeterTempDir + "/IndexStreamed.csv";
+				String sIndexedPath = sJMeterTempDir + "/IndexCopied.csv";
+				FileServices.saveSelectedRowsToFile(sInFilePath, sStreamedPath, bsRows, ',', COLUMNS);
+				FileServices.saveSelectedRowsToFile(rowIndex, sIndexedPath, bsRows);
+				assertArrayEquals("Rows " + bsRows, Files.readAllBytes(Paths.get(sStreamedPath)),
+						Files.readAllBytes(Paths.get(sIndexedPath)));
+				// The copy loads as the selected rows
+				SampleStore copiedStore = FileServices.loadSamplesIntoStore(sIndexedPath, ',', false, null, COLUMNS);
+				assertEquals(bsRows.cardinality(), copiedStore.getRowCount());
+				int iCopiedRow = 0;
+				for (int iRow = bsRows.nextSetBit(0); iRow >= 0; iRow = bsRows.nextSetBit(iRow + 1)) {
+					assertEquals(sampleStore.getElapsed(iRow), copiedStore.getElapsed(iCopiedRow++));
+				}
+				new File(sStreamedPath).delete();
+				new File(sIndexedPath).delete();
+				new File(SampleStoreCache.getCachePath(sStreamedPath)).delete();
+				new File(SampleStoreCache.getCachePath(sIndexedPath)).delete();
+			}
+			new File(sInFilePath).delete();
+			new File(SampleStoreCache.getCachePath(sInFilePath)).delete();
+		}
+	}
+
+}
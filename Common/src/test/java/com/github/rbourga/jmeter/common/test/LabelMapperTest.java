@@ -0,0 +1,193 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+import com.github.rbourga.jmeter.common.SpaceSavingCounter;
+import com.github.rbourga.jmeter.common.TestResultsServices;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class LabelMapperTest {
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public LabelMapperTest() {
+	}
+
+	@Test
+	public void rulesWithGroups() throws IOException {
+		/*
+		 * Labels with dynamic ids merged by the first rule they match, the label
+		 * group referring to the capturing group of the regex; labels matching no
+		 * rule are kept as they are.
+		 */
+		String sRulesPath = sJMeterTempDir + "/LabelRules.csv";
+		try (PrintWriter pw = new PrintWriter(sRulesPath)) {
+			pw.println("sample_name_or_regex,label_group");
+			pw.println("GET /users/\\d+,GET /users/{id}");
+			pw.println("(GET|POST) /orders/.*,$1 /orders");
+			pw.println("GET /.*,GET others");
+		}
+		String sFilePath = sJMeterTempDir + "/LabelRulesResults.csv";
+		String[] aLabels = { "GET /users/12", "POST /orders/7?item=3", "Login", "GET /users/345",
+				"GET /orders/8", "GET /health", "POST /orders/9" };
+		try (PrintWriter pw = new PrintWriter(sFilePath)) {
+			pw.println("timeStamp,elapsed,label,success");
+			for (int i = 0; i < aLabels.length; i++) {
+				pw.println((1700000000000L + i) + "," + (100 + i) + "," + aLabels[i] + ",true");
+			}
+		}
+
+		try {
+			assertTrue(LabelMapper.isRulesFileValid(sRulesPath));
+			LabelMapper.setRulesFile(sRulesPath);
+			SampleStore sampleStore = FileServices.loadSamplesIntoStore(sFilePath, ',');
+			assertEquals(aLabels.length, sampleStore.getRowCount());
+			assertEquals(5, sampleStore.getLabelCount());
+			assertArrayEquals(new int[] { 0, 3 }, labelRows(sampleStore, "GET /users/{id}"));
+			assertArrayEquals(new int[] { 1, 6 }, labelRows(sampleStore, "POST /orders"));
+			assertArrayEquals(new int[] { 4 }, labelRows(sampleStore, "GET /orders"));
+			assertArrayEquals(new int[] { 5 }, labelRows(sampleStore, "GET others"));
+			assertArrayEquals(new int[] { 2 }, labelRows(sampleStore, "Login"));
+		} finally {
+			LabelMapper.setRulesFile("");
+			new File(sRulesPath).delete();
+			new File(sFilePath).delete();
+			new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+		}
+	}
+
+	@Test
+	public void rulesFileInvalid() throws IOException {
+		// A rules file without the expected header, or with an invalid regex, is refused
+		String sRulesPath = sJMeterTempDir + "/InvalidLabelRules.csv";
+		try (PrintWriter pw = new PrintWriter(sRulesPath)) {
+			pw.println("regex,group");
+			pw.println("GET /users/\\d+,GET /users/{id}");
+		}
+		try {
+			assertFalse(LabelMapper.isRulesFileValid(sRulesPath));
+			LabelMapper.setRulesFile(sRulesPath);
+			assertNull(LabelMapper.crteFromRules());
+
+			try (PrintWriter pw = new PrintWriter(sRulesPath)) {
+				pw.println("sample_name_or_regex,label_group");
+				pw.println("GET /users/(\\d+,GET /users/{id}");
+			}
+			assertFalse(LabelMapper.isRulesFileValid(sRulesPath));
+			assertNull(LabelMapper.crteFromRules());
+			assertFalse(LabelMapper.isRulesFileValid(sJMeterTempDir + "/NoLabelRules.csv"));
+		} finally {
+			LabelMapper.setRulesFile("");
+			new File(sRulesPath).delete();
+		}
+	}
+
+	@Test
+	public void topKeys() {
+		/*
+		 * Keys of Zipf-like frequencies in random order, far more keys than counters:
+		 * the most frequent keys are found in order, and the true count of each one
+		 * lies between its count minus its error and its count.
+		 */
+		int iKeyCnt = 500;
+		List<Integer> listStream = new ArrayList<>();
+		for (int iKey = 0; iKey < iKeyCnt; iKey++) {
+			for (int i = 0; i < 10000 / (iKey + 1); i++) {
+				listStream.add(iKey);
+			}
+		}
+		Collections.shuffle(listStream, new Random(11));
+		SpaceSavingCounter spaceSavingCounter = new SpaceSavingCounter(50);
+		for (int iKey : listStream) {
+			spaceSavingCounter.add(iKey);
+		}
+
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, spaceSavingCounter.getTopKeys(5));
+		for (int iKey = 0; iKey < 5; iKey++) {
+			long lTrueCnt = 10000 / (iKey + 1);
+			assertTrue(spaceSavingCounter.getCount(iKey) >= lTrueCnt);
+			assertTrue(spaceSavingCounter.getCount(iKey) - spaceSavingCounter.getError(iKey) <= lTrueCnt);
+		}
+		assertEquals(50, spaceSavingCounter.getTopKeys(iKeyCnt).length);
+	}
+
+	@Test
+	public void topLabelsWithOtherLabels() throws IOException {
+		/*
+		 * Only the labels with the most samples keep their rows, the rows of the
+		 * others being grouped under OTHER LABELS.
+		 */
+		String sFilePath = sJMeterTempDir + "/TopLabelsResults.csv";
+		int[] aLblRowCnts = { 50, 4000, 30, 3000, 20, 2000, 10, 60 };
+		TestResultsServices.crteLabelsTestResultsFile(sFilePath, aLblRowCnts, 5);
+
+		try {
+			SampleStore allStore = FileServices.loadSamplesIntoStore(sFilePath, ',');
+			assertEquals(aLblRowCnts.length, allStore.getLabelCount());
+
+			LabelMapper.setTopLabelCnt(3);
+			SampleStore topStore = FileServices.loadSamplesIntoStore(sFilePath, ',');
+			assertEquals(4, topStore.getLabelCount());
+			assertEquals(allStore.getRowCount(), topStore.getRowCount());
+			List<Integer> listOtherRows = new ArrayList<>();
+			for (int iLblId = 0; iLblId < allStore.getLabelCount(); iLblId++) {
+				String sLabel = allStore.getLabel(iLblId);
+				// Labels named after their index in the row counts, e.g. "Label 003"
+				if (aLblRowCnts[Integer.parseInt(sLabel.substring(sLabel.length() - 3))] >= 2000) {
+					assertArrayEquals(sLabel, allStore.getLabelRows(iLblId), labelRows(topStore, sLabel));
+				} else {
+					assertEquals(-1, topStore.getLabelId(sLabel));
+					for (int iRow : allStore.getLabelRows(iLblId)) {
+						listOtherRows.add(iRow);
+					}
+				}
+			}
+			Collections.sort(listOtherRows);
+			int[] aOtherRows = labelRows(topStore, LabelMapper.OTHER_LABEL);
+			assertEquals(listOtherRows.size(), aOtherRows.length);
+			for (int i = 0; i < aOtherRows.length; i++) {
+				assertEquals(listOtherRows.get(i).intValue(), aOtherRows[i]);
+			}
+		} finally {
+			LabelMapper.setTopLabelCnt(0);
+			new File(sFilePath).delete();
+			new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static int[] labelRows(SampleStore sampleStore, String sLabel) {
+		int iLblId = sampleStore.getLabelId(sLabel);
+		assertTrue(sLabel + " not found", iLblId != -1);
+		return sampleStore.getLabelRows(iLblId);
+	}
+
+}
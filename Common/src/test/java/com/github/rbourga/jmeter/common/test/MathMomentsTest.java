@@ -0,0 +1,105 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.math4.legacy.stat.StatUtils;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.MathMoments;
+
+public class MathMomentsTest {
+
+	// Rounding of the running M2
+	private static final double EPSILON = 1e-9;
+
+	public MathMomentsTest() {
+	}
+
+	@Test
+	public void meanSameAsStatUtils() {
+		/*
+		 * Elapsed times whose mean is an exact integer must not lose one when the mean
+		 * is truncated, as the Average columns print it.
+		 */
+		Random oRandom = new Random(11);
+		for (int iTest = 0; iTest < 20000; iTest++) {
+			double[] aValues = crteValuesOfIntegerMean(oRandom, 2 + oRandom.nextInt(50));
+			MathMoments.Accumulator accumulator = new MathMoments.Accumulator();
+			for (double dValue : aValues) {
+				accumulator.add(dValue);
+			}
+			double dExpected = StatUtils.mean(aValues);
+			assertEquals(dExpected, accumulator.getMean(), 0);
+			assertEquals((long) dExpected, (long) accumulator.getMean());
+			assertEquals(StatUtils.variance(aValues), accumulator.getVariance(),
+					EPSILON * Math.max(1, StatUtils.variance(aValues)));
+			assertEquals(StatUtils.min(aValues), accumulator.getMin(), 0);
+			assertEquals(StatUtils.max(aValues), accumulator.getMax(), 0);
+		}
+
+		// Values that are not integers are averaged too
+		double[] aValues = { 0.1, 0.2, 0.7 };
+		MathMoments.Accumulator accumulator = new MathMoments.Accumulator();
+		for (double dValue : aValues) {
+			accumulator.add(dValue);
+		}
+		assertEquals(StatUtils.mean(aValues), accumulator.getMean(), EPSILON);
+		assertEquals(Double.NaN, new MathMoments.Accumulator().getMean(), 0);
+	}
+
+	@Test
+	public void mergeSameAsSinglePass() {
+		/*
+		 * The accumulators of parts of the values, some added by counts as from a
+		 * histogram, merge into the accumulator of all of them.
+		 */
+		Random oRandom = new Random(111);
+		for (int iTest = 0; iTest < 2000; iTest++) {
+			double[] aValues = crteValuesOfIntegerMean(oRandom, 1 + oRandom.nextInt(200));
+			MathMoments.Accumulator singleAccumulator = new MathMoments.Accumulator();
+			MathMoments.Accumulator[] aPartAccumulators = { new MathMoments.Accumulator(),
+					new MathMoments.Accumulator(), new MathMoments.Accumulator() };
+			for (int i = 0; i < aValues.length; i++) {
+				singleAccumulator.add(aValues[i]);
+				// Same value twice in a row added as a count
+				if (i + 1 < aValues.length && aValues[i + 1] == aValues[i]) {
+					singleAccumulator.add(aValues[i + 1]);
+					aPartAccumulators[i % 3].add(aValues[i], 2);
+					i++;
+				} else {
+					aPartAccumulators[i % 3].add(aValues[i]);
+				}
+			}
+			MathMoments.Accumulator mergedAccumulator = new MathMoments.Accumulator();
+			for (MathMoments.Accumulator partAccumulator : aPartAccumulators) {
+				mergedAccumulator.merge(partAccumulator);
+			}
+			assertEquals(singleAccumulator.getCount(), mergedAccumulator.getCount());
+			assertEquals(StatUtils.mean(aValues), mergedAccumulator.getMean(), 0);
+			assertEquals(singleAccumulator.getMean(), mergedAccumulator.getMean(), 0);
+			assertEquals(singleAccumulator.getVariance(), mergedAccumulator.getVariance(),
+					EPSILON * Math.max(1, singleAccumulator.getVariance()));
+			assertEquals(singleAccumulator.getMin(), mergedAccumulator.getMin(), 0);
+			assertEquals(singleAccumulator.getMax(), mergedAccumulator.getMax(), 0);
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static double[] crteValuesOfIntegerMean(Random oRandom, int iCnt) {
+		// Random elapsed times, the last one making their sum a multiple of their count
+		double[] aValues = new double[iCnt];
+		long lSum = 0;
+		for (int i = 0; i < iCnt - 1; i++) {
+			aValues[i] = oRandom.nextInt(oRandom.nextBoolean() ? 10 : 100000);
+			lSum += (long) aValues[i];
+		}
+		long lLast = oRandom.nextInt(100000);
+		aValues[iCnt - 1] = lLast + (iCnt - (lSum + lLast) % iCnt) % iCnt;
+		return aValues;
+	}
+
+}
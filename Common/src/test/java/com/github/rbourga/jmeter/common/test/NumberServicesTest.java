@@ -0,0 +1,86 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.NumberServices;
+
+public class NumberServicesTest {
+
+	// Values whose exact binary value is a tie at 1 to 3 decimals, or just beside one
+	private static final double[] TIES = { 0.5, 1.5, 2.5, -0.5, 0.125, 0.375, 2.675, 1.005, 0.045, 1234.5625,
+			0.0005, -0.0005, 4503599627370.5, 1e-20, 0, -0.0 };
+
+	public NumberServicesTest() {
+	}
+
+	@Test
+	public void sameAsBigDecimal() {
+		Random oRandom = new Random(19);
+		for (int iScale = 0; iScale <= 6; iScale++) {
+			for (double dValue : TIES) {
+				assertSameAsBigDecimal(dValue, iScale);
+			}
+			for (int i = 0; i < 5000; i++) {
+				// From below the last decimal to beyond the exact range of the fast path
+				double dValue = oRandom.nextDouble() * Math.pow(10, oRandom.nextInt(24) - 8);
+				if (oRandom.nextBoolean()) {
+					dValue = -dValue;
+				}
+				assertSameAsBigDecimal(dValue, iScale);
+				// Near ties: decimal values of one more digit ending with a 5
+				double dNearTie = (2 * oRandom.nextInt(1000000) + 1) / (2 * Math.pow(10, iScale));
+				assertSameAsBigDecimal(dNearTie, iScale);
+			}
+		}
+	}
+
+	@Test
+	public void compareSameAsBigDecimal() {
+		Random oRandom = new Random(91);
+		for (int iScale = 0; iScale <= 4; iScale++) {
+			for (int i = 0; i < 20000; i++) {
+				double dRounded = NumberServices.roundHalfUp(oRandom.nextDouble(), iScale);
+				// Thresholds equal to the rounded value or one ulp apart
+				double dThreshold = dRounded;
+				switch (oRandom.nextInt(4)) {
+				case 0:
+					dThreshold = Math.nextUp(dRounded);
+					break;
+				case 1:
+					dThreshold = Math.nextDown(dRounded);
+					break;
+				case 2:
+					dThreshold = oRandom.nextDouble();
+					break;
+				default:
+					break;
+				}
+				int iExpected = new BigDecimal(dRounded).setScale(iScale, RoundingMode.HALF_UP)
+						.compareTo(new BigDecimal(dThreshold));
+				assertEquals(dRounded + " vs " + dThreshold, iExpected,
+						NumberServices.compareDecimal(dRounded, iScale, dThreshold));
+			}
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static void assertSameAsBigDecimal(double dValue, int iScale) {
+		String sMsg = dValue + " at scale " + iScale;
+		BigDecimal bdHalfUp = new BigDecimal(dValue).setScale(iScale, RoundingMode.HALF_UP);
+		BigDecimal bdHalfEven = new BigDecimal(dValue).setScale(iScale, RoundingMode.HALF_EVEN);
+		assertEquals(sMsg, bdHalfUp.doubleValue(), NumberServices.roundHalfUp(dValue, iScale), 0);
+		assertEquals(sMsg, bdHalfEven.doubleValue(), NumberServices.roundHalfEven(dValue, iScale), 0);
+		assertEquals(sMsg, bdHalfUp.toPlainString(), NumberServices.formatHalfUp(dValue, iScale));
+		assertEquals(sMsg, bdHalfEven.stripTrailingZeros().toPlainString(),
+				NumberServices.formatTrimmed(dValue, iScale));
+	}
+
+}
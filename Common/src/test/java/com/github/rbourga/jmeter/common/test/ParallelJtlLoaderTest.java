@@ -0,0 +1,125 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.ParallelJtlLoader;
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class ParallelJtlLoaderTest {
+
+	// Above two chunks of the parallel loader, whose chunks are at least 16 MB
+	private static final long FILE_SIZE = 40L << 20;
+	private static final long CHUNK_SIZE = 16L << 20;
+	private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,success\n";
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public ParallelJtlLoaderTest() {
+	}
+
+	@Test
+	public void loadSameAsSequential() throws IOException {
+		/*
+		 * The responseMessage of the rows is quoted and spans several lines, the
+		 * quoted field of the row written across each chunk boundary containing the
+		 * boundary, so that the rows must be split on their quotes.
+		 */
+		String sFilePath = sJMeterTempDir + "/ParallelLoadResults.csv";
+		HashSet<Long> hsRowStarts = new HashSet<>();
+		int iBoundariesInQuotes = writeResults(sFilePath, hsRowStarts);
+		assertTrue(iBoundariesInQuotes >= 2);
+
+		// The ranges of the parallel load start at row starts only
+		try (FileChannel fileChnl = FileChannel.open(Paths.get(sFilePath), StandardOpenOption.READ)) {
+			long[] aStarts = ParallelJtlLoader.findRowStarts(fileChnl, HEADER.length(), fileChnl.size());
+			assertTrue(aStarts.length > 3);
+			for (int i = 0; i < aStarts.length - 1; i++) {
+				assertTrue("Range " + i + " starts inside a row", hsRowStarts.contains(aStarts[i]));
+			}
+			assertEquals(fileChnl.size(), aStarts[aStarts.length - 1]);
+		}
+
+		SampleStore seqStore = FileServices.loadSamplesIntoStore(sFilePath, ',', false, null);
+		SampleStore parStore = ParallelJtlLoader.load(sFilePath, ',', null);
+		assertEquals(hsRowStarts.size(), seqStore.getRowCount());
+		assertEquals(seqStore.getRowCount(), parStore.getRowCount());
+		for (int iRow = 0; iRow < seqStore.getRowCount(); iRow++) {
+			assertEquals(seqStore.getTimeStamp(iRow), parStore.getTimeStamp(iRow));
+			assertEquals(seqStore.getElapsed(iRow), parStore.getElapsed(iRow));
+			assertEquals(seqStore.isSuccess(iRow), parStore.isSuccess(iRow));
+		}
+		assertEquals(seqStore.getLabelCount(), parStore.getLabelCount());
+		for (int iLblId = 0; iLblId < seqStore.getLabelCount(); iLblId++) {
+			assertEquals(seqStore.getLabel(iLblId), parStore.getLabel(iLblId));
+			assertArrayEquals(seqStore.getLabelRows(iLblId), parStore.getLabelRows(iLblId));
+		}
+		new File(sFilePath).delete();
+		new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static int writeResults(String sFilePath, HashSet<Long> hsRowStarts) throws IOException {
+		// Returns the number of chunk boundaries written inside a quoted field
+		Random oRandom = new Random(3);
+		int iBoundariesInQuotes = 0;
+		long lPos = HEADER.length();
+		long lNextBoundary = lPos + CHUNK_SIZE;
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(sFilePath))) {
+			bw.write(HEADER);
+			long lTimeStamp = 1700000000000L;
+			while (lPos < FILE_SIZE) {
+				lTimeStamp += oRandom.nextInt(20);
+				int iLbl = oRandom.nextInt(50);
+				// Labels with the delimiter are quoted too
+				String sLabel = (iLbl % 5 == 0) ? "\"Step " + iLbl + ", \"\"quoted\"\"\"" : "Step " + iLbl;
+				String sPrefix = lTimeStamp + "," + oRandom.nextInt(5000) + "," + sLabel + ",200,";
+				int iMsgLen = 40 + oRandom.nextInt(80);
+				long lMsgStart = lPos + sPrefix.length() + 1;
+				if (lMsgStart < lNextBoundary && lNextBoundary - lMsgStart < 1000) {
+					iMsgLen = (int) (lNextBoundary - lMsgStart) + 50;
+					iBoundariesInQuotes++;
+				}
+				StringBuilder sbRow = new StringBuilder(sPrefix).append('"');
+				for (int i = 0; i < iMsgLen; i++) {
+					sbRow.append((i % 20 == 19) ? '\n' : (char) ('a' + i % 26));
+				}
+				sbRow.append("\",").append(oRandom.nextInt(10) != 0).append('\n');
+				hsRowStarts.add(lPos);
+				bw.write(sbRow.toString());
+				lPos += sbRow.length();
+				if (lPos > lNextBoundary) {
+					lNextBoundary += CHUNK_SIZE;
+				}
+			}
+		}
+		return iBoundariesInQuotes;
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math4.legacy.stat.StatUtils;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.QuantileSketch;
+
+public class QuantileSketchTest {
+
+	private static final double[] REL_ACCS = { 0.001, 0.01, 0.05 };
+	private static final double[] PERCENTILES = { 0.1, 1, 5, 25, 50, 75, 90, 95, 99, 99.9, 100 };
+	// Rounding of the bucket values and of the interpolation
+	private static final double EPSILON = 1e-9;
+
+	public QuantileSketchTest() {
+	}
+
+	@Test
+	public void quantilesWithinRelativeAccuracy() {
+		/*
+		 * Every order statistic and percentile of the sketch is within its relative
+		 * accuracy of the exact one, for long-tailed response times with zeros.
+		 */
+		Random oRandom = new Random(13);
+		for (double dRelAcc : REL_ACCS) {
+			for (int iTest = 0; iTest < 20; iTest++) {
+				int iCnt = 1 + oRandom.nextInt(20000);
+				double[] aValues = crteResponseTimes(oRandom, iCnt);
+				QuantileSketch quantileSketch = new QuantileSketch(dRelAcc);
+				for (double dValue : aValues) {
+					quantileSketch.add(dValue);
+				}
+				assertEquals(iCnt, quantileSketch.getCount());
+				assertEquals(StatUtils.min(aValues), quantileSketch.getMin(), 0);
+				assertEquals(StatUtils.max(aValues), quantileSketch.getMax(), 0);
+
+				double[] aSorted = aValues.clone();
+				Arrays.sort(aSorted);
+				for (int iRank = 1; iRank <= iCnt; iRank++) {
+					assertWithin(dRelAcc, aSorted[iRank - 1], quantileSketch.getValueAtRank(iRank));
+				}
+				for (double dP : PERCENTILES) {
+					assertWithin(dRelAcc, StatUtils.percentile(aValues, dP), quantileSketch.getPercentile(dP));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void mergeSameAsSingleSketch() {
+		// The sketches of parts of the values merge into the sketch of all of them
+		Random oRandom = new Random(31);
+		double[] aValues = crteResponseTimes(oRandom, 30000);
+		QuantileSketch wholeSketch = new QuantileSketch(0.01);
+		QuantileSketch[] aPartSketches = { new QuantileSketch(0.01), new QuantileSketch(0.01),
+				new QuantileSketch(0.01) };
+		for (int i = 0; i < aValues.length; i++) {
+			wholeSketch.add(aValues[i]);
+			aPartSketches[i % aPartSketches.length].add(aValues[i]);
+		}
+		QuantileSketch mergedSketch = new QuantileSketch(0.01);
+		for (QuantileSketch partSketch : aPartSketches) {
+			mergedSketch.merge(partSketch);
+		}
+		assertEquals(wholeSketch.getCount(), mergedSketch.getCount());
+		for (long lRank = 1; lRank <= wholeSketch.getCount(); lRank++) {
+			assertEquals(wholeSketch.getValueAtRank(lRank), mergedSketch.getValueAtRank(lRank), 0);
+		}
+		assertEquals(wholeSketch.getMean(), mergedSketch.getMean(), EPSILON * wholeSketch.getMean());
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static double[] crteResponseTimes(Random oRandom, int iCnt) {
+		// Log-normal times in ms, with a few zeros and outliers
+		double[] aValues = new double[iCnt];
+		for (int i = 0; i < iCnt; i++) {
+			int iKind = oRandom.nextInt(100);
+			if (iKind == 0) {
+				aValues[i] = 0;
+			} else if (iKind == 1) {
+				aValues[i] = Math.rint(60000 * (1 + oRandom.nextDouble()));
+			} else {
+				aValues[i] = Math.rint(Math.exp(5 + oRandom.nextGaussian()));
+			}
+		}
+		return aValues;
+	}
+
+	private static void assertWithin(double dRelAcc, double dExpected, double dActual) {
+		assertTrue("Expected " + dExpected + " within " + dRelAcc + " but was " + dActual,
+				Math.abs(dActual - dExpected) <= dRelAcc * Math.abs(dExpected) + EPSILON);
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class SampleStoreCacheTest {
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public SampleStoreCacheTest() {
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		String sFilePath = sJMeterTempDir + "/CacheResults.csv";
+		writeResults(sFilePath, 5000);
+		File cacheFile = new File(SampleStoreCache.getCachePath(sFilePath));
+		cacheFile.delete();
+
+		// The first load parses the file and saves the cache
+		SampleStore parsedStore = FileServices.loadSamplesIntoStore(sFilePath, ',');
+		assertTrue(cacheFile.isFile());
+		int iAllColumns = SampleStoreCache.getColumnMask();
+		SampleStore cachedStore = SampleStoreCache.load(sFilePath, ',', iAllColumns);
+		assertNotNull(cachedStore);
+		assertSameStore(parsedStore, cachedStore);
+
+		// A cache of other columns is not used, nor a cache of another delimiter
+		int iElapsedOnly = SampleStoreCache.getColumnMask(JtlScanner.COL_ELAPSED);
+		assertNull(SampleStoreCache.load(sFilePath, ',', iElapsedOnly));
+		SampleStoreCache.save(sFilePath, ',', iElapsedOnly, parsedStore);
+		assertNotNull(SampleStoreCache.load(sFilePath, ',', iElapsedOnly));
+		assertNull(SampleStoreCache.load(sFilePath, ',', iAllColumns));
+		assertNull(SampleStoreCache.load(sFilePath, '\t', iElapsedOnly));
+
+		// Nor the cache of a previous version of the results file
+		SampleStoreCache.save(sFilePath, ',', iAllColumns, parsedStore);
+		writeResults(sFilePath, 5001);
+		assertNull(SampleStoreCache.load(sFilePath, ',', iAllColumns));
+		new File(sFilePath).delete();
+		cacheFile.delete();
+	}
+
+	@Test
+	public void sameRowsWhateverTheLoadOrder() throws IOException {
+		/*
+		 * Rows truncated after the label are kept by a load of the elapsed times only
+		 * but skipped by a load of all the columns: the store of either load must be
+		 * the same whichever load saved the cache first.
+		 */
+		String sFilePath = sJMeterTempDir + "/CacheTruncatedResults.csv";
+		try (PrintWriter oPrintWriter = new PrintWriter(sFilePath)) {
+			oPrintWriter.print("timeStamp,elapsed,label,responseCode,success\n");
+			oPrintWriter.print("1700000000000,100,Home,200,true\n");
+			oPrintWriter.print("1700000000100,200,Home\n");
+			oPrintWriter.print("1700000000200,300,Home,200,false\n");
+		}
+		File cacheFile = new File(SampleStoreCache.getCachePath(sFilePath));
+		String[] aElapsedOnly = { JtlScanner.COL_ELAPSED };
+		for (boolean bAllFirst : new boolean[] { true, false }) {
+			cacheFile.delete();
+			SampleStore firstStore = bAllFirst ? FileServices.loadSamplesIntoStore(sFilePath, ',')
+					: FileServices.loadSamplesIntoStore(sFilePath, ',', false, null, aElapsedOnly);
+			assertEquals(bAllFirst ? 2 : 3, firstStore.getRowCount());
+			SampleStore secondStore = bAllFirst
+					? FileServices.loadSamplesIntoStore(sFilePath, ',', false, null, aElapsedOnly)
+					: FileServices.loadSamplesIntoStore(sFilePath, ',');
+			assertEquals(bAllFirst ? 3 : 2, secondStore.getRowCount());
+		}
+		new File(sFilePath).delete();
+		cacheFile.delete();
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static void writeResults(String sFilePath, int iRowCnt) throws IOException {
+		Random oRandom = new Random(iRowCnt);
+		try (PrintWriter oPrintWriter = new PrintWriter(sFilePath)) {
+			oPrintWriter.print("timeStamp,elapsed,label,responseCode,success\n");
+			long lTimeStamp = 1700000000000L;
+			for (int i = 0; i < iRowCnt; i++) {
+				lTimeStamp += oRandom.nextInt(50);
+				// Labels beyond ASCII are saved in UTF-8
+				oPrintWriter.print(lTimeStamp + "," + oRandom.nextInt(3000) + ",Étape " + oRandom.nextInt(20) + ",200,"
+						+ (oRandom.nextInt(10) != 0) + "\n");
+			}
+		}
+	}
+
+	private static void assertSameStore(SampleStore expectedStore, SampleStore actualStore) {
+		assertEquals(expectedStore.getRowCount(), actualStore.getRowCount());
+		for (int iRow = 0; iRow < expectedStore.getRowCount(); iRow++) {
+			assertEquals(expectedStore.getTimeStamp(iRow), actualStore.getTimeStamp(iRow));
+			assertEquals(expectedStore.getElapsed(iRow), actualStore.getElapsed(iRow));
+			assertEquals(expectedStore.isSuccess(iRow), actualStore.isSuccess(iRow));
+		}
+		assertEquals(expectedStore.getLabelCount(), actualStore.getLabelCount());
+		for (int iLblId = 0; iLblId < expectedStore.getLabelCount(); iLblId++) {
+			assertEquals(expectedStore.getLabel(iLblId), actualStore.getLabel(iLblId));
+			assertArrayEquals(expectedStore.getLabelRows(iLblId), actualStore.getLabelRows(iLblId));
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.SampleStore;
+
+public class SampleStoreMergeTest {
+
+	public SampleStoreMergeTest() {
+	}
+
+	@Test
+	public void mergeByTimeStamp() {
+		/*
+		 * Stores of several load generators, each in timeStamp order with ties inside
+		 * and across the stores. The merge must give the rows of all the stores
+		 * sorted by timeStamp, the first store first on ties, each store keeping the
+		 * order of its rows.
+		 */
+		Random oRandom = new Random(9);
+		SampleStore[] aStores = new SampleStore[4];
+		List<long[]> listRows = new ArrayList<>(); // timeStamp, store, row, elapsed, success, label
+		List<String> listRowLabels = new ArrayList<>();
+		for (int iStore = 0; iStore < aStores.length; iStore++) {
+			aStores[iStore] = new SampleStore();
+			long lTimeStamp = 1700000000000L;
+			// One store left empty
+			int iRowCnt = (iStore == 2) ? 0 : 1000 + oRandom.nextInt(1000);
+			for (int iRow = 0; iRow < iRowCnt; iRow++) {
+				lTimeStamp += oRandom.nextInt(4);
+				// Labels of a single store or shared by all of them
+				String sLabel = oRandom.nextBoolean() ? "Lbl" + iStore + "_" + oRandom.nextInt(5)
+						: "Shared_" + oRandom.nextInt(5);
+				int iElapsed = oRandom.nextInt(2000);
+				boolean bSuccess = oRandom.nextInt(8) != 0;
+				aStores[iStore].addSample(sLabel, lTimeStamp, iElapsed, bSuccess);
+				listRows.add(new long[] { lTimeStamp, iStore, iRow, iElapsed, bSuccess ? 1 : 0, listRowLabels.size() });
+				listRowLabels.add(sLabel);
+			}
+		}
+		listRows.sort(Comparator.<long[]>comparingLong(aRow -> aRow[0]).thenComparingLong(aRow -> aRow[1])
+				.thenComparingLong(aRow -> aRow[2]));
+
+		SampleStore mergedStore = SampleStore.mergeByTimeStamp(aStores);
+		assertEquals(listRows.size(), mergedStore.getRowCount());
+		int[] aMergedRowLblIds = new int[mergedStore.getRowCount()];
+		for (int iLblId = 0; iLblId < mergedStore.getLabelCount(); iLblId++) {
+			for (int iRow : mergedStore.getLabelRows(iLblId)) {
+				aMergedRowLblIds[iRow] = iLblId;
+			}
+		}
+		List<String> listFirstSeen = new ArrayList<>();
+		for (int iRow = 0; iRow < listRows.size(); iRow++) {
+			long[] aRow = listRows.get(iRow);
+			String sLabel = listRowLabels.get((int) aRow[5]);
+			assertEquals(aRow[0], mergedStore.getTimeStamp(iRow));
+			assertEquals(aRow[3], mergedStore.getElapsed(iRow));
+			assertEquals(aRow[4] == 1, mergedStore.isSuccess(iRow));
+			assertEquals(sLabel, mergedStore.getLabel(aMergedRowLblIds[iRow]));
+			if (!listFirstSeen.contains(sLabel)) {
+				listFirstSeen.add(sLabel);
+			}
+		}
+		// Labels in merged order of first appearance, their rows in ascending order
+		assertEquals(listFirstSeen.size(), mergedStore.getLabelCount());
+		for (int iLblId = 0; iLblId < mergedStore.getLabelCount(); iLblId++) {
+			assertEquals(listFirstSeen.get(iLblId), mergedStore.getLabel(iLblId));
+			int[] aRows = mergedStore.getLabelRows(iLblId);
+			int[] aSortedRows = aRows.clone();
+			Arrays.sort(aSortedRows);
+			assertArrayEquals(aSortedRows, aRows);
+		}
+		for (SampleStore store : aStores) {
+			assertEquals(0, store.getRowCount());
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math4.legacy.stat.StatUtils;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SortedSamples;
+
+public class SortedSamplesTest {
+
+	private static final double[] PERCENTILES = { 0.1, 1, 5, 25, 33.3, 50, 75, 90, 95, 99, 99.9, 100 };
+
+	public SortedSamplesTest() {
+	}
+
+	@Test
+	public void percentilesSameAsStatUtils() {
+		/*
+		 * Elapsed times sorted by counting, their range being small for their number,
+		 * or by sorting them, and any values sorted, must give the same percentiles as
+		 * StatUtils, to the last bit.
+		 */
+		Random oRandom = new Random(14);
+		for (int iTest = 0; iTest < 200; iTest++) {
+			int iCnt = 1 + oRandom.nextInt(2000);
+			int iSpread = (iTest % 2 == 0) ? 1 + oRandom.nextInt(2 * iCnt) : 1000000 + oRandom.nextInt(100000000);
+			double[] aValues = new double[iCnt];
+			SampleStore sampleStore = new SampleStore();
+			for (int i = 0; i < iCnt; i++) {
+				int iElapsed = oRandom.nextInt(iSpread);
+				aValues[i] = iElapsed;
+				sampleStore.addSample("Label", i, iElapsed, true);
+			}
+			SortedSamples sortedElapsed = sampleStore.crteSortedElapsed(sampleStore.getLabelRows(0));
+			double[] aDoubles = oRandom.doubles(iCnt, 0, iSpread).toArray();
+			SortedSamples sortedDoubles = SortedSamples.crteFromValues(aDoubles);
+			for (double dP : PERCENTILES) {
+				assertEquals(StatUtils.percentile(aValues, dP), sortedElapsed.getPercentile(dP), 0);
+				assertEquals(StatUtils.percentile(aDoubles, dP), sortedDoubles.getPercentile(dP), 0);
+			}
+
+			// Same after removing the upper values
+			double dLimit = iSpread / 2.0;
+			double[] aKept = Arrays.stream(aValues).filter(dValue -> dValue <= dLimit).toArray();
+			assertEquals(iCnt - aKept.length, sortedElapsed.removeAbove(dLimit));
+			assertEquals(aKept.length, sortedElapsed.getCount());
+			if (aKept.length > 0) {
+				for (double dP : PERCENTILES) {
+					assertEquals(StatUtils.percentile(aKept, dP), sortedElapsed.getPercentile(dP), 0);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FieldDecoder;
+import com.github.rbourga.jmeter.common.TimeStampDecoder;
+
+public class TimeStampDecoderTest {
+
+	// Seconds and millis at fixed positions or not, with quoted literals and a time zone
+	private static final String[] PATTERNS = { "yyyy/MM/dd HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+			"dd/MM/yy HH:mm:ss", "''yy''MM dd HH:mm:ss,SSS", "MMM d, yyyy h:mm:ss.SSS a", "EEE HH:mm:ss.SSS yyyy-MM-dd" };
+
+	public TimeStampDecoderTest() {
+	}
+
+	@Test
+	public void decodeSameAsSimpleDateFormat() throws ParseException {
+		/*
+		 * Timestamps a few ms to a few minutes apart, so that the cached minute is
+		 * reused and renewed, must decode as SimpleDateFormat parses them.
+		 */
+		Random oRandom = new Random(18);
+		for (String sPattern : PATTERNS) {
+			SimpleDateFormat dateFormat = new SimpleDateFormat(sPattern);
+			dateFormat.setLenient(false);
+			TimeStampDecoder timeStampDecoder = new TimeStampDecoder(sPattern);
+			long lTimeStamp = 1700000000000L;
+			for (int i = 0; i < 5000; i++) {
+				lTimeStamp += (oRandom.nextInt(10) == 0) ? oRandom.nextInt(600000) : oRandom.nextInt(1500);
+				String sField = dateFormat.format(new Date(lTimeStamp));
+				long lExpected = dateFormat.parse(sField).getTime();
+				assertEquals(sPattern + ": " + sField, lExpected, decode(timeStampDecoder, sField));
+			}
+		}
+	}
+
+	@Test
+	public void invalidFields() {
+		TimeStampDecoder timeStampDecoder = new TimeStampDecoder("yyyy/MM/dd HH:mm:ss.SSS");
+		long lTimeStamp = 1700000000000L;
+		String sMinute = new SimpleDateFormat("yyyy/MM/dd HH:mm").format(new Date(lTimeStamp));
+		assertEquals(lTimeStamp - lTimeStamp % 60000 + 12345, decode(timeStampDecoder, sMinute + ":12.345"));
+		// Same minute as the cached field, but not a date
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, sMinute + ":1x.345"));
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, sMinute + ":60.345"));
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, sMinute + ":-1.345"));
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, sMinute + ":12.-34"));
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, "2023/13/14 22:13:12.345"));
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(timeStampDecoder, "1700000000000"));
+		// Timestamps in ms are not decoded as dates
+		assertEquals(FieldDecoder.INVALID_NUMBER, decode(new TimeStampDecoder(null), sMinute + ":12.345"));
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static long decode(TimeStampDecoder timeStampDecoder, String sField) {
+		// The field in the middle of a buffer, as in a row of a results file
+		byte[] aRow = (",\"" + sField + "\",").getBytes(Charset.defaultCharset());
+		return timeStampDecoder.decode(ByteBuffer.wrap(aRow), 2, aRow.length - 2);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.github.rbourga.jmeter.common.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.XmlJtlReader;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class XmlJtlReaderTest {
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public XmlJtlReaderTest() {
+	}
+
+	@Test
+	public void topLevelSamplesOnly() throws IOException {
+		/*
+		 * Samples with sub-results nested on several levels and assertion results:
+		 * only the samples under the root element are rows, numbered in file order,
+		 * and a copy of some of them keeps their sub-results only.
+		 */
+		String sFilePath = sJMeterTempDir + "/NestedResults.jtl";
+		try (PrintWriter pw = new PrintWriter(sFilePath)) {
+			pw.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			pw.println("<testResults version=\"1.2\">");
+			pw.println("<httpSample t=\"120\" ts=\"1700000000000\" s=\"true\" lb=\"Home\" rc=\"200\">");
+			pw.println("  <httpSample t=\"80\" ts=\"1700000000001\" s=\"true\" lb=\"Home-0\" rc=\"200\"/>");
+			pw.println("  <httpSample t=\"9000\" ts=\"1700000000081\" s=\"false\" lb=\"Home-1\" rc=\"500\">");
+			pw.println("    <sample t=\"5\" ts=\"1700000000082\" s=\"true\" lb=\"Home-1-0\"/>");
+			pw.println("  </httpSample>");
+			pw.println("  <assertionResult><name>Code</name><failure>false</failure></assertionResult>");
+			pw.println("</httpSample>");
+			pw.println("<sample t=\"300\" ts=\"1700000000200\" s=\"false\" lb=\"Transaction\">");
+			pw.println("  <httpSample t=\"300\" ts=\"1700000000200\" s=\"false\" lb=\"Login\" rc=\"401\"/>");
+			pw.println("</sample>");
+			pw.println("<httpSample t=\"90\" ts=\"1700000000600\" s=\"true\" lb=\"Logout\" rc=\"200\"/>");
+			pw.println("</testResults>");
+		}
+		String sOutFilePath = sJMeterTempDir + "/NestedResults_selected.jtl";
+
+		try {
+			assertTrue(FileServices.isXmlFile(sFilePath));
+			assertEquals(Arrays.asList("Home,1700000000000,120,true", "Transaction,1700000000200,300,false",
+					"Logout,1700000000600,90,true"), scanRows(sFilePath));
+
+			BitSet bsRows = new BitSet();
+			bsRows.set(0);
+			bsRows.set(2);
+			String sCopy = copyRows(sFilePath, sOutFilePath, bsRows);
+			assertEquals(Arrays.asList("Home,1700000000000,120,true", "Logout,1700000000600,90,true"),
+					scanRows(sOutFilePath));
+			assertTrue(sCopy.contains("Home-1-0"));
+			assertTrue(sCopy.contains("<assertionResult>"));
+			assertFalse(sCopy.contains("Login"));
+
+			bsRows.clear();
+			bsRows.set(1);
+			sCopy = copyRows(sFilePath, sOutFilePath, bsRows);
+			assertEquals(Arrays.asList("Transaction,1700000000200,300,false"), scanRows(sOutFilePath));
+			assertTrue(sCopy.contains("Login"));
+			assertFalse(sCopy.contains("Home"));
+		} finally {
+			new File(sFilePath).delete();
+			new File(sOutFilePath).delete();
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static List<String> scanRows(String sFilePath) throws IOException {
+		List<String> listRows = new ArrayList<>();
+		XmlJtlReader.scanFile(sFilePath, (sLabel, lTimeStamp, lElapsed, bSuccess) -> listRows
+				.add(sLabel + "," + lTimeStamp + "," + lElapsed + "," + bSuccess));
+		return listRows;
+	}
+
+	private static String copyRows(String sFilePath, String sOutFilePath, BitSet bsRows) throws IOException {
+		StringWriter strWrtr = new StringWriter();
+		XmlJtlReader.copySelectedSamples(sFilePath, strWrtr, bsRows);
+		try (PrintWriter pw = new PrintWriter(sOutFilePath)) {
+			pw.print(strWrtr.toString());
+		}
+		return strWrtr.toString();
+	}
+
+}
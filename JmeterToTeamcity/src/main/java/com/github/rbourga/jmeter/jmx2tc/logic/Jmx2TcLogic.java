@@ -3,106 +3,100 @@
  */
 package com.github.rbourga.jmeter.jmx2tc.logic;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
 
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.XmlJtlReader;
+
 public final class Jmx2TcLogic {
 
+	// Columns of the results file copied to the Teamcity file, in output order
+	private static final String[] USED_COLUMNS = { JtlScanner.COL_TIMESTAMP, JtlScanner.COL_ELAPSED,
+			JtlScanner.COL_LABEL, JtlScanner.COL_SUCCESS };
+
 	public static int SelectAndRenameColumns(String sInFilepath) {
-		CSVFormat csvFmtIn, csvFmtOut;
+		return SelectAndRenameColumns(sInFilepath, false);
+	}
 
-		// Initialize output file name
-		String sFileDirectoryName = FilenameUtils.getFullPath(sInFilepath);
-		String sFileBaseName = FilenameUtils.getBaseName(sInFilepath);
-		String sFileExtension = FilenameUtils.getExtension(sInFilepath);
+	public static int SelectAndRenameColumns(String sInFilepath, boolean bGzipOutput) {
+		// Initialize output file name, the input file may be gzip-compressed
+		String sUncompressedPath = FileServices.stripGzipExtension(sInFilepath);
+		String sFileDirectoryName = FilenameUtils.getFullPath(sUncompressedPath);
+		String sFileBaseName = FilenameUtils.getBaseName(sUncompressedPath);
+		String sFileExtension = FilenameUtils.getExtension(sUncompressedPath);
 		String sOutFile = sFileDirectoryName + sFileBaseName + "_TC." + sFileExtension;
+		if (bGzipOutput) {
+			sOutFile += FileServices.GZIP_EXTENSION;
+		}
 
 		// Get the delimiter separator of the input file from current JMeter properties
 		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
-		if (cDelim == ',') {
-			// Comma separated format
-			csvFmtIn = CSVFormat.RFC4180.builder().setHeader().setSkipHeaderRecord(true).build();
-		} else {
-			// Tab-delimited format
-			csvFmtIn = CSVFormat.TDF.builder().setHeader().setSkipHeaderRecord(true).build();
-		}
-
-		// Read the input CSV file
-		FileReader fileRdr = null;
-		try {
-			fileRdr = new FileReader(sInFilepath);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		Iterable<CSVRecord> inRcds = null;
-		try {
-			inRcds = csvFmtIn.parse(fileRdr);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (!inRcds.iterator().hasNext()) {
-			try {
-				fileRdr.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			return -1; // Nothing loaded, so abort...
-		}
 
-		// Create a list to hold the data for the selected columns
-		List<String[]> outDataList = new ArrayList<>();
-
-		// Extract and store the data for selected columns
-		for (CSVRecord rcd : inRcds) {
-			String sStartTime = rcd.get("timeStamp");
-			String sSpendTime = rcd.get("elapsed");
-			String sLabel = rcd.get("label");
-			String sIsSuccessful = rcd.get("success");
-			String[] outRow = {sStartTime, sSpendTime, sLabel, sIsSuccessful};
-			outDataList.add(outRow);
-		}
-
-		// CSVParser parses the CSV data lazily; so only close the reader when done.
-		try {
-			fileRdr.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		/*
+		 * The input file is scanned with a projection on the four columns of interest:
+		 * the bytes of the other columns are skipped and each row is written as soon as
+		 * it is read, so the file is never held in memory.
+		 */
+		JtlScanner jtlScanner = new JtlScanner(cDelim);
+		jtlScanner.setProjection(USED_COLUMNS);
 
 		// Define the header for the new Teamcity file & write the data to the output Teamcity file
 		String[] tcHeader = {"startTime", "spendTime", "label", "isSuccessful"};
-
-		FileWriter fileWrtr = null;
-		try {
-			fileWrtr = new FileWriter(sOutFile);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		csvFmtOut = CSVFormat.TDF.builder().setHeader(tcHeader).build();
-		try (CSVPrinter csvPrinter = new CSVPrinter(fileWrtr, csvFmtOut)) {
-			try {
-				csvPrinter.printRecords(outDataList);
-			} catch (IOException e) {
-				e.printStackTrace();
+		CSVFormat csvFmtOut = CSVFormat.TDF.builder().setHeader(tcHeader).build();
+		long[] aRowCnt = { 0 };
+		try (Writer fileWrtr = FileServices.openResultsWriter(sOutFile);
+				CSVPrinter csvPrinter = new CSVPrinter(fileWrtr, csvFmtOut)) {
+			int[] aColIdx = new int[USED_COLUMNS.length];
+			String[] aOutRow = new String[USED_COLUMNS.length];
+			if (FileServices.isXmlFile(sInFilepath)) {
+				// XML results: the columns are the ts, t, lb and s attributes of the samples
+				XmlJtlReader.scanFile(sInFilepath, (sLabel, lTimeStamp, lElapsed, bSuccess) -> {
+					try {
+						csvPrinter.printRecord(lTimeStamp, lElapsed, sLabel, bSuccess);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					aRowCnt[0]++;
+				});
+			} else {
+				jtlScanner.scanFile(sInFilepath, scanner -> {
+					if (aRowCnt[0] == 0) {
+						// Header parsed: get the positions of the columns once
+						for (int i = 0; i < USED_COLUMNS.length; i++) {
+							aColIdx[i] = scanner.getColumnIndex(USED_COLUMNS[i]);
+						}
+					}
+					// The timestamp is written in epoch millis, even if saved with a date format
+					long lTimeStamp = scanner.getTimeStamp();
+					aOutRow[0] = (lTimeStamp != 0) ? Long.toString(lTimeStamp) : scanner.getString(aColIdx[0]);
+					for (int i = 1; i < aColIdx.length; i++) {
+						aOutRow[i] = scanner.getString(aColIdx[i]);
+					}
+					try {
+						csvPrinter.printRecord((Object[]) aOutRow);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					aRowCnt[0]++;
+				});
 			}
-		} catch (IOException e1) {
-			e1.printStackTrace();
-		}
-		try {
-			fileWrtr.close();
-		} catch (IOException e) {
+		} catch (IOException | UncheckedIOException e) {
 			e.printStackTrace();
 		}
+
+		if (aRowCnt[0] == 0) {
+			new File(sOutFile).delete();
+			return -1; // Nothing loaded, so abort...
+		}
 		return 0;
 	}
 }
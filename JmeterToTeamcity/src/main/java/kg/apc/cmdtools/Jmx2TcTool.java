@@ -27,6 +27,7 @@ public class Jmx2TcTool extends AbstractCMDTool{
 		 * Called by the Universal Command Line Tool runner as in "cmdrunner --tool Jmx2Tc"
 		 */
 		String sInFile = null;
+		String sGzipOutput = "false"; // uncompressed output file by default
 
 		if (!args.hasNext()) {
 			showHelp(System.out);
@@ -41,6 +42,11 @@ public class Jmx2TcTool extends AbstractCMDTool{
 					throw new IllegalArgumentException("Input file name missing.");
 				}
 				sInFile = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--gzip-output")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Gzip output value missing.");
+				}
+				sGzipOutput = ((String) args.next());
 			}
 		}
 
@@ -52,8 +58,13 @@ public class Jmx2TcTool extends AbstractCMDTool{
 			throw new IllegalArgumentException("Input file invalid (could not find results).");
 		}
 
+		// Check gzip-output parameter
+		if (!(sGzipOutput.equalsIgnoreCase("true")) && !(sGzipOutput.equalsIgnoreCase("false"))) {
+			throw new IllegalArgumentException("Gzip output value invalid (only true or false accepted).");
+		}
+
 		// Do the job
-		int iResult = Jmx2TcLogic.SelectAndRenameColumns(sInFile);
+		int iResult = Jmx2TcLogic.SelectAndRenameColumns(sInFile, Boolean.parseBoolean(sGzipOutput));
 		if (iResult == -1) {
 			System.out.println("No samplers found in input file - please check your file.");
 		}
@@ -62,6 +73,7 @@ public class Jmx2TcTool extends AbstractCMDTool{
 
 	@Override
 	protected void showHelp(PrintStream os) {
-		os.println("Options for tool 'Jmx2TcTool': --input-file <filenameIn>");
+		os.println("Options for tool 'Jmx2TcTool': --input-file <filenameIn> "
+				+ "[--gzip-output <true or false: gzip-compress the output file (default = false)>]");
 	}
 }
@@ -0,0 +1,70 @@
+package com.github.rbourga.jmeter.jmx2tc.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.TestResultsServices;
+import com.github.rbourga.jmeter.jmx2tc.logic.Jmx2TcLogic;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class Jmx2TcGzipTest {
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public Jmx2TcGzipTest() {
+	}
+
+	@Test
+	public void gzipSameAsUncompressed() throws IOException {
+		// The gzip Teamcity file of a gzip results file decompresses to the one of the
+		// same file uncompressed
+		String sBasePath = sJMeterTempDir + "/TcGzipResults";
+		String sFilePath = sBasePath + ".jtl";
+		String sGzipPath = sFilePath + FileServices.GZIP_EXTENSION;
+		TestResultsServices.crteLabelsTestResultsFile(sFilePath, new int[] { 2000, 300, 5000 }, 24);
+		try (OutputStream outStream = new GZIPOutputStream(Files.newOutputStream(Paths.get(sGzipPath)))) {
+			Files.copy(Paths.get(sFilePath), outStream);
+		}
+
+		String sPlainOutput = sBasePath + "_TC.jtl";
+		String sGzipOutput = sPlainOutput + FileServices.GZIP_EXTENSION;
+		try {
+			assertEquals(0, Jmx2TcLogic.SelectAndRenameColumns(sFilePath, false));
+			assertEquals(0, Jmx2TcLogic.SelectAndRenameColumns(sGzipPath, true));
+			assertTrue(FileServices.isGzipFile(sGzipOutput));
+			byte[] aPlainBytes = Files.readAllBytes(Paths.get(sPlainOutput));
+			assertTrue(aPlainBytes.length > 0);
+			try (InputStream inStream = new GZIPInputStream(Files.newInputStream(Paths.get(sGzipOutput)))) {
+				assertArrayEquals(aPlainBytes, IOUtils.toByteArray(inStream));
+			}
+		} finally {
+			new File(sFilePath).delete();
+			new File(sGzipPath).delete();
+			new File(sPlainOutput).delete();
+			new File(sGzipOutput).delete();
+		}
+	}
+
+}
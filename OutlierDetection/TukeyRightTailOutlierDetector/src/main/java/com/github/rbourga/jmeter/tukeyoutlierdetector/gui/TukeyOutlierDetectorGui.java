@@ -7,24 +7,30 @@ import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.table.TableCellRenderer;
 
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.util.FilePanel;
 import org.apache.jmeter.gui.util.MenuFactory;
+import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.gui.util.VerticalPanel;
 import org.apache.jmeter.samplers.Clearable;
 import org.apache.jmeter.samplers.SampleResult;
@@ -34,7 +40,10 @@ import org.apache.jorphan.gui.MinMaxLongRenderer;
 import org.apache.jorphan.gui.NumberRenderer;
 import org.apache.jorphan.gui.RendererUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
 import com.github.rbourga.jmeter.tukeyoutlierdetector.logic.TukeyOutlierDetectorLogic;
 
 import kg.apc.jmeter.JMeterPluginsUtils;
@@ -63,6 +72,19 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 	// Instance variables
 	private JFormattedTextField jFTxtFldRemAL;
 	private FilePanel filePnl;
+	private JLabel jLblTopLabels = new JLabel("Labels with the most samples to keep (0 = all) ");
+	private JFormattedTextField jFTxtFldTopLabels;
+	private FilePanel filePnlLabelRules;
+	private JCheckBox jChkBxFollow = new JCheckBox("Follow file while the test is running (no output files)");
+
+	// Statistics table of this GUI, filled from the last result
+	private PowerTableModel pwrTblMdlStats = TukeyOutlierDetectorLogic.crteTableModelStats();
+	private transient AnalysisResult tukeyResult = null;
+
+	// Refresh of the table while following a results file
+	private transient JtlFollower jtlFollower = null;
+	private Timer followTimer = null;
+	private transient SwingWorker<AnalysisResult, Void> followWorker = null; // refresh in progress
 
 	// GUI constructor
 	public TukeyOutlierDetectorGui() {
@@ -106,15 +128,30 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 		// Panel for selection of file
 		filePnl = new FilePanel("Read results from file and Detect Upper Outliers", EXTS);
 
+		// Panel for selection of label normalisation rules file
+		filePnlLabelRules = new FilePanel("Label normalisation rules file (optional)", EXTS);
+		filePnlLabelRules.setFilename(LabelMapper.getRulesFile());
+
+		// Panel for top labels option
+		JPanel jPnlTopLabels = new JPanel(new BorderLayout());
+		jPnlTopLabels.add(jLblTopLabels, BorderLayout.WEST);
+		jFTxtFldTopLabels = new JFormattedTextField(NumberFormat.getIntegerInstance());
+		jFTxtFldTopLabels.setValue(LabelMapper.getTopLabelCnt()); // by default, all labels kept
+		jFTxtFldTopLabels.setColumns(4);
+		jPnlTopLabels.add(jFTxtFldTopLabels);
+		jPnlTopLabels.setBorder(
+				BorderFactory.createTitledBorder("Top Labels, the others grouped under " + LabelMapper.OTHER_LABEL));
+
 		// Detect button
 		JPanel jPnlDetn = new JPanel();
 		JButton jBtnDetn = new JButton("Detect");
 		jBtnDetn.addActionListener(this);
 		jBtnDetn.setActionCommand(ACTION_DETECT);
 		jPnlDetn.add(jBtnDetn);
+		jPnlDetn.add(jChkBxFollow);
 
 		// Grid to display trimming of samplers
-		JTable jTblStats = new JTable(TukeyOutlierDetectorLogic.getPwrTblMdelStats());
+		JTable jTblStats = new JTable(pwrTblMdlStats);
 		JMeterUtils.applyHiDPI(jTblStats);
 		jTblStats.setAutoCreateRowSorter(true);
 		RendererUtils.applyRenderers(
@@ -140,6 +177,8 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 		vrtPnl.add(jPnlTukey);
 		vrtPnl.add(jPnlFail);
 		vrtPnl.add(filePnl);
+		vrtPnl.add(filePnlLabelRules);
+		vrtPnl.add(jPnlTopLabels);
 		vrtPnl.add(jPnlDetn);
 		vrtPnl.add(jScrollPane);
 		add(vrtPnl, BorderLayout.CENTER);
@@ -161,13 +200,13 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 			break;
 
 		case ACTION_SAVE:
-			if (TukeyOutlierDetectorLogic.getPwrTblMdelStats().getRowCount() == 0) {
+			if (tukeyResult == null || tukeyResult.getRowCount() == 0) {
 				GuiPackage.showErrorMessage("Data table empty - please perform Detect before.",
 						"Save Table Data error");
 				return;
 			}
 			String sInFile = filePnl.getFilename();
-			String csvFilename = TukeyOutlierDetectorLogic.saveTableStatsAsCsv(sInFile);
+			String csvFilename = TukeyOutlierDetectorLogic.saveTableStatsAsCsv(sInFile, tukeyResult);
 			GuiPackage.showInfoMessage("Data saved to " + csvFilename, "Save Table Data");
 			break;
 		default:
@@ -185,8 +224,10 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 		 * Called when user clicks on "Clear" or "Clear All" buttons. Clears data
 		 * specific to this plugin
 		 */
-		TukeyOutlierDetectorLogic.getPwrTblMdelStats().clearData();
-		TukeyOutlierDetectorLogic.getPwrTblMdelStats().fireTableDataChanged(); // Repaint the table
+		stopFollowing();
+		tukeyResult = null;
+		pwrTblMdlStats.clearData();
+		pwrTblMdlStats.fireTableDataChanged(); // Repaint the table
 	}
 
 	@Override
@@ -239,6 +280,30 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 			return;
 		}
 
+		// Parse label normalisation rules filename and top labels
+		String sLabelRulesFile = filePnlLabelRules.getFilename();
+		if (!(FileServices.isFilenameEmpty(sLabelRulesFile))) {
+			if (!(FileServices.isFileExist(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage("Cannot find label rules file - please enter a valid filename.",
+						"Label rules file error");
+				return;
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage(
+						"Label rules file invalid - sample_name_or_regex and label_group columns with valid regexes expected.",
+						"Label rules file error");
+				return;
+			}
+		}
+		int iTopLabels = ((Number) jFTxtFldTopLabels.getValue()).intValue();
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			GuiPackage.showErrorMessage("Please enter a number of top labels equal to or greater than 0.",
+					"Top Labels Setting error");
+			return;
+		}
+		LabelMapper.setRulesFile(sLabelRulesFile);
+		LabelMapper.setTopLabelCnt(iTopLabels);
+
 		// Set Tukey's option that was selected
 		double fTukeyK = 0.0; // We use 0 to indicate Carling's option was selected
 		if (jRadioBtn_1_5.isSelected()) {
@@ -247,14 +312,89 @@ public class TukeyOutlierDetectorGui extends AbstractVisualizer implements Actio
 			fTukeyK = 3.0;
 		}
 
+		// Stop following any previous file
+		stopFollowing();
+		if (jChkBxFollow.isSelected()) {
+			if (!JtlFollower.isFollowable(sInFile)) {
+				GuiPackage.showErrorMessage("Only uncompressed CSV/TSV results files can be followed.",
+						"Input file error");
+				return;
+			}
+			/*
+			 * Refresh the table periodically with the rows appended to the file. The
+			 * cleansed files are only written by a Detect without following, once the test
+			 * is over.
+			 */
+			jtlFollower = TukeyOutlierDetectorLogic.followResults(sInFile);
+			double fK = fTukeyK;
+			followTimer = new Timer(JtlFollower.getGuiPeriodMs(), e -> refreshFollowing(fK, fRemALPct));
+			followTimer.setInitialDelay(0);
+			followTimer.start();
+			return;
+		}
+
 		// Now, process the data
-		int iResult = TukeyOutlierDetectorLogic.RemoveUpper(sInFile, fTukeyK, fRemALPct);
-		if (iResult == -1) {
+		tukeyResult = TukeyOutlierDetectorLogic.RemoveUpper(sInFile, fTukeyK, fRemALPct);
+		if (tukeyResult.getFailedLblCnt() == -1) {
 			GuiPackage.showErrorMessage("No samplers found in results file - please check your file.",
 					"Input file error");
 		}
 		// Repaint the table
-		TukeyOutlierDetectorLogic.getPwrTblMdelStats().fireTableDataChanged();
+		tukeyResult.fillTable(pwrTblMdlStats);
+	}
+
+	private void refreshFollowing(double fTukeyK, double fRemALPct) {
+		if (!jChkBxFollow.isSelected()) {
+			stopFollowing(); // unticked by the user
+			return;
+		}
+		if (followWorker != null) {
+			return; // previous refresh still running
+		}
+		/*
+		 * Read the new rows and detect off the EDT, then repaint the table on it. The
+		 * fences depend on all the samples of a label, so they are computed again on
+		 * the whole store: only the reading of the file is incremental.
+		 */
+		JtlFollower follower = jtlFollower;
+		followWorker = new SwingWorker<AnalysisResult, Void>() {
+			@Override
+			protected AnalysisResult doInBackground() throws IOException {
+				// Recompute only when new rows were appended since the last refresh
+				return (follower.refresh() > 0)
+						? TukeyOutlierDetectorLogic.RemoveUpper(follower.getSampleStore(), fTukeyK, fRemALPct)
+						: null;
+			}
+
+			@Override
+			protected void done() {
+				followWorker = null;
+				if (follower != jtlFollower) {
+					return; // stopped or restarted meanwhile
+				}
+				try {
+					AnalysisResult result = get();
+					if (result != null) {
+						tukeyResult = result;
+						tukeyResult.fillTable(pwrTblMdlStats);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					stopFollowing();
+					e.getCause().printStackTrace();
+				}
+			}
+		};
+		followWorker.execute();
+	}
+
+	private void stopFollowing() {
+		if (followTimer != null) {
+			followTimer.stop();
+			followTimer = null;
+		}
+		jtlFollower = null;
 	}
 
 }
@@ -3,60 +3,68 @@
  */
 package com.github.rbourga.jmeter.tukeyoutlierdetector.logic;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
 
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
 import org.apache.jmeter.util.JMeterUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
-import com.github.rbourga.jmeter.common.MathMoments;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.JtlRowIndex;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.NumberServices;
+import com.github.rbourga.jmeter.common.QuantileSketch;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleSketches;
+import com.github.rbourga.jmeter.common.SampleStore;
+import com.github.rbourga.jmeter.common.SortedSamples;
 
 public final class TukeyOutlierDetectorLogic {
 
-	private static DecimalFormat df2Decimals = new DecimalFormat("0.00");
-
 	private static String HTML_STATS_TITLE = "Summary of Upper Outliers Removal";
 	private static String SUFFIX_UP_OUTLIERS = "_outliers.";
 	private static String SUFFIX_NO_UP_OUTLIERS = "_clean.";
 	private static String SUFFIX_SUCCESS_NO_UP_OUTLIERS = "_success.";
 	private static String SUFFIX_STATS = "_UpperTrimStats.";
+	// Columns of the results file used by the analysis, the label being always loaded
+	private static final String[] USED_COLUMNS = { JtlScanner.COL_ELAPSED, JtlScanner.COL_SUCCESS };
 
 	// TODO add the new column labels to
 	// core/org/apache/jmeter/resources/messages.properties files.
-	private static PowerTableModel pwrTblMdlStats = new PowerTableModel(
-			new String[] {
-					JMeterUtils.getResString("sampler label"), // Label
-					JMeterUtils.getResString("aggregate_report_count"), // # Samples
-					JMeterUtils.getResString("average"), // Average
-					"Upper Fence",
-					"# Removed", // number of samples that have been discarded
-					"Removed %", // percentage of samples that have been discarded
-					"Small Success Group", // true if remaining number of successful samples < 100
-					"Failed" // true if value greater than the specified threshold
-			}, new Class[] {
-					String.class, // Label
-					Integer.class, // # Samples
-					Double.class, // Average
-					Double.class, // Upper Fence
-					Integer.class, // # Removed
-					Double.class, // # Removed %
-					String.class, // Small Success Group
-					String.class // Failed
-			});
+	private static final String[] STATS_COLUMN_NAMES = new String[] {
+		JMeterUtils.getResString("sampler label"), // Label
+		JMeterUtils.getResString("aggregate_report_count"), // # Samples
+		JMeterUtils.getResString("average"), // Average
+		"Upper Fence",
+		"# Removed", // number of samples that have been discarded
+		"Removed %", // percentage of samples that have been discarded
+		"Small Success Group", // true if remaining number of successful samples < 100
+		"Failed" // true if value greater than the specified threshold
+	};
+	private static final Class<?>[] STATS_COLUMN_CLASSES = new Class[] {
+		String.class, // Label
+		Integer.class, // # Samples
+		Double.class, // Average
+		Double.class, // Upper Fence
+		Integer.class, // # Removed
+		Double.class, // # Removed %
+		String.class, // Small Success Group
+		String.class // Failed
+	};
 	private static int PASSFAIL_TEST_COLNBR = 7; // Position of Failed column in the table
+	private static int REMOVED_PCT_COLNBR = 5; // Position of Removed % column in the table
 
-	public static PowerTableModel getPwrTblMdelStats() {
-		return pwrTblMdlStats;
+	public static PowerTableModel crteTableModelStats() {
+		// Empty statistics table, e.g. for the GUI
+		return new PowerTableModel(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES);
 	}
 
 	/*
@@ -66,184 +74,346 @@ public final class TukeyOutlierDetectorLogic {
 		return fPct < 0;
 	}
 
-	public static int RemoveUpper(String sFilepath, double fTukeyK, double fMaxRemPct) {
+	public static AnalysisResult RemoveUpper(String sFilepath, double fTukeyK, double fMaxRemPct) {
+		return RemoveUpper(sFilepath, fTukeyK, fMaxRemPct, false);
+	}
+
+	public static AnalysisResult RemoveUpper(String sFilepath, double fTukeyK, double fMaxRemPct,
+			boolean bGzipOutput) {
 		/*
 		 * Will remove only upper outliers (which are bigger than the upper boundary).
+		 * The output files are gzip-compressed if requested.
 		 */
-		int iInitLblCnt, iInitSuccessLblCnt;
-		double fUpFenceMin;
-		List<CSVRecord> mergedOutliers = null, mergedClean = null, mergedSuccess = null, aLblRcdSuccess = null;
-
-		double fK = fTukeyK;
-		BigDecimal bdMaxRemPct = new BigDecimal(fMaxRemPct);
-
 		// Load the data after getting the delimiter separator from current JMeter
 		// properties
 		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
-		Map<String, List<CSVRecord>> rcdHashMap = FileServices.loadSamplesIntoHashMap(sFilepath, cDelim);
-		if (rcdHashMap.isEmpty()) {
-			return -1; // Nothing loaded, so abort...
+		// Row numbers of the samples to save in each output file
+		BitSet bsOutliers = new BitSet(), bsClean = new BitSet(), bsSuccess = new BitSet();
+		ArrayList<Object[]> alRows = new ArrayList<>();
+		int iFailedLblCnt;
+		if (SamplePartitioner.isPartitioned(sFilepath)) {
+			// Results larger than the heap budget: one partition of labels at a time
+			int[] aFailedLblCnt = { 0 };
+			int iPartitionCnt = 0;
+			try {
+				iPartitionCnt = SamplePartitioner.forEachPartition(sFilepath, cDelim, USED_COLUMNS,
+						(sampleStore, aFileRows) -> aFailedLblCnt[0] += detectUpper(sampleStore, aFileRows, fTukeyK,
+								fMaxRemPct, bsOutliers, bsClean, bsSuccess, alRows));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (iPartitionCnt == 0) {
+				return crteAborted(); // Nothing loaded, so abort...
+			}
+			iFailedLblCnt = aFailedLblCnt[0];
+		} else {
+			SampleStore sampleStore = FileServices.loadSamplesIntoStore(sFilepath, cDelim, USED_COLUMNS);
+			if (sampleStore.isEmpty()) {
+				return crteAborted(); // Nothing loaded, so abort...
+			}
+			iFailedLblCnt = detectUpper(sampleStore, null, fTukeyK, fMaxRemPct, bsOutliers, bsClean, bsSuccess,
+					alRows);
+		}
+
+		// The output files are written by copying the selected rows of the input file,
+		// in their original order: their bytes are located by an index if the file is
+		// neither compressed nor XML
+		JtlRowIndex rowIndex = null;
+		if (JtlRowIndex.isIndexable(sFilepath)) {
+			try {
+				rowIndex = JtlRowIndex.crteForFile(sFilepath, cDelim, USED_COLUMNS);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		String sUncompressedPath = FileServices.stripGzipExtension(sFilepath);
+		String sFileDirectoryName = FilenameUtils.getFullPath(sUncompressedPath);
+		String sFileBaseName = FilenameUtils.getBaseName(sUncompressedPath);
+		String sFileExtension = FilenameUtils.getExtension(sUncompressedPath);
+		if (bGzipOutput) {
+			sFileExtension += FileServices.GZIP_EXTENSION;
+		}
+		// Save the cleansed results in a file for post statistics
+		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_NO_UP_OUTLIERS + sFileExtension;
+		saveSelectedRows(sFilepath, rowIndex, sOutputFile, bsClean, cDelim);
+		// Save the successful cleansed results in a file for post statistics
+		sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_SUCCESS_NO_UP_OUTLIERS + sFileExtension;
+		saveSelectedRows(sFilepath, rowIndex, sOutputFile, bsSuccess, cDelim);
+		// Save the outliers in a separate file for post analysis
+		if (!bsOutliers.isEmpty()) {
+			sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_UP_OUTLIERS + sFileExtension;
+			saveSelectedRows(sFilepath, rowIndex, sOutputFile, bsOutliers, cDelim);
+		}
+
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt, null);
+	}
+
+	public static AnalysisResult RemoveUpper(SampleStore sampleStore, double fTukeyK, double fMaxRemPct) {
+		// Statistics only, without writing the output files, e.g. on the samples of a
+		// follower of a results file still being written
+		if (sampleStore.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ArrayList<Object[]> alRows = new ArrayList<>();
+		int iFailedLblCnt = detectUpper(sampleStore, null, fTukeyK, fMaxRemPct, new BitSet(), new BitSet(),
+				new BitSet(), alRows);
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt, null);
+	}
+
+	public static AnalysisResult RemoveUpper(SampleSketches sampleSketches, double fTukeyK, double fMaxRemPct) {
+		/*
+		 * Sketch mode: statistics only, the fences being computed on the sketches of
+		 * the successful samples. The output files cannot be written as the samples are
+		 * not kept. The outliers are removed from the sketches.
+		 */
+		if (sampleSketches.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ArrayList<Object[]> alRows = new ArrayList<>();
+		int iFailedLblCnt = 0;
+		for (int iLblId : sampleSketches.getSortedLabelIds()) {
+			String sLbl = sampleSketches.getLabel(iLblId);
+			QuantileSketch lblSketch = sampleSketches.getSketch(iLblId);
+			QuantileSketch successSketch = sampleSketches.getSuccessSketch(iLblId);
+			int iInitLblCnt = (int) lblSketch.getCount();
+			double dAvg = successSketch.getMean();
+			double fUpFenceMin = Double.MAX_VALUE;
+			int iUpprOutlierCnt = 0;
+			if (successSketch.getCount() > 3) {
+				double fK = getTukeyK(fTukeyK, (int) successSketch.getCount());
+				// Same iterations as on the samples: the successful samples above the fence
+				// are removed until there are none left
+				long lRemovedCnt;
+				do {
+					double fUpFence = getUpprFence(successSketch.getPercentile(25), successSketch.getPercentile(75),
+							fK);
+					fUpFenceMin = Math.min(fUpFence, fUpFenceMin);
+					lRemovedCnt = successSketch.removeAbove(fUpFence);
+				} while (lRemovedCnt > 0);
+				// All the samples above the lowest fence have been removed
+				iUpprOutlierCnt = (int) lblSketch.removeAbove(fUpFenceMin);
+			}
+			if (addStatsRow(alRows, sLbl, iInitLblCnt, dAvg, fUpFenceMin, iUpprOutlierCnt,
+					successSketch.getCount(), fMaxRemPct)) {
+				iFailedLblCnt++;
+			}
 		}
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt,
+				sampleSketches.getErrorNote());
+	}
+
+	public static AnalysisResult RemoveUpper(SampleReservoirs sampleReservoirs, double fTukeyK, double fMaxRemPct) {
+		/*
+		 * Sampling mode: statistics only, on the samples kept for each label. The
+		 * confidence interval of the first upper fence comes from those of the
+		 * quartiles, whose ranks vary by z * sqrt(n * q * (1 - q)).
+		 */
+		SampleStore sampleStore = sampleReservoirs.getSampleStore();
+		AnalysisResult tukeyResult = RemoveUpper(sampleStore, fTukeyK, fMaxRemPct);
+		if (tukeyResult.getFailedLblCnt() == -1) {
+			return tukeyResult;
+		}
+		double dMaxPctHalfWidth = 0, dMaxFenceHalfWidth = 0;
+		for (int iRow = 0; iRow < tukeyResult.getRowCount(); iRow++) {
+			String sLbl = (String) tukeyResult.getValueAt(iRow, 0);
+			double dRemPct = (Double) tukeyResult.getValueAt(iRow, REMOVED_PCT_COLNBR);
+			dMaxPctHalfWidth = Math.max(dMaxPctHalfWidth,
+					sampleReservoirs.getHalfWidth(sampleStore, sLbl, Math.sqrt(dRemPct * (1 - dRemPct))));
+			int[] aLblRowsSuccess = sampleStore.getSuccessRows(sampleStore.getLabelRows(sampleStore.getLabelId(sLbl)));
+			if (aLblRowsSuccess.length > 3 && sampleReservoirs.isSampled(sampleStore, sLbl)) {
+				SortedSamples sortedSuccess = sampleStore.crteSortedElapsed(aLblRowsSuccess);
+				double fK = getTukeyK(fTukeyK, aLblRowsSuccess.length);
+				double dZ = sampleReservoirs.getZScore();
+				double dQ1Low = getPercentileBound(sortedSuccess, 25, -dZ);
+				double dQ1High = getPercentileBound(sortedSuccess, 25, dZ);
+				double dQ3Low = getPercentileBound(sortedSuccess, 75, -dZ);
+				double dQ3High = getPercentileBound(sortedSuccess, 75, dZ);
+				double dFenceLow = dQ3Low + fK * Math.max(0, dQ3Low - dQ1High);
+				double dFenceHigh = dQ3High + fK * (dQ3High - dQ1Low);
+				dMaxFenceHalfWidth = Math.max(dMaxFenceHalfWidth, (dFenceHigh - dFenceLow) / 2);
+			}
+		}
+		return tukeyResult.withErrorNote(sampleReservoirs.getErrorNote("Removed % +/- "
+				+ NumberServices.formatHalfUp(dMaxPctHalfWidth, 4) + ", Upper Fence +/- "
+				+ NumberServices.formatHalfUp(dMaxFenceHalfWidth, 2) + " ms"));
+	}
+
+	public static JtlFollower followResults(String sFilepath) {
+		// Follower loading the columns used by the detection, for a file still being written
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return new JtlFollower(sFilepath, cDelim, USED_COLUMNS);
+	}
+
+	public static SampleReservoirs loadReservoirs(String sFilepath, double dConfidence, double dMargin) {
+		// Sampling mode: a random sample of each label is kept as the samples are read
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoReservoirs(sFilepath, cDelim, dConfidence, dMargin);
+	}
+
+	public static SampleSketches loadSketches(String sFilepath, double dRelAcc) {
+		// Sketch mode: the samples are summarized as they are read, for files too large
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoSketches(sFilepath, cDelim, dRelAcc);
+	}
+
+	public static String saveTableStatsAsCsv(String sFilePath, AnalysisResult tukeyResult) {
+		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
+		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
+		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
+		FileServices.saveTableAsCsv(sOutputFile, tukeyResult.crteTableModel(), tukeyResult.getErrorNote());
+		return sOutputFile;
+	}
+
+	public static String saveTableStatsAsHtml(String sFilePath, AnalysisResult tukeyResult, String sRemALPct) {
+		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
+		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
+		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "html";
+		String sTableTitle = HTML_STATS_TITLE + " (Removal Acceptable Limit = " + sRemALPct + ")";
+		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, tukeyResult, PASSFAIL_TEST_COLNBR);
+		return sOutputFile;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static AnalysisResult crteAborted() {
+		return AnalysisResult.crteAborted(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, -1);
+	}
+
+	private static void saveSelectedRows(String sFilepath, JtlRowIndex rowIndex, String sOutputFile, BitSet bsRows,
+			char cDelim) {
+		if (rowIndex != null) {
+			FileServices.saveSelectedRowsToFile(rowIndex, sOutputFile, bsRows);
+		} else {
+			FileServices.saveSelectedRowsToFile(sFilepath, sOutputFile, bsRows, cDelim, USED_COLUMNS);
+		}
+	}
+
+	private static int detectUpper(SampleStore sampleStore, int[] aFileRows, double fTukeyK, double fMaxRemPct,
+			BitSet bsOutliers, BitSet bsClean, BitSet bsSuccess, List<Object[]> listRows) {
+		/*
+		 * Adds the labels of the store to the statistics rows and fills the rows of
+		 * each output file, returns the number of failed labels. The rows of the store
+		 * are the rows of the file, unless mapped by aFileRows for a partition.
+		 */
+		int iInitLblCnt, iInitSuccessLblCnt;
+		double fUpFenceMin;
 
-		// Clear any statistics from a previous operation
-		pwrTblMdlStats.clearData();
 
 		// Now, process the data points in natural order...
 		int iFailedLblCnt = 0;
-		TreeMap<String, List<CSVRecord>> tmSortedRcd = new TreeMap<>(rcdHashMap);
 		// Loop through the Labels in the dataset
-		for (String sLbl : tmSortedRcd.keySet()) {
-			List<CSVRecord> aLblRcd = tmSortedRcd.get(sLbl);
-			iInitLblCnt = aLblRcd.size();
+		for (int iLblId : sampleStore.getSortedLabelIds()) {
+			String sLbl = sampleStore.getLabel(iLblId);
+			int[] aLblRows = sampleStore.getLabelRows(iLblId);
+			iInitLblCnt = aLblRows.length;
 			double fUpFence = 0.0;
 			fUpFenceMin = Double.MAX_VALUE;
 
 			// To avoid skewness brought by failed samplers, we calculate the upper fence on successful samplers only.
-			// We use equalsIgnoreCase as "true" can be in capital letters if the results have been exported from Excel
-			aLblRcdSuccess = aLblRcd.stream()
-					.filter(rcd -> "true".equalsIgnoreCase(rcd.get("success")))
-					.collect(Collectors.toList());
-			iInitSuccessLblCnt = aLblRcdSuccess.size();
+			int[] aLblRowsSuccess = sampleStore.getSuccessRows(aLblRows);
+			iInitSuccessLblCnt = aLblRowsSuccess.length;
 
 			// Get initial average value
-			double dAvg = MathMoments.crteMomentsFromRecordsList(aLblRcdSuccess).getMean();
+			double dAvg = sampleStore.accumulateElapsed(aLblRowsSuccess).getMean();
 
 			// Only look for outliers if there are at least four items to compare
 			if (iInitSuccessLblCnt > 3) {
-				// Initialize k
-				if (fTukeyK == 0) {
-					// Use Carling's formulae and round to 2 decimal places
-					fK = ((17.63 * iInitSuccessLblCnt) - 23.64) / ((7.74 * iInitSuccessLblCnt) - 3.71);
-					String sKrounded = df2Decimals.format(fK);
-					// Convert value back to double
-					fK = Double.parseDouble(sKrounded);
-				}
+				double fK = getTukeyK(fTukeyK, iInitSuccessLblCnt);
 				/*
 				 * An outlier can hide another outlier...so when removing extreme values, we
-				 * have to iterate until no extreme values are left.
+				 * have to iterate until no extreme values are left. The elapsed times being
+				 * sorted once, removing the ones above the fence only shortens the series.
 				 */
-				boolean bIsUpperRemoved;
+				SortedSamples sortedSuccess = sampleStore.crteSortedElapsed(aLblRowsSuccess);
+				int iRemovedCnt;
 				do {
-					// Update the stats on the series and get the new upper fence
-					MathMoments mathMoments = MathMoments.crteMomentsFromRecordsList(aLblRcdSuccess);
-					fUpFence = getUpprFence(mathMoments, fK);
+					// Get the new upper fence on the remaining series
+					fUpFence = getUpprFence(sortedSuccess.getPercentile(25), sortedSuccess.getPercentile(75), fK);
 					// Save the most severe limit for the report
 					fUpFenceMin = Math.min(fUpFence, fUpFenceMin);
-					// Now remove all samples that are higher than the upper fence using Java's
-					// Stream API
-					final double fUpFenceFinal = fUpFence;
-					List<CSVRecord> upprOutliers = aLblRcd.stream()
-							.filter(rcd -> Double.parseDouble(rcd.get("elapsed")) > fUpFenceFinal)
-							.collect(Collectors.toList());
-					if (upprOutliers.size() == 0) {
-						bIsUpperRemoved = false;
-					} else {
-						// Outliers detected: save them in a separate list and repeat
-						mergedOutliers = addCSVList2To1(mergedOutliers, upprOutliers);
-						// Remove these outliers from the current lists
-						aLblRcd = aLblRcd.stream()
-								.filter(rcd -> Double.parseDouble(rcd.get("elapsed")) <= fUpFenceFinal)
-								.collect(Collectors.toList());
-						aLblRcdSuccess = aLblRcdSuccess.stream()
-								.filter(rcd -> Double.parseDouble(rcd.get("elapsed")) <= fUpFenceFinal)
-								.collect(Collectors.toList());
-						bIsUpperRemoved = true;
-					}
-				} while (bIsUpperRemoved);
-
-				// Outliers removed, save the new cleansed lists
-				mergedClean = addCSVList2To1(mergedClean, aLblRcd);
-				mergedSuccess = addCSVList2To1(mergedSuccess, aLblRcdSuccess);
-			} else {
-				// No outliers removed because not enough samples: just save those samples
-				mergedClean = addCSVList2To1(mergedClean, aLblRcd);
-				mergedSuccess = addCSVList2To1(mergedSuccess, aLblRcdSuccess);
+					iRemovedCnt = sortedSuccess.removeAbove(fUpFence);
+				} while (iRemovedCnt > 0);
+				// All the samples above the lowest fence are outliers: save them in a separate
+				// list and remove them from the current lists
+				final double fUpFenceFinal = fUpFenceMin;
+				setRows(bsOutliers,
+						Arrays.stream(aLblRows).filter(iRow -> sampleStore.getElapsed(iRow) > fUpFenceFinal).toArray(),
+						aFileRows);
+				aLblRows = Arrays.stream(aLblRows).filter(iRow -> sampleStore.getElapsed(iRow) <= fUpFenceFinal)
+						.toArray();
+				aLblRowsSuccess = Arrays.stream(aLblRowsSuccess)
+						.filter(iRow -> sampleStore.getElapsed(iRow) <= fUpFenceFinal).toArray();
 			}
+			// Save the remaining samples, whether outliers were removed or not
+			setRows(bsClean, aLblRows, aFileRows);
+			setRows(bsSuccess, aLblRowsSuccess, aFileRows);
 
-			// Save the results in the table
-			String sIsSmallSuccessGroup = "false";
-			if (aLblRcdSuccess.size() < 100) {
-				sIsSmallSuccessGroup = "true";
-			}
-			int iUpprOutlierCnt = iInitLblCnt - aLblRcd.size();
-			BigDecimal bdUpprOutlierPct = (iInitLblCnt == 0) ? new BigDecimal(0)
-					: new BigDecimal((double) iUpprOutlierCnt / (double) iInitLblCnt);
-			// Round % to 4 decimal places
-			BigDecimal bdUpprOutlierPctRnd = bdUpprOutlierPct.setScale(4, RoundingMode.HALF_UP);
-			String sIsFailed = "false";
-			if (bdUpprOutlierPctRnd.compareTo(bdMaxRemPct) != -1) {
-				sIsFailed = "true";
+			if (addStatsRow(listRows, sLbl, iInitLblCnt, dAvg, fUpFenceMin, iInitLblCnt - aLblRows.length,
+					aLblRowsSuccess.length, fMaxRemPct)) {
 				iFailedLblCnt++;
 			}
-			
-			// Update the statistics table
-			Object[] oArrayRowData = {
-					sLbl, // Label
-					iInitLblCnt, // # Samples
-					Long.valueOf((long) dAvg), // Average
-					fUpFenceMin, // Upper Fence
-					iUpprOutlierCnt, // # Removed
-					bdUpprOutlierPctRnd.doubleValue(), // Removed %
-					sIsSmallSuccessGroup, // Small Success Group
-					sIsFailed };
-			pwrTblMdlStats.addRow(oArrayRowData);
 		}
+		return iFailedLblCnt;
+	}
 
-		String sFileDirectoryName = FilenameUtils.getFullPath(sFilepath);
-		String sFileBaseName = FilenameUtils.getBaseName(sFilepath);
-		String sFileExtension = FilenameUtils.getExtension(sFilepath);
-		// Save the cleansed results in a file for post statistics
-		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_NO_UP_OUTLIERS + sFileExtension;
-		FileServices.saveCSVRecsToFile(sOutputFile, mergedClean, cDelim);
-		// Save the successful cleansed results in a file for post statistics
-		sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_SUCCESS_NO_UP_OUTLIERS + sFileExtension;
-		FileServices.saveCSVRecsToFile(sOutputFile, mergedSuccess, cDelim);
-		// Save the outliers in a separate file for post analysis
-		if (mergedOutliers != null) {
-			sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_UP_OUTLIERS + sFileExtension;
-			FileServices.saveCSVRecsToFile(sOutputFile, mergedOutliers, cDelim);
+	private static boolean addStatsRow(List<Object[]> listRows, String sLbl, int iInitLblCnt, double dAvg,
+			double fUpFenceMin, int iUpprOutlierCnt, long lSuccessCnt, double fMaxRemPct) {
+		// Adds the results of a label to the statistics rows, returns true if it failed
+		String sIsSmallSuccessGroup = "false";
+		if (lSuccessCnt < 100) {
+			sIsSmallSuccessGroup = "true";
+		}
+		double dUpprOutlierPct = (iInitLblCnt == 0) ? 0 : (double) iUpprOutlierCnt / (double) iInitLblCnt;
+		// Round % to 4 decimal places
+		double dUpprOutlierPctRnd = NumberServices.roundHalfUp(dUpprOutlierPct, 4);
+		String sIsFailed = "false";
+		if (NumberServices.compareDecimal(dUpprOutlierPctRnd, 4, fMaxRemPct) != -1) {
+			sIsFailed = "true";
 		}
 
-		return iFailedLblCnt;
+		// Update the statistics table
+		Object[] oArrayRowData = {
+				sLbl, // Label
+				iInitLblCnt, // # Samples
+				Long.valueOf((long) dAvg), // Average
+				fUpFenceMin, // Upper Fence
+				iUpprOutlierCnt, // # Removed
+				dUpprOutlierPctRnd, // Removed %
+				sIsSmallSuccessGroup, // Small Success Group
+				sIsFailed };
+		listRows.add(oArrayRowData);
+		return sIsFailed.equals("true");
 	}
 
-	public static String saveTableStatsAsCsv(String sFilePath) {
-		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
-		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
-		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
-		FileServices.saveTableAsCsv(sOutputFile, pwrTblMdlStats);
-		return sOutputFile;
+	private static double getPercentileBound(SortedSamples sortedSamples, double dP, double dZ) {
+		// Percentile at the rank moved by dZ standard deviations of the rank of the p-th percentile
+		int iCnt = sortedSamples.getCount();
+		double dQ = dP / 100;
+		double dPos = dQ * (iCnt + 1) + dZ * Math.sqrt(iCnt * dQ * (1 - dQ));
+		return sortedSamples.getPercentile(Math.max(0, Math.min(100, 100 * dPos / (iCnt + 1))));
 	}
 
-	public static String saveTableStatsAsHtml(String sFilePath, String sRemALPct) {
-		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
-		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
-		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "html";
-		String sTableTitle = HTML_STATS_TITLE + " (Removal Acceptable Limit = " + sRemALPct + ")";
-		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, pwrTblMdlStats, PASSFAIL_TEST_COLNBR);
-		return sOutputFile;
+	private static double getTukeyK(double fTukeyK, int iSuccessCnt) {
+		if (fTukeyK != 0) {
+			return fTukeyK;
+		}
+		// Use Carling's formulae and round to 2 decimal places
+		double fK = ((17.63 * iSuccessCnt) - 23.64) / ((7.74 * iSuccessCnt) - 3.71);
+		return NumberServices.roundHalfEven(fK, 2);
 	}
 
-	/*
-	 * Private methods
-	 */
-	private static List<CSVRecord> addCSVList2To1(List<CSVRecord> listCSV1, List<CSVRecord> listCSV2) {
-		if (listCSV1 == null) {
-			listCSV1 = new ArrayList<>(listCSV2);
-		} else {
-			listCSV1.addAll(listCSV2);
+	private static void setRows(BitSet bsRows, int[] aRows, int[] aFileRows) {
+		for (int iRow : aRows) {
+			bsRows.set((aFileRows == null) ? iRow : aFileRows[iRow]);
 		}
-		return listCSV1;
 	}
 
-	private static double getUpprFence(MathMoments mathMoments, double fK) {
+	private static double getUpprFence(double fQ1, double fQ3, double fK) {
 		// Return the upper fence value to 2 decimal places
-		double fInterQuartileRange = mathMoments.getQ3() - mathMoments.getQ1();
-		double fUpperFence = mathMoments.getQ3() + (fK * fInterQuartileRange);
-		String sUpperFencerounded = df2Decimals.format(fUpperFence);
-		// Convert value back to double
-		fUpperFence = Double.parseDouble(sUpperFencerounded);
-		return fUpperFence;
+		double fInterQuartileRange = fQ3 - fQ1;
+		double fUpperFence = fQ3 + (fK * fInterQuartileRange);
+		return NumberServices.roundHalfEven(fUpperFence, 2);
 	}
 
 }
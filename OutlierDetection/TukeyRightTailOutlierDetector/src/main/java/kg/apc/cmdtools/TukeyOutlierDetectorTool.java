@@ -3,12 +3,18 @@ package kg.apc.cmdtools;
  * Please keep this package name for calling this tool with the the command line cmdrunner tool
  */
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ListIterator;
 
 import org.apache.commons.lang3.math.NumberUtils;
 
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SampleSketches;
 import com.github.rbourga.jmeter.tukeyoutlierdetector.logic.TukeyOutlierDetectorLogic;
 
 import kg.apc.cmd.UniversalRunner;
@@ -32,6 +38,14 @@ public class TukeyOutlierDetectorTool extends AbstractCMDTool {
 		String sInFile = null;
 		String sTukeyK = "0"; // Carling's value by default
 		String sRemALPct = "0.20"; // 20% max by default
+		String sGzipOutput = "false"; // uncompressed output files by default
+		String sFollowSecs = "0"; // no follow by default
+		String sFollowIdleSecs = "0"; // several refresh periods by default
+		String sSketchRelErr = "0"; // exact by default
+		String sSamplingConfidence = "0"; // no sampling by default
+		String sSamplingMargin = "0.01"; // 1% by default
+		String sLabelRules = null; // label rules of the JMeter properties by default
+		String sTopLabels = null; // top labels of the JMeter properties by default
 
 		if (!args.hasNext()) {
 			showHelp(System.out);
@@ -56,6 +70,46 @@ public class TukeyOutlierDetectorTool extends AbstractCMDTool {
 					throw new IllegalArgumentException("Upper outlier removal acceptable limit value missing.");
 				}
 				sRemALPct = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--gzip-output")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Gzip output value missing.");
+				}
+				sGzipOutput = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow refresh period value missing.");
+				}
+				sFollowSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-idle-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow idle timeout value missing.");
+				}
+				sFollowIdleSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sketch-rel-err")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sketch relative error value missing.");
+				}
+				sSketchRelErr = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--label-rules")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Label rules file name missing.");
+				}
+				sLabelRules = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--top-labels")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Top labels value missing.");
+				}
+				sTopLabels = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-confidence")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling confidence value missing.");
+				}
+				sSamplingConfidence = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-margin")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling margin value missing.");
+				}
+				sSamplingMargin = ((String) args.next());
 			}
 		}
 
@@ -84,13 +138,105 @@ public class TukeyOutlierDetectorTool extends AbstractCMDTool {
 					"Upper outlier removal acceptable limit value needs to be greater or equal to 0.");
 		}
 
+		// Check gzip-output parameter
+		if (!(sGzipOutput.equalsIgnoreCase("true")) && !(sGzipOutput.equalsIgnoreCase("false"))) {
+			throw new IllegalArgumentException("Gzip output value invalid (only true or false accepted).");
+		}
+
+		// Check follow-secs parameter
+		if (!(NumberUtils.isDigits(sFollowSecs))) {
+			throw new IllegalArgumentException("Follow refresh period value invalid (number of seconds expected).");
+		}
+		long lFollowSecs = Long.parseLong(sFollowSecs);
+		if ((lFollowSecs > 0) && !(JtlFollower.isFollowable(sInFile))) {
+			throw new IllegalArgumentException("Only a single uncompressed CSV/TSV input file can be followed.");
+		}
+		// Check follow-idle-secs parameter
+		if (!(NumberUtils.isDigits(sFollowIdleSecs))) {
+			throw new IllegalArgumentException("Follow idle timeout value invalid (number of seconds expected).");
+		}
+		long lFollowIdleSecs = Long.parseLong(sFollowIdleSecs);
+		// Check sketch-rel-err parameter
+		if (!(NumberUtils.isCreatable(sSketchRelErr))) {
+			throw new IllegalArgumentException("Sketch relative error value invalid.");
+		}
+		double dSketchRelErr = Double.parseDouble(sSketchRelErr);
+		if ((dSketchRelErr != 0) && SampleSketches.isRelAccOutOfRange(dSketchRelErr)) {
+			throw new IllegalArgumentException("Sketch relative error value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSketchRelErr != 0) && (lFollowSecs > 0)) {
+			throw new IllegalArgumentException("A followed input file cannot be read in sketch mode.");
+		}
+		// Check sampling-confidence and sampling-margin parameters
+		if (!(NumberUtils.isCreatable(sSamplingConfidence))) {
+			throw new IllegalArgumentException("Sampling confidence value invalid.");
+		}
+		double dSamplingConfidence = Double.parseDouble(sSamplingConfidence);
+		if ((dSamplingConfidence != 0) && SampleReservoirs.isConfidenceOutOfRange(dSamplingConfidence)) {
+			throw new IllegalArgumentException("Sampling confidence value needs to be between 0 and 1 excluded.");
+		}
+		if (!(NumberUtils.isCreatable(sSamplingMargin))) {
+			throw new IllegalArgumentException("Sampling margin value invalid.");
+		}
+		double dSamplingMargin = Double.parseDouble(sSamplingMargin);
+		if (SampleReservoirs.isMarginOutOfRange(dSamplingMargin)) {
+			throw new IllegalArgumentException("Sampling margin value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSamplingConfidence != 0) && ((lFollowSecs > 0) || (dSketchRelErr != 0))) {
+			throw new IllegalArgumentException("Sampling mode cannot be combined with follow or sketch mode.");
+		}
+
+		// Check label-rules and top-labels parameters
+		if ((sLabelRules != null) && !FileServices.isFilenameEmpty(sLabelRules)) {
+			if (!(FileServices.isFileExist(sLabelRules))) {
+				throw new IllegalArgumentException("Label rules file not found.");
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRules))) {
+				throw new IllegalArgumentException(
+						"Label rules file invalid (sample_name_or_regex and label_group columns expected).");
+			}
+		}
+		if ((sTopLabels != null) && !(NumberUtils.isDigits(sTopLabels))) {
+			throw new IllegalArgumentException("Top labels value invalid (number of labels expected).");
+		}
+		int iTopLabels = (sTopLabels == null) ? LabelMapper.getTopLabelCnt() : NumberUtils.toInt(sTopLabels, -1);
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			throw new IllegalArgumentException("Top labels value needs to be greater or equal to 0.");
+		}
+		// Options of the loads, the JMeter properties being kept if not given
+		if (sLabelRules != null) {
+			LabelMapper.setRulesFile(sLabelRules);
+		}
+		if (sTopLabels != null) {
+			LabelMapper.setTopLabelCnt(iTopLabels);
+		}
+
 		// Do the job
-		int iResult = TukeyOutlierDetectorLogic.RemoveUpper(sInFile, Double.parseDouble(sTukeyK), fRemALPct);
+		double fTukeyK = Double.parseDouble(sTukeyK);
+		if (lFollowSecs > 0) {
+			// The output files are written once the test is over
+			followInputFile(sInFile, lFollowSecs, lFollowIdleSecs, fTukeyK, sRemALPct);
+		}
+		AnalysisResult tukeyResult;
+		if (dSamplingConfidence > 0) {
+			// Statistics only: the output files would only hold the samples kept
+			tukeyResult = TukeyOutlierDetectorLogic.RemoveUpper(
+					TukeyOutlierDetectorLogic.loadReservoirs(sInFile, dSamplingConfidence, dSamplingMargin), fTukeyK,
+					fRemALPct);
+		} else if (dSketchRelErr > 0) {
+			// Statistics only: the samples are not kept to be written in the output files
+			tukeyResult = TukeyOutlierDetectorLogic.RemoveUpper(
+					TukeyOutlierDetectorLogic.loadSketches(sInFile, dSketchRelErr), fTukeyK, fRemALPct);
+		} else {
+			tukeyResult = TukeyOutlierDetectorLogic.RemoveUpper(sInFile, fTukeyK, fRemALPct,
+					Boolean.parseBoolean(sGzipOutput));
+		}
+		int iResult = tukeyResult.getFailedLblCnt();
 		if (iResult == -1) {
 			System.out.println("No samplers found in input file - please check your file.");
 		} else {
 			// Save Removal results in an HTML file for import in DevOps tool later on
-			String htmlFilename = TukeyOutlierDetectorLogic.saveTableStatsAsHtml(sInFile, sRemALPct);
+			String htmlFilename = TukeyOutlierDetectorLogic.saveTableStatsAsHtml(sInFile, tukeyResult, sRemALPct);
 			System.out.println("Results saved in " + htmlFilename);
 		}
 		return iResult;
@@ -100,6 +246,36 @@ public class TukeyOutlierDetectorTool extends AbstractCMDTool {
 	protected void showHelp(PrintStream os) {
 		os.println("Options for tool 'TukeyOutlierDetector': --input-file <filenameIn> " + "["
 				+ "--tukey-k <k (0 (Carling), 1.5 or 3, default = 0)> "
-				+ "--rem-alim-pct <Removal acceptable limit percentage value to pass (default = 20%)>" + "]");
+				+ "--rem-alim-pct <Removal acceptable limit percentage value to pass (default = 20%)> "
+				+ "--gzip-output <true or false: gzip-compress the output files (default = false)> "
+				+ "--follow-secs <refresh period in secs while the input file is being written (default = 0, no follow)> "
+				+ "--follow-idle-secs <secs without the followed file growing before the test is taken as over (default = 0, "
+				+ JtlFollower.IDLE_PERIODS_DEFAULT + " refresh periods)> "
+				+ "--sketch-rel-err <relative error of the response times to summarize large files in bounded memory, e.g. 0.01 (default = 0, exact)> "
+				+ "--label-rules <CSV file of sample_name_or_regex,label_group rules merging the labels of a same transaction> "
+				+ "--top-labels <number of labels with the most samples to keep, the others grouped under '" + LabelMapper.OTHER_LABEL + "' (default = 0, all labels)> "
+				+ "--sampling-confidence <confidence level of a quick analysis on random samples of each label, e.g. 0.95 (default = 0, no sampling)> "
+				+ "--sampling-margin <margin of error of the proportions in sampling mode (default = 0.01)> " + "]");
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static void followInputFile(String sInFile, long lFollowSecs, long lFollowIdleSecs, double fTukeyK,
+			String sRemALPct) {
+		// Update the report with the samples appended to the file until the test is over
+		double fRemALPct = Double.parseDouble(sRemALPct);
+		JtlFollower jtlFollower = TukeyOutlierDetectorLogic.followResults(sInFile);
+		try {
+			jtlFollower.follow(lFollowSecs * 1000, lFollowIdleSecs * 1000, (sampleStore, iNewRowCnt) -> {
+				AnalysisResult tukeyResult = TukeyOutlierDetectorLogic.RemoveUpper(sampleStore, fTukeyK, fRemALPct);
+				TukeyOutlierDetectorLogic.saveTableStatsAsHtml(sInFile, tukeyResult, sRemALPct);
+				System.out.println(iNewRowCnt + " new samples read, report updated.");
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 }
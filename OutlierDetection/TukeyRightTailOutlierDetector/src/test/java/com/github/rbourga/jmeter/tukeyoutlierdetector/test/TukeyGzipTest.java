@@ -0,0 +1,95 @@
+package com.github.rbourga.jmeter.tukeyoutlierdetector.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+import com.github.rbourga.jmeter.common.TestResultsServices;
+import com.github.rbourga.jmeter.tukeyoutlierdetector.logic.TukeyOutlierDetectorLogic;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class TukeyGzipTest {
+
+	private static final String[] OUTPUT_SUFFIXES = { "_clean.jtl", "_success.jtl", "_outliers.jtl" };
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public TukeyGzipTest() {
+	}
+
+	@Test
+	public void gzipSameAsUncompressed() throws IOException {
+		/*
+		 * A gzip results file gives the statistics of the same file uncompressed, and
+		 * its gzip output files decompress to the uncompressed output files.
+		 */
+		String sBasePath = sJMeterTempDir + "/GzipResults";
+		String sFilePath = sBasePath + ".jtl";
+		String sGzipPath = sFilePath + FileServices.GZIP_EXTENSION;
+		int[] aLblRowCnts = { 500, 3000, 20, 12000 };
+		TestResultsServices.crteLabelsTestResultsFile(sFilePath, aLblRowCnts, 7);
+		try (OutputStream outStream = new GZIPOutputStream(Files.newOutputStream(Paths.get(sGzipPath)))) {
+			Files.copy(Paths.get(sFilePath), outStream);
+		}
+
+		try {
+			assertTrue(FileServices.isGzipFile(sGzipPath));
+			assertTrue(FileServices.isFileValid(sGzipPath));
+			assertFalse(FileServices.isXmlFile(sGzipPath));
+			AnalysisResult plainResult = TukeyOutlierDetectorLogic.RemoveUpper(sFilePath, 0, 0.2, false);
+			AnalysisResult gzipResult = TukeyOutlierDetectorLogic.RemoveUpper(sGzipPath, 0, 0.2, true);
+
+			assertEquals(aLblRowCnts.length, plainResult.getRowCount());
+			assertEquals(plainResult.getFailedLblCnt(), gzipResult.getFailedLblCnt());
+			assertEquals(plainResult.getRowCount(), gzipResult.getRowCount());
+			for (int iRow = 0; iRow < plainResult.getRowCount(); iRow++) {
+				for (int iCol = 0; iCol < plainResult.getColumnNames().length; iCol++) {
+					assertEquals(plainResult.getValueAt(iRow, iCol), gzipResult.getValueAt(iRow, iCol));
+				}
+			}
+			for (String sSuffix : OUTPUT_SUFFIXES) {
+				String sGzipOutput = sBasePath + sSuffix + FileServices.GZIP_EXTENSION;
+				assertTrue(FileServices.isGzipFile(sGzipOutput));
+				byte[] aPlainBytes = Files.readAllBytes(Paths.get(sBasePath + sSuffix));
+				assertTrue(aPlainBytes.length > 0);
+				try (InputStream inStream = new GZIPInputStream(Files.newInputStream(Paths.get(sGzipOutput)))) {
+					assertArrayEquals(sSuffix, aPlainBytes, IOUtils.toByteArray(inStream));
+				}
+			}
+		} finally {
+			for (String sSuffix : OUTPUT_SUFFIXES) {
+				new File(sBasePath + sSuffix).delete();
+				new File(sBasePath + sSuffix + FileServices.GZIP_EXTENSION).delete();
+			}
+			new File(sFilePath).delete();
+			new File(sGzipPath).delete();
+			new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+			new File(SampleStoreCache.getCachePath(sGzipPath)).delete();
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.github.rbourga.jmeter.tukeyoutlierdetector.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+import com.github.rbourga.jmeter.common.TestResultsServices;
+import com.github.rbourga.jmeter.tukeyoutlierdetector.logic.TukeyOutlierDetectorLogic;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class TukeyPartitionedTest {
+
+	private static final String BUDGET_PROPERTY = "rbourga.partition.budget.mb";
+	// More partitions than temporary files open at once
+	private static final int MIN_PARTITION_CNT = 65;
+	private static final String[] OUTPUT_SUFFIXES = { "_clean.csv", "_success.csv", "_outliers.csv" };
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public TukeyPartitionedTest() {
+	}
+
+	@Test
+	public void partitionedSameAsInMemory() throws IOException {
+		/*
+		 * Labels of more than half of the 1 MB budget each, so that each gets a
+		 * partition of its own, with small labels between them sharing theirs. The
+		 * statistics and the output files must be the same as with the whole file in
+		 * memory.
+		 */
+		String sBasePath = sJMeterTempDir + "/PartitionedResults";
+		String sFilePath = sBasePath + ".csv";
+		int[] aLblRowCnts = new int[100];
+		for (int iLbl = 0; iLbl < aLblRowCnts.length; iLbl++) {
+			aLblRowCnts[iLbl] = (iLbl % 10 == 3 || iLbl % 10 == 7 || iLbl % 10 == 9) ? 200 + 50 * iLbl : 8300;
+		}
+		TestResultsServices.crteLabelsTestResultsFile(sFilePath, aLblRowCnts, 16);
+
+		try {
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "0");
+			assertFalse(SamplePartitioner.isPartitioned(sFilePath));
+			AnalysisResult memoryResult = TukeyOutlierDetectorLogic.RemoveUpper(sFilePath, 0, 0.2);
+			byte[][] aMemoryOutputs = readOutputs(sBasePath);
+
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "1");
+			assertTrue(SamplePartitioner.isPartitioned(sFilePath));
+			int iPartitionCnt = SamplePartitioner.forEachPartition(sFilePath, ',',
+					new String[] { JtlScanner.COL_ELAPSED, JtlScanner.COL_SUCCESS }, (sampleStore, aFileRows) -> {
+					});
+			assertTrue("Only " + iPartitionCnt + " partitions", iPartitionCnt >= MIN_PARTITION_CNT);
+			AnalysisResult partitionedResult = TukeyOutlierDetectorLogic.RemoveUpper(sFilePath, 0, 0.2);
+			byte[][] aPartitionedOutputs = readOutputs(sBasePath);
+
+			assertSameResult(memoryResult, partitionedResult);
+			for (int i = 0; i < OUTPUT_SUFFIXES.length; i++) {
+				assertTrue(aMemoryOutputs[i].length > 0);
+				assertArrayEquals(OUTPUT_SUFFIXES[i], aMemoryOutputs[i], aPartitionedOutputs[i]);
+			}
+		} finally {
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "0");
+			new File(sFilePath).delete();
+			new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static byte[][] readOutputs(String sBasePath) throws IOException {
+		byte[][] aOutputs = new byte[OUTPUT_SUFFIXES.length][];
+		for (int i = 0; i < OUTPUT_SUFFIXES.length; i++) {
+			File outputFile = new File(sBasePath + OUTPUT_SUFFIXES[i]);
+			aOutputs[i] = Files.readAllBytes(Paths.get(outputFile.getPath()));
+			outputFile.delete();
+		}
+		return aOutputs;
+	}
+
+	private static void assertSameResult(AnalysisResult expectedResult, AnalysisResult actualResult) {
+		assertEquals(expectedResult.getFailedLblCnt(), actualResult.getFailedLblCnt());
+		assertEquals(expectedResult.getRowCount(), actualResult.getRowCount());
+		for (int iRow = 0; iRow < expectedResult.getRowCount(); iRow++) {
+			for (int iCol = 0; iCol < expectedResult.getColumnNames().length; iCol++) {
+				assertEquals("Row " + iRow + ", column " + iCol, expectedResult.getValueAt(iRow, iCol),
+						actualResult.getValueAt(iRow, iCol));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.github.rbourga.jmeter.tukeyoutlierdetector.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+import com.github.rbourga.jmeter.common.XmlJtlReader;
+import com.github.rbourga.jmeter.tukeyoutlierdetector.logic.TukeyOutlierDetectorLogic;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class TukeyXmlTest {
+
+	private static final String[] OUTPUT_SUFFIXES = { "_clean", "_success", "_outliers" };
+	private static final String SUB_RESULT_MARK = "rm=\"sub result\"";
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public TukeyXmlTest() {
+	}
+
+	@Test
+	public void xmlSameAsCsv() throws IOException {
+		/*
+		 * The same samples saved as XML, some with slow sub-results of the same label,
+		 * and as CSV: the sub-results are neither analysed nor numbered, so the
+		 * statistics are the same and the XML output files hold the samples of the
+		 * CSV output files, with their sub-results.
+		 */
+		String sXmlBasePath = sJMeterTempDir + "/XmlResults";
+		String sCsvBasePath = sJMeterTempDir + "/XmlResultsAsCsv";
+		Set<Long> hsSubTimeStamps = crteResultsFiles(sXmlBasePath + ".jtl", sCsvBasePath + ".csv", 3000);
+
+		try {
+			assertTrue(FileServices.isXmlFile(sXmlBasePath + ".jtl"));
+			AnalysisResult csvResult = TukeyOutlierDetectorLogic.RemoveUpper(sCsvBasePath + ".csv", 0, 0.2);
+			AnalysisResult xmlResult = TukeyOutlierDetectorLogic.RemoveUpper(sXmlBasePath + ".jtl", 0, 0.2);
+
+			assertEquals(csvResult.getFailedLblCnt(), xmlResult.getFailedLblCnt());
+			assertEquals(csvResult.getRowCount(), xmlResult.getRowCount());
+			for (int iRow = 0; iRow < csvResult.getRowCount(); iRow++) {
+				for (int iCol = 0; iCol < csvResult.getColumnNames().length; iCol++) {
+					assertEquals(csvResult.getValueAt(iRow, iCol), xmlResult.getValueAt(iRow, iCol));
+				}
+			}
+			for (String sSuffix : OUTPUT_SUFFIXES) {
+				List<String> listCsvRows = Files.readAllLines(Paths.get(sCsvBasePath + sSuffix + ".csv"));
+				listCsvRows.remove(0); // header
+				List<String> listXmlRows = new ArrayList<>();
+				XmlJtlReader.scanFile(sXmlBasePath + sSuffix + ".jtl", (sLabel, lTimeStamp, lElapsed,
+						bSuccess) -> listXmlRows.add(lTimeStamp + "," + lElapsed + "," + sLabel + "," + bSuccess));
+				assertTrue(listCsvRows.size() > 0);
+				assertEquals(sSuffix, listCsvRows, listXmlRows);
+
+				// Sub-results copied with their samples
+				int iSubCnt = 0;
+				for (String sRow : listCsvRows) {
+					if (hsSubTimeStamps.contains(Long.parseLong(StringUtils.substringBefore(sRow, ",")))) {
+						iSubCnt++;
+					}
+				}
+				String sXml = new String(Files.readAllBytes(Paths.get(sXmlBasePath + sSuffix + ".jtl")),
+						StandardCharsets.UTF_8);
+				assertEquals(sSuffix, iSubCnt, StringUtils.countMatches(sXml, SUB_RESULT_MARK));
+			}
+		} finally {
+			for (String sSuffix : OUTPUT_SUFFIXES) {
+				new File(sXmlBasePath + sSuffix + ".jtl").delete();
+				new File(sCsvBasePath + sSuffix + ".csv").delete();
+			}
+			new File(sXmlBasePath + ".jtl").delete();
+			new File(sCsvBasePath + ".csv").delete();
+			new File(SampleStoreCache.getCachePath(sXmlBasePath + ".jtl")).delete();
+			new File(SampleStoreCache.getCachePath(sCsvBasePath + ".csv")).delete();
+		}
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static Set<Long> crteResultsFiles(String sXmlPath, String sCsvPath, int iRowCnt) throws IOException {
+		// Returns the timeStamps of the samples with sub-results
+		Set<Long> hsSubTimeStamps = new HashSet<>();
+		Random oRandom = new Random(8);
+		try (PrintWriter xmlWrtr = new PrintWriter(sXmlPath, "UTF-8");
+				PrintWriter csvWrtr = new PrintWriter(sCsvPath, "UTF-8")) {
+			xmlWrtr.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			xmlWrtr.println("<testResults version=\"1.2\">");
+			csvWrtr.println("timeStamp,elapsed,label,success");
+			long lTimeStamp = 1700000000000L;
+			for (int iRow = 0; iRow < iRowCnt; iRow++) {
+				lTimeStamp += 1 + oRandom.nextInt(10);
+				int iElapsed = (oRandom.nextInt(40) == 0) ? 3000 + oRandom.nextInt(3000) : 100 + oRandom.nextInt(200);
+				String sLabel = "Label " + oRandom.nextInt(4);
+				boolean bSuccess = oRandom.nextInt(10) != 0;
+				csvWrtr.println(lTimeStamp + "," + iElapsed + "," + sLabel + "," + bSuccess);
+				String sAttrs = "t=\"" + iElapsed + "\" ts=\"" + lTimeStamp + "\" s=\"" + bSuccess + "\" lb=\"" + sLabel
+						+ "\"";
+				if (iRow % 7 == 0) {
+					hsSubTimeStamps.add(lTimeStamp);
+					xmlWrtr.println("<httpSample " + sAttrs + " rc=\"200\">");
+					xmlWrtr.println("  <httpSample t=\"" + (10 * iElapsed) + "\" ts=\"" + lTimeStamp + "\" s=\"true\" lb=\""
+							+ sLabel + "\" " + SUB_RESULT_MARK + "/>");
+					xmlWrtr.println("</httpSample>");
+				} else {
+					xmlWrtr.println("<httpSample " + sAttrs + " rc=\"200\"/>");
+				}
+			}
+			xmlWrtr.println("</testResults>");
+		}
+		return hsSubTimeStamps;
+	}
+
+}
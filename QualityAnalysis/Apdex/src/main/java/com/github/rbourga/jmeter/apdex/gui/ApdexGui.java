@@ -10,19 +10,24 @@ import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.table.TableCellRenderer;
 
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.util.FilePanel;
 import org.apache.jmeter.gui.util.MenuFactory;
+import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.gui.util.VerticalPanel;
 import org.apache.jmeter.samplers.Clearable;
 import org.apache.jmeter.samplers.SampleResult;
@@ -33,7 +38,10 @@ import org.apache.jorphan.gui.NumberRenderer;
 import org.apache.jorphan.gui.RendererUtils;
 
 import com.github.rbourga.jmeter.apdex.logic.ApdexLogic;
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
 
 import kg.apc.jmeter.JMeterPluginsUtils;
 
@@ -59,6 +67,20 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 	private JFormattedTextField jFTxtFldApdexAQL;
 	private FilePanel filePnlApdex;
 	private FilePanel filePnlResults;
+	private JLabel jLblTopLabels = new JLabel("Labels with the most samples to keep (0 = all) ");
+	private JFormattedTextField jFTxtFldTopLabels;
+	private FilePanel filePnlLabelRules;
+	private JCheckBox jChkBxFollow = new JCheckBox("Follow file while the test is running");
+
+	// Statistics table of this GUI, filled from the last result
+	private PowerTableModel pwrTblMdlStats = ApdexLogic.crteTableModelStats();
+	private transient AnalysisResult apdexResult = null;
+
+	// Refresh of the table while following a results file
+	private transient ApdexLogic apdexLogic = null;
+	private transient JtlFollower jtlFollower = null;
+	private Timer followTimer = null;
+	private transient SwingWorker<AnalysisResult, Void> followWorker = null; // refresh in progress
 
 	// GUI constructor
 	public ApdexGui() {
@@ -105,15 +127,30 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 		// Panel for selection of file
 		filePnlResults = new FilePanel("Read results from file and calculate Apdex scores", EXTS);
 
+		// Panel for selection of label normalisation rules file
+		filePnlLabelRules = new FilePanel("Label normalisation rules file (optional)", EXTS);
+		filePnlLabelRules.setFilename(LabelMapper.getRulesFile());
+
+		// Panel for top labels option
+		JPanel jPnlTopLabels = new JPanel(new BorderLayout());
+		jPnlTopLabels.add(jLblTopLabels, BorderLayout.WEST);
+		jFTxtFldTopLabels = new JFormattedTextField(NumberFormat.getIntegerInstance());
+		jFTxtFldTopLabels.setValue(LabelMapper.getTopLabelCnt()); // by default, all labels kept
+		jFTxtFldTopLabels.setColumns(4);
+		jPnlTopLabels.add(jFTxtFldTopLabels);
+		jPnlTopLabels.setBorder(
+				BorderFactory.createTitledBorder("Top Labels, the others grouped under " + LabelMapper.OTHER_LABEL));
+
 		// Calculate button
 		JPanel jPnlCalc = new JPanel();
 		JButton jBtnCalc = new JButton("Calculate");
 		jBtnCalc.addActionListener(this);
 		jBtnCalc.setActionCommand(ACTION_CALCULATE);
 		jPnlCalc.add(jBtnCalc);
+		jPnlCalc.add(jChkBxFollow);
 
 		// Grid to display Apdex score of samplers
-		JTable jTblStats = new JTable(ApdexLogic.getPwrTblMdelStats());
+		JTable jTblStats = new JTable(pwrTblMdlStats);
 		JMeterUtils.applyHiDPI(jTblStats);
 		jTblStats.setAutoCreateRowSorter(true);
 		RendererUtils.applyRenderers(jTblStats, new TableCellRenderer[] { null, // Label
@@ -140,6 +177,8 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 		vrtPnl.add(jPnlApdexFail);
 		vrtPnl.add(filePnlApdex);
 		vrtPnl.add(filePnlResults);
+		vrtPnl.add(filePnlLabelRules);
+		vrtPnl.add(jPnlTopLabels);
 		vrtPnl.add(jPnlCalc);
 		vrtPnl.add(jScrollPane);
 		add(vrtPnl, BorderLayout.CENTER);
@@ -166,13 +205,13 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 			break;
 
 		case ACTION_SAVE:
-			if (ApdexLogic.getPwrTblMdelStats().getRowCount() == 0) {
+			if (apdexResult == null || apdexResult.getRowCount() == 0) {
 				GuiPackage.showErrorMessage("Data table empty - please perform Calculate before.",
 						"Save Table Data error");
 				return;
 			}
 			String sInFile = filePnlResults.getFilename();
-			String csvFilename = ApdexLogic.saveTableStatsAsCsv(sInFile);
+			String csvFilename = ApdexLogic.saveTableStatsAsCsv(sInFile, apdexResult);
 			GuiPackage.showInfoMessage("Data saved to " + csvFilename, "Save Table Data");
 			break;
 		default:
@@ -190,8 +229,10 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 		 * Called when user clicks on "Clear" or "Clear All" buttons. Clears data
 		 * specific to this plugin
 		 */
-		ApdexLogic.getPwrTblMdelStats().clearData();
-		ApdexLogic.getPwrTblMdelStats().fireTableDataChanged(); // Repaint the table
+		stopFollowing();
+		apdexResult = null;
+		pwrTblMdlStats.clearData();
+		pwrTblMdlStats.fireTableDataChanged(); // Repaint the table
 	}
 
 	@Override
@@ -268,14 +309,106 @@ public class ApdexGui extends AbstractVisualizer implements ActionListener, Clea
 			return;
 		}
 
+		// Parse label normalisation rules filename and top labels
+		String sLabelRulesFile = filePnlLabelRules.getFilename();
+		if (!(FileServices.isFilenameEmpty(sLabelRulesFile))) {
+			if (!(FileServices.isFileExist(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage("Cannot find label rules file - please enter a valid filename.",
+						"Label rules file error");
+				return;
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage(
+						"Label rules file invalid - sample_name_or_regex and label_group columns with valid regexes expected.",
+						"Label rules file error");
+				return;
+			}
+		}
+		int iTopLabels = ((Number) jFTxtFldTopLabels.getValue()).intValue();
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			GuiPackage.showErrorMessage("Please enter a number of top labels equal to or greater than 0.",
+					"Top Labels Setting error");
+			return;
+		}
+		LabelMapper.setRulesFile(sLabelRulesFile);
+		LabelMapper.setTopLabelCnt(iTopLabels);
+
+		// Stop following any previous file
+		stopFollowing();
+		ApdexLogic apdexLogic = new ApdexLogic(fApdexTgtTholdSec, fApdexAQL, sApdexFile);
+		if (jChkBxFollow.isSelected()) {
+			if (!JtlFollower.isFollowable(sResultsFile)) {
+				GuiPackage.showErrorMessage("Only uncompressed CSV/TSV results files can be followed.",
+						"Results file error");
+				return;
+			}
+			// Refresh the table periodically with the rows appended to the file
+			this.apdexLogic = apdexLogic;
+			jtlFollower = ApdexLogic.followResults(sResultsFile);
+			followTimer = new Timer(JtlFollower.getGuiPeriodMs(), e -> refreshFollowing());
+			followTimer.setInitialDelay(0);
+			followTimer.start();
+			return;
+		}
+
 		// Now, process the data
-		int iResult = ApdexLogic.computeApdexScore(sResultsFile, fApdexTgtTholdSec, fApdexAQL, sApdexFile);
-		if (iResult == -1) {
+		apdexResult = apdexLogic.computeApdexScore(sResultsFile);
+		if (apdexResult.getFailedLblCnt() == -1) {
 			GuiPackage.showErrorMessage("No samplers found in results file - please check your file.",
 					"Input file error");
 		}
 		// Repaint the table
-		ApdexLogic.getPwrTblMdelStats().fireTableDataChanged();
+		apdexResult.fillTable(pwrTblMdlStats);
+	}
+
+	private void refreshFollowing() {
+		if (!jChkBxFollow.isSelected()) {
+			stopFollowing(); // unticked by the user
+			return;
+		}
+		if (followWorker != null) {
+			return; // previous refresh still running
+		}
+		// Read the new rows and update the scores off the EDT, then repaint the table on it
+		JtlFollower follower = jtlFollower;
+		ApdexLogic logic = apdexLogic;
+		followWorker = new SwingWorker<AnalysisResult, Void>() {
+			@Override
+			protected AnalysisResult doInBackground() throws IOException {
+				// Update only when new rows were appended since the last refresh
+				return (follower.refresh() > 0) ? logic.updateApdexScore(follower.getSampleStore()) : null;
+			}
+
+			@Override
+			protected void done() {
+				followWorker = null;
+				if (follower != jtlFollower) {
+					return; // stopped or restarted meanwhile
+				}
+				try {
+					AnalysisResult result = get();
+					if (result != null) {
+						apdexResult = result;
+						apdexResult.fillTable(pwrTblMdlStats);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					stopFollowing();
+					e.getCause().printStackTrace();
+				}
+			}
+		};
+		followWorker.execute();
+	}
+
+	private void stopFollowing() {
+		if (followTimer != null) {
+			followTimer.stop();
+			followTimer = null;
+		}
+		jtlFollower = null;
+		apdexLogic = null;
 	}
 
 }
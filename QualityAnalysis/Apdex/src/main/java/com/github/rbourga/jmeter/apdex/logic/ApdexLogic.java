@@ -7,59 +7,86 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
 import org.apache.jmeter.util.JMeterUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.JtlScanner;
+import com.github.rbourga.jmeter.common.NumberServices;
+import com.github.rbourga.jmeter.common.QuantileSketch;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleSketches;
+import com.github.rbourga.jmeter.common.SampleStore;
 
 public final class ApdexLogic {
 
 	private static String HTML_STATS_TITLE = "Apdex Score Results";
 	private static String SUFFIX_STATS = "_ApdexScores.";
+	// Columns of the results file used by the analysis, the label being always loaded
+	private static final String[] USED_COLUMNS = { JtlScanner.COL_ELAPSED, JtlScanner.COL_SUCCESS };
+	// Samples above which the labels are processed in parallel
+	private static final int PARALLEL_MIN_ROWS = 1 << 16;
 
 	// TODO add the new column labels to
 	// core/org/apache/jmeter/resources/messages.properties files.
-	private static PowerTableModel pwrTblMdlStats = new PowerTableModel(
-			new String[] { 
-					JMeterUtils.getResString("sampler label"), // Label
-					JMeterUtils.getResString("aggregate_report_count"), // # Samples
-					JMeterUtils.getResString("average"), // Average
-					JMeterUtils.getResString("aggregate_report_error%"), // # Error %
-					"Apdex Target (s)", // Target threshold
-					"Apdex Value",
-					"Apdex Min Score",
-					"Apdex Rating",
-					"Small Group", // true if number of samples < 100
-					"Failed" // true if value less than the specified threshold
-			}, new Class[] {
-					String.class, // Label
-					Integer.class, // # Samples
-					Double.class,	// Average
-					Double.class, // # Error %
-					Double.class, // Apdex Target
-					Double.class, // Apdex Value
-					Double.class, // Apdex Min score
-					String.class, // Apdex Rating
-					String.class, // Small Group
-					String.class // Failed
-			});
+	private static final String[] STATS_COLUMN_NAMES = new String[] {
+		JMeterUtils.getResString("sampler label"), // Label
+		JMeterUtils.getResString("aggregate_report_count"), // # Samples
+		JMeterUtils.getResString("average"), // Average
+		JMeterUtils.getResString("aggregate_report_error%"), // # Error %
+		"Apdex Target (s)", // Target threshold
+		"Apdex Value",
+		"Apdex Min Score",
+		"Apdex Rating",
+		"Small Group", // true if number of samples < 100
+		"Failed" // true if value less than the specified threshold
+	};
+	private static final Class<?>[] STATS_COLUMN_CLASSES = new Class[] {
+		String.class, // Label
+		Integer.class, // # Samples
+		Double.class,	// Average
+		Double.class, // # Error %
+		Double.class, // Apdex Target
+		Double.class, // Apdex Value
+		Double.class, // Apdex Min score
+		String.class, // Apdex Rating
+		String.class, // Small Group
+		String.class // Failed
+	};
 	private static int PASSFAIL_TEST_COLNBR = 9; // Position of Failed column in the table
+	private static int APDEX_SCORE_COLNBR = 5; // Position of Apdex Value column in the table
 
-	public static PowerTableModel getPwrTblMdelStats() {
-		return pwrTblMdlStats;
+	// Settings of the analysis, the same for all the computations of the instance
+	private final double dDefaultTargetSecs;
+	private final double dDefaultMinScore;
+	private final List<ApdexRule> apdexRules;
+	// Counts of the labels of the store followed by updateApdexScore(), by label id
+	private SampleStore followedStore = null;
+	private final ArrayList<LabelCounts> alFollowedCounts = new ArrayList<>();
+
+	public ApdexLogic(double dDefaultTargetSecs, double dDefaultMinScore, String sRulesFilepath) throws IOException {
+		// Load per-transaction config if it exists
+		this.dDefaultTargetSecs = dDefaultTargetSecs;
+		this.dDefaultMinScore = dDefaultMinScore;
+		this.apdexRules = loadRules(sRulesFilepath);
+	}
+
+	public static PowerTableModel crteTableModelStats() {
+		// Empty statistics table, e.g. for the GUI
+		return new PowerTableModel(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES);
 	}
 	
 	private static class ApdexRule {
@@ -95,122 +122,269 @@ public final class ApdexLogic {
 		return dValue < 0.1;
 	}
 
+	public static JtlFollower followResults(String sResultsFilepath) {
+		// Follower loading the columns used by the Apdex, for a file still being written
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return new JtlFollower(sResultsFilepath, cDelim, USED_COLUMNS);
+	}
+
+	public static SampleSketches loadSketches(String sResultsFilepath, double dRelAcc) {
+		// Sketch mode: the samples are summarized as they are read, for files too large
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoSketches(sResultsFilepath, cDelim, dRelAcc);
+	}
+
 	/*
 	 * Computing method
 	 */
-	public static int computeApdexScore(String sResultsFilepath, double dDefaultTargetSecs, double dDefaultMinScore, String sRulesFilepath) throws IOException {
+	public AnalysisResult computeApdexScore(String sResultsFilepath) throws IOException {
 		// Load the test results after getting the delimiter separator from current JMeter properties
 		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
-		Map<String, List<CSVRecord>> rcdHashMap = FileServices.loadSamplesIntoHashMap(sResultsFilepath, cDelim);
-		if (rcdHashMap.isEmpty()) {
-			return -1; // Nothing loaded, so abort...
+		if (SamplePartitioner.isPartitioned(sResultsFilepath)) {
+			// Results larger than the heap budget: one partition of labels at a time
+			ArrayList<Object[]> alRows = new ArrayList<>();
+			int[] aFailedLblCnt = { 0 };
+			int iPartitionCnt = SamplePartitioner.forEachPartition(sResultsFilepath, cDelim, USED_COLUMNS,
+					(sampleStore, aFileRows) -> aFailedLblCnt[0] += addLabelsRows(sampleStore, alRows));
+			if (iPartitionCnt == 0) {
+				return crteAborted(); // Nothing loaded, so abort...
+			}
+			return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, aFailedLblCnt[0], null);
 		}
-		
-		// Load per-transaction config if it exists
-		List<ApdexRule> apdexRules = loadRules(sRulesFilepath);
+		SampleStore sampleStore = FileServices.loadSamplesIntoStore(sResultsFilepath, cDelim, USED_COLUMNS);
+		return computeApdexScore(sampleStore);
+	}
 
-		// Clear any statistics from a previous analysis
-		pwrTblMdlStats.clearData();
+	public AnalysisResult computeApdexScore(SampleStore sampleStore) {
+		// Same on samples already loaded, e.g. by a follower of a results file still being written
+		if (sampleStore.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ArrayList<Object[]> alRows = new ArrayList<>();
+		int iFailedLblCnt = addLabelsRows(sampleStore, alRows);
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt, null);
+	}
+	
+	public AnalysisResult updateApdexScore(SampleStore sampleStore) {
+		/*
+		 * Same on the store of a follower of a results file still being written: only
+		 * the rows added since the previous call are counted, so that each refresh
+		 * costs the new rows and not the whole test. A different store, e.g. after the
+		 * file was truncated, starts the counts again.
+		 */
+		if (sampleStore != followedStore) {
+			followedStore = sampleStore;
+			alFollowedCounts.clear();
+		}
+		if (sampleStore.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		for (int iLblId = alFollowedCounts.size(); iLblId < sampleStore.getLabelCount(); iLblId++) {
+			alFollowedCounts.add(crteLabelCounts(sampleStore.getLabel(iLblId)));
+		}
+		ArrayList<Object[]> alRows = new ArrayList<>();
+		int iFailedLblCnt = 0;
+		for (int iLblId : sampleStore.getSortedLabelIds()) {
+			LabelCounts labelCounts = alFollowedCounts.get(iLblId);
+			labelCounts.count(sampleStore, iLblId);
+			if (labelCounts.addApdexRow(alRows, sampleStore.getLabel(iLblId))) {
+				iFailedLblCnt++;
+			}
+		}
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt, null);
+	}
 
+	public AnalysisResult computeApdexScore(SampleSketches sampleSketches) {
+		/*
+		 * Sketch mode: same on the sketches of the samples, each successful sample
+		 * being counted as satisfied, tolerating or frustrated from its response time
+		 * within the relative accuracy of the sketches.
+		 */
+		if (sampleSketches.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ArrayList<Object[]> alRows = new ArrayList<>();
 		int iFailedLblCnt = 0;
-		// Now, process the data points in natural order...
-		TreeMap<String, List<CSVRecord>> tmSortedRcd = new TreeMap<>(rcdHashMap);
-		for (String sLbl : tmSortedRcd.keySet()) {
-			List<CSVRecord> aRcd = tmSortedRcd.get(sLbl);
-			int iTotRcd = aRcd.size();
-			
-			// Get Apdex params
-			double[] apdexParams = getApdexParamsForLabel(sLbl, apdexRules, dDefaultTargetSecs, dDefaultMinScore);
-			double dApdexTarget = apdexParams[0];
-			double dApdexMinScore = apdexParams[1];
-			// Format the threshold as per Apdex specs
-			dApdexTarget = ApdexLogic.formatTgtTHold(dApdexTarget);
-			BigDecimal bdApdexAQL = new BigDecimal(dApdexMinScore);
-			long lApdexTgtTholdMS = (long) (dApdexTarget * 1000); // Convert to ms as JMeter times are stored in ms
-			long lApdexTolTholdMS = 4 * lApdexTgtTholdMS; // Tolerate = 4xTarget, as per Apdex specs
+		for (int iLblId : sampleSketches.getSortedLabelIds()) {
+			String sLbl = sampleSketches.getLabel(iLblId);
+			QuantileSketch sketch = sampleSketches.getSketch(iLblId);
+			QuantileSketch successSketch = sampleSketches.getSuccessSketch(iLblId);
 
-			/*
-			 * As per Apdex specs, all server failures must be counted as frustrated
-			 * regardless of their time. So we must calculate Apdex only on the successful
-			 * samples.
-			 */
-			// We use equalsIgnoreCase as "true" can be in capital letters if the results have been exported from Excel
-			Stream<CSVRecord> oPassedSamples = aRcd.stream().filter(rcd -> "true".equalsIgnoreCase(rcd.get("success")));
-			// Global average
-			double dMean = oPassedSamples.mapToLong(rcd -> Long.parseLong(rcd.get("elapsed"))).average().orElse(0);
-
-			// Satisfied list of samples: 0 to T
-			// Reset the successful stream as a stream can only be used once
-			oPassedSamples = aRcd.stream().filter(rcd -> "true".equalsIgnoreCase(rcd.get("success")));
-			Stream<CSVRecord> oSatisfiedSamples = oPassedSamples.filter(rcd -> Long.parseLong(rcd.get("elapsed")) <= lApdexTgtTholdMS);
-			long lSatisfiedCount = oSatisfiedSamples.count();
-			// Tolerating list of samples: T to F
-			// Reset the successful stream as a stream can only be used once
-			oPassedSamples = aRcd.stream().filter(rcd -> "true".equalsIgnoreCase(rcd.get("success")));
-			Stream<CSVRecord> oToleratingSamples = oPassedSamples.filter(rcd -> ((Long.parseLong(rcd.get("elapsed")) > lApdexTgtTholdMS)
-					&& ((Long.parseLong(rcd.get("elapsed")) < lApdexTolTholdMS))));
-			long lToleratingCount = oToleratingSamples.count();
-
-			// Now compute the Apdex value
-			BigDecimal bdApdexScore = new BigDecimal((lSatisfiedCount + (lToleratingCount / 2.0)) / iTotRcd);
-			// Round to 2 decimal places as per Apdex specs
-			BigDecimal bdApdexScoreRnd = bdApdexScore.setScale(2, RoundingMode.HALF_UP);
-			// Set rating as per Apdex specs
-			String sApdexRating = setApdexRating(bdApdexScoreRnd);
-
-			// ErrPct formatting: round to 4 decimal places
-			Stream<CSVRecord> oFailedSamples = aRcd.stream().filter(rcd -> rcd.get("success").equals("false"));
-			long lFailedCount = oFailedSamples.count();
-			BigDecimal bdErrPct = new BigDecimal((double) lFailedCount / iTotRcd);
-			BigDecimal bdErrPctRnd = bdErrPct.setScale(4, RoundingMode.HALF_UP);
-
-			// Finally update the statistics table
-			String sIsSmallGroup = "false";
-			if (iTotRcd < 100) {
-				sIsSmallGroup = "true";
-			}
-			String sIsFailed = "false";
-			if (bdApdexScoreRnd.compareTo(bdApdexAQL) == -1) {
-				sIsFailed = "true";
+			double[] apdexParams = getApdexParamsForLabel(sLbl);
+			double dApdexTarget = ApdexLogic.formatTgtTHold(apdexParams[0]);
+			long lApdexTgtTholdMS = (long) (dApdexTarget * 1000);
+			long lApdexTolTholdMS = 4 * lApdexTgtTholdMS;
+
+			// Apdex on the successful samples only, as above
+			long lPassedCount = successSketch.getCount();
+			double dMean = (lPassedCount == 0) ? 0 : successSketch.getMean();
+			long lSatisfiedCount = successSketch.getCountAtOrBelow(lApdexTgtTholdMS);
+			long lToleratingCount = successSketch.getCountBelow(lApdexTolTholdMS) - lSatisfiedCount;
+
+			if (addApdexRow(alRows, sLbl, (int) sketch.getCount(), lPassedCount, dMean, lSatisfiedCount,
+					lToleratingCount, dApdexTarget, apdexParams[1])) {
 				iFailedLblCnt++;
 			}
-			Object[] oArrayRowData = {
-					sLbl, // Label
-					iTotRcd, // # Samples
-					Long.valueOf((long) dMean),	// Average
-					bdErrPctRnd.doubleValue(), // # Error %
-					dApdexTarget, // Apdex Target
-					bdApdexScoreRnd.doubleValue(), // Apdex Value
-					bdApdexAQL.doubleValue(),	// min score
-					sApdexRating, // Apdex Rating
-					sIsSmallGroup, // shows a tick if number of samples < 100
-					sIsFailed }; // shows a tick if value less than the specified threshold
-
-			pwrTblMdlStats.addRow(oArrayRowData);
 		}
-		return iFailedLblCnt;
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt,
+				sampleSketches.getErrorNote());
 	}
-	
-	public static String saveTableStatsAsCsv(String sFilePath) {
+
+	public AnalysisResult computeApdexScore(SampleReservoirs sampleReservoirs) {
+		/*
+		 * Sampling mode: same on the samples kept for each label. The Apdex score being
+		 * the mean of per-sample scores of 0, 0.5 or 1, their standard deviation is at
+		 * most sqrt(p * (1 - p)) for a score p.
+		 */
+		SampleStore sampleStore = sampleReservoirs.getSampleStore();
+		AnalysisResult apdexResult = computeApdexScore(sampleStore);
+		if (apdexResult.getFailedLblCnt() == -1) {
+			return apdexResult;
+		}
+		double dMaxHalfWidth = 0;
+		for (int iRow = 0; iRow < apdexResult.getRowCount(); iRow++) {
+			String sLbl = (String) apdexResult.getValueAt(iRow, 0);
+			double dScore = (Double) apdexResult.getValueAt(iRow, APDEX_SCORE_COLNBR);
+			dMaxHalfWidth = Math.max(dMaxHalfWidth,
+					sampleReservoirs.getHalfWidth(sampleStore, sLbl, Math.sqrt(dScore * (1 - dScore))));
+		}
+		return apdexResult.withErrorNote(sampleReservoirs.getErrorNote(
+				"Apdex score +/- " + NumberServices.formatHalfUp(dMaxHalfWidth, 3)));
+	}
+
+	public static SampleReservoirs loadReservoirs(String sResultsFilepath, double dConfidence, double dMargin) {
+		// Sampling mode: a random sample of each label is kept as the samples are read
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoReservoirs(sResultsFilepath, cDelim, dConfidence, dMargin);
+	}
+
+	public static String saveTableStatsAsCsv(String sFilePath, AnalysisResult apdexResult) {
 		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
 		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
 		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
-		FileServices.saveTableAsCsv(sOutputFile, pwrTblMdlStats);
+		FileServices.saveTableAsCsv(sOutputFile, apdexResult.crteTableModel(), apdexResult.getErrorNote());
 		return sOutputFile;
 	}
 
-	public static String saveTableStatsAsHtml(String sFilePath) {
+	public static String saveTableStatsAsHtml(String sFilePath, AnalysisResult apdexResult) {
 		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
 		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
 		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "html";
 		String sTableTitle = HTML_STATS_TITLE;
-		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, pwrTblMdlStats, PASSFAIL_TEST_COLNBR);
+		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, apdexResult, PASSFAIL_TEST_COLNBR);
 		return sOutputFile;
 	}
 
 	/*
 	 * Private methods
 	 */
+	private static AnalysisResult crteAborted() {
+		return AnalysisResult.crteAborted(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, -1);
+	}
+
+	private int addLabelsRows(SampleStore sampleStore, List<Object[]> listRows) {
+		// Adds the rows of the labels of the store to the statistics rows, returns the failed count
+		// Now, process the data points in natural order...
+		int[] aSortedLblIds = sampleStore.getSortedLabelIds();
+		int iTaskCnt = Math.min(Runtime.getRuntime().availableProcessors(), aSortedLblIds.length);
+		if (iTaskCnt <= 1 || sampleStore.getRowCount() < PARALLEL_MIN_ROWS) {
+			return addLabelsRows(sampleStore, aSortedLblIds, 0, aSortedLblIds.length, listRows);
+		}
+
+		/*
+		 * Labels in parallel: the sorted labels are split in slices of about the same
+		 * number of samples, whose rows are then added one slice after the other to
+		 * keep the natural order.
+		 */
+		ForkJoinPool fjPool = ForkJoinPool.commonPool();
+		List<ForkJoinTask<Integer>> listTasks = new ArrayList<>();
+		List<List<Object[]>> listSliceRows = new ArrayList<>();
+		long lSliceRows = (sampleStore.getRowCount() + iTaskCnt - 1) / iTaskCnt;
+		int iFrom = 0;
+		while (iFrom < aSortedLblIds.length) {
+			int iTo = iFrom;
+			long lRows = 0;
+			while (iTo < aSortedLblIds.length && (iTo == iFrom || lRows < lSliceRows)) {
+				lRows += sampleStore.getLabelRowCount(aSortedLblIds[iTo++]);
+			}
+			List<Object[]> listSlice = new ArrayList<>(iTo - iFrom);
+			int iSliceFrom = iFrom, iSliceTo = iTo;
+			listTasks.add(fjPool.submit(
+					() -> addLabelsRows(sampleStore, aSortedLblIds, iSliceFrom, iSliceTo, listSlice)));
+			listSliceRows.add(listSlice);
+			iFrom = iTo;
+		}
+		int iFailedLblCnt = 0;
+		for (int i = 0; i < listTasks.size(); i++) {
+			iFailedLblCnt += listTasks.get(i).join();
+			listRows.addAll(listSliceRows.get(i));
+		}
+		return iFailedLblCnt;
+	}
+
+	private int addLabelsRows(SampleStore sampleStore, int[] aSortedLblIds, int iFrom, int iTo,
+			List<Object[]> listRows) {
+		// Same for the sorted labels from iFrom to iTo excluded
+		int iFailedLblCnt = 0;
+		for (int i = iFrom; i < iTo; i++) {
+			String sLbl = sampleStore.getLabel(aSortedLblIds[i]);
+			LabelCounts labelCounts = crteLabelCounts(sLbl);
+			labelCounts.count(sampleStore, aSortedLblIds[i]);
+			if (labelCounts.addApdexRow(listRows, sLbl)) {
+				iFailedLblCnt++;
+			}
+		}
+		return iFailedLblCnt;
+	}
+
+	private LabelCounts crteLabelCounts(String sLbl) {
+		// Get Apdex params
+		double[] apdexParams = getApdexParamsForLabel(sLbl);
+		// Format the threshold as per Apdex specs
+		return new LabelCounts(ApdexLogic.formatTgtTHold(apdexParams[0]), apdexParams[1]);
+	}
+
+	private static boolean addApdexRow(List<Object[]> listRows, String sLbl, int iTotRcd, long lPassedCount,
+			double dMean, long lSatisfiedCount, long lToleratingCount, double dApdexTarget, double dApdexMinScore) {
+		// Adds the results of a label to the statistics rows, returns true if it failed
+		// Now compute the Apdex value
+		double dApdexScore = (lSatisfiedCount + (lToleratingCount / 2.0)) / iTotRcd;
+		// Round to 2 decimal places as per Apdex specs
+		double dApdexScoreRnd = NumberServices.roundHalfUp(dApdexScore, 2);
+		// Set rating as per Apdex specs
+		String sApdexRating = setApdexRating(dApdexScoreRnd);
+
+		// ErrPct formatting: round to 4 decimal places. Every sample not successful
+		// counts as failed, so that Error % and the Apdex score add up to all the
+		// samples, whatever the case of the success values
+		long lFailedCount = iTotRcd - lPassedCount;
+		double dErrPctRnd = NumberServices.roundHalfUp((double) lFailedCount / iTotRcd, 4);
+
+		// Finally update the statistics table
+		String sIsSmallGroup = "false";
+		if (iTotRcd < 100) {
+			sIsSmallGroup = "true";
+		}
+		String sIsFailed = "false";
+		if (NumberServices.compareDecimal(dApdexScoreRnd, 2, dApdexMinScore) == -1) {
+			sIsFailed = "true";
+		}
+		Object[] oArrayRowData = {
+				sLbl, // Label
+				iTotRcd, // # Samples
+				Long.valueOf((long) dMean),	// Average
+				dErrPctRnd, // # Error %
+				dApdexTarget, // Apdex Target
+				dApdexScoreRnd, // Apdex Value
+				dApdexMinScore,	// min score
+				sApdexRating, // Apdex Rating
+				sIsSmallGroup, // shows a tick if number of samples < 100
+				sIsFailed }; // shows a tick if value less than the specified threshold
+
+		listRows.add(oArrayRowData);
+		return sIsFailed.equals("true");
+	}
+
 	private static double formatTgtTHold(double dTgtThold) {
 		// Format the threshold as per Apdex specs
 		// For values greater than 10s, define the value to one second
@@ -229,16 +403,16 @@ public final class ApdexLogic {
 		return dTgtThold;
 	}
 
-	private static String setApdexRating(BigDecimal bdScore) {
+	private static String setApdexRating(double dScore) {
 		// Sets the rating as per Apdex specs
 		String sRating = "Unacceptable"; // grey
-		if (bdScore.doubleValue() >= 0.94) {
+		if (dScore >= 0.94) {
 			sRating = "Excellent"; // blue
-		} else if (bdScore.doubleValue() >= 0.85) {
+		} else if (dScore >= 0.85) {
 			sRating = "Good"; // green
-		} else if (bdScore.doubleValue() >= 0.70) {
+		} else if (dScore >= 0.70) {
 			sRating = "Fair"; // yellow
-		} else if (bdScore.doubleValue() >= 0.50)
+		} else if (dScore >= 0.50)
 		 {
 			sRating = "Poor"; // red
 		}
@@ -306,16 +480,71 @@ public final class ApdexLogic {
      * Find matching Apdex parameters for a given label, or fall back to defaults.
      * First match in CSV wins.
      */
-    private static double[] getApdexParamsForLabel(String label, List<ApdexRule> rules,
-                                                  double defaultTargetSecs, double defaultMinScore) {
-        for (ApdexRule rule : rules) {
+    private double[] getApdexParamsForLabel(String label) {
+        for (ApdexRule rule : apdexRules) {
             if (rule.apdexMatches(label)) {
-                double target = (rule.targetSecs != null) ? rule.targetSecs : defaultTargetSecs;
-                double minScore = (rule.minScore != null) ? rule.minScore : defaultMinScore;
+                double target = (rule.targetSecs != null) ? rule.targetSecs : dDefaultTargetSecs;
+                double minScore = (rule.minScore != null) ? rule.minScore : dDefaultMinScore;
                 return new double[]{target, minScore};
             }
         }
-        return new double[]{defaultTargetSecs, defaultMinScore};
+        return new double[]{dDefaultTargetSecs, dDefaultMinScore};
     }
 
+	/*
+	 * Apdex counts of a label, updated with the rows added to its samples since the
+	 * previous count.
+	 */
+	private static final class LabelCounts {
+		private final double dApdexTarget;
+		private final double dApdexMinScore;
+		private final long lApdexTgtTholdMS; // JMeter times are stored in ms
+		private final long lApdexTolTholdMS; // Tolerate = 4xTarget, as per Apdex specs
+		private int iTotRcd = 0; // rows of the label counted so far
+		private long lPassedCount = 0, lElapsedSum = 0, lSatisfiedCount = 0, lToleratingCount = 0;
+
+		private LabelCounts(double dApdexTarget, double dApdexMinScore) {
+			this.dApdexTarget = dApdexTarget;
+			this.dApdexMinScore = dApdexMinScore;
+			this.lApdexTgtTholdMS = (long) (dApdexTarget * 1000);
+			this.lApdexTolTholdMS = 4 * lApdexTgtTholdMS;
+		}
+
+		private boolean count(SampleStore sampleStore, int iLblId) {
+			/*
+			 * As per Apdex specs, all server failures must be counted as frustrated
+			 * regardless of their time. So we must calculate Apdex only on the successful
+			 * samples. A single pass sorts the new samples in satisfied (0 to T),
+			 * tolerating (T to F) and frustrated or failed, and sums the times for the
+			 * global average. Returns false if the label has no new samples.
+			 */
+			int iLblRowCnt = sampleStore.getLabelRowCount(iLblId);
+			if (iTotRcd == iLblRowCnt) {
+				return false;
+			}
+			for (int i = iTotRcd; i < iLblRowCnt; i++) {
+				int iRow = sampleStore.getLabelRow(iLblId, i);
+				if (!sampleStore.isSuccess(iRow)) {
+					continue;
+				}
+				long lElapsed = sampleStore.getElapsed(iRow);
+				lPassedCount++;
+				lElapsedSum += lElapsed;
+				if (lElapsed <= lApdexTgtTholdMS) {
+					lSatisfiedCount++;
+				} else if (lElapsed < lApdexTolTholdMS) {
+					lToleratingCount++;
+				}
+			}
+			iTotRcd = iLblRowCnt;
+			return true;
+		}
+
+		private boolean addApdexRow(List<Object[]> listRows, String sLbl) {
+			double dMean = (lPassedCount == 0) ? 0 : (double) lElapsedSum / lPassedCount;
+			return ApdexLogic.addApdexRow(listRows, sLbl, iTotRcd, lPassedCount, dMean, lSatisfiedCount,
+					lToleratingCount, dApdexTarget, dApdexMinScore);
+		}
+	}
+
 }
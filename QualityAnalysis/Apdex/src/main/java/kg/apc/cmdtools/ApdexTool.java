@@ -5,13 +5,19 @@ package kg.apc.cmdtools;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.jmeter.gui.GuiPackage;
 
 import com.github.rbourga.jmeter.apdex.logic.ApdexLogic;
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SampleSketches;
 
 import kg.apc.cmd.UniversalRunner;
 import kg.apc.jmeter.JMeterPluginsUtils;
@@ -34,6 +40,13 @@ public class ApdexTool extends AbstractCMDTool {
 		String sApdexTgtTholdSec = "4"; // 4s by default
 		String sApdexAQL = "0.85"; // good by default
 		String sApdexPerTrxnFile = "";
+		String sFollowSecs = "0"; // no follow by default
+		String sFollowIdleSecs = "0"; // several refresh periods by default
+		String sSketchRelErr = "0"; // exact by default
+		String sSamplingConfidence = "0"; // no sampling by default
+		String sSamplingMargin = "0.01"; // 1% by default
+		String sLabelRules = null; // label rules of the JMeter properties by default
+		String sTopLabels = null; // top labels of the JMeter properties by default
 
 		if (!args.hasNext()) {
 			showHelp(System.out);
@@ -63,18 +76,59 @@ public class ApdexTool extends AbstractCMDTool {
 					throw new IllegalArgumentException("Apdex Per Transaction file name missing.");
 				}
 				sApdexPerTrxnFile = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow refresh period value missing.");
+				}
+				sFollowSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-idle-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow idle timeout value missing.");
+				}
+				sFollowIdleSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sketch-rel-err")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sketch relative error value missing.");
+				}
+				sSketchRelErr = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--label-rules")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Label rules file name missing.");
+				}
+				sLabelRules = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--top-labels")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Top labels value missing.");
+				}
+				sTopLabels = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-confidence")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling confidence value missing.");
+				}
+				sSamplingConfidence = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-margin")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling margin value missing.");
+				}
+				sSamplingMargin = ((String) args.next());
 			}
 		}
 
-		// Check input-file parameter
+		// Check input-file parameter: a file, or a list or glob pattern of files to merge
 		if (FileServices.isFilenameEmpty(sInFile)) {
 			throw new IllegalArgumentException("Input file missing.");
 		}
-		if (!(FileServices.isFileExist(sInFile))) {
+		List<String> listInFileFiles = FileServices.resolveInputFiles(sInFile);
+		if (listInFileFiles.isEmpty()) {
 			throw new IllegalArgumentException("Input file not found.");
 		}
-		if (!(FileServices.isFileValid(sInFile))) {
-			throw new IllegalArgumentException("Input file invalid (could not find results).");
+		for (String sFile : listInFileFiles) {
+			if (!(FileServices.isFileExist(sFile))) {
+				throw new IllegalArgumentException("Input file not found: " + sFile + ".");
+			}
+			if (!(FileServices.isFileValid(sFile))) {
+				throw new IllegalArgumentException("Input file invalid (could not find results): " + sFile + ".");
+			}
 		}
 		// Check apdex-tgt-thold parameter
 		if (!(NumberUtils.isCreatable(sApdexTgtTholdSec))) {
@@ -93,7 +147,49 @@ public class ApdexTool extends AbstractCMDTool {
 		if (ApdexLogic.isApdexMinScoreOutOfRange(fApdexAQL)) {
 			throw new IllegalArgumentException("Apdex Acceptable Quality Level value needs to be between 0 and 1.");
 		}
-		
+		// Check follow-secs parameter
+		if (!(NumberUtils.isDigits(sFollowSecs))) {
+			throw new IllegalArgumentException("Follow refresh period value invalid (number of seconds expected).");
+		}
+		long lFollowSecs = Long.parseLong(sFollowSecs);
+		if ((lFollowSecs > 0) && !(JtlFollower.isFollowable(sInFile))) {
+			throw new IllegalArgumentException("Only a single uncompressed CSV/TSV input file can be followed.");
+		}
+		// Check follow-idle-secs parameter
+		if (!(NumberUtils.isDigits(sFollowIdleSecs))) {
+			throw new IllegalArgumentException("Follow idle timeout value invalid (number of seconds expected).");
+		}
+		long lFollowIdleSecs = Long.parseLong(sFollowIdleSecs);
+		// Check sketch-rel-err parameter
+		if (!(NumberUtils.isCreatable(sSketchRelErr))) {
+			throw new IllegalArgumentException("Sketch relative error value invalid.");
+		}
+		double dSketchRelErr = Double.parseDouble(sSketchRelErr);
+		if ((dSketchRelErr != 0) && SampleSketches.isRelAccOutOfRange(dSketchRelErr)) {
+			throw new IllegalArgumentException("Sketch relative error value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSketchRelErr != 0) && (lFollowSecs > 0)) {
+			throw new IllegalArgumentException("A followed input file cannot be read in sketch mode.");
+		}
+		// Check sampling-confidence and sampling-margin parameters
+		if (!(NumberUtils.isCreatable(sSamplingConfidence))) {
+			throw new IllegalArgumentException("Sampling confidence value invalid.");
+		}
+		double dSamplingConfidence = Double.parseDouble(sSamplingConfidence);
+		if ((dSamplingConfidence != 0) && SampleReservoirs.isConfidenceOutOfRange(dSamplingConfidence)) {
+			throw new IllegalArgumentException("Sampling confidence value needs to be between 0 and 1 excluded.");
+		}
+		if (!(NumberUtils.isCreatable(sSamplingMargin))) {
+			throw new IllegalArgumentException("Sampling margin value invalid.");
+		}
+		double dSamplingMargin = Double.parseDouble(sSamplingMargin);
+		if (SampleReservoirs.isMarginOutOfRange(dSamplingMargin)) {
+			throw new IllegalArgumentException("Sampling margin value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSamplingConfidence != 0) && ((lFollowSecs > 0) || (dSketchRelErr != 0))) {
+			throw new IllegalArgumentException("Sampling mode cannot be combined with follow or sketch mode.");
+		}
+
 		// Parse Apdex filename
 		if (!FileServices.isFilenameEmpty(sApdexPerTrxnFile)) {
 			if (!(FileServices.isFileExist(sApdexPerTrxnFile))) {
@@ -104,23 +200,62 @@ public class ApdexTool extends AbstractCMDTool {
 			}
 		}
 
+		// Check label-rules and top-labels parameters
+		if ((sLabelRules != null) && !FileServices.isFilenameEmpty(sLabelRules)) {
+			if (!(FileServices.isFileExist(sLabelRules))) {
+				throw new IllegalArgumentException("Label rules file not found.");
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRules))) {
+				throw new IllegalArgumentException(
+						"Label rules file invalid (sample_name_or_regex and label_group columns expected).");
+			}
+		}
+		if ((sTopLabels != null) && !(NumberUtils.isDigits(sTopLabels))) {
+			throw new IllegalArgumentException("Top labels value invalid (number of labels expected).");
+		}
+		int iTopLabels = (sTopLabels == null) ? LabelMapper.getTopLabelCnt() : NumberUtils.toInt(sTopLabels, -1);
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			throw new IllegalArgumentException("Top labels value needs to be greater or equal to 0.");
+		}
+		// Options of the loads, the JMeter properties being kept if not given
+		if (sLabelRules != null) {
+			LabelMapper.setRulesFile(sLabelRules);
+		}
+		if (sTopLabels != null) {
+			LabelMapper.setTopLabelCnt(iTopLabels);
+		}
+
 		// Do the job
-		int iResult = 0;
+		AnalysisResult apdexResult = null;
 		try {
-			iResult = ApdexLogic.computeApdexScore(sInFile, fApdexTgtTholdSec, fApdexAQL, sApdexPerTrxnFile);
+			ApdexLogic apdexLogic = new ApdexLogic(fApdexTgtTholdSec, fApdexAQL, sApdexPerTrxnFile);
+			if (lFollowSecs > 0) {
+				apdexResult = followInputFile(apdexLogic, sInFile, lFollowSecs, lFollowIdleSecs);
+			} else if (dSamplingConfidence > 0) {
+				apdexResult = apdexLogic.computeApdexScore(
+						ApdexLogic.loadReservoirs(sInFile, dSamplingConfidence, dSamplingMargin));
+			} else if (dSketchRelErr > 0) {
+				apdexResult = apdexLogic.computeApdexScore(ApdexLogic.loadSketches(sInFile, dSketchRelErr));
+			} else {
+				apdexResult = apdexLogic.computeApdexScore(sInFile);
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+		int iResult = (apdexResult == null) ? -1 : apdexResult.getFailedLblCnt();
 		if (iResult == -1) {
 			System.out.println("No samplers found in input file - please check your file.");
 		} else {
 			// Save Apdex results in an HTML file for import in DevOps tool later on
-			String htmlFilename = ApdexLogic.saveTableStatsAsHtml(sInFile);
+			String htmlFilename = ApdexLogic.saveTableStatsAsHtml(FileServices.getOutputBasePath(sInFile),
+					apdexResult);
 			System.out.println("Results saved in " + htmlFilename);
 
 			// Save Apdex results in an CSV file for import in Power BI tool later on
-			String csvFilename = ApdexLogic.saveTableStatsAsCsv(sInFile);
+			String csvFilename = ApdexLogic.saveTableStatsAsCsv(FileServices.getOutputBasePath(sInFile), apdexResult);
 			System.out.println("Results saved in " + csvFilename);
 		}
 		return iResult;
@@ -128,10 +263,36 @@ public class ApdexTool extends AbstractCMDTool {
 
 	@Override
 	protected void showHelp(PrintStream os) {
-		os.println("Options for tool 'Apdex': --input-file <filenameIn> " + "["
+		os.println("Options for tool 'Apdex': --input-file <filenameIn, or comma-separated list or glob of files to merge> " + "["
 				+ "--apdex-tgt-thold-secs <satisified treshold value in secs (greater than 0.1)> "
 				+ "--apdex-aql <min Apdex score to pass (between 0 and 1)> "
 				+ "--apdex-per-trxn <filenameApexPerTrxn> "
+				+ "--follow-secs <refresh period in secs while the input file is being written (default = 0, no follow)> "
+				+ "--follow-idle-secs <secs without the followed file growing before the test is taken as over (default = 0, "
+				+ JtlFollower.IDLE_PERIODS_DEFAULT + " refresh periods)> "
+				+ "--sketch-rel-err <relative error of the response times to summarize large files in bounded memory, e.g. 0.01 (default = 0, exact)> "
+				+ "--label-rules <CSV file of sample_name_or_regex,label_group rules merging the labels of a same transaction> "
+				+ "--top-labels <number of labels with the most samples to keep, the others grouped under '" + LabelMapper.OTHER_LABEL + "' (default = 0, all labels)> "
+				+ "--sampling-confidence <confidence level of a quick analysis on random samples of each label, e.g. 0.95 (default = 0, no sampling)> "
+				+ "--sampling-margin <margin of error of the proportions in sampling mode (default = 0.01)> "
 				+ "]");
 	}
+
+	/*
+	 * Private methods
+	 */
+	private static AnalysisResult followInputFile(ApdexLogic apdexLogic, String sInFile, long lFollowSecs,
+			long lFollowIdleSecs)
+			throws IOException, InterruptedException {
+		// Update the reports with the samples appended to the file until the test is over
+		AnalysisResult[] aResult = { null };
+		JtlFollower jtlFollower = ApdexLogic.followResults(sInFile);
+		jtlFollower.follow(lFollowSecs * 1000, lFollowIdleSecs * 1000, (sampleStore, iNewRowCnt) -> {
+			aResult[0] = apdexLogic.updateApdexScore(sampleStore);
+			ApdexLogic.saveTableStatsAsHtml(sInFile, aResult[0]);
+			ApdexLogic.saveTableStatsAsCsv(sInFile, aResult[0]);
+			System.out.println(iNewRowCnt + " new samples read, reports updated.");
+		});
+		return aResult[0];
+	}
 }
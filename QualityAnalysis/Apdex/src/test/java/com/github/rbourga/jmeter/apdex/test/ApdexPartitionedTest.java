@@ -0,0 +1,73 @@
+package com.github.rbourga.jmeter.apdex.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.rbourga.jmeter.apdex.logic.ApdexLogic;
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleStoreCache;
+import com.github.rbourga.jmeter.common.TestResultsServices;
+
+import kg.apc.emulators.TestJMeterUtils;
+
+public class ApdexPartitionedTest {
+
+	private static final String BUDGET_PROPERTY = "rbourga.partition.budget.mb";
+
+	private static String sJMeterTempDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		TestJMeterUtils.createJmeterEnv();
+		sJMeterTempDir = TestJMeterUtils.getTempDir();
+	}
+
+	public ApdexPartitionedTest() {
+	}
+
+	@Test
+	public void partitionedSameAsInMemory() throws IOException {
+		// Labels of various sizes in several partitions of the 1 MB budget
+		String sFilePath = sJMeterTempDir + "/ApdexPartitionedResults.csv";
+		int[] aLblRowCnts = new int[40];
+		for (int iLbl = 0; iLbl < aLblRowCnts.length; iLbl++) {
+			aLblRowCnts[iLbl] = 100 + 150 * iLbl;
+		}
+		TestResultsServices.crteLabelsTestResultsFile(sFilePath, aLblRowCnts, 25);
+
+		try {
+			ApdexLogic apdexLogic = new ApdexLogic(0.2, 0.85, "");
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "0");
+			assertFalse(SamplePartitioner.isPartitioned(sFilePath));
+			AnalysisResult memoryResult = apdexLogic.computeApdexScore(sFilePath);
+
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "1");
+			assertTrue(SamplePartitioner.isPartitioned(sFilePath));
+			AnalysisResult partitionedResult = apdexLogic.computeApdexScore(sFilePath);
+
+			assertEquals(aLblRowCnts.length, memoryResult.getRowCount());
+			assertEquals(memoryResult.getFailedLblCnt(), partitionedResult.getFailedLblCnt());
+			assertEquals(memoryResult.getRowCount(), partitionedResult.getRowCount());
+			for (int iRow = 0; iRow < memoryResult.getRowCount(); iRow++) {
+				for (int iCol = 0; iCol < memoryResult.getColumnNames().length; iCol++) {
+					assertEquals("Row " + iRow + ", column " + iCol, memoryResult.getValueAt(iRow, iCol),
+							partitionedResult.getValueAt(iRow, iCol));
+				}
+			}
+		} finally {
+			JMeterUtils.setProperty(BUDGET_PROPERTY, "0");
+			new File(sFilePath).delete();
+			new File(SampleStoreCache.getCachePath(sFilePath)).delete();
+		}
+	}
+
+}
@@ -4,29 +4,33 @@
 package com.github.rbourga.jmeter.multimodalitycov.gui;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFormattedTextField;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.table.TableCellRenderer;
 
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.util.FilePanel;
 import org.apache.jmeter.gui.util.MenuFactory;
+import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.gui.util.VerticalPanel;
 import org.apache.jmeter.samplers.Clearable;
 import org.apache.jmeter.samplers.SampleResult;
@@ -35,19 +39,16 @@ import org.apache.jmeter.visualizers.gui.AbstractVisualizer;
 import org.apache.jorphan.gui.MinMaxLongRenderer;
 import org.apache.jorphan.gui.NumberRenderer;
 import org.apache.jorphan.gui.RendererUtils;
-import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
-import org.jfree.chart.axis.CategoryAxis;
-import org.jfree.chart.axis.CategoryLabelPositions;
-import org.jfree.chart.plot.CategoryPlot;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.chart.title.LegendTitle;
-import org.jfree.chart.ui.RectangleEdge;
 import org.jfree.data.category.DefaultCategoryDataset;
 
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.multimodalitycov.logic.HistogramRenderer;
 import com.github.rbourga.jmeter.multimodalitycov.logic.MultimodalityCoVLogic;
+import com.github.rbourga.jmeter.multimodalitycov.logic.MultimodalityCoVResult;
 
 import kg.apc.jmeter.JMeterPluginsUtils;
 
@@ -72,6 +73,21 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 	private JFormattedTextField jFtxtFldMvalueThold;
 	private JFormattedTextField jFTxtFldCoVAL;
 	private FilePanel filePnl;
+	private JLabel jLblTopLabels = new JLabel("Labels with the most samples to keep (0 = all) ");
+	private JFormattedTextField jFTxtFldTopLabels;
+	private FilePanel filePnlLabelRules;
+	private JCheckBox jChkBxFollow = new JCheckBox("Follow file while the test is running");
+
+	// Tables of this GUI, filled from the last result
+	private PowerTableModel pwrTblMdlStats = MultimodalityCoVLogic.crteTableModelStats();
+	private PowerTableModel pwrTblMdlRows = MultimodalityCoVLogic.crteTableModelRows();
+	private transient MultimodalityCoVResult coVResult = null;
+
+	// Refresh of the tables while following a results file
+	private transient MultimodalityCoVLogic coVLogic = null;
+	private transient JtlFollower jtlFollower = null;
+	private Timer followTimer = null;
+	private transient SwingWorker<MultimodalityCoVResult, Void> followWorker = null; // refresh in progress
 
 	// Objects for graph
 	private JTable jTblRows;
@@ -121,12 +137,27 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		// Panel for selection of file
 		filePnl = new FilePanel("Read results from file and calculate Modality & Coeff Var scores", EXTS);
 
+		// Panel for selection of label normalisation rules file
+		filePnlLabelRules = new FilePanel("Label normalisation rules file (optional)", EXTS);
+		filePnlLabelRules.setFilename(LabelMapper.getRulesFile());
+
+		// Panel for top labels option
+		JPanel jPnlTopLabels = new JPanel(new BorderLayout());
+		jPnlTopLabels.add(jLblTopLabels, BorderLayout.WEST);
+		jFTxtFldTopLabels = new JFormattedTextField(NumberFormat.getIntegerInstance());
+		jFTxtFldTopLabels.setValue(LabelMapper.getTopLabelCnt()); // by default, all labels kept
+		jFTxtFldTopLabels.setColumns(4);
+		jPnlTopLabels.add(jFTxtFldTopLabels);
+		jPnlTopLabels.setBorder(
+				BorderFactory.createTitledBorder("Top Labels, the others grouped under " + LabelMapper.OTHER_LABEL));
+
 		// Calculate button
 		JPanel jPnlCalc = new JPanel();
 		JButton jBtnCalc = new JButton("Calculate");
 		jBtnCalc.addActionListener(this);
 		jBtnCalc.setActionCommand(ACTION_CALCULATE);
 		jPnlCalc.add(jBtnCalc);
+		jPnlCalc.add(jChkBxFollow);
 
 		// Create a tabbed pane with the different tabs
 		JTabbedPane jTabbedPane = new JTabbedPane();
@@ -155,6 +186,8 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		vrtPnl.add(jPnlMvalue);
 		vrtPnl.add(jPnlCoVFail);
 		vrtPnl.add(filePnl);
+		vrtPnl.add(filePnlLabelRules);
+		vrtPnl.add(jPnlTopLabels);
 		vrtPnl.add(jPnlCalc);
 		vrtPnl.add(jTabbedPane);
 		add(vrtPnl, BorderLayout.CENTER);
@@ -177,13 +210,13 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 			break;
 
 		case ACTION_SAVE:
-			if (MultimodalityCoVLogic.getPwrTblMdelStats().getRowCount() == 0) {
+			if (coVResult == null || coVResult.getStats().getRowCount() == 0) {
 				GuiPackage.showErrorMessage("Data table empty - please perform Calculate before.",
 						"Save Table Data error");
 				return;
 			}
 			String sInFile = filePnl.getFilename();
-			String csvFilename = MultimodalityCoVLogic.saveTableStatsAsCsv(sInFile);
+			String csvFilename = MultimodalityCoVLogic.saveTableStatsAsCsv(sInFile, coVResult);
 			GuiPackage.showInfoMessage("Data saved to " + csvFilename, "Save Table Data");
 			break;
 
@@ -202,13 +235,14 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		 * Called when user clicks on "Clear" or "Clear All" buttons. Clears data
 		 * specific to this plugin
 		 */
-		MultimodalityCoVLogic.getBinsMap().clear();
-		MultimodalityCoVLogic.getPwrTblMdelStats().clearData();
-		MultimodalityCoVLogic.getPwrTblMdelRows().clearData();
+		stopFollowing();
+		coVResult = null;
+		pwrTblMdlStats.clearData();
+		pwrTblMdlRows.clearData();
 
 		// Repaint the tables
-		MultimodalityCoVLogic.getPwrTblMdelStats().fireTableDataChanged();
-		MultimodalityCoVLogic.getPwrTblMdelRows().fireTableDataChanged();
+		pwrTblMdlStats.fireTableDataChanged();
+		pwrTblMdlRows.fireTableDataChanged();
 	}
 
 	@Override
@@ -269,15 +303,111 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 			return;
 		}
 
+		// Parse label normalisation rules filename and top labels
+		String sLabelRulesFile = filePnlLabelRules.getFilename();
+		if (!(FileServices.isFilenameEmpty(sLabelRulesFile))) {
+			if (!(FileServices.isFileExist(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage("Cannot find label rules file - please enter a valid filename.",
+						"Label rules file error");
+				return;
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage(
+						"Label rules file invalid - sample_name_or_regex and label_group columns with valid regexes expected.",
+						"Label rules file error");
+				return;
+			}
+		}
+		int iTopLabels = ((Number) jFTxtFldTopLabels.getValue()).intValue();
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			GuiPackage.showErrorMessage("Please enter a number of top labels equal to or greater than 0.",
+					"Top Labels Setting error");
+			return;
+		}
+		LabelMapper.setRulesFile(sLabelRulesFile);
+		LabelMapper.setTopLabelCnt(iTopLabels);
+
+		// Stop following any previous file
+		stopFollowing();
+		MultimodalityCoVLogic coVLogic = new MultimodalityCoVLogic(fMvalueThold, fCoVALPct);
+		if (jChkBxFollow.isSelected()) {
+			if (!JtlFollower.isFollowable(sInFile)) {
+				GuiPackage.showErrorMessage("Only uncompressed CSV/TSV results files can be followed.",
+						"Input file error");
+				return;
+			}
+			// Refresh the tables periodically with the rows appended to the file
+			this.coVLogic = coVLogic;
+			jtlFollower = MultimodalityCoVLogic.followResults(sInFile);
+			followTimer = new Timer(JtlFollower.getGuiPeriodMs(), e -> refreshFollowing());
+			followTimer.setInitialDelay(0);
+			followTimer.start();
+			return;
+		}
+
 		// Now, process the data
-		int iResult = MultimodalityCoVLogic.computeMvalueCoV(sInFile, fMvalueThold, fCoVALPct);
-		if (iResult == -1) {
+		coVResult = coVLogic.computeMvalueCoV(sInFile);
+		if (coVResult.getFailedLblCnt() == -1) {
 			GuiPackage.showErrorMessage("No samplers found in results file - please check your file.",
 					"Input file error");
 		}
 		// Repaint the tables
-		MultimodalityCoVLogic.getPwrTblMdelStats().fireTableDataChanged();
-		MultimodalityCoVLogic.getPwrTblMdelRows().fireTableDataChanged();
+		showResult();
+	}
+
+	private void refreshFollowing() {
+		if (!jChkBxFollow.isSelected()) {
+			stopFollowing(); // unticked by the user
+			return;
+		}
+		if (followWorker != null) {
+			return; // previous refresh still running
+		}
+		// Read the new rows and update the results off the EDT, then repaint the tables on it
+		JtlFollower follower = jtlFollower;
+		MultimodalityCoVLogic logic = coVLogic;
+		followWorker = new SwingWorker<MultimodalityCoVResult, Void>() {
+			@Override
+			protected MultimodalityCoVResult doInBackground() throws IOException {
+				// Update only when new rows were appended since the last refresh
+				return (follower.refresh() > 0) ? logic.updateMvalueCoV(follower.getSampleStore()) : null;
+			}
+
+			@Override
+			protected void done() {
+				followWorker = null;
+				if (follower != jtlFollower) {
+					return; // stopped or restarted meanwhile
+				}
+				try {
+					MultimodalityCoVResult result = get();
+					if (result != null) {
+						coVResult = result;
+						showResult();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					stopFollowing();
+					e.getCause().printStackTrace();
+				}
+			}
+		};
+		followWorker.execute();
+	}
+
+	private void stopFollowing() {
+		if (followTimer != null) {
+			followTimer.stop();
+			followTimer = null;
+		}
+		jtlFollower = null;
+		coVLogic = null;
+	}
+
+	private void showResult() {
+		coVResult.getStats().fillTable(pwrTblMdlStats);
+		coVResult.getRows().fillTable(pwrTblMdlRows);
 	}
 
 	// Results tab
@@ -286,7 +416,7 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		JPanel vrtPnlResults = new VerticalPanel();
 
 		// The table
-		JTable jTblStats = new JTable(MultimodalityCoVLogic.getPwrTblMdelStats());
+		JTable jTblStats = new JTable(pwrTblMdlStats);
 		JMeterUtils.applyHiDPI(jTblStats);
 		jTblStats.setAutoCreateRowSorter(true);
 		RendererUtils.applyRenderers(jTblStats, new TableCellRenderer[] {
@@ -325,7 +455,7 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		JPanel vrtPnlRows = new VerticalPanel();
 
 		// The table
-		jTblRows = new JTable(MultimodalityCoVLogic.getPwrTblMdelRows());
+		jTblRows = new JTable(pwrTblMdlRows);
 		JMeterUtils.applyHiDPI(jTblRows);
 		jTblRows.setAutoCreateRowSorter(true);
 		RendererUtils.applyRenderers(jTblRows, new TableCellRenderer[] {
@@ -354,7 +484,7 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		 * selects the Chart tab thanks to the tabbed ChangeListener.
 		 */
 		// Check if the Rows table is empty
-		if (MultimodalityCoVLogic.getPwrTblMdelRows().getRowCount() == 0) {
+		if (coVResult == null || coVResult.getRows().getRowCount() == 0) {
 			return null;
 		}
 
@@ -384,50 +514,15 @@ public class MultimodalityCoVGui extends AbstractVisualizer implements ActionLis
 		}
 
 		// Create a DefaultCategoryDataset which includes the bin ranges as categories.
-		Map<String, int[]> binsMap = MultimodalityCoVLogic.getBinsMap();
 		DefaultCategoryDataset catDataset = new DefaultCategoryDataset();
 		for (Integer iRow : aliCheckedRow) {
 			String sLabel = (String) jTblRows.getValueAt(iRow, iColLabel);
 			long lMin = (long) jTblRows.getValueAt(iRow, iColMin);
 			int iBinSize = (int) jTblRows.getValueAt(iRow, iColBin);
-			int[] aiBins = binsMap.get(sLabel);
-			// Note: the list of bins contain the zero bin terminators at the beginning and
-			// the end.
-			// So we need to skip them in the graph.
-			for (int iBin = 1; iBin < (aiBins.length - 1); iBin++) {
-				// Tag the bins with their actual range on the X-axis
-				String binLabel = getBinLabel(iBin - 1, lMin, iBinSize);
-				catDataset.addValue(aiBins[iBin], sLabel, binLabel);
-			}
+			HistogramRenderer.addBins(catDataset, sLabel, lMin, iBinSize, coVResult.getBins(sLabel));
 		}
 
-		// Create the bar chart with the dataset and title
-		JFreeChart barChart = ChartFactory.createBarChart("Response Times Distribution", // Title
-				"Response times in ms", // X Axis label
-				"Number of responses", // Y Axis label
-				catDataset, PlotOrientation.VERTICAL, true, // Legend
-				true, // Tooltips
-				false); // URLs
-
-		// Some rendering functions...
-		barChart.setBackgroundPaint(Color.WHITE);
-
-		// Customize the X-axis to show the bin ranges rotated
-		CategoryPlot plot = (CategoryPlot) barChart.getPlot();
-		CategoryAxis xAxis = plot.getDomainAxis();
-		xAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_45);
-
-		// Set legend at the top
-		LegendTitle legend = barChart.getLegend();
-		legend.setPosition(RectangleEdge.TOP);
-
-		return barChart;
-	}
-
-	private String getBinLabel(int iBinIndex, long lMin, int iBinSize) {
-		int binStart = (int) ((iBinIndex * iBinSize) + lMin);
-		int binEnd = binStart + (int) iBinSize;
-		return binStart + "-" + binEnd + " ms";
+		return HistogramRenderer.crteBarChart(catDataset);
 	}
 
 }
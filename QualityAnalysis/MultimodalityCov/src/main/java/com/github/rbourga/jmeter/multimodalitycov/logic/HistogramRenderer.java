@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.multimodalitycov.logic;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.imageio.ImageIO;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.title.LegendTitle;
+import org.jfree.chart.ui.RectangleEdge;
+import org.jfree.data.category.DefaultCategoryDataset;
+
+import com.github.rbourga.jmeter.common.AnalysisResult;
+
+/**
+ * Bar charts of the response times distribution of the labels, as shown in the
+ * Chart tab of the GUI. The charts of a result can also be rendered headless
+ * as one PNG file per label: the labels are split between the threads of the
+ * common pool, each with its own chart and image, which are reused from one
+ * label to the next.
+ */
+public final class HistogramRenderer {
+
+	private static final int PNG_WIDTH = 800;
+	private static final int PNG_HEIGHT = 500;
+	// Columns of the rows table of a result
+	private static final int ROWS_LABEL_COLNBR = 0;
+	private static final int ROWS_MIN_COLNBR = 1;
+	private static final int ROWS_BINSIZE_COLNBR = 3;
+	private static final int ROWS_MULTIMODAL_COLNBR = 4;
+
+	private HistogramRenderer() {
+	}
+
+	public static JFreeChart crteBarChart(DefaultCategoryDataset catDataset) {
+		// Create the bar chart with the dataset and title
+		JFreeChart barChart = ChartFactory.createBarChart("Response Times Distribution", // Title
+				"Response times in ms", // X Axis label
+				"Number of responses", // Y Axis label
+				catDataset, PlotOrientation.VERTICAL, true, // Legend
+				true, // Tooltips
+				false); // URLs
+
+		// Some rendering functions...
+		barChart.setBackgroundPaint(Color.WHITE);
+
+		// Customize the X-axis to show the bin ranges rotated
+		CategoryPlot plot = (CategoryPlot) barChart.getPlot();
+		CategoryAxis xAxis = plot.getDomainAxis();
+		xAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_45);
+
+		// Set legend at the top
+		LegendTitle legend = barChart.getLegend();
+		legend.setPosition(RectangleEdge.TOP);
+
+		return barChart;
+	}
+
+	public static void addBins(DefaultCategoryDataset catDataset, String sLabel, long lMin, int iBinSize,
+			int[] aiBins) {
+		// Note: the list of bins contain the zero bin terminators at the beginning and
+		// the end.
+		// So we need to skip them in the graph.
+		for (int iBin = 1; iBin < (aiBins.length - 1); iBin++) {
+			// Tag the bins with their actual range on the X-axis
+			String binLabel = getBinLabel(iBin - 1, lMin, iBinSize);
+			catDataset.addValue(aiBins[iBin], sLabel, binLabel);
+		}
+	}
+
+	public static Map<String, String> renderPngs(MultimodalityCoVResult coVResult, String sDirPath,
+			boolean bMultimodalOnly) throws IOException {
+		/*
+		 * Saves the chart of each label, or of the multimodal ones only, in a PNG file
+		 * of the directory. Labels with a bin size of 0 have no chart. Returns the file
+		 * names by label, in the order of the rows table.
+		 */
+		File dir = new File(sDirPath);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create the histograms directory " + sDirPath + ".");
+		}
+		AnalysisResult rowsResult = coVResult.getRows();
+		List<Integer> listRows = new ArrayList<>();
+		for (int iRow = 0; iRow < rowsResult.getRowCount(); iRow++) {
+			int iBinSize = (int) rowsResult.getValueAt(iRow, ROWS_BINSIZE_COLNBR);
+			boolean bMultimodal = "true".equals(rowsResult.getValueAt(iRow, ROWS_MULTIMODAL_COLNBR));
+			if (iBinSize != 0 && (bMultimodal || !bMultimodalOnly)) {
+				listRows.add(iRow);
+			}
+		}
+		String[] aFileNames = new String[listRows.size()];
+		for (int i = 0; i < aFileNames.length; i++) {
+			// Numbered so that labels with the same safe name get different files
+			int iRow = listRows.get(i);
+			aFileNames[i] = String.format("%05d_", iRow)
+					+ toSafeName((String) rowsResult.getValueAt(iRow, ROWS_LABEL_COLNBR)) + ".png";
+		}
+
+		// One task per core, each rendering a contiguous slice of the labels
+		int iTaskCnt = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), aFileNames.length));
+		ForkJoinPool fjPool = ForkJoinPool.commonPool();
+		List<ForkJoinTask<Void>> listTasks = new ArrayList<>();
+		for (int iTask = 0; iTask < iTaskCnt; iTask++) {
+			int iFrom = (int) ((long) aFileNames.length * iTask / iTaskCnt);
+			int iTo = (int) ((long) aFileNames.length * (iTask + 1) / iTaskCnt);
+			listTasks.add(fjPool.submit(() -> {
+				renderSlice(coVResult, listRows, aFileNames, iFrom, iTo, dir);
+				return null;
+			}));
+		}
+		try {
+			for (ForkJoinTask<Void> task : listTasks) {
+				task.join();
+			}
+		} catch (RenderException e) {
+			throw e.ioE;
+		}
+
+		Map<String, String> mapFileNames = new LinkedHashMap<>();
+		for (int i = 0; i < aFileNames.length; i++) {
+			mapFileNames.put((String) rowsResult.getValueAt(listRows.get(i), ROWS_LABEL_COLNBR), aFileNames[i]);
+		}
+		return mapFileNames;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static String getBinLabel(int iBinIndex, long lMin, int iBinSize) {
+		int binStart = (int) ((iBinIndex * iBinSize) + lMin);
+		int binEnd = binStart + (int) iBinSize;
+		return binStart + "-" + binEnd + " ms";
+	}
+
+	private static void renderSlice(MultimodalityCoVResult coVResult, List<Integer> listRows, String[] aFileNames,
+			int iFrom, int iTo, File dir) {
+		// Chart and image of this task, the dataset being replaced for each label
+		DefaultCategoryDataset catDataset = new DefaultCategoryDataset();
+		JFreeChart barChart = crteBarChart(catDataset);
+		BufferedImage image = new BufferedImage(PNG_WIDTH, PNG_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Rectangle2D chartArea = new Rectangle2D.Double(0, 0, PNG_WIDTH, PNG_HEIGHT);
+		AnalysisResult rowsResult = coVResult.getRows();
+		for (int i = iFrom; i < iTo; i++) {
+			int iRow = listRows.get(i);
+			String sLabel = (String) rowsResult.getValueAt(iRow, ROWS_LABEL_COLNBR);
+			catDataset.clear();
+			addBins(catDataset, sLabel, (long) rowsResult.getValueAt(iRow, ROWS_MIN_COLNBR),
+					(int) rowsResult.getValueAt(iRow, ROWS_BINSIZE_COLNBR), coVResult.getBins(sLabel));
+			Graphics2D g2 = image.createGraphics();
+			try {
+				barChart.draw(g2, chartArea);
+			} finally {
+				g2.dispose();
+			}
+			try {
+				ImageIO.write(image, "png", new File(dir, aFileNames[i]));
+			} catch (IOException e) {
+				throw new RenderException(e);
+			}
+		}
+	}
+
+	private static String toSafeName(String sLabel) {
+		// Keeps the characters allowed in the file names and URLs of all systems
+		StringBuilder sb = new StringBuilder(Math.min(sLabel.length(), 64));
+		for (int i = 0; i < sLabel.length() && sb.length() < 64; i++) {
+			char c = sLabel.charAt(i);
+			sb.append((c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == '.')) ? c : '_');
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Carries an IOException of a PNG file out of a rendering task.
+	 */
+	private static final class RenderException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final IOException ioE;
+
+		private RenderException(IOException ioE) {
+			super(ioE);
+			this.ioE = ioE;
+		}
+	}
+
+}
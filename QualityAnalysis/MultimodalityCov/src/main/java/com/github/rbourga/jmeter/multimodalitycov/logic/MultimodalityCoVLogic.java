@@ -3,88 +3,106 @@
  */
 package com.github.rbourga.jmeter.multimodalitycov.logic;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
 
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
 import org.apache.jmeter.util.JMeterUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
+import com.github.rbourga.jmeter.common.ElapsedHistogram;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.JtlScanner;
 import com.github.rbourga.jmeter.common.MathMoments;
+import com.github.rbourga.jmeter.common.NumberServices;
+import com.github.rbourga.jmeter.common.QuantileSketch;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleSketches;
+import com.github.rbourga.jmeter.common.SampleStore;
 import com.github.rbourga.jmeter.multimodalitycov.maths.MValueCalculator;
 
 public final class MultimodalityCoVLogic {
 
 	private static String HTML_STATS_TITLE = "Modality & Coefficient of Variation Results";
 	private static String SUFFIX_STATS = "_ModalityCoV.";
+	private static String SUFFIX_HISTOGRAMS = "_histograms";
+	// Columns of the results file used by the analysis, the label being always loaded
+	private static final String[] USED_COLUMNS = { JtlScanner.COL_ELAPSED };
 
 	// TODO add the new column labels to
 	// core/org/apache/jmeter/resources/messages.properties files.
-	private static PowerTableModel pwrTblMdlStats = new PowerTableModel(
-			new String[] {
-					JMeterUtils.getResString("sampler label"), // Label
-					JMeterUtils.getResString("aggregate_report_count"), // # Samples
-					JMeterUtils.getResString("average"), // Average
-					JMeterUtils.getResString("aggregate_report_min"), // Min
-					JMeterUtils.getResString("aggregate_report_max"), // Max
-					"CoV %", // Coefficent of Variation
-					"CoV Rating",
-					"Bin Size",
-					"mValue",
-					"Multimodal", // true if multimodal, false otherwise
-					"Failed" // true if excessive CoV or multimodal
-			}, new Class[] {
-					String.class, // Label
-					Integer.class, // # Samples
-					Double.class, // Average
-					Double.class, // Min
-					Double.class, // Max
-					Double.class, // Coefficient of Variation %
-					String.class, // Coefficient of Variation Rating
-					Integer.class, // Bin size
-					Double.class, // mValue
-					String.class, // Multimodal
-					String.class // Failed
-			});
+	private static final String[] STATS_COLUMN_NAMES = new String[] {
+		JMeterUtils.getResString("sampler label"), // Label
+		JMeterUtils.getResString("aggregate_report_count"), // # Samples
+		JMeterUtils.getResString("average"), // Average
+		JMeterUtils.getResString("aggregate_report_min"), // Min
+		JMeterUtils.getResString("aggregate_report_max"), // Max
+		"CoV %", // Coefficent of Variation
+		"CoV Rating",
+		"Bin Size",
+		"mValue",
+		"Multimodal", // true if multimodal, false otherwise
+		"Failed" // true if excessive CoV or multimodal
+	};
+	private static final Class<?>[] STATS_COLUMN_CLASSES = new Class[] {
+		String.class, // Label
+		Integer.class, // # Samples
+		Double.class, // Average
+		Double.class, // Min
+		Double.class, // Max
+		Double.class, // Coefficient of Variation %
+		String.class, // Coefficient of Variation Rating
+		Integer.class, // Bin size
+		Double.class, // mValue
+		String.class, // Multimodal
+		String.class // Failed
+	};
 	private static int PASSFAIL_TEST_COLNBR = 10; // Position of Failed column in the table
+	private static int COV_COLNBR = 5; // Position of CoV column in the table
 
-	private static PowerTableModel pwrTblMdlRows = new PowerTableModel(
-			new String[] {
-					JMeterUtils.getResString("sampler label"), // Label
-					JMeterUtils.getResString("aggregate_report_min"), // Min
-					"Bin Rule",
-					"Bin Size",
-					"Multimodal", // true if multimodal, false otherwise
-					"Check" // user to tick for generating the bar chart
-			}, new Class[] {
-					String.class, // Label
-					Double.class, // Min
-					String.class, // Bin Rule
-					Integer.class, // Bin size
-					String.class, // Multimodal
-					Boolean.class // Check
-			});
+	private static final String[] ROWS_COLUMN_NAMES = new String[] {
+		JMeterUtils.getResString("sampler label"), // Label
+		JMeterUtils.getResString("aggregate_report_min"), // Min
+		"Bin Rule",
+		"Bin Size",
+		"Multimodal", // true if multimodal, false otherwise
+		"Check" // user to tick for generating the bar chart
+	};
+	private static final Class<?>[] ROWS_COLUMN_CLASSES = new Class[] {
+		String.class, // Label
+		Double.class, // Min
+		String.class, // Bin Rule
+		Integer.class, // Bin size
+		String.class, // Multimodal
+		Boolean.class // Check
+	};
 
-	public static PowerTableModel getPwrTblMdelStats() {
-		return pwrTblMdlStats;
-	}
+	// Thresholds of the analysis, the same for all the computations of the instance
+	private final double dMvalueThold;
+	private final double dCoVALPct;
+	// Results of the labels of the store followed by updateMvalueCoV(), by label id
+	private SampleStore followedStore = null;
+	private final ArrayList<FollowedLabel> alFollowedLabels = new ArrayList<>();
 
-	public static PowerTableModel getPwrTblMdelRows() {
-		return pwrTblMdlRows;
+	public MultimodalityCoVLogic(double dMvalueThold, double dCoVALPct) {
+		this.dMvalueThold = dMvalueThold;
+		this.dCoVALPct = dCoVALPct;
 	}
 
-	// Hashmap that contains the list of bins to draw the bar charts
-	private static Map<String, int[]> binsMap = new HashMap<>();
+	public static PowerTableModel crteTableModelStats() {
+		// Empty statistics table, e.g. for the GUI
+		return new PowerTableModel(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES);
+	}
 
-	public static Map<String, int[]> getBinsMap() {
-		return binsMap;
+	public static PowerTableModel crteTableModelRows() {
+		return new PowerTableModel(ROWS_COLUMN_NAMES, ROWS_COLUMN_CLASSES);
 	}
 
 	/*
@@ -98,122 +116,313 @@ public final class MultimodalityCoVLogic {
 		return dValue < 0.1;
 	}
 
-	public static int computeMvalueCoV(String sFilepath, double dMvalueThold, double dCoVALPct) {
+	public static JtlFollower followResults(String sFilepath) {
+		// Follower loading the columns used by the analysis, for a file still being written
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return new JtlFollower(sFilepath, cDelim, USED_COLUMNS);
+	}
+
+	public static SampleSketches loadSketches(String sFilepath, double dRelAcc) {
+		// Sketch mode: the samples are summarized as they are read, for files too large
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoSketches(sFilepath, cDelim, dRelAcc);
+	}
+
+	public MultimodalityCoVResult computeMvalueCoV(String sFilepath) {
 		// Load the data after getting the delimiter separator from current JMeter
 		// properties
 		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
-		Map<String, List<CSVRecord>> rcdHashMap = FileServices.loadSamplesIntoHashMap(sFilepath, cDelim);
-		if (rcdHashMap.isEmpty()) {
-			return -1; // Nothing loaded, so abort...
+		if (SamplePartitioner.isPartitioned(sFilepath)) {
+			// Results larger than the heap budget: one partition of labels at a time
+			ResultRows resultRows = new ResultRows();
+			int iPartitionCnt = 0;
+			try {
+				iPartitionCnt = SamplePartitioner.forEachPartition(sFilepath, cDelim, USED_COLUMNS,
+						(sampleStore, aFileRows) -> addLabelsResults(sampleStore, resultRows));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (iPartitionCnt == 0) {
+				return crteAborted(); // Nothing loaded, so abort...
+			}
+			return resultRows.crteResult(null); // exact values
 		}
+		SampleStore sampleStore = FileServices.loadSamplesIntoStore(sFilepath, cDelim, USED_COLUMNS);
+		return computeMvalueCoV(sampleStore);
+	}
 
-		// Clear any statistics from a previous analysis
-		pwrTblMdlStats.clearData();
-		pwrTblMdlRows.clearData();
-		binsMap.clear();
-
-		// Now process the data points
-		BigDecimal bdMvalueThold = new BigDecimal(dMvalueThold);
-		BigDecimal bdCoVALPct = new BigDecimal(dCoVALPct);
-
-		// Loop through the Labels in natural order and compute the values
-		int iFailedLblCnt = 0;
-		TreeMap<String, List<CSVRecord>> tmSortedRcd = new TreeMap<>(rcdHashMap);
-		for (String sLbl : tmSortedRcd.keySet()) {
-			List<CSVRecord> aRcd = tmSortedRcd.get(sLbl);
-			int iTotRcd = aRcd.size();
+	public MultimodalityCoVResult computeMvalueCoV(SampleStore sampleStore) {
+		// Same on samples already loaded, e.g. by a follower of a results file still being written
+		if (sampleStore.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ResultRows resultRows = new ResultRows();
+		addLabelsResults(sampleStore, resultRows);
+		return resultRows.crteResult(null); // exact values
+	}
 
-			// Get some stats for this set of samples
-			MathMoments mathMoments = MathMoments.crteMomentsFromRecordsList(aRcd);
-
-			// Similar to error rate, round the CoV to 4 decimal places
-			BigDecimal bdCoVScore = new BigDecimal(mathMoments.getCoV());
-			BigDecimal bdCoVScoreRnd = bdCoVScore.setScale(4, RoundingMode.HALF_UP);
-			// Get the rating of Coefficient of Variation
-			String sCoVRating = setCoVRating(bdCoVScoreRnd);
-			String sIsCoVfailed = "false";
-			if (bdCoVScoreRnd.compareTo(bdCoVALPct) != -1) {
-				sIsCoVfailed = "true";
+	public MultimodalityCoVResult updateMvalueCoV(SampleStore sampleStore) {
+		/*
+		 * Same on the store of a follower of a results file still being written: the
+		 * moments of each label are updated with the rows added since the previous
+		 * call, and the labels without new rows keep their previous results. The
+		 * mValue bins depending on all the values of a label, its histogram is counted
+		 * again when it has new rows. A different store, e.g. after the file was
+		 * truncated, starts again.
+		 */
+		if (sampleStore != followedStore) {
+			followedStore = sampleStore;
+			alFollowedLabels.clear();
+		}
+		if (sampleStore.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		while (alFollowedLabels.size() < sampleStore.getLabelCount()) {
+			alFollowedLabels.add(new FollowedLabel());
+		}
+		ResultRows resultRows = new ResultRows();
+		for (int iLblId : sampleStore.getSortedLabelIds()) {
+			FollowedLabel followedLabel = alFollowedLabels.get(iLblId);
+			int iLblRowCnt = sampleStore.getLabelRowCount(iLblId);
+			if (followedLabel.iRowCnt < iLblRowCnt) {
+				MathMoments.Accumulator accumulator = followedLabel.accumulator;
+				for (int i = followedLabel.iRowCnt; i < iLblRowCnt; i++) {
+					int iElapsed = sampleStore.getElapsed(sampleStore.getLabelRow(iLblId, i));
+					accumulator.add(iElapsed);
+					followedLabel.lElapsedSum += iElapsed;
+				}
+				followedLabel.iRowCnt = iLblRowCnt;
+				ElapsedHistogram elapsedHistogram = sampleStore.crteElapsedHistogram(sampleStore.getLabelRows(iLblId));
+				// Exact mean from the sum, the running one drifting over many updates
+				double dMean = (double) followedLabel.lElapsedSum / iLblRowCnt;
+				MathMoments mathMoments = new MathMoments(accumulator.getMax(), dMean, accumulator.getMin(),
+						elapsedHistogram.getPercentile(25), elapsedHistogram.getPercentile(75), accumulator.getVariance());
+				followedLabel.labelRows = new ResultRows();
+				addLabelResults(followedLabel.labelRows, sampleStore.getLabel(iLblId), iLblRowCnt, elapsedHistogram, mathMoments);
 			}
+			resultRows.addAll(followedLabel.labelRows);
+		}
+		return resultRows.crteResult(null); // exact values
+	}
 
-			// Calculate the mValue and round to 2 decimal places
-			MValueCalculator mValueCalculator = MValueCalculator.calculate(aRcd, mathMoments);
-			BigDecimal bdMvalue = new BigDecimal(mValueCalculator.getMvalue());
-			BigDecimal bdMvalueRnd = bdMvalue.setScale(1, RoundingMode.HALF_UP);
-			// Check if the sample is multimodal
-			String sIsMultimodal = "false";
-			if (bdMvalueRnd.compareTo(bdMvalueThold) != -1) {
-				sIsMultimodal = "true";
-			}
+	public MultimodalityCoVResult computeMvalueCoV(SampleSketches sampleSketches) {
+		/*
+		 * Sketch mode: same on the sketches of the samples. The moments are exact, the
+		 * mValue bins being counted from the values of the buckets of the sketches.
+		 */
+		if (sampleSketches.isEmpty()) {
+			return crteAborted(); // Nothing loaded, so abort...
+		}
+		ResultRows resultRows = new ResultRows();
+		for (int iLblId : sampleSketches.getSortedLabelIds()) {
+			String sLbl = sampleSketches.getLabel(iLblId);
+			QuantileSketch quantileSketch = sampleSketches.getSketch(iLblId);
+			MathMoments mathMoments = MathMoments.crteMomentsFromSketch(quantileSketch);
+			ElapsedHistogram elapsedHistogram = ElapsedHistogram.crteFromSketch(quantileSketch);
+			addLabelResults(resultRows, sLbl, (int) quantileSketch.getCount(), elapsedHistogram, mathMoments);
+		}
+		return resultRows.crteResult(sampleSketches.getErrorNote());
+	}
 
-			// Add the bins to the corresponding label
-			binsMap.put(sLbl, mValueCalculator.getiBinsArray());
+	public MultimodalityCoVResult computeMvalueCoV(SampleReservoirs sampleReservoirs) {
+		/*
+		 * Sampling mode: same on the samples kept for each label. The standard error of
+		 * a CoV c estimated on n samples is about c * sqrt((0.5 + c^2) / n).
+		 */
+		SampleStore sampleStore = sampleReservoirs.getSampleStore();
+		MultimodalityCoVResult coVResult = computeMvalueCoV(sampleStore);
+		if (coVResult.getFailedLblCnt() == -1) {
+			return coVResult;
+		}
+		AnalysisResult statsResult = coVResult.getStats();
+		double dMaxHalfWidth = 0;
+		for (int iRow = 0; iRow < statsResult.getRowCount(); iRow++) {
+			String sLbl = (String) statsResult.getValueAt(iRow, 0);
+			double dCoV = (Double) statsResult.getValueAt(iRow, COV_COLNBR);
+			dMaxHalfWidth = Math.max(dMaxHalfWidth,
+					sampleReservoirs.getHalfWidth(sampleStore, sLbl, dCoV * Math.sqrt(0.5 + dCoV * dCoV)));
+		}
+		return coVResult.withErrorNote(sampleReservoirs.getErrorNote(
+				"CoV +/- " + NumberServices.formatHalfUp(dMaxHalfWidth, 4)));
+	}
 
-			// Tag the pass/fail status
-			String sIsFailed = "false";
-			if (sIsMultimodal == "true" || sIsCoVfailed == "true") {
-				sIsFailed = "true";
-				iFailedLblCnt++;
-			}
+	public static SampleReservoirs loadReservoirs(String sFilepath, double dConfidence, double dMargin) {
+		// Sampling mode: a random sample of each label is kept as the samples are read
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoReservoirs(sFilepath, cDelim, dConfidence, dMargin);
+	}
 
-			// Update the stats table with the results
-			Object[] oArrayRowDataStat = {
-					sLbl, // Label
-					iTotRcd, // # Samples
-					Long.valueOf((long) mathMoments.getMean()), // Average
-					Long.valueOf((long) mathMoments.getMin()), // Min
-					Long.valueOf((long) mathMoments.getMax()), // Max
-					bdCoVScoreRnd.doubleValue(), // Coef of Var %
-					sCoVRating, // Coef of Var Rating
-					mValueCalculator.getBinSize(), // Bin Size
-					bdMvalueRnd.doubleValue(), // mValue
-					sIsMultimodal, // Multimodal
-					sIsFailed }; // true if values more than the specified thresholds
-			pwrTblMdlStats.addRow(oArrayRowDataStat);
-
-			// Update the rows table
-			Object[] oArrayRowDataRow = {
-					sLbl, // Label
-					Long.valueOf((long) mathMoments.getMin()), // Min
-					mValueCalculator.getBinRule(),	// Bin rule name
-					mValueCalculator.getBinSize(), // Bin Size
-					sIsMultimodal, // Multimodal
-					false }; // nothing selected by default
-			pwrTblMdlRows.addRow(oArrayRowDataRow);
-		}
-
-		return iFailedLblCnt;
-	}
-
-	public static String saveTableStatsAsCsv(String sFilePath) {
+	public static String saveTableStatsAsCsv(String sFilePath, MultimodalityCoVResult coVResult) {
 		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
 		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
 		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
-		FileServices.saveTableAsCsv(sOutputFile, pwrTblMdlStats);
+		AnalysisResult statsResult = coVResult.getStats();
+		FileServices.saveTableAsCsv(sOutputFile, statsResult.crteTableModel(), statsResult.getErrorNote());
 		return sOutputFile;
 	}
 
-	public static String saveTableStatsAsHtml(String sFilePath, String sMvalueThold, String sCoVALPct) {
+	public static String saveTableStatsAsHtml(String sFilePath, MultimodalityCoVResult coVResult, String sMvalueThold,
+			String sCoVALPct) {
+		return saveTableStatsAsHtml(sFilePath, coVResult, sMvalueThold, sCoVALPct, null);
+	}
+
+	public static String saveTableStatsAsHtml(String sFilePath, MultimodalityCoVResult coVResult, String sMvalueThold,
+			String sCoVALPct, Map<String, String> mapHistograms) {
+		// The labels link to their histogram, if rendered
 		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
 		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
 		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS+ "html";
 		String sTableTitle = HTML_STATS_TITLE + " (Modality threshold = " + sMvalueThold + ", CoV Acceptable Limit = " + sCoVALPct + ")";
-		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, pwrTblMdlStats, PASSFAIL_TEST_COLNBR);
+		AnalysisResult statsResult = coVResult.getStats();
+		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, statsResult, PASSFAIL_TEST_COLNBR, mapHistograms);
 		return sOutputFile;
 	}
 
+	public static Map<String, String> saveHistogramsAsPng(String sFilePath, MultimodalityCoVResult coVResult,
+			boolean bMultimodalOnly) throws IOException {
+		/*
+		 * Renders the histogram of each label, or of the multimodal ones only, in a
+		 * directory next to the HTML report. Returns the paths of the PNG files by
+		 * label, relative to the report.
+		 */
+		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
+		String sDirName = FilenameUtils.getBaseName(sFilePath) + SUFFIX_STATS.substring(0, SUFFIX_STATS.length() - 1)
+				+ SUFFIX_HISTOGRAMS;
+		Map<String, String> mapFileNames = HistogramRenderer.renderPngs(coVResult, sFileDirectoryName + sDirName,
+				bMultimodalOnly);
+		Map<String, String> mapHistograms = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : mapFileNames.entrySet()) {
+			mapHistograms.put(entry.getKey(), sDirName + "/" + entry.getValue());
+		}
+		return mapHistograms;
+	}
+
 	/*
 	 * Private methods
 	 */
-	private static String setCoVRating(BigDecimal bdScore) {
+	private static MultimodalityCoVResult crteAborted() {
+		return new MultimodalityCoVResult(AnalysisResult.crteAborted(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, -1),
+				AnalysisResult.crteAborted(ROWS_COLUMN_NAMES, ROWS_COLUMN_CLASSES, -1), new HashMap<>());
+	}
+
+	private void addLabelsResults(SampleStore sampleStore, ResultRows resultRows) {
+		// Adds the results of the labels of the store to the rows of the result
+
+		// Loop through the Labels in natural order and compute the values
+		for (int iLblId : sampleStore.getSortedLabelIds()) {
+			String sLbl = sampleStore.getLabel(iLblId);
+			// Count the elapsed times once: the moments and the mValue bins are read from the counts
+			ElapsedHistogram elapsedHistogram = sampleStore.crteElapsedHistogram(sampleStore.getLabelRows(iLblId));
+			int iTotRcd = (int) elapsedHistogram.getCount();
+
+			// Get some stats for this set of samples
+			MathMoments mathMoments = MathMoments.crteMomentsFromHistogram(elapsedHistogram);
+			addLabelResults(resultRows, sLbl, iTotRcd, elapsedHistogram, mathMoments);
+		}
+	}
+
+	private void addLabelResults(ResultRows resultRows, String sLbl, int iTotRcd, ElapsedHistogram elapsedHistogram,
+			MathMoments mathMoments) {
+		// Adds the results of a label to the rows and its bins to the map
+		// Similar to error rate, round the CoV to 4 decimal places
+		double dCoVScoreRnd = NumberServices.roundHalfUp(mathMoments.getCoV(), 4);
+		// Get the rating of Coefficient of Variation
+		String sCoVRating = setCoVRating(dCoVScoreRnd);
+		String sIsCoVfailed = "false";
+		if (NumberServices.compareDecimal(dCoVScoreRnd, 4, dCoVALPct) != -1) {
+			sIsCoVfailed = "true";
+		}
+
+		// Calculate the mValue and round to 2 decimal places
+		MValueCalculator mValueCalculator = MValueCalculator.calculate(elapsedHistogram, mathMoments);
+		double dMvalueRnd = NumberServices.roundHalfUp(mValueCalculator.getMvalue(), 1);
+		// Check if the sample is multimodal
+		String sIsMultimodal = "false";
+		if (NumberServices.compareDecimal(dMvalueRnd, 1, dMvalueThold) != -1) {
+			sIsMultimodal = "true";
+		}
+
+		// Add the bins to the corresponding label
+		resultRows.hmBins.put(sLbl, mValueCalculator.getiBinsArray());
+
+		// Tag the pass/fail status
+		String sIsFailed = "false";
+		if (sIsMultimodal == "true" || sIsCoVfailed == "true") {
+			sIsFailed = "true";
+		}
+
+		// Update the stats table with the results
+		Object[] oArrayRowDataStat = {
+				sLbl, // Label
+				iTotRcd, // # Samples
+				Long.valueOf((long) mathMoments.getMean()), // Average
+				Long.valueOf((long) mathMoments.getMin()), // Min
+				Long.valueOf((long) mathMoments.getMax()), // Max
+				dCoVScoreRnd, // Coef of Var %
+				sCoVRating, // Coef of Var Rating
+				mValueCalculator.getBinSize(), // Bin Size
+				dMvalueRnd, // mValue
+				sIsMultimodal, // Multimodal
+				sIsFailed }; // true if values more than the specified thresholds
+		resultRows.alStats.add(oArrayRowDataStat);
+		if (sIsFailed.equals("true")) {
+			resultRows.iFailedLblCnt++;
+		}
+
+		// Update the rows table
+		Object[] oArrayRowDataRow = {
+				sLbl, // Label
+				Long.valueOf((long) mathMoments.getMin()), // Min
+				mValueCalculator.getBinRule(),	// Bin rule name
+				mValueCalculator.getBinSize(), // Bin Size
+				sIsMultimodal, // Multimodal
+				false }; // nothing selected by default
+		resultRows.alRows.add(oArrayRowDataRow);
+	}
+
+	private static String setCoVRating(double dScore) {
 		String sRating = "Low";
-		if (bdScore.doubleValue() >= 0.30) {
+		if (dScore >= 0.30) {
 			sRating = "High"; // high if > 30%
-		} else if (bdScore.doubleValue() >= 0.10)
+		} else if (dScore >= 0.10)
 		 {
 			sRating = "Moderate"; // moderate if > 10%
 		}
 		return sRating;
 	}
 
+	/*
+	 * Rows of the tables and bins of a computation, before they are made into its
+	 * result.
+	 */
+	private static final class ResultRows {
+		private final ArrayList<Object[]> alStats = new ArrayList<>();
+		private final ArrayList<Object[]> alRows = new ArrayList<>();
+		private final HashMap<String, int[]> hmBins = new HashMap<>();
+		private int iFailedLblCnt = 0;
+
+		private void addAll(ResultRows otherRows) {
+			alStats.addAll(otherRows.alStats);
+			alRows.addAll(otherRows.alRows);
+			hmBins.putAll(otherRows.hmBins);
+			iFailedLblCnt += otherRows.iFailedLblCnt;
+		}
+
+		private MultimodalityCoVResult crteResult(String sErrorNote) {
+			return new MultimodalityCoVResult(
+					new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alStats, iFailedLblCnt, sErrorNote),
+					new AnalysisResult(ROWS_COLUMN_NAMES, ROWS_COLUMN_CLASSES, alRows, iFailedLblCnt, null), hmBins);
+		}
+	}
+
+	/*
+	 * Moments and results of a followed label, as of its first iRowCnt rows.
+	 */
+	private static final class FollowedLabel {
+		private final MathMoments.Accumulator accumulator = new MathMoments.Accumulator();
+		private long lElapsedSum = 0;
+		private int iRowCnt = 0;
+		private ResultRows labelRows;
+	}
+
 }
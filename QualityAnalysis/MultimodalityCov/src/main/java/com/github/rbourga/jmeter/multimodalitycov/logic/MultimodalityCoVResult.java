@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package com.github.rbourga.jmeter.multimodalitycov.logic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.rbourga.jmeter.common.AnalysisResult;
+
+/**
+ * Immutable result of a modality & CoV analysis: the statistics table, the rows
+ * table from which the bar charts are selected, and the bins of each label.
+ */
+public final class MultimodalityCoVResult {
+
+	private final AnalysisResult statsResult;
+	private final AnalysisResult rowsResult;
+	private final Map<String, int[]> hmBins;
+
+	MultimodalityCoVResult(AnalysisResult statsResult, AnalysisResult rowsResult, Map<String, int[]> mapBins) {
+		this.statsResult = statsResult;
+		this.rowsResult = rowsResult;
+		this.hmBins = new HashMap<>(mapBins);
+	}
+
+	MultimodalityCoVResult withErrorNote(String sNote) {
+		return new MultimodalityCoVResult(statsResult.withErrorNote(sNote), rowsResult, hmBins);
+	}
+
+	public int getFailedLblCnt() {
+		// Number of failed labels, -1 if nothing was loaded
+		return statsResult.getFailedLblCnt();
+	}
+
+	public AnalysisResult getStats() {
+		return statsResult;
+	}
+
+	public AnalysisResult getRows() {
+		return rowsResult;
+	}
+
+	public int[] getBins(String sLbl) {
+		// Bins of the label to draw its bar chart, with a zero bin at each end, null if unknown
+		int[] aBins = hmBins.get(sLbl);
+		return (aBins == null) ? null : aBins.clone();
+	}
+
+}
@@ -1,9 +1,6 @@
 package com.github.rbourga.jmeter.multimodalitycov.maths;
 
-import java.util.List;
-
-import org.apache.commons.csv.CSVRecord;
-
+import com.github.rbourga.jmeter.common.ElapsedHistogram;
 import com.github.rbourga.jmeter.common.MathMoments;
 
 public class MValueCalculator {
@@ -40,7 +37,7 @@ public class MValueCalculator {
 	/*
 	 * Public methods
 	 */
-	public static MValueCalculator calculate(List<CSVRecord> listRcd, MathMoments mathMo) {
+	public static MValueCalculator calculate(ElapsedHistogram elapsedHistogram, MathMoments mathMo) {
 
 		double dMvalue = 0;
 		int iBinSize = 0;
@@ -52,26 +49,26 @@ public class MValueCalculator {
 		 * See https://en.wikipedia.org/wiki/Histogram
 		 */
 		if (mathMo.getStdDev() != 0) {
-			int iRcdNbr = listRcd.size();
+			long lRcdNbr = elapsedHistogram.getCount();
 			for (int i = 0; i < 2; i++) {
 				int iCurrBinSize;
 				String sCurrRule;
 				if (i == 0) {
 					// 1st try: use of Scott's formula
 					sCurrRule = "Scott";
-					iCurrBinSize = (int) Math.ceil(3.5 * mathMo.getStdDev() / Math.cbrt(iRcdNbr));
+					iCurrBinSize = (int) Math.ceil(3.5 * mathMo.getStdDev() / Math.cbrt(lRcdNbr));
 				} else {
 					// 2nd try: use of Freedman–Diaconis rule
 					sCurrRule = "Freedman-Diaconis";
 					double dIQR = mathMo.getQ3() - mathMo.getQ1();
-					iCurrBinSize = (int) Math.ceil(2 * dIQR / Math.cbrt(iRcdNbr));
+					iCurrBinSize = (int) Math.ceil(2 * dIQR / Math.cbrt(lRcdNbr));
 				}
 
 				double dCurrM = 0;
 				int[] currHistogram = null;
 				if (iCurrBinSize != 0) {
 					// Build the histogram
-					currHistogram = buildHistogram(listRcd, iCurrBinSize, mathMo);
+					currHistogram = buildHistogram(elapsedHistogram, iCurrBinSize, mathMo);
 
 					// Now calculate the mvalue
 					// See formula at https://www.brendangregg.com/FrequencyTrails/modes.html
@@ -106,7 +103,7 @@ public class MValueCalculator {
 	/*
 	 * Private methods
 	 */
-	private static int[] buildHistogram(List<CSVRecord> listRcd, int iBinSize, MathMoments mathMo) {
+	private static int[] buildHistogram(ElapsedHistogram elapsedHistogram, int iBinSize, MathMoments mathMo) {
 		double dMin = mathMo.getMin();
 		double dMax = mathMo.getMax();
 
@@ -114,18 +111,18 @@ public class MValueCalculator {
 		int iBinCount = (int) Math.ceil((dMax - dMin) / iBinSize);
 
 		// Build the array of bins with the count of items in each corresponding bin,
-		// including zero bin terminators
+		// including zero bin terminators. The distinct elapsed values are regrouped
+		// with their counts.
 		int[] iBins = new int[iBinCount + 2]; // Add 2 for zero terminators at the beginning and end (initialized at 0)
-		for (CSVRecord rcd : listRcd) {
-			double dElapsed = Long.parseLong(rcd.get("elapsed"));
-			int iBinIndex = (int) ((dElapsed - dMin) / iBinSize) + 1; // Offset by 1 to account for zero terminator at
+		elapsedHistogram.forEachValue((iElapsed, iCount) -> {
+			int iBinIndex = (int) ((iElapsed - dMin) / iBinSize) + 1; // Offset by 1 to account for zero terminator at
 																		// the start
 			// Any data point higher than max bin is counted in the max bin.
 			if (iBinIndex >= iBinCount + 1) {
 				iBinIndex = iBinCount;
 			}
-			iBins[iBinIndex]++;
-		}
+			iBins[iBinIndex] += iCount;
+		});
 		return iBins;
 	}
 }
@@ -3,13 +3,21 @@ package kg.apc.cmdtools;
  * Please keep this package name for calling this tool with the the command line cmdrunner tool
  */
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import org.apache.commons.lang3.math.NumberUtils;
 
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlFollower;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SampleSketches;
 import com.github.rbourga.jmeter.multimodalitycov.logic.MultimodalityCoVLogic;
+import com.github.rbourga.jmeter.multimodalitycov.logic.MultimodalityCoVResult;
 
 import kg.apc.cmd.UniversalRunner;
 import kg.apc.jmeter.JMeterPluginsUtils;
@@ -17,6 +25,10 @@ import kg.apc.logging.LoggingUtils;
 
 public class ModalityCoVTool extends AbstractCMDTool{
 
+	private static final String HISTOGRAMS_NONE = "none";
+	private static final String HISTOGRAMS_ALL = "all";
+	private static final String HISTOGRAMS_MULTIMODAL = "multimodal";
+
 	public ModalityCoVTool() {
         super();
         JMeterPluginsUtils.prepareJMeterEnv(UniversalRunner.getJARLocation());
@@ -31,6 +43,14 @@ public class ModalityCoVTool extends AbstractCMDTool{
 		String sInFile = null;
 		String sMvalueThold = "2.4";	// 2.4 by default
 		String sCoVALPct = "0.30";	// 30% max by default
+		String sFollowSecs = "0"; // no follow by default
+		String sFollowIdleSecs = "0"; // several refresh periods by default
+		String sSketchRelErr = "0"; // exact by default
+		String sSamplingConfidence = "0"; // no sampling by default
+		String sSamplingMargin = "0.01"; // 1% by default
+		String sLabelRules = null; // label rules of the JMeter properties by default
+		String sTopLabels = null; // top labels of the JMeter properties by default
+		String sHistograms = HISTOGRAMS_NONE; // no histograms by default
 
 		if (!args.hasNext()) {
 			showHelp(System.out);
@@ -55,15 +75,61 @@ public class ModalityCoVTool extends AbstractCMDTool{
 					throw new IllegalArgumentException("Coefficient of Variation acceptable limit value missing.");
 				}
 				sCoVALPct = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow refresh period value missing.");
+				}
+				sFollowSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--follow-idle-secs")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Follow idle timeout value missing.");
+				}
+				sFollowIdleSecs = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sketch-rel-err")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sketch relative error value missing.");
+				}
+				sSketchRelErr = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--label-rules")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Label rules file name missing.");
+				}
+				sLabelRules = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--top-labels")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Top labels value missing.");
+				}
+				sTopLabels = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-confidence")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling confidence value missing.");
+				}
+				sSamplingConfidence = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-margin")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling margin value missing.");
+				}
+				sSamplingMargin = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--histograms")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Histograms value missing.");
+				}
+				sHistograms = ((String) args.next());
 			}
 		}
 
-		// Check input-file parameter
-		if (!(FileServices.isFileExist(sInFile))) {
+		// Check input-file parameter: a file, or a list or glob pattern of files to merge
+		List<String> listInFileFiles = FileServices.resolveInputFiles(sInFile);
+		if (listInFileFiles.isEmpty()) {
 			throw new IllegalArgumentException("Input file not found.");
 		}
-		if (!(FileServices.isFileValid(sInFile))) {
-			throw new IllegalArgumentException("Input file invalid (could not find results).");
+		for (String sFile : listInFileFiles) {
+			if (!(FileServices.isFileExist(sFile))) {
+				throw new IllegalArgumentException("Input file not found: " + sFile + ".");
+			}
+			if (!(FileServices.isFileValid(sFile))) {
+				throw new IllegalArgumentException("Input file invalid (could not find results): " + sFile + ".");
+			}
 		}
 		// Check mvalue-thold parameter
 		if (!(NumberUtils.isCreatable(sMvalueThold))) {
@@ -82,13 +148,107 @@ public class ModalityCoVTool extends AbstractCMDTool{
 			throw new IllegalArgumentException("Coefficient of Variation acceptable limit value needs to be greater or equal to 0.");			
 		}
 
+		// Check follow-secs parameter
+		if (!(NumberUtils.isDigits(sFollowSecs))) {
+			throw new IllegalArgumentException("Follow refresh period value invalid (number of seconds expected).");
+		}
+		long lFollowSecs = Long.parseLong(sFollowSecs);
+		if ((lFollowSecs > 0) && !(JtlFollower.isFollowable(sInFile))) {
+			throw new IllegalArgumentException("Only a single uncompressed CSV/TSV input file can be followed.");
+		}
+		// Check follow-idle-secs parameter
+		if (!(NumberUtils.isDigits(sFollowIdleSecs))) {
+			throw new IllegalArgumentException("Follow idle timeout value invalid (number of seconds expected).");
+		}
+		long lFollowIdleSecs = Long.parseLong(sFollowIdleSecs);
+		// Check sketch-rel-err parameter
+		if (!(NumberUtils.isCreatable(sSketchRelErr))) {
+			throw new IllegalArgumentException("Sketch relative error value invalid.");
+		}
+		double dSketchRelErr = Double.parseDouble(sSketchRelErr);
+		if ((dSketchRelErr != 0) && SampleSketches.isRelAccOutOfRange(dSketchRelErr)) {
+			throw new IllegalArgumentException("Sketch relative error value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSketchRelErr != 0) && (lFollowSecs > 0)) {
+			throw new IllegalArgumentException("A followed input file cannot be read in sketch mode.");
+		}
+		// Check sampling-confidence and sampling-margin parameters
+		if (!(NumberUtils.isCreatable(sSamplingConfidence))) {
+			throw new IllegalArgumentException("Sampling confidence value invalid.");
+		}
+		double dSamplingConfidence = Double.parseDouble(sSamplingConfidence);
+		if ((dSamplingConfidence != 0) && SampleReservoirs.isConfidenceOutOfRange(dSamplingConfidence)) {
+			throw new IllegalArgumentException("Sampling confidence value needs to be between 0 and 1 excluded.");
+		}
+		if (!(NumberUtils.isCreatable(sSamplingMargin))) {
+			throw new IllegalArgumentException("Sampling margin value invalid.");
+		}
+		double dSamplingMargin = Double.parseDouble(sSamplingMargin);
+		if (SampleReservoirs.isMarginOutOfRange(dSamplingMargin)) {
+			throw new IllegalArgumentException("Sampling margin value needs to be between 0 and 1 excluded.");
+		}
+		if ((dSamplingConfidence != 0) && ((lFollowSecs > 0) || (dSketchRelErr != 0))) {
+			throw new IllegalArgumentException("Sampling mode cannot be combined with follow or sketch mode.");
+		}
+
+		// Check histograms parameter
+		if (!(sHistograms.equalsIgnoreCase(HISTOGRAMS_NONE) || sHistograms.equalsIgnoreCase(HISTOGRAMS_ALL)
+				|| sHistograms.equalsIgnoreCase(HISTOGRAMS_MULTIMODAL))) {
+			throw new IllegalArgumentException("Histograms value invalid (none, all or multimodal expected).");
+		}
+
+		// Check label-rules and top-labels parameters
+		if ((sLabelRules != null) && !FileServices.isFilenameEmpty(sLabelRules)) {
+			if (!(FileServices.isFileExist(sLabelRules))) {
+				throw new IllegalArgumentException("Label rules file not found.");
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRules))) {
+				throw new IllegalArgumentException(
+						"Label rules file invalid (sample_name_or_regex and label_group columns expected).");
+			}
+		}
+		if ((sTopLabels != null) && !(NumberUtils.isDigits(sTopLabels))) {
+			throw new IllegalArgumentException("Top labels value invalid (number of labels expected).");
+		}
+		int iTopLabels = (sTopLabels == null) ? LabelMapper.getTopLabelCnt() : NumberUtils.toInt(sTopLabels, -1);
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			throw new IllegalArgumentException("Top labels value needs to be greater or equal to 0.");
+		}
+		// Options of the loads, the JMeter properties being kept if not given
+		if (sLabelRules != null) {
+			LabelMapper.setRulesFile(sLabelRules);
+		}
+		if (sTopLabels != null) {
+			LabelMapper.setTopLabelCnt(iTopLabels);
+		}
+
 		// Do the job
-		int iResult = MultimodalityCoVLogic.computeMvalueCoV(sInFile, fMvalueThold, fCoVALPct);
+		MultimodalityCoVLogic coVLogic = new MultimodalityCoVLogic(fMvalueThold, fCoVALPct);
+		MultimodalityCoVResult coVResult = null;
+		if (lFollowSecs > 0) {
+			coVResult = followInputFile(coVLogic, sInFile, lFollowSecs, lFollowIdleSecs, sMvalueThold, sCoVALPct);
+		} else if (dSamplingConfidence > 0) {
+			coVResult = coVLogic.computeMvalueCoV(
+					MultimodalityCoVLogic.loadReservoirs(sInFile, dSamplingConfidence, dSamplingMargin));
+		} else if (dSketchRelErr > 0) {
+			coVResult = coVLogic.computeMvalueCoV(MultimodalityCoVLogic.loadSketches(sInFile, dSketchRelErr));
+		} else {
+			coVResult = coVLogic.computeMvalueCoV(sInFile);
+		}
+		int iResult = (coVResult == null) ? -1 : coVResult.getFailedLblCnt();
 		if (iResult == -1) {
 			System.out.println("No samplers found in input file - please check your file.");
 		} else {
+			// Render the histograms, if requested, to link them from the labels of the report
+			String sOutputBasePath = FileServices.getOutputBasePath(sInFile);
+			Map<String, String> mapHistograms = null;
+			if (!sHistograms.equalsIgnoreCase(HISTOGRAMS_NONE)) {
+				mapHistograms = saveHistograms(sOutputBasePath, coVResult,
+						sHistograms.equalsIgnoreCase(HISTOGRAMS_MULTIMODAL));
+			}
 			// Save Modality & CoV results in an HTML file for import in DevOps tool later on
-			String htmlFilename = MultimodalityCoVLogic.saveTableStatsAsHtml(sInFile, sMvalueThold, sCoVALPct);
+			String htmlFilename = MultimodalityCoVLogic.saveTableStatsAsHtml(sOutputBasePath, coVResult, sMvalueThold,
+					sCoVALPct, mapHistograms);
 			System.out.println("Results saved in " + htmlFilename);
 		}
 		return iResult;
@@ -96,10 +256,58 @@ public class ModalityCoVTool extends AbstractCMDTool{
 
 	@Override
 	protected void showHelp(PrintStream os) {
-		os.println("Options for tool 'ModalityCoV': --input-file <filenameIn> "
+		os.println("Options for tool 'ModalityCoV': --input-file <filenameIn, or comma-separated list or glob of files to merge> "
 				+ "["
 				+ "--mvalue-thold <modality detection treshold (greater than 0.1)> "
-				+ "--cov-alim-pct <Coefficient of Variation acceptable limit percentage value to pass>"
+				+ "--cov-alim-pct <Coefficient of Variation acceptable limit percentage value to pass> "
+				+ "--follow-secs <refresh period in secs while the input file is being written (default = 0, no follow)> "
+				+ "--follow-idle-secs <secs without the followed file growing before the test is taken as over (default = 0, "
+				+ JtlFollower.IDLE_PERIODS_DEFAULT + " refresh periods)> "
+				+ "--sketch-rel-err <relative error of the response times to summarize large files in bounded memory, e.g. 0.01 (default = 0, exact)> "
+				+ "--label-rules <CSV file of sample_name_or_regex,label_group rules merging the labels of a same transaction> "
+				+ "--top-labels <number of labels with the most samples to keep, the others grouped under '" + LabelMapper.OTHER_LABEL + "' (default = 0, all labels)> "
+				+ "--sampling-confidence <confidence level of a quick analysis on random samples of each label, e.g. 0.95 (default = 0, no sampling)> "
+				+ "--sampling-margin <margin of error of the proportions in sampling mode (default = 0.01)> "
+				+ "--histograms <PNG histograms linked from the report: none, all or multimodal labels only (default = none)> "
 				+ "]");				
 	}
+
+	/*
+	 * Private methods
+	 */
+	private static Map<String, String> saveHistograms(String sOutputBasePath, MultimodalityCoVResult coVResult,
+			boolean bMultimodalOnly) {
+		// Rendered without a display, e.g. on a CI agent
+		System.setProperty("java.awt.headless", "true");
+		long lStart = System.currentTimeMillis();
+		try {
+			Map<String, String> mapHistograms = MultimodalityCoVLogic.saveHistogramsAsPng(sOutputBasePath, coVResult,
+					bMultimodalOnly);
+			System.out.println(mapHistograms.size() + " histograms rendered in "
+					+ (System.currentTimeMillis() - lStart) + " ms.");
+			return mapHistograms;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static MultimodalityCoVResult followInputFile(MultimodalityCoVLogic coVLogic, String sInFile,
+			long lFollowSecs, long lFollowIdleSecs, String sMvalueThold, String sCoVALPct) {
+		// Update the report with the samples appended to the file until the test is over
+		MultimodalityCoVResult[] aResult = { null };
+		JtlFollower jtlFollower = MultimodalityCoVLogic.followResults(sInFile);
+		try {
+			jtlFollower.follow(lFollowSecs * 1000, lFollowIdleSecs * 1000, (sampleStore, iNewRowCnt) -> {
+				aResult[0] = coVLogic.updateMvalueCoV(sampleStore);
+				MultimodalityCoVLogic.saveTableStatsAsHtml(sInFile, aResult[0], sMvalueThold, sCoVALPct);
+				System.out.println(iNewRowCnt + " new samples read, report updated.");
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return aResult[0];
+	}
 }
@@ -22,6 +22,7 @@ import javax.swing.table.TableCellRenderer;
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.util.FilePanel;
 import org.apache.jmeter.gui.util.MenuFactory;
+import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.gui.util.VerticalPanel;
 import org.apache.jmeter.samplers.Clearable;
 import org.apache.jmeter.samplers.SampleResult;
@@ -31,7 +32,9 @@ import org.apache.jorphan.gui.MinMaxLongRenderer;
 import org.apache.jorphan.gui.NumberRenderer;
 import org.apache.jorphan.gui.RendererUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.LabelMapper;
 import com.github.rbourga.jmeter.effectsize.logic.CohenDEffectSizeLogic;
 
 import kg.apc.jmeter.JMeterPluginsUtils;
@@ -56,6 +59,13 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 	private JFormattedTextField jFTxtFldCohendAL;
 	private FilePanel filePnlA;
 	private FilePanel filePnlB;
+	private JLabel jLblTopLabels = new JLabel("Labels with the most samples to keep (0 = all) ");
+	private JFormattedTextField jFTxtFldTopLabels;
+	private FilePanel filePnlLabelRules;
+
+	// Statistics table of this GUI, filled from the last result
+	private PowerTableModel pwrTblMdlStats = CohenDEffectSizeLogic.crteTableModelStats();
+	private transient AnalysisResult cohendResult = null;
 
 	// GUI constructor
 	public CohenDEffectSizeGui() {
@@ -89,6 +99,20 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 		filePnlA = new FilePanel("Control File (A)", EXTS);
 		filePnlB = new FilePanel("Variation File (B)", EXTS);
 
+		// Panel for selection of label normalisation rules file
+		filePnlLabelRules = new FilePanel("Label normalisation rules file (optional)", EXTS);
+		filePnlLabelRules.setFilename(LabelMapper.getRulesFile());
+
+		// Panel for top labels option
+		JPanel jPnlTopLabels = new JPanel(new BorderLayout());
+		jPnlTopLabels.add(jLblTopLabels, BorderLayout.WEST);
+		jFTxtFldTopLabels = new JFormattedTextField(NumberFormat.getIntegerInstance());
+		jFTxtFldTopLabels.setValue(LabelMapper.getTopLabelCnt()); // by default, all labels kept
+		jFTxtFldTopLabels.setColumns(4);
+		jPnlTopLabels.add(jFTxtFldTopLabels);
+		jPnlTopLabels.setBorder(
+				BorderFactory.createTitledBorder("Top Labels, the others grouped under " + LabelMapper.OTHER_LABEL));
+
 		// Compare button
 		JPanel jPnlCompare = new JPanel();
 		JButton jBtnCompare = new JButton("Compare");
@@ -97,7 +121,7 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 		jPnlCompare.add(jBtnCompare);
 
 		// Grid to display the results of the difference
-		JTable jTblStats = new JTable(CohenDEffectSizeLogic.getPwrTblMdelStats());
+		JTable jTblStats = new JTable(pwrTblMdlStats);
 		JMeterUtils.applyHiDPI(jTblStats);
 		jTblStats.setAutoCreateRowSorter(true);
 		RendererUtils.applyRenderers(
@@ -123,6 +147,8 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 		vrtPnl.add(jPnlDiffFail);
 		vrtPnl.add(filePnlA);
 		vrtPnl.add(filePnlB);
+		vrtPnl.add(filePnlLabelRules);
+		vrtPnl.add(jPnlTopLabels);
 		vrtPnl.add(jPnlCompare);
 		vrtPnl.add(jScrollPane);
 		add(vrtPnl, BorderLayout.CENTER);
@@ -144,13 +170,13 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 			break;
 
 		case ACTION_SAVE:
-			if (CohenDEffectSizeLogic.getPwrTblMdelStats().getRowCount() == 0) {
+			if (cohendResult == null || cohendResult.getRowCount() == 0) {
 				GuiPackage.showErrorMessage("Data table empty - please perform Compare before.",
 						"Save Table Data error");
 				return;
 			}
 			String sInFileB = filePnlB.getFilename();
-			String csvFilename = CohenDEffectSizeLogic.saveTableStatsAsCsv(sInFileB);
+			String csvFilename = CohenDEffectSizeLogic.saveTableStatsAsCsv(sInFileB, cohendResult);
 			GuiPackage.showInfoMessage("Data saved to " + csvFilename, "Save Table Data");
 			break;
 		default:
@@ -168,8 +194,9 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 		 * Called when user clicks on "Clear" or "Clear All" buttons. Clears data
 		 * specific to this plugin
 		 */
-		CohenDEffectSizeLogic.getPwrTblMdelStats().clearData();
-		CohenDEffectSizeLogic.getPwrTblMdelStats().fireTableDataChanged(); // Repaint the table
+		cohendResult = null;
+		pwrTblMdlStats.clearData();
+		pwrTblMdlStats.fireTableDataChanged(); // Repaint the table
 	}
 
 	@Override
@@ -242,9 +269,33 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 			return;
 		}
 
+		// Parse label normalisation rules filename and top labels
+		String sLabelRulesFile = filePnlLabelRules.getFilename();
+		if (!(FileServices.isFilenameEmpty(sLabelRulesFile))) {
+			if (!(FileServices.isFileExist(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage("Cannot find label rules file - please enter a valid filename.",
+						"Label rules file error");
+				return;
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRulesFile))) {
+				GuiPackage.showErrorMessage(
+						"Label rules file invalid - sample_name_or_regex and label_group columns with valid regexes expected.",
+						"Label rules file error");
+				return;
+			}
+		}
+		int iTopLabels = ((Number) jFTxtFldTopLabels.getValue()).intValue();
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			GuiPackage.showErrorMessage("Please enter a number of top labels equal to or greater than 0.",
+					"Top Labels Setting error");
+			return;
+		}
+		LabelMapper.setRulesFile(sLabelRulesFile);
+		LabelMapper.setTopLabelCnt(iTopLabels);
+
 		// Now, process the data
-		int iResult = CohenDEffectSizeLogic.calcCohenDEffectSize(sInFileA, sInFileB, fCohendAL);
-		switch (iResult) {
+		cohendResult = new CohenDEffectSizeLogic(fCohendAL).calcCohenDEffectSize(sInFileA, sInFileB);
+		switch (cohendResult.getFailedLblCnt()) {
 		case -1:
 			GuiPackage.showErrorMessage("No samplers found in Control file - please check your file.",
 					"Input Control file error");
@@ -257,7 +308,7 @@ public class CohenDEffectSizeGui extends AbstractVisualizer implements ActionLis
 		}
 
 		// Repaint the table
-		CohenDEffectSizeLogic.getPwrTblMdelStats().fireTableDataChanged();
+		cohendResult.fillTable(pwrTblMdlStats);
 	}
 
 }
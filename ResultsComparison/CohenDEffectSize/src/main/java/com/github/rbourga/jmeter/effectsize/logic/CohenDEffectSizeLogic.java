@@ -3,22 +3,24 @@
  */
 package com.github.rbourga.jmeter.effectsize.logic;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.TreeMap;
 
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jmeter.gui.util.PowerTableModel;
 import org.apache.jmeter.samplers.SampleSaveConfiguration;
 import org.apache.jmeter.util.JMeterUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.JtlScanner;
 import com.github.rbourga.jmeter.common.MathMoments;
+import com.github.rbourga.jmeter.common.NumberServices;
+import com.github.rbourga.jmeter.common.SamplePartitioner;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
+import com.github.rbourga.jmeter.common.SampleStore;
 
 public final class CohenDEffectSizeLogic {
 
@@ -26,112 +28,44 @@ public final class CohenDEffectSizeLogic {
 	private static String HTML_STATS_TITLE = "Results Comparison";
 	private static final String RATING_NOTAPPLICABLE = "Not Applicable";
 	private static String SUFFIX_STATS = "_CompareStats.";
-
-	// Variables to store all the moments
-	private static ArrayList<Double> alAveragesA = new ArrayList<>(); // Used to store all averages of A
-	private static ArrayList<Double> alAveragesB = new ArrayList<>(); // Used to store all averages of B
-	private static HashMap<String, CohenDEffectSizeLogic> hmCohendResults = new HashMap<>();
+	// Columns of the results file used by the analysis, the label being always loaded
+	private static final String[] USED_COLUMNS = { JtlScanner.COL_ELAPSED };
 
 	// TODO add the new column labels to
 	// core/org/apache/jmeter/resources/messages.properties files.
-	private static PowerTableModel pwrTblMdlStats = new PowerTableModel(
-			new String[] {
-					JMeterUtils.getResString("sampler label"), // Label
-					"# Samples A",
-					"# Samples B",
-					"Average A", // Averages
-					"Average B",
-					"Cohen's d", // d
-					"Diff Rating", // Descriptor
-					"Failed" // true if value more than the specified threshold
-			}, new Class[] {
-					String.class, // Label
-					Integer.class, // # Samples A
-					Integer.class, // # Samples B
-					Double.class, // Average A
-					Double.class, // Average B
-					Double.class, // Cohen's d
-					String.class, // Diff Rating
-					String.class // Failed
-			});
+	private static final String[] STATS_COLUMN_NAMES = new String[] {
+		JMeterUtils.getResString("sampler label"), // Label
+		"# Samples A",
+		"# Samples B",
+		"Average A", // Averages
+		"Average B",
+		"Cohen's d", // d
+		"Diff Rating", // Descriptor
+		"Failed" // true if value more than the specified threshold
+	};
+	private static final Class<?>[] STATS_COLUMN_CLASSES = new Class[] {
+		String.class, // Label
+		Integer.class, // # Samples A
+		Integer.class, // # Samples B
+		Double.class, // Average A
+		Double.class, // Average B
+		Double.class, // Cohen's d
+		String.class, // Diff Rating
+		String.class // Failed
+	};
 	private static int PASSFAIL_TEST_COLNBR = 7; // Position of Failed column in the table
+	private static int COHEND_COLNBR = 5; // Position of Cohen's d column in the table
 
-	public static PowerTableModel getPwrTblMdelStats() {
-		return pwrTblMdlStats;
-	}
-
-	/*
-	 * Constructor
-	 */
-	private int iCountA;
-	private int iCountB;
-	private double fMeanA;
-	private double fMeanB;
-	private double fVarianceA;
-	private double fVarianceB;
-	private BigDecimal bdCohenD;
-	private String sDiffRating;
-
-	private CohenDEffectSizeLogic(String sLbl) {
-		iCountA = 0;
-		iCountB = 0;
-		fMeanA = 0;
-		fMeanB = 0;
-		fVarianceA = 0;
-		fVarianceB = 0;
-		bdCohenD = new BigDecimal(0.00);
-		sDiffRating = "";
-	}
-
-	private int getCountA() {
-		return iCountA;
-	}
+	// Acceptable limit of the analysis, the same for all the comparisons of the instance
+	private final double dCohendAL;
 
-	private int getCountB() {
-		return iCountB;
+	public CohenDEffectSizeLogic(double dCohendAL) {
+		this.dCohendAL = dCohendAL;
 	}
 
-	private double getMeanA() {
-		return fMeanA;
-	}
-
-	private double getMeanB() {
-		return fMeanB;
-	}
-
-	private double getVarianceA() {
-		return fVarianceA;
-	}
-
-	private double getVarianceB() {
-		return fVarianceB;
-	}
-
-	private BigDecimal getCohenD() {
-		return bdCohenD;
-	}
-
-	private String getDiffRating() {
-		return sDiffRating;
-	}
-
-	private void setCountB(int iCount) {
-		this.iCountB = iCount;
-	}
-
-	private void setMeanB(double dMean) {
-		this.fMeanB = dMean;
-	}
-
-	private void setVarianceB(double dVariance) {
-		this.fVarianceB = dVariance;
-	}
-
-	private void setCohenD(double dValue) {
-		// BigDecimal bdCohenDNotRounded = new BigDecimal((double) Math.abs(fCohenD));
-		BigDecimal bdCohenDNotRnded = new BigDecimal(dValue);
-		// Round to 2 decimal places as per specs
-		this.bdCohenD = bdCohenDNotRnded.setScale(2, RoundingMode.HALF_UP);
+	public static PowerTableModel crteTableModelStats() {
+		// Empty statistics table, e.g. for the GUI
+		return new PowerTableModel(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES);
 	}
 
 	/*
@@ -141,61 +75,152 @@ public final class CohenDEffectSizeLogic {
 		return fCohendAL < 0;
 	}
 
-	public static int calcCohenDEffectSize(String sFilepathA, String sFilepathB, double dCohendAL) {
+	public AnalysisResult calcCohenDEffectSize(String sFilepathA, String sFilepathB) {
 		// Load the data after getting the delimiter separator from current JMeter
 		// properties
 		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
-		Map<String, List<CSVRecord>> rcdHashMapA = FileServices.loadSamplesIntoHashMap(sFilepathA, cDelim);
-		if (rcdHashMapA.isEmpty()) {
-			return -1; // Nothing in Control, so abort...
+		if (SamplePartitioner.isPartitioned(sFilepathA) || SamplePartitioner.isPartitioned(sFilepathB)) {
+			// Results larger than the heap budget: one partition of labels at a time
+			LabelsMoments labelsMoments = new LabelsMoments();
+			try {
+				if (SamplePartitioner.forEachPartition(sFilepathA, cDelim, USED_COLUMNS,
+						(sampleStore, aFileRows) -> addControlMoments(labelsMoments, sampleStore)) == 0) {
+					return crteAborted(-1); // Nothing in Control, so abort...
+				}
+				if (SamplePartitioner.forEachPartition(sFilepathB, cDelim, USED_COLUMNS,
+						(sampleStore, aFileRows) -> addVariationMoments(labelsMoments, sampleStore)) == 0) {
+					return crteAborted(-2); // Nothing in Variation, so abort...
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				return crteAborted(-1);
+			}
+			return compareMoments(labelsMoments); // exact values
 		}
-		Map<String, List<CSVRecord>> rcdHashMapB = FileServices.loadSamplesIntoHashMap(sFilepathB, cDelim);
-		if (rcdHashMapB.isEmpty()) {
-			return -2; // Nothing in Control, so abort...
+		SampleStore sampleStoreA = FileServices.loadSamplesIntoStore(sFilepathA, cDelim, USED_COLUMNS);
+		if (sampleStoreA.isEmpty()) {
+			return crteAborted(-1); // Nothing in Control, so abort...
 		}
+		SampleStore sampleStoreB = FileServices.loadSamplesIntoStore(sFilepathB, cDelim, USED_COLUMNS);
+		if (sampleStoreB.isEmpty()) {
+			return crteAborted(-2); // Nothing in Control, so abort...
+		}
+		return calcCohenDEffectSize(sampleStoreA, sampleStoreB);
+	}
 
-		// Clear any comparisons from a previous analysis
-		alAveragesA.clear();
-		alAveragesB.clear();
-		hmCohendResults.clear();
-		pwrTblMdlStats.clearData();
+	public AnalysisResult calcCohenDEffectSize(SampleStore sampleStoreA, SampleStore sampleStoreB) {
+		// Same on samples already loaded
+		LabelsMoments labelsMoments = new LabelsMoments();
 
 		/*
 		 * Processing of the data is done in multiple steps: 1. Calculate the moments
 		 * for the Control samplers A. 2. Calculate the moments for the Variation
 		 * samplers B. 3. Calculate Cohen's d between A and B
 		 */
-		// 1. Loop through the Labels in the dataset A
-		for (String sLbl : rcdHashMapA.keySet()) {
-			List<CSVRecord> aRcd = rcdHashMapA.get(sLbl);
-			int iTotRcd = aRcd.size();
+		addControlMoments(labelsMoments, sampleStoreA);
+		addVariationMoments(labelsMoments, sampleStoreB);
+		return compareMoments(labelsMoments); // exact values
+	}
+
+	public AnalysisResult calcCohenDEffectSize(SampleReservoirs sampleReservoirsA,
+			SampleReservoirs sampleReservoirsB) {
+		/*
+		 * Sampling mode: same on the samples kept for each label. The standard error of
+		 * d estimated on nA and nB samples is about sqrt((nA + nB) / (nA * nB) + d^2 /
+		 * (2 * (nA + nB))). The overall average, computed on the means of the labels,
+		 * is left out of the intervals.
+		 */
+		if (sampleReservoirsA.isEmpty()) {
+			return crteAborted(-1); // Nothing in Control, so abort...
+		}
+		if (sampleReservoirsB.isEmpty()) {
+			return crteAborted(-2); // Nothing in Control, so abort...
+		}
+		SampleStore sampleStoreA = sampleReservoirsA.getSampleStore();
+		SampleStore sampleStoreB = sampleReservoirsB.getSampleStore();
+		AnalysisResult cohendResult = calcCohenDEffectSize(sampleStoreA, sampleStoreB);
+		double dMaxHalfWidth = 0;
+		for (int iRow = 0; iRow < cohendResult.getRowCount(); iRow++) {
+			String sLbl = (String) cohendResult.getValueAt(iRow, 0);
+			int iCntA = (Integer) cohendResult.getValueAt(iRow, 1);
+			int iCntB = (Integer) cohendResult.getValueAt(iRow, 2);
+			if (sLbl.equals(AVERAGE_OF_AVERAGES) || (iCntA <= 2) || (iCntB <= 2)
+					|| !(sampleReservoirsA.isSampled(sampleStoreA, sLbl)
+							|| sampleReservoirsB.isSampled(sampleStoreB, sLbl))) {
+				continue;
+			}
+			double dCohend = (Double) cohendResult.getValueAt(iRow, COHEND_COLNBR);
+			double dStdErr = Math.sqrt(
+					(double) (iCntA + iCntB) / ((double) iCntA * iCntB) + dCohend * dCohend / (2.0 * (iCntA + iCntB)));
+			dMaxHalfWidth = Math.max(dMaxHalfWidth, sampleReservoirsA.getZScore() * dStdErr);
+		}
+		return cohendResult.withErrorNote(sampleReservoirsA.getErrorNote(
+				"Cohen's d +/- " + NumberServices.formatHalfUp(dMaxHalfWidth, 2)));
+	}
+
+	public static SampleReservoirs loadReservoirs(String sFilepath, double dConfidence, double dMargin) {
+		// Sampling mode: a random sample of each label is kept as the samples are read
+		char cDelim = SampleSaveConfiguration.staticConfig().getDelimiter().charAt(0);
+		return FileServices.loadSamplesIntoReservoirs(sFilepath, cDelim, dConfidence, dMargin);
+	}
 
-			// Get some stats for this set of samples
-			MathMoments mathMoments = MathMoments.crteMomentsFromRecordsList(aRcd);
+	public static String saveTableStatsAsCsv(String sFilePath, AnalysisResult cohendResult) {
+		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
+		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
+		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
+		FileServices.saveTableAsCsv(sOutputFile, cohendResult.crteTableModel(), cohendResult.getErrorNote());
+		return sOutputFile;
+	}
+
+	public static String saveTableStatsAsHtml(String sFilePath, AnalysisResult cohendResult, String sCohensdAL) {
+		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
+		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
+		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "html";
+		String sTableTitle = HTML_STATS_TITLE + " (Cohen's d Acceptable Limit = " + sCohensdAL + ")";
+		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, cohendResult, PASSFAIL_TEST_COLNBR);
+		return sOutputFile;
+	}
+
+	/*
+	 * Private methods
+	 */
+	private static AnalysisResult crteAborted(int iCode) {
+		return AnalysisResult.crteAborted(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, iCode);
+	}
+
+	private static void addControlMoments(LabelsMoments labelsMoments, SampleStore sampleStoreA) {
+		// 1. Loop through the Labels in the dataset A
+		for (int iLblId = 0; iLblId < sampleStoreA.getLabelCount(); iLblId++) {
+			String sLbl = sampleStoreA.getLabel(iLblId);
+			// Only the mean and variance are needed: accumulate them in one pass
+			MathMoments.Accumulator mathMoments = sampleStoreA.accumulateElapsed(sampleStoreA.getLabelRows(iLblId));
+			int iTotRcd = (int) mathMoments.getCount();
 			// Save some values for later analysis
-			CohenDEffectSizeLogic oCohenDEffectSizeLogic = new CohenDEffectSizeLogic(sLbl);
-			oCohenDEffectSizeLogic.iCountA = iTotRcd;
-			oCohenDEffectSizeLogic.fMeanA = mathMoments.getMean();
-			oCohenDEffectSizeLogic.fVarianceA = mathMoments.getVariance();
+			LabelMoments oLabelMoments = new LabelMoments();
+			oLabelMoments.iCountA = iTotRcd;
+			oLabelMoments.fMeanA = mathMoments.getMean();
+			oLabelMoments.fVarianceA = mathMoments.getVariance();
 
 			// Save this average for later processing of all the averages
-			alAveragesA.add(mathMoments.getMean());
+			labelsMoments.alAveragesA.add(mathMoments.getMean());
 			// Add the results of analysis to hashmap for later reference
-			hmCohendResults.put(sLbl, oCohenDEffectSizeLogic);
+			labelsMoments.hmCohendResults.put(sLbl, oLabelMoments);
 		}
+	}
 
+	private static void addVariationMoments(LabelsMoments labelsMoments, SampleStore sampleStoreB) {
 		// 2. Repeat for dataset B
-		for (String sLbl : rcdHashMapB.keySet()) {
-			List<CSVRecord> aRcd = rcdHashMapB.get(sLbl);
-			int iTotRcd = aRcd.size();
-
-			// Get some stats for this set of samples
-			MathMoments mathMoments = MathMoments.crteMomentsFromRecordsList(aRcd);
+		for (int iLblId = 0; iLblId < sampleStoreB.getLabelCount(); iLblId++) {
+			String sLbl = sampleStoreB.getLabel(iLblId);
+			// Only the mean and variance are needed: accumulate them in one pass
+			MathMoments.Accumulator mathMoments = sampleStoreB.accumulateElapsed(sampleStoreB.getLabelRows(iLblId));
+			int iTotRcd = (int) mathMoments.getCount();
 			// Save this mean for later processing
-			alAveragesB.add(mathMoments.getMean());
+			labelsMoments.alAveragesB.add(mathMoments.getMean());
 
 			// Save some values for later analysis
 			// Is this Sample in the Control file?
+			HashMap<String, LabelMoments> hmCohendResults = labelsMoments.hmCohendResults;
 			if (hmCohendResults.containsKey(sLbl)) {
 				// Yes: update the Stats with B values
 				hmCohendResults.get(sLbl).setCountB(iTotRcd);
@@ -203,15 +228,19 @@ public final class CohenDEffectSizeLogic {
 				hmCohendResults.get(sLbl).setVarianceB(mathMoments.getVariance());
 			} else {
 				// No: add a new result to the list
-				CohenDEffectSizeLogic oCohenDEffectSizeLogic = new CohenDEffectSizeLogic(sLbl);
-				oCohenDEffectSizeLogic.iCountB = iTotRcd;
-				oCohenDEffectSizeLogic.fMeanB = mathMoments.getMean();
-				oCohenDEffectSizeLogic.fVarianceB = mathMoments.getVariance();
+				LabelMoments oLabelMoments = new LabelMoments();
+				oLabelMoments.iCountB = iTotRcd;
+				oLabelMoments.fMeanB = mathMoments.getMean();
+				oLabelMoments.fVarianceB = mathMoments.getVariance();
 				// Add the results of analysis to hashmap for later reference
-				hmCohendResults.put(sLbl, oCohenDEffectSizeLogic);
+				hmCohendResults.put(sLbl, oLabelMoments);
 			}
 		}
+	}
 
+	private AnalysisResult compareMoments(LabelsMoments labelsMoments) {
+		// Compares the moments of the labels of A and B added so far
+		HashMap<String, LabelMoments> hmCohendResults = labelsMoments.hmCohendResults;
 		// 3. Now calculate Cohen's d values for all keys and set the difference between
 		// the means
 		for (String sLbl : hmCohendResults.keySet()) {
@@ -235,14 +264,15 @@ public final class CohenDEffectSizeLogic {
 		}
 
 		// 4. Update the statistics table for the UI in a natural order
-		TreeMap<String, CohenDEffectSizeLogic> tmResultsSorted = new TreeMap<>(hmCohendResults);
+		TreeMap<String, LabelMoments> tmResultsSorted = new TreeMap<>(hmCohendResults);
+		ArrayList<Object[]> alRows = new ArrayList<>();
 		int iFailedLblCnt = 0;
 		for (String sLbl : tmResultsSorted.keySet()) {
 			String sIsFailed = "false";
 			if (tmResultsSorted.get(sLbl).getDiffRating() == RATING_NOTAPPLICABLE) {
 				sIsFailed = "na";
 			} else {
-				double dCohend = tmResultsSorted.get(sLbl).getCohenD().doubleValue();
+				double dCohend = tmResultsSorted.get(sLbl).getCohenD();
 				if (dCohend >= dCohendAL) {
 					sIsFailed = "true";
 					iFailedLblCnt++;
@@ -255,78 +285,58 @@ public final class CohenDEffectSizeLogic {
 					tmResultsSorted.get(sLbl).getCountB(),
 					Long.valueOf((long) tmResultsSorted.get(sLbl).getMeanA()),
 					Long.valueOf((long) tmResultsSorted.get(sLbl).getMeanB()),
-					Math.abs(tmResultsSorted.get(sLbl).getCohenD().doubleValue()),
+					Math.abs(tmResultsSorted.get(sLbl).getCohenD()),
 					tmResultsSorted.get(sLbl).getDiffRating(),
 					sIsFailed };
-			pwrTblMdlStats.addRow(oArrayRowData);
+			alRows.add(oArrayRowData);
 		}
 
 		// 6. Add last line for a global comparison of averages between A and B
 		// Same calculations on the averages for a global comparison
-		CohenDEffectSizeLogic oCohenDEffectSizeLogic = new CohenDEffectSizeLogic(AVERAGE_OF_AVERAGES);
-		int iCntA = alAveragesA.size();
-		int iCntB = alAveragesB.size();
-
-		MathMoments mathMoments = MathMoments.crteMomentsFromMeansList(alAveragesA);
-		oCohenDEffectSizeLogic.iCountA = iCntA;
-		oCohenDEffectSizeLogic.fMeanA = mathMoments.getMean();
-		oCohenDEffectSizeLogic.fVarianceA = mathMoments.getVariance();
-		mathMoments = MathMoments.crteMomentsFromMeansList(alAveragesB);
-		oCohenDEffectSizeLogic.iCountB = iCntB;
-		oCohenDEffectSizeLogic.fMeanB = mathMoments.getMean();
-		oCohenDEffectSizeLogic.fVarianceB = mathMoments.getVariance();
+		LabelMoments oLabelMoments = new LabelMoments();
+		int iCntA = labelsMoments.alAveragesA.size();
+		int iCntB = labelsMoments.alAveragesB.size();
+
+		MathMoments mathMoments = MathMoments.crteMomentsFromMeansList(labelsMoments.alAveragesA);
+		oLabelMoments.iCountA = iCntA;
+		oLabelMoments.fMeanA = mathMoments.getMean();
+		oLabelMoments.fVarianceA = mathMoments.getVariance();
+		mathMoments = MathMoments.crteMomentsFromMeansList(labelsMoments.alAveragesB);
+		oLabelMoments.iCountB = iCntB;
+		oLabelMoments.fMeanB = mathMoments.getMean();
+		oLabelMoments.fVarianceB = mathMoments.getVariance();
 
 		if ((iCntA > 2) && (iCntB > 2)) {
-			double dVarA = oCohenDEffectSizeLogic.getVarianceA();
-			double dVarB = oCohenDEffectSizeLogic.getVarianceB();
-			double dMeanA = oCohenDEffectSizeLogic.getMeanA();
-			double dMeanB = oCohenDEffectSizeLogic.getMeanB();
+			double dVarA = oLabelMoments.getVarianceA();
+			double dVarB = oLabelMoments.getVarianceB();
+			double dMeanA = oLabelMoments.getMeanA();
+			double dMeanB = oLabelMoments.getMeanB();
 			double dPooledSD = calcPooledSD(iCntA, dVarA, iCntB, dVarB);
 			double dCohend = (dPooledSD == 0) ? 0 : calcCohensd(dMeanA, dMeanB, dPooledSD);
 
 			// Update the stats
-			oCohenDEffectSizeLogic.setCohenD(dCohend);
-			oCohenDEffectSizeLogic.setDiffRating(dCohend);
+			oLabelMoments.setCohenD(dCohend);
+			oLabelMoments.setDiffRating(dCohend);
 		} else {
-			oCohenDEffectSizeLogic.sDiffRating = RATING_NOTAPPLICABLE;
+			oLabelMoments.sDiffRating = RATING_NOTAPPLICABLE;
 		}
 
 		// Add the result to statistics table
-		double dCohend = oCohenDEffectSizeLogic.getCohenD().doubleValue();
+		double dCohend = oLabelMoments.getCohenD();
 		String sIsFailed = "false";
 		if (dCohend >= dCohendAL) {
 			sIsFailed = "true";
 		}
 		Object[] oArrayRowData = { AVERAGE_OF_AVERAGES, iCntA, iCntB,
-				Long.valueOf((long) oCohenDEffectSizeLogic.getMeanA()),
-				Long.valueOf((long) oCohenDEffectSizeLogic.getMeanB()),
-				Math.abs(oCohenDEffectSizeLogic.getCohenD().doubleValue()), oCohenDEffectSizeLogic.getDiffRating(),
+				Long.valueOf((long) oLabelMoments.getMeanA()),
+				Long.valueOf((long) oLabelMoments.getMeanB()),
+				Math.abs(oLabelMoments.getCohenD()), oLabelMoments.getDiffRating(),
 				sIsFailed };
-		pwrTblMdlStats.addRow(oArrayRowData);
+		alRows.add(oArrayRowData);
 
-		return iFailedLblCnt;
+		return new AnalysisResult(STATS_COLUMN_NAMES, STATS_COLUMN_CLASSES, alRows, iFailedLblCnt, null);
 	}
 
-	public static String saveTableStatsAsCsv(String sFilePath) {
-		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
-		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
-		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "csv";
-		FileServices.saveTableAsCsv(sOutputFile, pwrTblMdlStats);
-		return sOutputFile;
-	}
-
-	public static String saveTableStatsAsHtml(String sFilePath, String sCohensdAL) {
-		String sFileDirectoryName = FilenameUtils.getFullPath(sFilePath);
-		String sFileBaseName = FilenameUtils.getBaseName(sFilePath);
-		String sOutputFile = sFileDirectoryName + sFileBaseName + SUFFIX_STATS + "html";
-		String sTableTitle = HTML_STATS_TITLE + " (Cohen's d Acceptable Limit = " + sCohensdAL + ")";
-		FileServices.saveTableAsHTML(sOutputFile, sTableTitle, pwrTblMdlStats, PASSFAIL_TEST_COLNBR);
-		return sOutputFile;
-	}
-
-	/*
-	 * Private methods
-	 */
 	private static double calcCohensd(double dMean1, double dMean2, double dPooledSD) {
 		// returns Cohen's d, as per specs
 		return (dMean2 - dMean1) / dPooledSD;
@@ -337,35 +347,119 @@ public final class CohenDEffectSizeLogic {
 		return Math.sqrt(((iN1 - 1) * dVariance1 + (iN2 - 1) * dVariance2) / (iN1 + iN2 - 2));
 	}
 
-	private void setDiffRating(double dValue) {
-		// 1. Get direction of movement
-		String sDir = "";
-		if (dValue < 0) {
-			sDir = "decrease";
-		} else if (dValue > 0) {
-			sDir = "increase";
+	/*
+	 * Moments of a label in A and B, and their comparison.
+	 */
+	private static final class LabelMoments {
+		private int iCountA;
+		private int iCountB;
+		private double fMeanA;
+		private double fMeanB;
+		private double fVarianceA;
+		private double fVarianceB;
+		private double fCohenD;
+		private String sDiffRating;
+
+		private LabelMoments() {
+			iCountA = 0;
+			iCountB = 0;
+			fMeanA = 0;
+			fMeanB = 0;
+			fVarianceA = 0;
+			fVarianceB = 0;
+			fCohenD = 0;
+			sDiffRating = "";
 		}
 
-		// 2. Get magnitude of movement according to Sawilowsky's rule of thumb
-		double fAbsValue = Math.abs(dValue);
-		String sMag = "Similar";
-		if (fAbsValue >= 2.0) {
-			sMag = "Huge";
-		} else if (fAbsValue >= 1.20) {
-			sMag = "Very large";
-		} else if (fAbsValue >= 0.80) {
-			sMag = "Large";
-		} else if (fAbsValue >= 0.50) {
-			sMag = "Medium";
-		} else if (fAbsValue >= 0.02) {
-			sMag = "Small";
-		} else if (fAbsValue >= 0.01) {
-			sMag = "Very small";
-		} else if (fAbsValue > 0.0) {
-			sMag = "Negligeable";
+		private int getCountA() {
+			return iCountA;
 		}
 
-		this.sDiffRating = sMag + " " + sDir;
+		private int getCountB() {
+			return iCountB;
+		}
+
+		private double getMeanA() {
+			return fMeanA;
+		}
+
+		private double getMeanB() {
+			return fMeanB;
+		}
+
+		private double getVarianceA() {
+			return fVarianceA;
+		}
+
+		private double getVarianceB() {
+			return fVarianceB;
+		}
+
+		private double getCohenD() {
+			return fCohenD;
+		}
+
+		private String getDiffRating() {
+			return sDiffRating;
+		}
+
+		private void setCountB(int iCount) {
+			this.iCountB = iCount;
+		}
+
+		private void setMeanB(double dMean) {
+			this.fMeanB = dMean;
+		}
+
+		private void setVarianceB(double dVariance) {
+			this.fVarianceB = dVariance;
+		}
+
+		private void setCohenD(double dValue) {
+			// Round to 2 decimal places as per specs
+			this.fCohenD = NumberServices.roundHalfUp(dValue, 2);
+		}
+
+		private void setDiffRating(double dValue) {
+			// 1. Get direction of movement
+			String sDir = "";
+			if (dValue < 0) {
+				sDir = "decrease";
+			} else if (dValue > 0) {
+				sDir = "increase";
+			}
+
+			// 2. Get magnitude of movement according to Sawilowsky's rule of thumb
+			double fAbsValue = Math.abs(dValue);
+			String sMag = "Similar";
+			if (fAbsValue >= 2.0) {
+				sMag = "Huge";
+			} else if (fAbsValue >= 1.20) {
+				sMag = "Very large";
+			} else if (fAbsValue >= 0.80) {
+				sMag = "Large";
+			} else if (fAbsValue >= 0.50) {
+				sMag = "Medium";
+			} else if (fAbsValue >= 0.02) {
+				sMag = "Small";
+			} else if (fAbsValue >= 0.01) {
+				sMag = "Very small";
+			} else if (fAbsValue > 0.0) {
+				sMag = "Negligeable";
+			}
+
+			this.sDiffRating = sMag + " " + sDir;
+		}
+	}
+
+	/*
+	 * Moments of the labels of a comparison, and the averages of the labels of A
+	 * and B for the overall comparison.
+	 */
+	private static final class LabelsMoments {
+		private final ArrayList<Double> alAveragesA = new ArrayList<>(); // Used to store all averages of A
+		private final ArrayList<Double> alAveragesB = new ArrayList<>(); // Used to store all averages of B
+		private final HashMap<String, LabelMoments> hmCohendResults = new HashMap<>();
 	}
 
 }
@@ -4,11 +4,15 @@ package kg.apc.cmdtools;
  */
 
 import java.io.PrintStream;
+import java.util.List;
 import java.util.ListIterator;
 
 import org.apache.commons.lang3.math.NumberUtils;
 
+import com.github.rbourga.jmeter.common.AnalysisResult;
 import com.github.rbourga.jmeter.common.FileServices;
+import com.github.rbourga.jmeter.common.LabelMapper;
+import com.github.rbourga.jmeter.common.SampleReservoirs;
 import com.github.rbourga.jmeter.effectsize.logic.CohenDEffectSizeLogic;
 
 import kg.apc.cmd.UniversalRunner;
@@ -32,6 +36,10 @@ public class ResultsCompareTool extends AbstractCMDTool {
 		String sCtrlFile = null;
 		String sVarFile = null;
 		String sCohensdAL = "1.2"; // 1.2 max acceptable limit by default
+		String sSamplingConfidence = "0"; // no sampling by default
+		String sSamplingMargin = "0.01"; // 1% by default
+		String sLabelRules = null; // label rules of the JMeter properties by default
+		String sTopLabels = null; // top labels of the JMeter properties by default
 
 		if (!args.hasNext()) {
 			showHelp(System.out);
@@ -56,21 +64,53 @@ public class ResultsCompareTool extends AbstractCMDTool {
 					throw new IllegalArgumentException("Cohen's d acceptable limit value missing.");
 				}
 				sCohensdAL = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--label-rules")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Label rules file name missing.");
+				}
+				sLabelRules = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--top-labels")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Top labels value missing.");
+				}
+				sTopLabels = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-confidence")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling confidence value missing.");
+				}
+				sSamplingConfidence = ((String) args.next());
+			} else if (arg.equalsIgnoreCase("--sampling-margin")) {
+				if (!args.hasNext()) {
+					throw new IllegalArgumentException("Sampling margin value missing.");
+				}
+				sSamplingMargin = ((String) args.next());
 			}
 		}
 
-		// Check file parameters
-		if (!(FileServices.isFileExist(sCtrlFile))) {
+		// Check file parameters: each one is a file, or a list or glob pattern of files to merge
+		List<String> listCtrlFileFiles = FileServices.resolveInputFiles(sCtrlFile);
+		if (listCtrlFileFiles.isEmpty()) {
 			throw new IllegalArgumentException("Control file not found.");
 		}
-		if (!(FileServices.isFileValid(sCtrlFile))) {
-			throw new IllegalArgumentException("Control file invalid (could not find results).");
+		for (String sFile : listCtrlFileFiles) {
+			if (!(FileServices.isFileExist(sFile))) {
+				throw new IllegalArgumentException("Control file not found: " + sFile + ".");
+			}
+			if (!(FileServices.isFileValid(sFile))) {
+				throw new IllegalArgumentException("Control file invalid (could not find results): " + sFile + ".");
+			}
 		}
-		if (!(FileServices.isFileExist(sVarFile))) {
+		List<String> listVarFileFiles = FileServices.resolveInputFiles(sVarFile);
+		if (listVarFileFiles.isEmpty()) {
 			throw new IllegalArgumentException("Variation file not found.");
 		}
-		if (!(FileServices.isFileValid(sVarFile))) {
-			throw new IllegalArgumentException("Variation file invalid (could not find results).");
+		for (String sFile : listVarFileFiles) {
+			if (!(FileServices.isFileExist(sFile))) {
+				throw new IllegalArgumentException("Variation file not found: " + sFile + ".");
+			}
+			if (!(FileServices.isFileValid(sFile))) {
+				throw new IllegalArgumentException("Variation file invalid (could not find results): " + sFile + ".");
+			}
 		}
 		// Check sCohensdAL parameter
 		if (!(NumberUtils.isCreatable(sCohensdAL))) {
@@ -80,9 +120,58 @@ public class ResultsCompareTool extends AbstractCMDTool {
 		if (CohenDEffectSizeLogic.isCohendALOutOfRange(fCohensdAL)) {
 			throw new IllegalArgumentException("Cohen's d acceptable limit value needs to be greater or equal to 0.");
 		}
+		// Check sampling-confidence and sampling-margin parameters
+		if (!(NumberUtils.isCreatable(sSamplingConfidence))) {
+			throw new IllegalArgumentException("Sampling confidence value invalid.");
+		}
+		double dSamplingConfidence = Double.parseDouble(sSamplingConfidence);
+		if ((dSamplingConfidence != 0) && SampleReservoirs.isConfidenceOutOfRange(dSamplingConfidence)) {
+			throw new IllegalArgumentException("Sampling confidence value needs to be between 0 and 1 excluded.");
+		}
+		if (!(NumberUtils.isCreatable(sSamplingMargin))) {
+			throw new IllegalArgumentException("Sampling margin value invalid.");
+		}
+		double dSamplingMargin = Double.parseDouble(sSamplingMargin);
+		if (SampleReservoirs.isMarginOutOfRange(dSamplingMargin)) {
+			throw new IllegalArgumentException("Sampling margin value needs to be between 0 and 1 excluded.");
+		}
+
+		// Check label-rules and top-labels parameters
+		if ((sLabelRules != null) && !FileServices.isFilenameEmpty(sLabelRules)) {
+			if (!(FileServices.isFileExist(sLabelRules))) {
+				throw new IllegalArgumentException("Label rules file not found.");
+			}
+			if (!(LabelMapper.isRulesFileValid(sLabelRules))) {
+				throw new IllegalArgumentException(
+						"Label rules file invalid (sample_name_or_regex and label_group columns expected).");
+			}
+		}
+		if ((sTopLabels != null) && !(NumberUtils.isDigits(sTopLabels))) {
+			throw new IllegalArgumentException("Top labels value invalid (number of labels expected).");
+		}
+		int iTopLabels = (sTopLabels == null) ? LabelMapper.getTopLabelCnt() : NumberUtils.toInt(sTopLabels, -1);
+		if (LabelMapper.isTopLabelCntOutOfRange(iTopLabels)) {
+			throw new IllegalArgumentException("Top labels value needs to be greater or equal to 0.");
+		}
+		// Options of the loads, the JMeter properties being kept if not given
+		if (sLabelRules != null) {
+			LabelMapper.setRulesFile(sLabelRules);
+		}
+		if (sTopLabels != null) {
+			LabelMapper.setTopLabelCnt(iTopLabels);
+		}
 
 		// Do the job
-		int iResult = CohenDEffectSizeLogic.calcCohenDEffectSize(sCtrlFile, sVarFile, fCohensdAL);
+		CohenDEffectSizeLogic cohendLogic = new CohenDEffectSizeLogic(fCohensdAL);
+		AnalysisResult cohendResult;
+		if (dSamplingConfidence > 0) {
+			cohendResult = cohendLogic.calcCohenDEffectSize(
+					CohenDEffectSizeLogic.loadReservoirs(sCtrlFile, dSamplingConfidence, dSamplingMargin),
+					CohenDEffectSizeLogic.loadReservoirs(sVarFile, dSamplingConfidence, dSamplingMargin));
+		} else {
+			cohendResult = cohendLogic.calcCohenDEffectSize(sCtrlFile, sVarFile);
+		}
+		int iResult = cohendResult.getFailedLblCnt();
 		switch (iResult) {
 		case -1:
 			System.out.println("No samplers found in control file - please check your file.");
@@ -92,7 +181,7 @@ public class ResultsCompareTool extends AbstractCMDTool {
 			break;
 		default:
 			// Save Apdex results in an HTML file for import in DevOps tool later on
-			String htmlFilename = CohenDEffectSizeLogic.saveTableStatsAsHtml(sVarFile, sCohensdAL);
+			String htmlFilename = CohenDEffectSizeLogic.saveTableStatsAsHtml(FileServices.getOutputBasePath(sVarFile), cohendResult, sCohensdAL);
 			System.out.println("Results saved in " + htmlFilename);
 			System.out.println("Performance worsened for " + iResult + " elements.");
 		}
@@ -101,8 +190,12 @@ public class ResultsCompareTool extends AbstractCMDTool {
 
 	@Override
 	protected void showHelp(PrintStream os) {
-		os.println("Options for tool 'ResultsCompare':" + "--ctrl-file <controlFilename> "
-				+ "--var-file <variationFilename> " + "[" + "--cohensd-alim <Cohen's d acceptable limit value to pass>"
+		os.println("Options for tool 'ResultsCompare':" + "--ctrl-file <controlFilename(s)> "
+				+ "--var-file <variationFilename(s)> " + "[" + "--cohensd-alim <Cohen's d acceptable limit value to pass> "
+				+ "--label-rules <CSV file of sample_name_or_regex,label_group rules merging the labels of a same transaction> "
+				+ "--top-labels <number of labels with the most samples to keep, the others grouped under '" + LabelMapper.OTHER_LABEL + "' (default = 0, all labels)> "
+				+ "--sampling-confidence <confidence level of a quick analysis on random samples of each label, e.g. 0.95 (default = 0, no sampling)> "
+				+ "--sampling-margin <margin of error of the proportions in sampling mode (default = 0.01)> "
 				+ "]");
 	}
 }